@@ -0,0 +1,54 @@
+package com.christianmeiners;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the output stage of the export: writing the dump
+ * to the temp dir with and without compression
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressionBenchmark {
+
+    @Param({"16"})
+    public int dumpMegabytes;
+
+    @Param({"true", "false"})
+    public boolean zip;
+
+    private String dump;
+    private File tempDir;
+    private MysqlExportService service;
+
+    @Setup
+    public void setup() throws Exception {
+        dump = SyntheticData.dump(dumpMegabytes);
+        tempDir = Files.createTempDirectory("mysql-backup4j-benchmark").toFile();
+
+        Properties properties = new Properties();
+        properties.setProperty(MysqlExportService.TEMP_DIR, tempDir.getAbsolutePath() + File.separator + "out");
+        properties.setProperty(MysqlExportService.ZIP_EXPORT_FILE, String.valueOf(zip));
+        properties.setProperty(MysqlExportService.SQL_FILE_NAME, "benchmark");
+        service = new MysqlExportService(properties);
+    }
+
+    @Benchmark
+    public void writeOutput() throws IOException {
+        service.writeOutput(dump);
+    }
+
+    @TearDown
+    public void tearDown() {
+        tempDir.delete();
+    }
+}
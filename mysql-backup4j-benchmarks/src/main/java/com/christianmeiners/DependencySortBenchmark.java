@@ -0,0 +1,38 @@
+package com.christianmeiners;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the ordering of tables by their foreign
+ * keys on schemas with thousands of tables
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class DependencySortBenchmark {
+
+    @Param({"100", "1000", "5000"})
+    public int tableCount;
+
+    @Param({"3"})
+    public int maxReferences;
+
+    private Map<String, String> references;
+
+    @Setup
+    public void setup() {
+        references = SyntheticData.dependencyGraph(tableCount, maxReferences);
+    }
+
+    @Benchmark
+    public List<String> sortByDependencies() {
+        return MysqlBaseService.sortByDependencies(references);
+    }
+}
@@ -0,0 +1,39 @@
+package com.christianmeiners;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the value encoding loop of the export over an
+ * in-memory result set, i.e. without any network or server time
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportEncodingBenchmark {
+
+    @Param({"1000", "100000"})
+    public int rowCount;
+
+    private Object[][] rows;
+    private MysqlExportService service;
+
+    @Setup
+    public void setup() {
+        rows = SyntheticData.rows(rowCount);
+        service = new MysqlExportService(new Properties());
+    }
+
+    @Benchmark
+    public long encodeTable() throws Exception {
+        try (SpillableBuffer sql = SpillableBuffer.inMemory()) {
+            service.getDataInsertStatement(SyntheticData.resultSet(rows), "benchmark", System.nanoTime(), sql);
+            return sql.length();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.christianmeiners;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast the import splits a dump into the
+ * chunks it hands over to the batches.
+ *
+ * The dump is held in a String like MysqlImportService does,
+ * so the largest size is bound by the heap. Larger dumps can
+ * be measured with e.g. -p dumpMegabytes=1024 -jvmArgs -Xmx6g
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ImportSplitterBenchmark {
+
+    @Param({"1", "64"})
+    public int dumpMegabytes;
+
+    private String dump;
+
+    @Setup
+    public void setup() throws Exception {
+        dump = SyntheticData.dump(dumpMegabytes);
+    }
+
+    @Benchmark
+    public void split(Blackhole blackhole) {
+        SqlChunkReader reader = new SqlChunkReader(dump);
+        String chunk;
+        while ((chunk = reader.next()) != null) {
+            blackhole.consume(chunk);
+        }
+    }
+}
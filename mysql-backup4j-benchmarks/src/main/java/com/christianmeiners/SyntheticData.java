@@ -0,0 +1,172 @@
+package com.christianmeiners;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generators of the synthetic inputs of the benchmarks.
+ * Everything is seeded, so every run measures the same data.
+ */
+final class SyntheticData {
+
+    private static final String[] COLUMN_NAMES = {"id", "flag", "amount", "name", "created_at", "notes"};
+    private static final int[] COLUMN_TYPES = {Types.INTEGER, Types.TINYINT, Types.DECIMAL, Types.VARCHAR, Types.TIMESTAMP, Types.LONGVARCHAR};
+
+    private SyntheticData() {
+    }
+
+    /**
+     * This will generate rows with a mix of integer, decimal,
+     * string, timestamp and text columns. Some strings contain
+     * quotes and about every tenth text is NULL
+     *
+     * @param rowCount the number of rows
+     * @return Object[][]
+     */
+    static Object[][] rows(int rowCount) {
+        Random random = new Random(42);
+        Object[][] rows = new Object[rowCount][];
+        for (int i = 0; i < rowCount; i++) {
+            rows[i] = new Object[]{
+                    i + 1,
+                    random.nextInt(2),
+                    BigDecimal.valueOf(random.nextInt(10000000), 2),
+                    randomText(random, 8 + random.nextInt(24)),
+                    new Timestamp(1500000000000L + random.nextInt(Integer.MAX_VALUE) * 1000L),
+                    random.nextInt(10) == 0 ? null : randomText(random, 40 + random.nextInt(200))
+            };
+        }
+        return rows;
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            int c = random.nextInt(64);
+            text.append(c == 0 ? '\'' : c == 1 ? ' ' : (char) ('a' + c % 26));
+        }
+        return text.toString();
+    }
+
+    /**
+     * This will return a forward only result set
+     * over the given rows, like the ones of the driver
+     *
+     * @param rows the rows, see rows()
+     * @return ResultSet
+     */
+    static ResultSet resultSet(Object[][] rows) {
+        ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(),
+                new Class[]{ResultSetMetaData.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getColumnCount":
+                            return COLUMN_NAMES.length;
+                        case "getColumnName":
+                        case "getColumnLabel":
+                            return COLUMN_NAMES[(Integer) args[0] - 1];
+                        case "getColumnType":
+                            return COLUMN_TYPES[(Integer) args[0] - 1];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        int[] cursor = {-1};
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                new Class[]{ResultSet.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "next":
+                            return ++cursor[0] < rows.length;
+                        case "getMetaData":
+                            return metaData;
+                        case "getObject":
+                            return rows[cursor[0]][(Integer) args[0] - 1];
+                        case "getInt":
+                            Object value = rows[cursor[0]][(Integer) args[0] - 1];
+                            return value == null ? 0 : ((Number) value).intValue();
+                        case "getString":
+                            Object text = rows[cursor[0]][(Integer) args[0] - 1];
+                            return text == null ? null : text.toString();
+                        case "close":
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * This will generate a dump in the format of
+     * the export service of roughly the given size
+     *
+     * @param megabytes the size of the dump
+     * @return String
+     * @throws Exception exception
+     */
+    static String dump(int megabytes) throws Exception {
+        MysqlExportService service = new MysqlExportService(new java.util.Properties());
+        Object[][] rows = rows(2000);
+        long size = (long) megabytes * 1024 * 1024;
+
+        StringBuilder sql = new StringBuilder(service.getHeader());
+        for (int table = 0; sql.length() < size; table++) {
+            String name = "table_" + table;
+            sql.append("\n\n--\n").append(MysqlBaseService.SQL_START_PATTERN).append("  table dump : ").append(name)
+                    .append("\n--\n\nCREATE TABLE IF NOT EXISTS `").append(name).append("` (`id` int NOT NULL);\n\n")
+                    .append("\n\n--\n").append(MysqlBaseService.SQL_END_PATTERN).append("  table dump : ").append(name)
+                    .append("\n--\n\n");
+            try (SpillableBuffer data = SpillableBuffer.inMemory()) {
+                service.getDataInsertStatement(resultSet(rows), name, System.nanoTime(), data);
+                sql.append(data);
+            }
+        }
+        sql.append(service.getFooter());
+        return sql.toString();
+    }
+
+    /**
+     * This will generate a dependency graph of tables in which
+     * every table references up to maxReferences tables. The
+     * tables are listed in random order, so the ordering needs
+     * several passes like on a real schema
+     *
+     * @param tableCount    the number of tables
+     * @param maxReferences the maximum number of references of a table
+     * @return the tables with their comma separated references
+     */
+    static Map<String, String> dependencyGraph(int tableCount, int maxReferences) {
+        Random random = new Random(42);
+        int[] order = new int[tableCount];
+        for (int i = 0; i < tableCount; i++) {
+            order[i] = i;
+        }
+        for (int i = tableCount - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+
+        Map<String, String> references = new LinkedHashMap<>();
+        for (int table : order) {
+            //only lower numbered tables are referenced so the graph has no cycles
+            int referenceCount = table == 0 ? 0 : random.nextInt(maxReferences + 1);
+            StringBuilder refs = new StringBuilder();
+            for (int i = 0; i < referenceCount; i++) {
+                if (refs.length() > 0) {
+                    refs.append(",");
+                }
+                refs.append("table_").append(random.nextInt(table));
+            }
+            references.put("table_" + table, refs.length() == 0 ? null : refs.toString());
+        }
+        return references;
+    }
+}
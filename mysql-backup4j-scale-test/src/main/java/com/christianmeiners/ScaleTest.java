@@ -0,0 +1,263 @@
+package com.christianmeiners;
+
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * This is the end to end performance suite. It generates a
+ * synthetic schema, exports it with {@link MysqlExportService},
+ * imports the dump into a second database with {@link MysqlImportService}
+ * and checks that both databases hold the same data.
+ *
+ * The report covers rows/s, MB/s and the peak heap of both
+ * directions. The run fails when the data differs or the throughput
+ * is more than scale.tolerance below the baseline that has been
+ * recorded with -Dscale.recordBaseline=true for the same schema size.
+ *
+ * It's configured by the scale.* system properties, see the pom.
+ */
+public class ScaleTest {
+
+    private static Logger logger = LoggerFactory.getLogger(ScaleTest.class);
+
+    private static final String SOURCE_DATABASE = "scale_source";
+    private static final String TARGET_DATABASE = "scale_target";
+    private static final String URL_PARAMETERS = "?useSSL=false&serverTimezone=UTC&characterEncoding=UTF-8&useUnicode=true";
+    private static final String[] SCHEMA_KEYS = {"scale.tables", "scale.rows", "scale.rowWidth", "scale.blobRatio", "scale.fkDepth"};
+    private static final String[] GATED_KEYS = {"export.rowsPerSecond", "export.megabytesPerSecond",
+            "import.rowsPerSecond", "import.megabytesPerSecond"};
+
+    public static void main(String[] args) throws Exception {
+        File workDir = new File(System.getProperty("scale.workDir", "target/scale-test"));
+        workDir.mkdirs();
+
+        String server = System.getProperty("scale.jdbcUrl", "");
+        DB db = null;
+        if (server.isEmpty()) {
+            DBConfigurationBuilder config = DBConfigurationBuilder.newBuilder();
+            config.setPort(0);
+            config.setBaseDir(new File(workDir, "mariadb-base").getAbsolutePath());
+            config.setDataDir(new File(workDir, "mariadb-data").getAbsolutePath());
+            config.addArg("--user=root");
+            config.addArg("--max_allowed_packet=256M");
+            db = DB.newEmbeddedDB(config.build());
+            db.start();
+            server = "jdbc:mysql://localhost:" + config.getPort();
+        }
+
+        try {
+            Properties report = run(server, workDir);
+            write(report, new File(workDir, "report.properties"));
+            gate(report);
+        } finally {
+            MysqlConnectionPool.closeSharedPools();
+            if (db != null) {
+                db.stop();
+            }
+        }
+    }
+
+    private static Properties run(String server, File workDir) throws Exception {
+        String username = System.getProperty("scale.username", "root");
+        String password = System.getProperty("scale.password", "");
+
+        Properties report = new Properties();
+        for (String key : SCHEMA_KEYS) {
+            report.setProperty(key, System.getProperty(key));
+        }
+
+        try (MysqlConnectionPool admin = new MysqlConnectionPool(server + "/" + URL_PARAMETERS, username, password, 1);
+             Connection connection = admin.getConnection();
+             Statement stmt = connection.createStatement()) {
+            for (String database : new String[]{SOURCE_DATABASE, TARGET_DATABASE}) {
+                stmt.execute("DROP DATABASE IF EXISTS `" + database + "`");
+                stmt.execute("CREATE DATABASE `" + database + "` CHARACTER SET utf8mb4");
+            }
+        }
+
+        try (MysqlConnectionPool source = new MysqlConnectionPool(server + "/" + SOURCE_DATABASE + URL_PARAMETERS + "&rewriteBatchedStatements=true", username, password, 2);
+             MysqlConnectionPool target = new MysqlConnectionPool(server + "/" + TARGET_DATABASE + URL_PARAMETERS, username, password, 2)) {
+
+            //generate the schema
+            List<String> tables;
+            long start = System.nanoTime();
+            try (Connection connection = source.getConnection()) {
+                tables = new SchemaGenerator(Integer.getInteger("scale.tables"), Integer.getInteger("scale.rows"),
+                        Integer.getInteger("scale.rowWidth"), Double.parseDouble(System.getProperty("scale.blobRatio")),
+                        Integer.getInteger("scale.fkDepth")).generate(connection);
+            }
+            logger.info("generated " + tables.size() + " tables in " + millisSince(start) + "ms");
+
+            //export
+            Properties properties = new Properties();
+            properties.setProperty(MysqlExportService.TEMP_DIR, new File(workDir, "export").getAbsolutePath());
+            MysqlExportService exportService = new MysqlExportService(properties).setDataSource(source);
+            resetPeakHeap();
+            start = System.nanoTime();
+            exportService.export();
+            long exportMillis = millisSince(start);
+            long rows = exportService.getMetrics().getRows();
+            report(report, "export", rows, exportService.getMetrics().getRawBytes(), exportMillis, peakHeap());
+            report.setProperty("export.compressedBytes", String.valueOf(exportService.getMetrics().getCompressedBytes()));
+
+            //import
+            String sql = exportService.getGeneratedSql();
+            resetPeakHeap();
+            start = System.nanoTime();
+            boolean imported = MysqlImportService.builder()
+                    .setDataSource(target)
+                    .setSqlString(sql)
+                    .importDatabase();
+            long importMillis = millisSince(start);
+            report(report, "import", rows, sql.length(), importMillis, peakHeap());
+
+            //fidelity
+            List<String> mismatches = new ArrayList<>();
+            if (!imported) {
+                mismatches.add("import failed");
+            }
+            try (Connection connection = source.getConnection();
+                 Statement stmt = connection.createStatement()) {
+                for (String table : tables) {
+                    String sourceState = tableState(stmt, SOURCE_DATABASE, table);
+                    String targetState = tableState(stmt, TARGET_DATABASE, table);
+                    if (!sourceState.equals(targetState)) {
+                        mismatches.add(table + " (source " + sourceState + ", target " + targetState + ")");
+                    }
+                }
+            }
+            report.setProperty("fidelity.tables", String.valueOf(tables.size()));
+            report.setProperty("fidelity.mismatches", mismatches.toString());
+        }
+
+        return report;
+    }
+
+    /**
+     * This will return the row count and the
+     * checksum of the table in the database
+     */
+    private static String tableState(Statement stmt, String database, String table) throws SQLException {
+        String state;
+        try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM `" + database + "`.`" + table + "`")) {
+            rs.next();
+            state = rs.getLong(1) + " rows";
+        }
+        try (ResultSet rs = stmt.executeQuery("CHECKSUM TABLE `" + database + "`.`" + table + "`")) {
+            rs.next();
+            state += ", checksum " + rs.getString(2);
+        }
+        return state;
+    }
+
+    private static void report(Properties report, String direction, long rows, long bytes, long millis, long peakHeap) {
+        double seconds = Math.max(1, millis) / 1000d;
+        report.setProperty(direction + ".millis", String.valueOf(millis));
+        report.setProperty(direction + ".rows", String.valueOf(rows));
+        report.setProperty(direction + ".bytes", String.valueOf(bytes));
+        report.setProperty(direction + ".rowsPerSecond", String.format(java.util.Locale.ROOT, "%.0f", rows / seconds));
+        report.setProperty(direction + ".megabytesPerSecond", String.format(java.util.Locale.ROOT, "%.2f", bytes / seconds / 1024 / 1024));
+        report.setProperty(direction + ".peakHeapMegabytes", String.valueOf(peakHeap / 1024 / 1024));
+        logger.info(direction + ": " + rows + " rows in " + millis + "ms, "
+                + report.getProperty(direction + ".rowsPerSecond") + " rows/s, "
+                + report.getProperty(direction + ".megabytesPerSecond") + " MB/s, peak heap "
+                + report.getProperty(direction + ".peakHeapMegabytes") + " MB");
+    }
+
+    /**
+     * This will fail the run if the data differs or the
+     * throughput is below the baseline. With scale.recordBaseline
+     * the report is stored as the new baseline instead
+     */
+    private static void gate(Properties report) throws IOException {
+        if (!"[]".equals(report.getProperty("fidelity.mismatches"))) {
+            throw new IllegalStateException("The imported data differs from the exported data: " + report.getProperty("fidelity.mismatches"));
+        }
+
+        File baselineFile = new File(System.getProperty("scale.baseline", "baseline.properties"));
+        if (Boolean.getBoolean("scale.recordBaseline")) {
+            write(report, baselineFile);
+            logger.info("recorded baseline " + baselineFile.getAbsolutePath());
+            return;
+        }
+        if (!baselineFile.exists()) {
+            logger.warn("no baseline at " + baselineFile.getAbsolutePath() + ", run with -Dscale.recordBaseline=true to record one");
+            return;
+        }
+
+        Properties baseline = new Properties();
+        try (InputStream in = new FileInputStream(baselineFile)) {
+            baseline.load(in);
+        }
+        for (String key : SCHEMA_KEYS) {
+            if (!report.getProperty(key).equals(baseline.getProperty(key))) {
+                logger.warn("the baseline has been recorded for a different schema (" + key + "=" + baseline.getProperty(key) + "), skipping the throughput gate");
+                return;
+            }
+        }
+
+        double tolerance = Double.parseDouble(System.getProperty("scale.tolerance", "0.25"));
+        Map<String, String> regressions = new LinkedHashMap<>();
+        for (String key : GATED_KEYS) {
+            double expected = Double.parseDouble(baseline.getProperty(key, "0"));
+            double actual = Double.parseDouble(report.getProperty(key));
+            if (actual < expected * (1 - tolerance)) {
+                regressions.put(key, actual + " < " + expected);
+            }
+        }
+        if (!regressions.isEmpty()) {
+            throw new IllegalStateException("Throughput dropped below the baseline: " + regressions);
+        }
+        logger.info("throughput is within " + Math.round(tolerance * 100) + "% of the baseline");
+    }
+
+    private static void resetPeakHeap() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private static void write(Properties report, File file) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            report.store(out, "mysql-backup4j scale test");
+        }
+    }
+}
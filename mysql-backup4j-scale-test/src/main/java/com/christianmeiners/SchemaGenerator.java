@@ -0,0 +1,126 @@
+package com.christianmeiners;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This generates a synthetic schema for the scale test.
+ *
+ * The tables form foreign key chains of fkDepth tables, i.e. every
+ * table references the previous one unless it starts a new chain.
+ * The generated text only uses letters, digits and spaces and the
+ * BLOBs are filled with the same characters.
+ */
+class SchemaGenerator {
+
+    private static final int INSERT_BATCH_SIZE = 1000;
+    private static final String CHARACTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 ";
+
+    private final int tables;
+    private final int rows;
+    private final int rowWidth;
+    private final double blobRatio;
+    private final int fkDepth;
+    private final Random random = new Random(42);
+
+    /**
+     * @param tables    the number of tables
+     * @param rows      the number of rows of every table
+     * @param rowWidth  the length of the payload column
+     * @param blobRatio the share of rows with a BLOB, between 0 and 1
+     * @param fkDepth   the length of the foreign key chains. 0 creates no foreign keys
+     */
+    SchemaGenerator(int tables, int rows, int rowWidth, double blobRatio, int fkDepth) {
+        this.tables = tables;
+        this.rows = rows;
+        this.rowWidth = rowWidth;
+        this.blobRatio = blobRatio;
+        this.fkDepth = fkDepth;
+    }
+
+    /**
+     * This will create and fill the tables in
+     * the current database of the connection
+     *
+     * @param connection the connection to use
+     * @return the names of the generated tables
+     * @throws SQLException exception
+     */
+    List<String> generate(Connection connection) throws SQLException {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < tables; i++) {
+            String name = "scale_" + i;
+            String parent = hasParent(i) ? "scale_" + (i - 1) : null;
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("CREATE TABLE `" + name + "` (\n" +
+                        "  `id` int NOT NULL,\n" +
+                        "  `parent_id` int DEFAULT NULL,\n" +
+                        "  `name` varchar(64) NOT NULL,\n" +
+                        "  `amount` decimal(12,2) NOT NULL,\n" +
+                        "  `created_at` datetime NOT NULL,\n" +
+                        "  `payload` varchar(" + Math.max(1, rowWidth) + ") NOT NULL,\n" +
+                        "  `data` blob,\n" +
+                        "  PRIMARY KEY (`id`)" +
+                        (parent == null ? "" : ",\n  CONSTRAINT `fk_" + name + "` FOREIGN KEY (`parent_id`) REFERENCES `" + parent + "` (`id`)") +
+                        "\n) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4");
+            }
+            fill(connection, name, parent != null);
+            names.add(name);
+        }
+        return names;
+    }
+
+    private boolean hasParent(int table) {
+        return fkDepth > 0 && table % fkDepth != 0;
+    }
+
+    private void fill(Connection connection, String table, boolean hasParent) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO `" + table +
+                "` (`id`, `parent_id`, `name`, `amount`, `created_at`, `payload`, `data`) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            for (int id = 1; id <= rows; id++) {
+                stmt.setInt(1, id);
+                if (hasParent) {
+                    stmt.setInt(2, 1 + random.nextInt(rows));
+                } else {
+                    stmt.setNull(2, Types.INTEGER);
+                }
+                stmt.setString(3, text(8 + random.nextInt(56)));
+                stmt.setBigDecimal(4, BigDecimal.valueOf(random.nextInt(100000000), 2));
+                stmt.setTimestamp(5, new Timestamp((1500000000L + random.nextInt(100000000)) * 1000L));
+                stmt.setString(6, text(Math.max(1, rowWidth / 2 + random.nextInt(rowWidth / 2 + 1))));
+                if (random.nextDouble() < blobRatio) {
+                    stmt.setBytes(7, text(256 + random.nextInt(4096)).getBytes(StandardCharsets.UTF_8));
+                } else {
+                    stmt.setNull(7, Types.BLOB);
+                }
+                stmt.addBatch();
+                if (id % INSERT_BATCH_SIZE == 0) {
+                    stmt.executeBatch();
+                }
+            }
+            stmt.executeBatch();
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private String text(int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,139 @@
+package com.christianmeiners;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory for the executors used by the async API
+ * and the internal parallel work. Virtual threads are used
+ * where the runtime provides them (Java 21+), so that many
+ * concurrent small backups do not each need a platform thread.
+ * Otherwise a cached pool of daemon threads is used.
+ */
+final class BackupExecutors {
+
+    private static Logger logger = LoggerFactory.getLogger(BackupExecutors.class);
+
+    private static volatile ExecutorService defaultExecutor;
+
+    private BackupExecutors() {}
+
+    /**
+     * This will create a new executor that starts a
+     * virtual thread per task if available, or else
+     * uses a cached pool of daemon threads
+     *
+     * @param name the prefix of the thread names for the fallback pool
+     * @return ExecutorService
+     */
+    static ExecutorService newExecutor(String name) {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.debug("virtual threads are not available, falling back to platform threads");
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * This will create an executor that runs at most
+     * the given number of tasks at the same time, on
+     * virtual threads if available
+     *
+     * @param name        the prefix of the thread names
+     * @param parallelism the maximum number of concurrent tasks
+     * @return ExecutorService
+     */
+    static ExecutorService newFixedExecutor(String name, int parallelism) {
+        return Executors.newFixedThreadPool(parallelism, threadFactory(name));
+    }
+
+    /**
+     * This will return a factory for virtual threads if
+     * available, or else for daemon platform threads
+     *
+     * @param name the prefix of the thread names
+     * @return ThreadFactory
+     */
+    private static ThreadFactory threadFactory(String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            logger.debug("virtual threads are not available, falling back to platform threads");
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * This is the executor used by exportAsync() and importAsync()
+     * when none is given. It's created on first use and shared.
+     *
+     * @return ExecutorService
+     */
+    static ExecutorService defaultExecutor() {
+        if (defaultExecutor == null) {
+            synchronized (BackupExecutors.class) {
+                if (defaultExecutor == null) {
+                    defaultExecutor = newExecutor("mysql-backup4j");
+                }
+            }
+        }
+        return defaultExecutor;
+    }
+
+    /**
+     * This will run the task on the executor and return a future
+     * for it. Cancelling the future runs onCancel, which is expected
+     * to make the task stop cooperatively.
+     *
+     * @param executor the executor to run the task on
+     * @param task     the task
+     * @param onCancel called when the future is cancelled
+     * @param <T>      the result type
+     * @return CompletableFuture
+     */
+    static <T> CompletableFuture<T> submit(Executor executor, Callable<T> task, Runnable onCancel) {
+        CompletableFuture<T> future = new CompletableFuture<T>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                if (cancelled) {
+                    onCancel.run();
+                }
+                return cancelled;
+            }
+        };
+
+        executor.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(task.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+}
@@ -0,0 +1,254 @@
+package com.christianmeiners;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and stage timers of a single export or import run.
+ *
+ * The counters are striped (LongAdder) and the services
+ * update them once per batch, so they are cheap enough
+ * to be left on in production.
+ */
+public class BackupMetrics implements BackupMetricsMBean {
+
+    private static Logger logger = LoggerFactory.getLogger(BackupMetrics.class);
+
+    private final long startNanos = System.nanoTime();
+    private volatile long endNanos = -1;
+    private volatile long tablesTotal;
+    private final LongAdder tablesDone = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder rejectedStatements = new LongAdder();
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder[] stageNanos = new LongAdder[BackupStage.values().length];
+    private ObjectName objectName;
+
+    public BackupMetrics() {
+        for (int i = 0; i < stageNanos.length; i++) {
+            stageNanos[i] = new LongAdder();
+        }
+    }
+
+    void setTablesTotal(long tablesTotal) {
+        this.tablesTotal = tablesTotal;
+    }
+
+    void addTablesDone(long count) {
+        tablesDone.add(count);
+    }
+
+    void addRows(long count) {
+        rows.add(count);
+    }
+
+    void addStatements(long count) {
+        statements.add(count);
+    }
+
+    void addRejectedStatements(long count) {
+        rejectedStatements.add(count);
+    }
+
+    void addRawBytes(long bytes) {
+        rawBytes.add(bytes);
+    }
+
+    void addCompressedBytes(long bytes) {
+        compressedBytes.add(bytes);
+    }
+
+    void addStageNanos(BackupStage stage, long nanos) {
+        stageNanos[stage.ordinal()].add(nanos);
+    }
+
+    /**
+     * This will stop the clock used
+     * for the per second rates
+     */
+    void finish() {
+        endNanos = System.nanoTime();
+    }
+
+    /**
+     * This will register this object with the
+     * platform MBean server under
+     * com.christianmeiners:type=[type],name=[name]
+     *
+     * @param type the service type e.g. MysqlExportService
+     * @param name the database name
+     */
+    void register(String type, String name) {
+        try {
+            ObjectName on = new ObjectName("com.christianmeiners:type=" + type + ",name=" + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(on)) {
+                logger.warn("MBean " + on + " is already registered. Metrics of this run will not be published");
+                return;
+            }
+            server.registerMBean(this, on);
+            objectName = on;
+        } catch (Exception e) {
+            logger.warn("Unable to register metrics MBean: " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * This will remove this object from the
+     * platform MBean server if it has been registered
+     */
+    void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (Exception e) {
+            logger.warn("Unable to unregister metrics MBean: " + e.getLocalizedMessage());
+        }
+        objectName = null;
+    }
+
+    public long getStageMillis(BackupStage stage) {
+        return TimeUnit.NANOSECONDS.toMillis(stageNanos[stage.ordinal()].sum());
+    }
+
+    private double perSecond(long value) {
+        long elapsed = getElapsedMillis();
+        return elapsed <= 0 ? 0 : value * 1000d / elapsed;
+    }
+
+    @Override
+    public long getTablesTotal() {
+        return tablesTotal;
+    }
+
+    @Override
+    public long getTablesDone() {
+        return tablesDone.sum();
+    }
+
+    @Override
+    public long getTablesRemaining() {
+        return Math.max(0, tablesTotal - tablesDone.sum());
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public long getStatements() {
+        return statements.sum();
+    }
+
+    @Override
+    public long getRejectedStatements() {
+        return rejectedStatements.sum();
+    }
+
+    @Override
+    public double getRowsPerSecond() {
+        return perSecond(rows.sum());
+    }
+
+    @Override
+    public long getRawBytes() {
+        return rawBytes.sum();
+    }
+
+    @Override
+    public double getRawBytesPerSecond() {
+        return perSecond(rawBytes.sum());
+    }
+
+    @Override
+    public long getCompressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    @Override
+    public double getCompressedBytesPerSecond() {
+        return perSecond(compressedBytes.sum());
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        long end = endNanos < 0 ? System.nanoTime() : endNanos;
+        return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+    }
+
+    @Override
+    public long getMetadataMillis() {
+        return getStageMillis(BackupStage.METADATA);
+    }
+
+    @Override
+    public long getShowCreateMillis() {
+        return getStageMillis(BackupStage.SHOW_CREATE);
+    }
+
+    @Override
+    public long getRowFetchMillis() {
+        return getStageMillis(BackupStage.ROW_FETCH);
+    }
+
+    @Override
+    public long getEncodingMillis() {
+        return getStageMillis(BackupStage.ENCODING);
+    }
+
+    @Override
+    public long getCompressionMillis() {
+        return getStageMillis(BackupStage.COMPRESSION);
+    }
+
+    /**
+     * @return the time the encryption threads have spent, which
+     * can be longer than the export as they run in parallel
+     */
+    @Override
+    public long getEncryptionMillis() {
+        return getStageMillis(BackupStage.ENCRYPTION);
+    }
+
+    @Override
+    public long getEmailMillis() {
+        return getStageMillis(BackupStage.EMAIL);
+    }
+
+    @Override
+    public long getUploadMillis() {
+        return getStageMillis(BackupStage.UPLOAD);
+    }
+
+    @Override
+    public long getParseMillis() {
+        return getStageMillis(BackupStage.PARSE);
+    }
+
+    @Override
+    public long getExecuteMillis() {
+        return getStageMillis(BackupStage.EXECUTE);
+    }
+
+    @Override
+    public String toString() {
+        return "tables " + getTablesDone() + "/" + getTablesTotal() +
+                ", rows " + getRows() + " (" + Math.round(getRowsPerSecond()) + "/s)" +
+                ", statements " + getStatements() +
+                (getRejectedStatements() > 0 ? ", rejected " + getRejectedStatements() : "") +
+                ", raw bytes " + getRawBytes() + " (" + Math.round(getRawBytesPerSecond()) + "/s)" +
+                ", compressed bytes " + getCompressedBytes() +
+                ", elapsed " + getElapsedMillis() + "ms";
+    }
+}
@@ -0,0 +1,52 @@
+package com.christianmeiners;
+
+/**
+ * JMX view of a running export or import.
+ * See {@link BackupMetrics}
+ */
+public interface BackupMetricsMBean {
+
+    long getTablesTotal();
+
+    long getTablesDone();
+
+    long getTablesRemaining();
+
+    long getRows();
+
+    long getStatements();
+
+    long getRejectedStatements();
+
+    double getRowsPerSecond();
+
+    long getRawBytes();
+
+    double getRawBytesPerSecond();
+
+    long getCompressedBytes();
+
+    double getCompressedBytesPerSecond();
+
+    long getElapsedMillis();
+
+    long getMetadataMillis();
+
+    long getShowCreateMillis();
+
+    long getRowFetchMillis();
+
+    long getEncodingMillis();
+
+    long getCompressionMillis();
+
+    long getEncryptionMillis();
+
+    long getEmailMillis();
+
+    long getUploadMillis();
+
+    long getParseMillis();
+
+    long getExecuteMillis();
+}
@@ -0,0 +1,142 @@
+package com.christianmeiners;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The estimates and the tuning of an export,
+ * see {@link MysqlExportService#plan()}
+ */
+public class BackupPlan {
+
+    private final String database;
+    private final Map<String, Long> tableBytes;
+    private final long estimatedRows;
+    private final long sourceBytes;
+    private final long estimatedDumpBytes;
+    private final long estimatedCompressedBytes;
+    private final long estimatedHeapBytes;
+    private final long estimatedMillis;
+    private final long targetWindowSeconds;
+    private final int workers;
+    private final int fetchSize;
+    private final boolean fromHistory;
+
+    BackupPlan(String database, Map<String, Long> tableBytes, long estimatedRows, long sourceBytes,
+               long estimatedDumpBytes, long estimatedCompressedBytes, long estimatedHeapBytes,
+               long estimatedMillis, long targetWindowSeconds, int workers, int fetchSize, boolean fromHistory) {
+        this.database = database;
+        this.tableBytes = Collections.unmodifiableMap(tableBytes);
+        this.estimatedRows = estimatedRows;
+        this.sourceBytes = sourceBytes;
+        this.estimatedDumpBytes = estimatedDumpBytes;
+        this.estimatedCompressedBytes = estimatedCompressedBytes;
+        this.estimatedHeapBytes = estimatedHeapBytes;
+        this.estimatedMillis = estimatedMillis;
+        this.targetWindowSeconds = targetWindowSeconds;
+        this.workers = workers;
+        this.fetchSize = fetchSize;
+        this.fromHistory = fromHistory;
+    }
+
+    public String getDatabase() {
+        return database;
+    }
+
+    /**
+     * @return the estimated dump size of every table, largest first
+     */
+    public Map<String, Long> getTableBytes() {
+        return tableBytes;
+    }
+
+    public long getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    /**
+     * @return the DATA_LENGTH of all the tables on the server
+     */
+    public long getSourceBytes() {
+        return sourceBytes;
+    }
+
+    public long getEstimatedDumpBytes() {
+        return estimatedDumpBytes;
+    }
+
+    /**
+     * @return the estimated size of the zip file or 0 if the export is not zipped
+     */
+    public long getEstimatedCompressedBytes() {
+        return estimatedCompressedBytes;
+    }
+
+    /**
+     * @return the estimated temp dir usage: the sql file and the zip file
+     */
+    public long getEstimatedDiskBytes() {
+        return estimatedDumpBytes + estimatedCompressedBytes;
+    }
+
+    public long getEstimatedHeapBytes() {
+        return estimatedHeapBytes;
+    }
+
+    public long getEstimatedMillis() {
+        return estimatedMillis;
+    }
+
+    public long getTargetWindowSeconds() {
+        return targetWindowSeconds;
+    }
+
+    /**
+     * @return whether the estimated duration fits the target window.
+     * Always true without a target window
+     */
+    public boolean fitsWindow() {
+        return targetWindowSeconds <= 0 || estimatedMillis <= targetWindowSeconds * 1000;
+    }
+
+    /**
+     * @return whether the estimated heap fits the maximum heap of this JVM
+     */
+    public boolean fitsHeap() {
+        return estimatedHeapBytes <= Runtime.getRuntime().maxMemory();
+    }
+
+    /**
+     * @return the number of tables that are exported concurrently
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * @return the fetch size of the row queries
+     */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /**
+     * @return whether the throughput is based on previous runs
+     * instead of the defaults
+     */
+    public boolean isFromHistory() {
+        return fromHistory;
+    }
+
+    @Override
+    public String toString() {
+        return "plan of " + database + ": " + tableBytes.size() + " tables, ~" + estimatedRows + " rows" +
+                ", dump ~" + estimatedDumpBytes + " bytes" +
+                (estimatedCompressedBytes > 0 ? ", zip ~" + estimatedCompressedBytes + " bytes" : "") +
+                ", heap ~" + estimatedHeapBytes + " bytes" + (fitsHeap() ? "" : " (exceeds the max heap)") +
+                ", duration ~" + estimatedMillis + "ms" +
+                (targetWindowSeconds > 0 ? (fitsWindow() ? " (fits " : " (exceeds ") + targetWindowSeconds + "s window)" : "") +
+                ", " + workers + " workers, fetch size " + fetchSize +
+                (fromHistory ? "" : ", no history");
+    }
+}
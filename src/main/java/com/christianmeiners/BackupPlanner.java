@@ -0,0 +1,167 @@
+package com.christianmeiners;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/**
+ * This estimates an export from the table statistics of the
+ * server and the throughput of previous runs, and picks the
+ * number of workers and the fetch size.
+ *
+ * The history is a properties file that's updated after every
+ * completed export with a moving average of the observed
+ * throughput, the size of the dump relative to DATA_LENGTH and
+ * the compression ratio.
+ */
+class BackupPlanner {
+
+    private static Logger logger = LoggerFactory.getLogger(BackupPlanner.class);
+
+    static final String BYTES_PER_SECOND_PER_WORKER = "bytesPerSecondPerWorker";
+    static final String DUMP_EXPANSION = "dumpExpansion";
+    static final String COMPRESSION_RATIO = "compressionRatio";
+    static final String RUNS = "runs";
+
+    private static final double DEFAULT_BYTES_PER_SECOND_PER_WORKER = 10 * 1024 * 1024;
+    private static final double DEFAULT_DUMP_EXPANSION = 1.0;
+    private static final double DEFAULT_COMPRESSION_RATIO = 0.3;
+    private static final double HISTORY_WEIGHT = 0.3;
+
+    //the dump and its copies are held in memory while it's written
+    private static final int HEAP_COPIES = 3;
+    private static final long FETCH_BUFFER_BYTES = 8 * 1024 * 1024;
+    private static final int MIN_FETCH_SIZE = 100;
+    private static final int MAX_FETCH_SIZE = 50000;
+
+    private final File historyFile;
+    private final Properties history = new Properties();
+
+    /**
+     * @param historyFile the history of previous runs. Can be null
+     */
+    BackupPlanner(File historyFile) {
+        this.historyFile = historyFile;
+        if (historyFile != null && historyFile.exists()) {
+            try (InputStream in = new FileInputStream(historyFile)) {
+                history.load(in);
+            } catch (IOException e) {
+                logger.warn("Unable to read the backup history " + historyFile + ": " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * This will estimate the export of the database
+     *
+     * @param stmt                the statement to use
+     * @param database            the database
+     * @param zip                 whether the dump is zipped
+     * @param targetWindowSeconds the time the export should fit in. 0 for no target
+     * @param maxWorkers          the maximum number of workers. The plan uses the least
+     *                            number of workers that fits the target window
+     * @return BackupPlan
+     * @throws SQLException exception
+     */
+    BackupPlan plan(Statement stmt, String database, boolean zip, long targetWindowSeconds, int maxWorkers) throws SQLException {
+        double bytesPerSecond = getHistory(BYTES_PER_SECOND_PER_WORKER, DEFAULT_BYTES_PER_SECOND_PER_WORKER);
+        double expansion = getHistory(DUMP_EXPANSION, DEFAULT_DUMP_EXPANSION);
+        double compressionRatio = getHistory(COMPRESSION_RATIO, DEFAULT_COMPRESSION_RATIO);
+
+        List<Map.Entry<String, Long>> tables = new ArrayList<>();
+        long rows = 0;
+        long sourceBytes = 0;
+        long widestRow = 1;
+        try (ResultSet rs = stmt.executeQuery("SELECT TABLE_NAME, TABLE_ROWS, DATA_LENGTH, AVG_ROW_LENGTH " +
+                "FROM information_schema.TABLES WHERE TABLE_SCHEMA = '" + database + "' AND TABLE_TYPE = 'BASE TABLE';")) {
+            while (rs.next()) {
+                long dataLength = rs.getLong("DATA_LENGTH");
+                rows += rs.getLong("TABLE_ROWS");
+                sourceBytes += dataLength;
+                widestRow = Math.max(widestRow, rs.getLong("AVG_ROW_LENGTH"));
+                tables.add(new AbstractMap.SimpleImmutableEntry<>(rs.getString("TABLE_NAME"), (long) (dataLength * expansion)));
+            }
+        }
+        tables.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        Map<String, Long> tableBytes = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> table : tables) {
+            tableBytes.put(table.getKey(), table.getValue());
+        }
+
+        long dumpBytes = (long) (sourceBytes * expansion);
+        long largestTable = tables.isEmpty() ? 0 : tables.get(0).getValue();
+        maxWorkers = Math.max(1, Math.min(maxWorkers, tables.size()));
+
+        //the least number of workers that fits the window
+        int workers = 1;
+        long millis = estimateMillis(dumpBytes, largestTable, 1, bytesPerSecond);
+        while (targetWindowSeconds > 0 && millis > targetWindowSeconds * 1000 && workers < maxWorkers) {
+            workers++;
+            millis = estimateMillis(dumpBytes, largestTable, workers, bytesPerSecond);
+        }
+
+        int fetchSize = (int) Math.max(MIN_FETCH_SIZE, Math.min(MAX_FETCH_SIZE, FETCH_BUFFER_BYTES / widestRow));
+
+        return new BackupPlan(database, tableBytes, rows, sourceBytes, dumpBytes,
+                zip ? (long) (dumpBytes * compressionRatio) : 0, dumpBytes * HEAP_COPIES,
+                millis, targetWindowSeconds, workers, fetchSize, history.containsKey(RUNS));
+    }
+
+    /**
+     * The tables are exported concurrently, so an export
+     * takes at least as long as its largest table
+     */
+    private long estimateMillis(long dumpBytes, long largestTable, int workers, double bytesPerSecond) {
+        double seconds = Math.max(largestTable, (double) dumpBytes / workers) / bytesPerSecond;
+        return (long) (seconds * 1000);
+    }
+
+    private double getHistory(String key, double defaultValue) {
+        String value = history.getProperty(key);
+        return value == null ? defaultValue : Double.parseDouble(value);
+    }
+
+    /**
+     * This will add the metrics of a completed export to the history
+     *
+     * @param plan    the plan of the export
+     * @param metrics the metrics of the export
+     * @param workers the number of workers the export ran with
+     */
+    void record(BackupPlan plan, BackupMetrics metrics, int workers) {
+        if (historyFile == null || metrics.getElapsedMillis() <= 0 || metrics.getRawBytes() <= 0) {
+            return;
+        }
+
+        update(BYTES_PER_SECOND_PER_WORKER, metrics.getRawBytesPerSecond() / workers);
+        if (plan.getSourceBytes() > 0) {
+            update(DUMP_EXPANSION, (double) metrics.getRawBytes() / plan.getSourceBytes());
+        }
+        if (metrics.getCompressedBytes() > 0) {
+            update(COMPRESSION_RATIO, (double) metrics.getCompressedBytes() / metrics.getRawBytes());
+        }
+        history.setProperty(RUNS, String.valueOf(Long.parseLong(history.getProperty(RUNS, "0")) + 1));
+
+        try (OutputStream out = new FileOutputStream(historyFile)) {
+            history.store(out, "mysql-backup4j export history");
+        } catch (IOException e) {
+            logger.warn("Unable to write the backup history " + historyFile + ": " + e.getLocalizedMessage());
+        }
+    }
+
+    private void update(String key, double value) {
+        String previous = history.getProperty(key);
+        double average = previous == null ? value : HISTORY_WEIGHT * value + (1 - HISTORY_WEIGHT) * Double.parseDouble(previous);
+        history.setProperty(key, String.valueOf(average));
+    }
+}
@@ -0,0 +1,388 @@
+package com.christianmeiners;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A repository of deduplicated backups, for keeping many
+ * dumps of a database that are mostly the same.
+ *
+ * A dump is cut into chunks where its content says so, with a
+ * rolling gear hash over the last bytes, so an insert or a changed row
+ * only changes the chunks around it and the boundaries of the rest stay
+ * where they were. The chunks are stored compressed under their SHA-256,
+ * and only once, so a new dump only adds the chunks that have changed.
+ * A backup is the list of its chunks:
+ * <pre>
+ * repository/chunks/3f/3fa2...   compressed chunk
+ * repository/backups/name        one line per chunk: sha-256  length
+ * </pre>
+ * The files are written to a temp file and renamed, so a failed
+ * store leaves no partial chunk or backup behind. {@link #prune()} must
+ * not run while a backup is stored, as it deletes the chunks that
+ * no backup refers to yet.
+ */
+public class BackupRepository {
+
+    private static Logger logger = LoggerFactory.getLogger(BackupRepository.class);
+
+    static final int MIN_CHUNK_BYTES = 2 * 1024;
+    static final int MAX_CHUNK_BYTES = 64 * 1024;
+    //13 bits of the hash give chunks of 8 KB past the minimum on average
+    private static final long BOUNDARY_MASK = 0x1fffL << 51;
+    private static final long[] GEAR = new long[256];
+
+    static {
+        //the table is fixed, so the boundaries are the same for every run
+        Random random = new Random(0x6d7973716cL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final File chunkDir;
+    private final File backupDir;
+
+    /**
+     * @param dir the directory of the repository. It's created on the first store
+     */
+    public BackupRepository(File dir) {
+        this.chunkDir = new File(dir, "chunks");
+        this.backupDir = new File(dir, "backups");
+    }
+
+    /**
+     * This will open a stream that stores what's written to
+     * it as a backup. The backup is recorded once the stream
+     * has been closed
+     *
+     * @param name the name of the backup. An existing backup of the name is replaced
+     * @return BackupWriter
+     * @throws IOException exception
+     */
+    public BackupWriter openBackup(String name) throws IOException {
+        if (name.isEmpty() || name.contains("/") || name.contains(File.separator) || name.startsWith(".")) {
+            throw new IOException("Invalid backup name: " + name);
+        }
+        if (!backupDir.isDirectory() && !backupDir.mkdirs()) {
+            throw new IOException("Unable to create the repository dir " + backupDir.getAbsolutePath());
+        }
+        return new BackupWriter(name);
+    }
+
+    /**
+     * This will open a stream of a stored backup. Every chunk
+     * is checked against its hash while it's read
+     *
+     * @param name the name of the backup
+     * @return InputStream
+     * @throws IOException if the backup doesn't exist
+     */
+    public InputStream openRestore(String name) throws IOException {
+        return new BackupReader(readBackup(name));
+    }
+
+    /**
+     * This will return a stored backup as a string, e.g.
+     * for {@link MysqlImportService#setSqlString(String)}
+     *
+     * @param name the name of the backup
+     * @return String
+     * @throws IOException exception
+     */
+    public String restore(String name) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = openRestore(name)) {
+            byte[] buffer = new byte[MAX_CHUNK_BYTES];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the names of the stored backups in alphabetical order
+     */
+    public List<String> list() {
+        String[] names = backupDir.list((dir, name) -> !name.startsWith("."));
+        if (names == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(names);
+        return new ArrayList<>(Arrays.asList(names));
+    }
+
+    /**
+     * This will delete a backup. Its chunks are kept
+     * until the next {@link #prune()}
+     *
+     * @param name the name of the backup
+     * @return true if the backup has been deleted
+     */
+    public boolean delete(String name) {
+        return new File(backupDir, name).delete();
+    }
+
+    /**
+     * This will delete the chunks no backup refers to
+     *
+     * @return the number of chunks that have been deleted
+     * @throws IOException exception
+     */
+    public long prune() throws IOException {
+        Set<String> referenced = new HashSet<>();
+        for (String name : list()) {
+            for (String[] chunk : readBackup(name)) {
+                referenced.add(chunk[0]);
+            }
+        }
+
+        long deleted = 0;
+        File[] prefixes = chunkDir.listFiles(File::isDirectory);
+        for (File prefix : prefixes == null ? new File[0] : prefixes) {
+            File[] chunks = prefix.listFiles();
+            for (File chunk : chunks == null ? new File[0] : chunks) {
+                if (!referenced.contains(chunk.getName()) && chunk.delete()) {
+                    deleted++;
+                }
+            }
+        }
+        logger.debug("pruned " + deleted + " chunks from " + chunkDir.getParentFile().getAbsolutePath());
+        return deleted;
+    }
+
+    private List<String[]> readBackup(String name) throws IOException {
+        File file = new File(backupDir, name);
+        if (!file.isFile()) {
+            throw new IOException("There is no backup " + name + " in " + backupDir.getParentFile().getAbsolutePath());
+        }
+        List<String[]> chunks = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                chunks.add(line.split("\t"));
+            }
+        }
+        return chunks;
+    }
+
+    private File getChunkFile(String hash) {
+        return new File(new File(chunkDir, hash.substring(0, 2)), hash);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * This will write a file under its final name
+     * only once it's complete
+     */
+    private static void writeAtomically(File file, byte[] bytes, boolean compress) throws IOException {
+        File temp = new File(file.getParentFile(), "." + file.getName() + ".tmp");
+        try (FileOutputStream fileOut = new FileOutputStream(temp)) {
+            OutputStream out = compress ? new DeflaterOutputStream(fileOut) : fileOut;
+            out.write(bytes);
+            out.flush();
+            if (out instanceof DeflaterOutputStream) {
+                ((DeflaterOutputStream) out).finish();
+            }
+            fileOut.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * The stream a backup is written to. It cuts the
+     * bytes into chunks and stores the new ones
+     */
+    public class BackupWriter extends OutputStream {
+
+        private final String name;
+        private final byte[] chunk = new byte[MAX_CHUNK_BYTES];
+        private final StringBuilder index = new StringBuilder();
+        private int length;
+        private long hash;
+        private long chunks;
+        private long newChunks;
+        private long bytes;
+        private long storedBytes;
+        private boolean closed;
+
+        private BackupWriter(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            chunk[length++] = (byte) b;
+            hash = (hash << 1) + GEAR[b & 0xff];
+            if ((length >= MIN_CHUNK_BYTES && (hash & BOUNDARY_MASK) == 0) || length == MAX_CHUNK_BYTES) {
+                cut();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                write(b[i]);
+            }
+        }
+
+        /**
+         * This will store the current chunk
+         * unless the repository has it already
+         */
+        private void cut() throws IOException {
+            if (length == 0) {
+                return;
+            }
+            MessageDigest digest = newDigest();
+            digest.update(chunk, 0, length);
+            String chunkHash = toHex(digest.digest());
+            File file = getChunkFile(chunkHash);
+            if (!file.exists()) {
+                File prefix = file.getParentFile();
+                if (!prefix.isDirectory() && !prefix.mkdirs()) {
+                    throw new IOException("Unable to create the repository dir " + prefix.getAbsolutePath());
+                }
+                writeAtomically(file, Arrays.copyOf(chunk, length), true);
+                newChunks++;
+                storedBytes += file.length();
+            }
+            index.append(chunkHash).append("\t").append(length).append("\n");
+            chunks++;
+            bytes += length;
+            length = 0;
+            hash = 0;
+        }
+
+        /**
+         * This will store the last chunk and record the backup
+         *
+         * @throws IOException exception
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            cut();
+            writeAtomically(new File(backupDir, name), index.toString().getBytes(StandardCharsets.UTF_8), false);
+            logger.debug("stored backup " + name + ": " + bytes + " bytes in " + chunks + " chunks, " +
+                    newChunks + " new with " + storedBytes + " bytes written");
+        }
+
+        public long getChunks() {
+            return chunks;
+        }
+
+        public long getNewChunks() {
+            return newChunks;
+        }
+
+        /**
+         * @return the compressed bytes of the new chunks
+         */
+        public long getStoredBytes() {
+            return storedBytes;
+        }
+    }
+
+    /**
+     * The stream of a stored backup, read chunk by chunk
+     */
+    private class BackupReader extends InputStream {
+
+        private final List<String[]> chunks;
+        private int next;
+        private byte[] chunk = new byte[0];
+        private int position;
+
+        private BackupReader(List<String[]> chunks) {
+            this.chunks = chunks;
+        }
+
+        private boolean load() throws IOException {
+            while (position == chunk.length) {
+                if (next == chunks.size()) {
+                    return false;
+                }
+                String[] entry = chunks.get(next++);
+                chunk = new byte[Integer.parseInt(entry[1])];
+                position = 0;
+                try (InputStream in = new InflaterInputStream(new FileInputStream(getChunkFile(entry[0])))) {
+                    int offset = 0;
+                    int read;
+                    while (offset < chunk.length && (read = in.read(chunk, offset, chunk.length - offset)) >= 0) {
+                        offset += read;
+                    }
+                    if (offset < chunk.length || in.read() >= 0) {
+                        throw new IOException("The chunk " + entry[0] + " has the wrong length");
+                    }
+                }
+                if (!toHex(newDigest().digest(chunk)).equals(entry[0])) {
+                    throw new IOException("The chunk " + entry[0] + " is corrupted");
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return load() ? chunk[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!load()) {
+                return -1;
+            }
+            int count = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, count);
+            position += count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.christianmeiners;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A destination of the generated dump file, e.g. a directory,
+ * an object store or a remote server. See
+ * {@link MysqlExportService#addBackupSink(BackupSink)}.
+ *
+ * The dump is streamed to all the sinks of an export at the
+ * same time while it's compressed, every sink on a thread of its own,
+ * so a slow sink doesn't hold up the others.
+ */
+public interface BackupSink {
+
+    /**
+     * This will start the upload of a file
+     *
+     * @param fileName the name of the file, e.g. the name of the zip
+     * @return the stream the file is written to
+     * @throws IOException exception
+     */
+    Upload open(String fileName) throws IOException;
+
+    /**
+     * The stream of a file that's uploaded to a sink. Closing it
+     * completes the upload, and the file only becomes visible
+     * in the sink if that succeeds
+     */
+    abstract class Upload extends OutputStream {
+
+        /**
+         * This will discard the upload, e.g. after the
+         * export has failed. It must not throw
+         */
+        public abstract void abort();
+    }
+}
@@ -0,0 +1,18 @@
+package com.christianmeiners;
+
+/**
+ * The stages of an export or import run
+ * that are timed by {@link BackupMetrics}
+ */
+public enum BackupStage {
+    METADATA,
+    SHOW_CREATE,
+    ROW_FETCH,
+    ENCODING,
+    COMPRESSION,
+    ENCRYPTION,
+    EMAIL,
+    UPLOAD,
+    PARSE,
+    EXECUTE
+}
@@ -0,0 +1,585 @@
+package com.christianmeiners;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * The binary format of a dump, which is smaller than the SQL
+ * and is restored without generating, parsing or escaping any SQL.
+ *
+ * The schema is kept as SQL, the rows as typed values. A dump is a
+ * sequence of sections:
+ * <pre>
+ * MB4JBIN1
+ * S  length, SQL                     the header, the CREATE TABLE of a table, the routines ...
+ * T  table, columns, per column: name, kind, JDBC type
+ *    blocks: rows, length, rows       a block of 0 rows ends the table
+ * E                                  the end of the dump
+ * </pre>
+ * Every row starts with a bitmap of its null columns and is followed
+ * by the values of the other columns: integers as zigzag varints, floating
+ * point numbers as 8 bytes, binary columns as their bytes and the rest as
+ * their text in UTF-8, all lengths as varints. The blocks are prefixed with
+ * their length, so a reader that only needs the SQL skips the rows
+ * without decoding them.
+ */
+public class BinaryDump {
+
+    public static final String EXTENSION = ".bin";
+    public static final int SQL = 'S';
+    public static final int TABLE = 'T';
+    public static final int END = 'E';
+
+    public static final int KIND_LONG = 1;
+    public static final int KIND_DOUBLE = 2;
+    public static final int KIND_TEXT = 3;
+    public static final int KIND_BYTES = 4;
+
+    private static final byte[] MAGIC = "MB4JBIN1".getBytes(StandardCharsets.US_ASCII);
+    private static final int BLOCK_BYTES = 64 * 1024;
+
+    private BinaryDump() {
+    }
+
+    /**
+     * This will check whether the stream is at the start of a
+     * binary dump. The stream is reset to where it was
+     *
+     * @param in the stream. It has to support mark()
+     * @return boolean
+     * @throws IOException exception
+     */
+    public static boolean isBinaryDump(InputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.mark(magic.length);
+        int length = 0;
+        int read;
+        while (length < magic.length && (read = in.read(magic, length, magic.length - length)) > 0) {
+            length += read;
+        }
+        in.reset();
+        return length == magic.length && Arrays.equals(magic, MAGIC);
+    }
+
+    /**
+     * This will read the SQL sections of a binary dump and
+     * skip its rows, e.g. for the checksums of the dump
+     *
+     * @param in the stream of the dump
+     * @return the SQL sections in their order
+     * @throws IOException exception
+     */
+    public static String readSql(InputStream in) throws IOException {
+        Reader reader = new Reader(in);
+        StringBuilder sql = new StringBuilder();
+        int section;
+        while ((section = reader.next()) != END) {
+            if (section == SQL) {
+                sql.append(reader.getSql());
+            } else {
+                reader.skipRows();
+            }
+        }
+        return sql.toString();
+    }
+
+    /**
+     * This will pick the kind of value a column is stored as
+     *
+     * @param type     the JDBC type
+     * @param typeName the type in the database
+     * @param signed   whether the column is signed
+     * @return the kind
+     */
+    static int getKind(int type, String typeName, boolean signed) {
+        if ("YEAR".equalsIgnoreCase(typeName)) {
+            //the driver reads a year as a date by default
+            return KIND_LONG;
+        }
+        switch (type) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return KIND_LONG;
+            case Types.BIGINT:
+                //an unsigned bigint may not fit in a long
+                return signed ? KIND_LONG : KIND_TEXT;
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return KIND_DOUBLE;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return KIND_BYTES;
+            default:
+                return KIND_TEXT;
+        }
+    }
+
+    /**
+     * The stream a binary dump is written with. The rows of a
+     * table are collected in blocks of about 64 KB
+     */
+    static class Writer {
+
+        private final OutputStream out;
+        private byte[] block = new byte[BLOCK_BYTES + 1024];
+        private int length;
+        private int blockRows;
+        private int[] kinds;
+        private long bytes;
+
+        /**
+         * @param out the stream to write to. It's closed with this writer
+         * @throws IOException exception
+         */
+        Writer(OutputStream out) throws IOException {
+            this.out = out;
+            out.write(MAGIC);
+            bytes += MAGIC.length;
+        }
+
+        /**
+         * This will write a section of SQL
+         *
+         * @param sql the SQL
+         * @throws IOException exception
+         */
+        void writeSql(String sql) throws IOException {
+            if (sql.isEmpty()) {
+                return;
+            }
+            length = 0;
+            putByte(SQL);
+            putString(sql);
+            flushBlock();
+        }
+
+        /**
+         * This will start the rows of a table
+         *
+         * @param table    the table
+         * @param metaData the columns of the rows
+         * @throws IOException  exception
+         * @throws SQLException exception
+         */
+        void startTable(String table, ResultSetMetaData metaData) throws IOException, SQLException {
+            int columnCount = metaData.getColumnCount();
+            kinds = new int[columnCount];
+            length = 0;
+            putByte(TABLE);
+            putString(table);
+            putVarLong(columnCount);
+            for (int i = 0; i < columnCount; i++) {
+                kinds[i] = getKind(metaData.getColumnType(i + 1), metaData.getColumnTypeName(i + 1),
+                        metaData.isSigned(i + 1));
+                putString(metaData.getColumnName(i + 1));
+                putByte(kinds[i]);
+                putVarLong(metaData.getColumnType(i + 1));
+            }
+            flushBlock();
+            blockRows = 0;
+        }
+
+        /**
+         * This will add the row the result set is on
+         *
+         * @param rs the result set
+         * @throws IOException  exception
+         * @throws SQLException exception
+         */
+        void writeRow(ResultSet rs) throws IOException, SQLException {
+            int nulls = length;
+            int nullBytes = (kinds.length + 7) / 8;
+            ensureCapacity(nullBytes);
+            Arrays.fill(block, nulls, nulls + nullBytes, (byte) 0);
+            length += nullBytes;
+
+            for (int i = 0; i < kinds.length; i++) {
+                int column = i + 1;
+                switch (kinds[i]) {
+                    case KIND_LONG: {
+                        long value = rs.getLong(column);
+                        if (rs.wasNull()) {
+                            block[nulls + (i >> 3)] |= 1 << (i & 7);
+                        } else {
+                            putVarLong((value << 1) ^ (value >> 63));
+                        }
+                        break;
+                    }
+                    case KIND_DOUBLE: {
+                        double value = rs.getDouble(column);
+                        if (rs.wasNull()) {
+                            block[nulls + (i >> 3)] |= 1 << (i & 7);
+                        } else {
+                            putLong(Double.doubleToRawLongBits(value));
+                        }
+                        break;
+                    }
+                    case KIND_BYTES: {
+                        byte[] value = rs.getBytes(column);
+                        if (value == null) {
+                            block[nulls + (i >> 3)] |= 1 << (i & 7);
+                        } else {
+                            putBytes(value);
+                        }
+                        break;
+                    }
+                    default: {
+                        String value = rs.getString(column);
+                        if (value == null) {
+                            block[nulls + (i >> 3)] |= 1 << (i & 7);
+                        } else {
+                            putBytes(value.getBytes(StandardCharsets.UTF_8));
+                        }
+                    }
+                }
+            }
+
+            blockRows++;
+            if (length >= BLOCK_BYTES) {
+                writeBlock();
+            }
+        }
+
+        /**
+         * This will end the rows of the table
+         *
+         * @throws IOException exception
+         */
+        void endTable() throws IOException {
+            if (blockRows > 0) {
+                writeBlock();
+            }
+            writeVarLong(0);
+            kinds = null;
+        }
+
+        private void writeBlock() throws IOException {
+            writeVarLong(blockRows);
+            writeVarLong(length);
+            flushBlock();
+            blockRows = 0;
+        }
+
+        /**
+         * @return the number of bytes written so far
+         */
+        long getBytes() {
+            return bytes + length;
+        }
+
+        /**
+         * This will end the dump and close the stream
+         *
+         * @throws IOException exception
+         */
+        void close() throws IOException {
+            out.write(END);
+            bytes++;
+            out.close();
+        }
+
+        private void flushBlock() throws IOException {
+            out.write(block, 0, length);
+            bytes += length;
+            length = 0;
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7fL) != 0) {
+                out.write((int) (value & 0x7f) | 0x80);
+                value >>>= 7;
+                bytes++;
+            }
+            out.write((int) value);
+            bytes++;
+        }
+
+        private void ensureCapacity(int count) {
+            if (length + count > block.length) {
+                block = Arrays.copyOf(block, Math.max(block.length * 2, length + count));
+            }
+        }
+
+        private void putByte(int b) {
+            ensureCapacity(1);
+            block[length++] = (byte) b;
+        }
+
+        private void putVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7fL) != 0) {
+                block[length++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            block[length++] = (byte) value;
+        }
+
+        private void putLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                block[length++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void putBytes(byte[] value) {
+            putVarLong(value.length);
+            ensureCapacity(value.length);
+            System.arraycopy(value, 0, block, length, value.length);
+            length += value.length;
+        }
+
+        private void putString(String value) {
+            putBytes(value.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * The stream of a binary dump, read section by section.
+     * The rows of a table are decoded a block at a time
+     */
+    public static class Reader {
+
+        private final InputStream in;
+        private String sql;
+        private String table;
+        private String[] columns;
+        private int[] kinds;
+        private int[] types;
+        private byte[] block = new byte[0];
+        private int position;
+        private long blockRows;
+        private boolean tableEnded = true;
+
+        /**
+         * @param in the stream of the dump, buffered for speed
+         * @throws IOException if it's not a binary dump
+         */
+        public Reader(InputStream in) throws IOException {
+            this.in = in;
+            byte[] magic = new byte[MAGIC.length];
+            readFully(magic, magic.length);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("The stream is not a binary dump");
+            }
+        }
+
+        /**
+         * This will read the next section. The rows of
+         * a table that haven't been read are skipped
+         *
+         * @return {@link #SQL}, {@link #TABLE} or {@link #END}
+         * @throws IOException if the dump is invalid or truncated
+         */
+        public int next() throws IOException {
+            skipRows();
+            int section = in.read();
+            if (section == SQL) {
+                sql = readString();
+            } else if (section == TABLE) {
+                table = readString();
+                int columnCount = (int) readVarLong();
+                columns = new String[columnCount];
+                kinds = new int[columnCount];
+                types = new int[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    columns[i] = readString();
+                    kinds[i] = in.read();
+                    types[i] = (int) readVarLong();
+                }
+                tableEnded = false;
+                blockRows = 0;
+            } else if (section != END) {
+                throw new IOException(section < 0 ? "The binary dump is truncated" : "Invalid section " + section + " in the binary dump");
+            }
+            return section;
+        }
+
+        /**
+         * @return the SQL of the current {@link #SQL} section
+         */
+        public String getSql() {
+            return sql;
+        }
+
+        /**
+         * @return the table of the current {@link #TABLE} section
+         */
+        public String getTable() {
+            return table;
+        }
+
+        public String[] getColumns() {
+            return columns;
+        }
+
+        /**
+         * @return the kinds the values of the columns are stored as, e.g. {@link #KIND_LONG}
+         */
+        public int[] getKinds() {
+            return kinds;
+        }
+
+        /**
+         * @return the JDBC types of the columns in the exported database
+         */
+        public int[] getTypes() {
+            return types;
+        }
+
+        /**
+         * This will read the next row of the table. The values are
+         * a Long, Double, String or byte[] depending on the kind of
+         * their column, or null
+         *
+         * @param values the array to read the values into
+         * @return false if there are no more rows
+         * @throws IOException exception
+         */
+        public boolean readRow(Object[] values) throws IOException {
+            if (blockRows == 0 && !readBlock()) {
+                return false;
+            }
+            blockRows--;
+
+            int nulls = position;
+            position += (kinds.length + 7) / 8;
+            for (int i = 0; i < kinds.length; i++) {
+                if ((block[nulls + (i >> 3)] & (1 << (i & 7))) != 0) {
+                    values[i] = null;
+                    continue;
+                }
+                switch (kinds[i]) {
+                    case KIND_LONG: {
+                        long value = getVarLong();
+                        values[i] = (value >>> 1) ^ -(value & 1);
+                        break;
+                    }
+                    case KIND_DOUBLE: {
+                        long bits = 0;
+                        for (int b = 0; b < 8; b++) {
+                            bits = (bits << 8) | (block[position++] & 0xff);
+                        }
+                        values[i] = Double.longBitsToDouble(bits);
+                        break;
+                    }
+                    case KIND_BYTES: {
+                        int length = (int) getVarLong();
+                        values[i] = Arrays.copyOfRange(block, position, position + length);
+                        position += length;
+                        break;
+                    }
+                    default: {
+                        int length = (int) getVarLong();
+                        values[i] = new String(block, position, length, StandardCharsets.UTF_8);
+                        position += length;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /**
+         * This will skip the rest of the rows of the table
+         * without decoding them
+         *
+         * @throws IOException exception
+         */
+        public void skipRows() throws IOException {
+            while (!tableEnded) {
+                long rows = readVarLong();
+                if (rows == 0) {
+                    tableEnded = true;
+                } else {
+                    long length = readVarLong();
+                    while (length > 0) {
+                        long skipped = in.skip(length);
+                        if (skipped <= 0) {
+                            if (in.read() < 0) {
+                                throw new EOFException("The binary dump is truncated");
+                            }
+                            skipped = 1;
+                        }
+                        length -= skipped;
+                    }
+                }
+            }
+            blockRows = 0;
+        }
+
+        private boolean readBlock() throws IOException {
+            if (tableEnded) {
+                return false;
+            }
+            blockRows = readVarLong();
+            if (blockRows == 0) {
+                tableEnded = true;
+                return false;
+            }
+            int length = (int) readVarLong();
+            if (block.length < length) {
+                block = new byte[Math.max(length, BLOCK_BYTES + 1024)];
+            }
+            readFully(block, length);
+            position = 0;
+            return true;
+        }
+
+        private long getVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = block[position++];
+                value |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = in.read();
+                if (b < 0) {
+                    throw new EOFException("The binary dump is truncated");
+                }
+                value |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        private String readString() throws IOException {
+            byte[] bytes = new byte[(int) readVarLong()];
+            readFully(bytes, bytes.length);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private void readFully(byte[] bytes, int length) throws IOException {
+            int offset = 0;
+            while (offset < length) {
+                int read = in.read(bytes, offset, length - offset);
+                if (read < 0) {
+                    throw new EOFException("The binary dump is truncated");
+                }
+                offset += read;
+            }
+        }
+    }
+}
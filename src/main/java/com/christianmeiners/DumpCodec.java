@@ -0,0 +1,220 @@
+package com.christianmeiners;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * The codecs the tables of a zipped dump are compressed with
+ * when it's exported with {@link MysqlExportService#ADAPTIVE_COMPRESSION}.
+ *
+ * Every table is a zip entry of its own, compressed with the codec
+ * that's picked from a sample of its first blocks: tables that are
+ * full of already compressed data are stored, tables with a lot of
+ * repetition get the strong codec and the others the fast one. The
+ * dump is the entries in the order of the manifest, the first entry
+ * of the zip, which has a line per entry:
+ * <pre>
+ * 0000-header.sql  -       FAST
+ * 0001-orders.sql  orders  STRONG
+ * 0002-images.sql  images  STORE
+ * </pre>
+ * with the name of the entry, the table or "-" for the SQL
+ * around the tables, and the codec.
+ */
+enum DumpCodec {
+
+    STORE(Deflater.NO_COMPRESSION),
+    FAST(Deflater.BEST_SPEED),
+    STRONG(Deflater.BEST_COMPRESSION);
+
+    static final String MANIFEST_ENTRY = "codecs.manifest";
+    static final String NO_TABLE = "-";
+    static final int SAMPLE_BYTES = 64 * 1024;
+
+    //above this ratio the fast codec hardly saves anything
+    private static final double STORE_RATIO = 0.95;
+    //the strong codec pays off if the fast one gets at least this
+    //much below the entropy of the single bytes, as that's what's
+    //left to find in repetitions
+    private static final double STRONG_GAIN = 0.75;
+
+    private final int level;
+
+    DumpCodec(int level) {
+        this.level = level;
+    }
+
+    /**
+     * @return the level of the deflater of the codec
+     */
+    int getLevel() {
+        return level;
+    }
+
+    /**
+     * This will pick the codec of a table from a sample of its
+     * first blocks. The sample is compressed with the fast codec and
+     * the ratio compared with the entropy of its single bytes
+     *
+     * @param sample the sample
+     * @param length the number of bytes of the sample
+     * @return DumpCodec
+     */
+    static DumpCodec select(byte[] sample, int length) {
+        if (length == 0) {
+            return FAST;
+        }
+        int[] counts = new int[256];
+        for (int i = 0; i < length; i++) {
+            counts[sample[i] & 0xff]++;
+        }
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / length;
+                entropy -= p * Math.log(p) / Math.log(2);
+            }
+        }
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        long compressed;
+        try {
+            deflater.setInput(sample, 0, length);
+            deflater.finish();
+            byte[] buffer = new byte[8 * 1024];
+            while (!deflater.finished()) {
+                deflater.deflate(buffer);
+            }
+            compressed = deflater.getBytesWritten();
+        } finally {
+            deflater.end();
+        }
+
+        double ratio = (double) compressed / length;
+        if (ratio > STORE_RATIO) {
+            return STORE;
+        }
+        return ratio > entropy / 8 * STRONG_GAIN ? FAST : STRONG;
+    }
+
+    /**
+     * This will format the line of an entry in the manifest
+     *
+     * @param entry the name of the zip entry
+     * @param table the table or {@link #NO_TABLE}
+     * @param codec the codec of the entry
+     * @return String
+     */
+    static String formatEntry(String entry, String table, DumpCodec codec) {
+        return entry + "\t" + table + "\t" + codec.name() + "\n";
+    }
+
+    /**
+     * This will return the dump of a zip. For a zip with a
+     * manifest, it's the entries of the manifest one after the
+     * other, otherwise the first entry
+     *
+     * @param zip   the zip
+     * @param first the first entry of the zip
+     * @return InputStream
+     * @throws IOException if the entries don't match the manifest
+     */
+    static InputStream open(ZipInputStream zip, ZipEntry first) throws IOException {
+        if (!MANIFEST_ENTRY.equals(first.getName())) {
+            return zip;
+        }
+
+        //the manifest is read up to the end of its entry
+        List<String> entries = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(zip, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] fields = line.split("\t");
+            if (fields.length < 3) {
+                throw new IOException("Invalid line in the manifest of the dump: " + line);
+            }
+            try {
+                valueOf(fields[2]);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("The codec " + fields[2] + " of " + fields[0] + " is not supported");
+            }
+            entries.add(fields[0]);
+        }
+        return new EntriesInputStream(zip, entries);
+    }
+
+    /**
+     * The streams the parts of a dump are written to
+     */
+    interface PartStreams {
+
+        /**
+         * @param part the index of the part
+         * @return the stream to write the part to. It's not closed
+         * @throws IOException exception
+         */
+        OutputStream open(int part) throws IOException;
+    }
+
+    /**
+     * The entries of a zip in the order of its
+     * manifest, read as one stream
+     */
+    private static class EntriesInputStream extends InputStream {
+
+        private final ZipInputStream zip;
+        private final List<String> entries;
+        private int next;
+        private boolean open;
+
+        EntriesInputStream(ZipInputStream zip, List<String> entries) {
+            this.zip = zip;
+            this.entries = entries;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (true) {
+                if (open) {
+                    int read = zip.read(b, off, len);
+                    if (read >= 0) {
+                        return read;
+                    }
+                    open = false;
+                }
+                if (next == entries.size()) {
+                    return -1;
+                }
+                ZipEntry entry = zip.getNextEntry();
+                if (entry == null || !entry.getName().equals(entries.get(next))) {
+                    throw new IOException("The zip is missing the entry " + entries.get(next) + " of its manifest");
+                }
+                next++;
+                open = true;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            zip.close();
+        }
+    }
+}
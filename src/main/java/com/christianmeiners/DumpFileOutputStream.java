@@ -0,0 +1,362 @@
+package com.christianmeiners;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The stream a dump file is written with. The bytes are collected
+ * in pooled direct buffers and written with one gathering write
+ * per {@link #GATHER_BUFFERS} buffers, the generated SQL is encoded
+ * into them in UTF-8 without an intermediate byte array, and a
+ * spilled dump is copied with {@link FileChannel#transferTo}.
+ *
+ * The file is written as name.partial and only renamed to its final
+ * name once it's complete, so a crash never leaves a truncated dump
+ * behind under the final name. How often it's synced to disk is set
+ * by the {@link FsyncPolicy}.
+ */
+class DumpFileOutputStream extends OutputStream {
+
+    private static Logger logger = LoggerFactory.getLogger(DumpFileOutputStream.class);
+    static final String PARTIAL_SUFFIX = ".partial";
+    static final int BUFFER_BYTES = 256 * 1024;
+    static final int GATHER_BUFFERS = 4;
+    private static final int MAX_POOLED_BUFFERS = 4 * GATHER_BUFFERS;
+    private static final Queue<ByteBuffer> POOL = new ConcurrentLinkedQueue<>();
+
+    /**
+     * When the file is forced to disk
+     */
+    enum FsyncPolicy {
+        /**
+         * never, the operating system writes it out eventually
+         */
+        NONE,
+        /**
+         * once it's complete, before it's renamed
+         */
+        CLOSE,
+        /**
+         * every fsync interval bytes and once it's complete
+         */
+        INTERVAL;
+
+        static FsyncPolicy parse(String policy) {
+            try {
+                return valueOf(policy.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown fsync policy " + policy + ", use NONE, CLOSE or INTERVAL");
+            }
+        }
+    }
+
+    private final File file;
+    private final File partial;
+    private final FileChannel channel;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalBytes;
+    private final ByteBuffer[] buffers = new ByteBuffer[GATHER_BUFFERS];
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private int current;
+    private long position;
+    private long syncedPosition;
+    private boolean closed;
+
+    /**
+     * @param file               the final file
+     * @param expectedBytes      the expected size of the file in bytes or 0 if it's unknown
+     * @param fsyncPolicy        when the file is forced to disk
+     * @param fsyncIntervalBytes the bytes between two syncs of {@link FsyncPolicy#INTERVAL}
+     * @throws IOException exception
+     */
+    DumpFileOutputStream(File file, long expectedBytes, FsyncPolicy fsyncPolicy, long fsyncIntervalBytes) throws IOException {
+        this.file = file;
+        this.partial = new File(file.getPath() + PARTIAL_SUFFIX);
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalBytes = Math.max(BUFFER_BYTES, fsyncIntervalBytes);
+        checkFreeSpace(expectedBytes);
+        this.channel = FileChannel.open(partial.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        for (int i = 0; i < GATHER_BUFFERS; i++) {
+            ByteBuffer buffer = POOL.poll();
+            buffers[i] = buffer == null ? ByteBuffer.allocateDirect(BUFFER_BYTES) : buffer;
+        }
+    }
+
+    /**
+     * This will warn if the disk doesn't have the room for the
+     * expected size of the file. The space isn't reserved, Java has
+     * no portable way to allocate it without writing it, so another
+     * writer can still fill the disk in the meantime
+     *
+     * @param expectedBytes the expected size of the file in bytes or 0 if it's unknown
+     * @return whether the file is expected to fit
+     */
+    boolean checkFreeSpace(long expectedBytes) {
+        if (expectedBytes <= 0) {
+            return true;
+        }
+        long usable = partial.getAbsoluteFile().getParentFile().getUsableSpace();
+        if (usable > 0 && usable < expectedBytes) {
+            logger.warn(file.getName() + " is expected to have " + expectedBytes + " bytes but only " +
+                    usable + " bytes are free");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * This will copy a file to the stream. The file is transferred
+     * by the kernel if the stream is a dump file
+     *
+     * @param from the file to copy
+     * @param out  the stream to copy it to
+     * @throws IOException exception
+     */
+    static void copy(File from, OutputStream out) throws IOException {
+        if (out instanceof DumpFileOutputStream) {
+            ((DumpFileOutputStream) out).transferFrom(from);
+        } else {
+            Files.copy(from.toPath(), out);
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (!buffers[current].hasRemaining()) {
+            nextBuffer();
+        }
+        buffers[current].put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            ByteBuffer buffer = buffers[current];
+            if (!buffer.hasRemaining()) {
+                nextBuffer();
+                continue;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.put(b, off, count);
+            off += count;
+            len -= count;
+        }
+    }
+
+    /**
+     * This will encode the characters in UTF-8 straight
+     * into the buffers of the file
+     *
+     * @param chars the characters
+     * @throws IOException exception
+     */
+    void write(CharSequence chars) throws IOException {
+        ensureOpen();
+        CharBuffer in = CharBuffer.wrap(chars);
+        encoder.reset();
+        CoderResult result;
+        do {
+            result = encoder.encode(in, buffers[current], true);
+            if (result.isOverflow()) {
+                nextBuffer();
+            }
+        } while (result.isOverflow());
+        while (encoder.flush(buffers[current]).isOverflow()) {
+            nextBuffer();
+        }
+    }
+
+    /**
+     * This will write the buffers and append the
+     * file with a transfer between the channels
+     *
+     * @param from the file to append
+     * @throws IOException exception
+     */
+    void transferFrom(File from) throws IOException {
+        ensureOpen();
+        writeBuffers();
+        try (FileChannel in = FileChannel.open(from.toPath(), StandardOpenOption.READ)) {
+            long size = in.size();
+            long transferred = 0;
+            while (transferred < size) {
+                long count = in.transferTo(transferred, size - transferred, channel.position(position));
+                transferred += count;
+                position += count;
+                syncIfDue();
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    long getBytes() {
+        long bytes = position;
+        for (int i = 0; i <= current; i++) {
+            bytes += buffers[i].position();
+        }
+        return bytes;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException(file.getAbsolutePath() + " has been closed");
+        }
+    }
+
+    private void nextBuffer() throws IOException {
+        if (current == GATHER_BUFFERS - 1) {
+            writeBuffers();
+        } else {
+            current++;
+        }
+    }
+
+    /**
+     * This will write the filled buffers with a gathering write
+     */
+    private void writeBuffers() throws IOException {
+        for (int i = 0; i <= current; i++) {
+            buffers[i].flip();
+        }
+        channel.position(position);
+        long remaining = getRemaining();
+        while (remaining > 0) {
+            long count = channel.write(buffers, 0, current + 1);
+            position += count;
+            remaining -= count;
+        }
+        for (ByteBuffer buffer : buffers) {
+            buffer.clear();
+        }
+        current = 0;
+        syncIfDue();
+    }
+
+    private long getRemaining() {
+        long remaining = 0;
+        for (int i = 0; i <= current; i++) {
+            remaining += buffers[i].remaining();
+        }
+        return remaining;
+    }
+
+    private void syncIfDue() throws IOException {
+        if (fsyncPolicy == FsyncPolicy.INTERVAL && position - syncedPosition >= fsyncIntervalBytes) {
+            channel.force(false);
+            syncedPosition = position;
+        }
+    }
+
+    /**
+     * The bytes are written when the buffers are full,
+     * flush() doesn't force a write of partial buffers
+     */
+    @Override
+    public void flush() {
+    }
+
+    /**
+     * This will write the rest of the file, sync it
+     * as the policy says and rename it to its final name
+     *
+     * @throws IOException exception
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        boolean published = false;
+        try {
+            writeBuffers();
+            closed = true;
+            if (fsyncPolicy != FsyncPolicy.NONE) {
+                channel.force(true);
+            }
+            channel.close();
+            try {
+                Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            published = true;
+            if (fsyncPolicy != FsyncPolicy.NONE) {
+                syncDir();
+            }
+        } finally {
+            if (!published) {
+                abort();
+            }
+            release();
+        }
+    }
+
+    /**
+     * This will sync the directory, so that the rename
+     * survives a crash. Not every platform can open a
+     * directory, on those the rename isn't synced
+     */
+    private void syncDir() {
+        try (FileChannel dir = FileChannel.open(file.getAbsoluteFile().getParentFile().toPath(), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            logger.debug("unable to sync the dir of " + file.getAbsolutePath() + ": " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * This will close the stream without publishing the
+     * file and delete the partial file. It does nothing
+     * once the file has been published
+     */
+    void abort() {
+        if (closed && !channel.isOpen() && !partial.exists()) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            //the file is deleted anyway
+        }
+        partial.delete();
+        release();
+    }
+
+    private void release() {
+        for (int i = 0; i < GATHER_BUFFERS; i++) {
+            if (buffers[i] != null) {
+                buffers[i].clear();
+                if (POOL.size() < MAX_POOLED_BUFFERS) {
+                    POOL.offer(buffers[i]);
+                }
+                buffers[i] = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.christianmeiners;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The checksums of a dump exported with
+ * {@link MysqlExportService#CHECKSUMS}.
+ *
+ * They're written after the inserts of every table as comments,
+ * which the import ignores, one line per range of the primary key:
+ * <pre>
+ * -- checksum  orders  (1000)  1000  5f0e3a2b41
+ * -- checksum  orders  (2000)  1000  60a1b2c3d4
+ * -- checksum  orders  -       0     0
+ * </pre>
+ * with the key of the last row of the range, the number of rows and
+ * the sum of the CRC32 of the rows in hex. A range starts after the
+ * previous range of the table. "-" is a range up to the end of the table
+ * and "*" the whole table, for a table without a primary key.
+ */
+class DumpManifest {
+
+    static final String CHECKSUM_PREFIX = "-- checksum\t";
+    static final String WHOLE_TABLE = "*";
+    static final String TO_END = "-";
+
+    private DumpManifest() {
+    }
+
+    /**
+     * This will format the comment of a range
+     *
+     * @param table the table
+     * @param upper the key of the last row of the range, {@link #TO_END} or {@link #WHOLE_TABLE}
+     * @param rows  the number of rows
+     * @param sum   the sum of the checksums of the rows
+     * @return String
+     */
+    static String format(String table, String upper, long rows, long sum) {
+        return CHECKSUM_PREFIX + table + "\t" + upper + "\t" + rows + "\t" + Long.toHexString(sum) + "\n";
+    }
+
+    /**
+     * This will read the ranges of all the tables from a dump
+     *
+     * @param dump the dump
+     * @return the ranges by table in the order of the dump
+     * @throws IOException exception
+     */
+    static Map<String, List<Range>> read(Reader dump) throws IOException {
+        Map<String, List<Range>> tables = new LinkedHashMap<>();
+        BufferedReader reader = new BufferedReader(dump);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (!line.startsWith(CHECKSUM_PREFIX)) {
+                continue;
+            }
+            String[] fields = line.substring(CHECKSUM_PREFIX.length()).split("\t");
+            if (fields.length != 4) {
+                continue;
+            }
+            List<Range> ranges = tables.computeIfAbsent(fields[0], table -> new ArrayList<>());
+            String lower = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1).upper;
+            ranges.add(new Range(fields[0], lower, fields[1], Long.parseLong(fields[2]), Long.parseUnsignedLong(fields[3], 16)));
+        }
+        return tables;
+    }
+
+    /**
+     * A range of the primary key of a table
+     */
+    static class Range {
+
+        final String table;
+        final String lower;
+        final String upper;
+        final long rows;
+        final long sum;
+
+        Range(String table, String lower, String upper, long rows, long sum) {
+            this.table = table;
+            this.lower = lower;
+            this.upper = upper;
+            this.rows = rows;
+            this.sum = sum;
+        }
+
+        /**
+         * @param key the columns of the primary key
+         * @return the WHERE clause of the rows of the range
+         */
+        String getCondition(List<String> key) {
+            if (upper.equals(WHOLE_TABLE)) {
+                return "";
+            }
+            return MysqlExportService.getChunkCondition(key, lower, upper.equals(TO_END) ? null : upper);
+        }
+
+        @Override
+        public String toString() {
+            if (upper.equals(WHOLE_TABLE)) {
+                return table;
+            }
+            return table + " keys " + (lower == null ? "(-inf" : "(" + lower.substring(1, lower.length() - 1)) + ", " +
+                    (upper.equals(TO_END) ? "+inf)" : upper.substring(1, upper.length() - 1) + "]");
+        }
+    }
+}
@@ -3,17 +3,36 @@ package com.christianmeiners;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sun.mail.smtp.SMTPTransport;
+
+import javax.activation.DataHandler;
 import javax.mail.*;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimeMultipart;
+import javax.mail.util.ByteArrayDataSource;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 /**
  * Created by seun_ on 25-Feb-18.
  *
+ * An attachment that's larger than a message may be is split
+ * into volumes, name.001, name.002 etc., that are sent in messages
+ * of their own and can be joined with cat. See {@link #openVolumes(String)}
  */
 class EmailService {
 
@@ -26,6 +45,16 @@ class EmailService {
     private String subject = "";
     private String msg = "";
     private File [] attachments;
+    private long maxMessageBytes;
+    private int retries = DEFAULT_RETRIES;
+    private long retryMillis = DEFAULT_RETRY_MILLIS;
+    private int queuedVolumes = DEFAULT_QUEUED_VOLUMES;
+    static final long DEFAULT_MAX_MESSAGE_BYTES = 10 * 1024 * 1024;
+    static final int DEFAULT_RETRIES = 3;
+    static final long DEFAULT_RETRY_MILLIS = 1000;
+    static final int DEFAULT_QUEUED_VOLUMES = 2;
+    //the headers and the text of a message
+    private static final int MESSAGE_OVERHEAD_BYTES = 16 * 1024;
     private Logger logger = LoggerFactory.getLogger(EmailService.class);
     private final String LOG_PREFIX = "java-mysql-exporter";
 
@@ -86,38 +115,144 @@ class EmailService {
         return this;
     }
 
+    /**
+     * @param maxMessageBytes the largest message the server accepts. Default
+     *                        is the SIZE the server announces or 10 MB
+     * @return EmailService
+     */
+    EmailService setMaxMessageBytes(long maxMessageBytes) {
+        this.maxMessageBytes = maxMessageBytes;
+        return this;
+    }
+
+    /**
+     * @param retries how often a failed message is sent again. Default is 3
+     * @return EmailService
+     */
+    EmailService setRetries(int retries) {
+        this.retries = retries;
+        return this;
+    }
+
+    /**
+     * @param retryMillis the pause before the first retry. It's doubled for every further retry
+     * @return EmailService
+     */
+    EmailService setRetryMillis(long retryMillis) {
+        this.retryMillis = retryMillis;
+        return this;
+    }
+
+    /**
+     * @param queuedVolumes the number of volumes that are held in memory
+     *                      while they're sent. Writing to the volumes blocks
+     *                      if that many haven't been sent yet. Default is 2
+     * @return EmailService
+     */
+    EmailService setQueuedVolumes(int queuedVolumes) {
+        this.queuedVolumes = queuedVolumes;
+        return this;
+    }
+
+
     /**
      * This will check if the necessary properties
-     * are set for sending an email successfully
+     * are set for sending an email successfully.
+     * The username and password can be empty for
+     * a server without authentication
      * @return boolean
      */
     private boolean isPropertiesSet() {
         return !this.host.isEmpty() &&
                 this.port > 0 &&
-                !this.username.isEmpty() &&
-                !this.password.isEmpty() &&
                 !this.toAdd.isEmpty() &&
                 !this.fromAdd.isEmpty() &&
                 !this.subject.isEmpty() &&
-                !this.msg.isEmpty() &&
-                this.attachments != null && this.attachments.length > 0;
+                !this.msg.isEmpty();
     }
 
 
     /**
      * This function will send an email
-     * and add the generated sql file as an attachment
+     * and add the generated sql file as an attachment.
+     * If the attachments don't fit in a message, every
+     * attachment is sent in volumes
      * @return boolean
      */
     boolean sendMail() {
 
-        if(!this.isPropertiesSet()) {
+        if(!this.isPropertiesSet() || this.attachments == null || this.attachments.length == 0) {
             logger.debug(LOG_PREFIX + ": Required Mail Properties are not set. Attachments will not be sent");
             return false;
         }
 
+        Session session = createSession();
+        long volumeBytes = getVolumeBytes(session);
+        long totalBytes = 0;
+        for (File file : attachments) {
+            totalBytes += file.length();
+        }
+
+        try {
+            if (totalBytes <= volumeBytes) {
+                List<MimeBodyPart> parts = new ArrayList<>();
+                for (File file : attachments) {
+                    //every attachment needs a part of its own
+                    MimeBodyPart attachmentBodyPart = new MimeBodyPart();
+                    attachmentBodyPart.attachFile(file);
+                    parts.add(attachmentBodyPart);
+                }
+                logger.debug(LOG_PREFIX + ": " + this.attachments.length + " attachments found");
+                send(session, subject, parts);
+            } else {
+                for (File file : attachments) {
+                    try (VolumeOutputStream volumes = openVolumes(file.getName(), session, volumeBytes);
+                         InputStream in = new FileInputStream(file)) {
+                        byte[] buffer = new byte[64 * 1024];
+                        int read;
+                        while ((read = in.read(buffer)) >= 0) {
+                            volumes.write(buffer, 0, read);
+                        }
+                    }
+                }
+            }
+
+            logger.debug(LOG_PREFIX + ": MESSAGE SENT SUCCESSFULLY");
+            return true;
+
+        } catch (Exception e) {
+            logger.error(LOG_PREFIX + ": MESSAGE NOT SENT. " + e.getLocalizedMessage());
+            logger.debug(LOG_PREFIX + ": MESSAGE NOT SENT", e);
+            return false;
+        }
+
+    }
+
+    /**
+     * This will open a stream that sends what's written to it
+     * as an attachment. The bytes are cut into volumes that fit in a
+     * message, and every volume is sent in the background as soon as
+     * it's full, so the sending overlaps with the writing. A failed
+     * message is retried. A single volume is sent under the given name
+     *
+     * @param fileName the name of the attachment
+     * @return VolumeOutputStream. Closing it waits for all the volumes
+     * and throws an IOException if one of them couldn't be sent
+     */
+    VolumeOutputStream openVolumes(String fileName) {
+        Session session = createSession();
+        return openVolumes(fileName, session, getVolumeBytes(session));
+    }
+
+    private VolumeOutputStream openVolumes(String fileName, Session session, long volumeBytes) {
+        logger.debug(LOG_PREFIX + ": sending " + fileName + " in volumes of up to " + volumeBytes + " bytes");
+        return new VolumeOutputStream(fileName, session, (int) Math.min(volumeBytes, Integer.MAX_VALUE - 8));
+    }
+
+    private Session createSession() {
         Properties prop = new Properties();
-        prop.put("mail.smtp.auth", true);
+        boolean auth = username != null && !username.isEmpty();
+        prop.put("mail.smtp.auth", auth);
         prop.put("mail.smtp.starttls.enable", "true");
         prop.put("mail.smtp.host", this.host);
         prop.put("mail.smtp.port", this.port);
@@ -125,54 +260,283 @@ class EmailService {
 
         logger.debug(LOG_PREFIX + ": Mail properties set");
 
-        Session session = Session.getInstance(prop, new Authenticator() {
+        Session session = auth ? Session.getInstance(prop, new Authenticator() {
             @Override
             protected PasswordAuthentication getPasswordAuthentication() {
                 return new PasswordAuthentication(username, password);
             }
-        });
+        }) : Session.getInstance(prop);
 
         logger.debug(LOG_PREFIX + ": Mail Session Created");
+        return session;
+    }
 
+    /**
+     * This will return the number of attachment bytes that fit
+     * in a message. Attachments are base64 encoded, which takes 4
+     * bytes for every 3, plus the line breaks
+     *
+     * @param session the mail session
+     * @return long
+     */
+    private long getVolumeBytes(Session session) {
+        long messageBytes = maxMessageBytes > 0 ? maxMessageBytes : getServerMaxMessageBytes(session);
+        return Math.max(1, (messageBytes - MESSAGE_OVERHEAD_BYTES) / 78 * 57);
+    }
+
+    /**
+     * This will ask the server for the largest message
+     * it accepts, the SIZE extension of SMTP
+     *
+     * @param session the mail session
+     * @return the size or the default if the server doesn't tell
+     */
+    private long getServerMaxMessageBytes(Session session) {
+        Transport transport = null;
         try {
+            transport = session.getTransport("smtp");
+            transport.connect();
+            if (transport instanceof SMTPTransport) {
+                String size = ((SMTPTransport) transport).getExtensionParameter("SIZE");
+                if (size != null && !size.trim().isEmpty() && Long.parseLong(size.trim()) > 0) {
+                    return Long.parseLong(size.trim());
+                }
+            }
+        } catch (MessagingException | NumberFormatException e) {
+            logger.debug(LOG_PREFIX + ": unable to get the message size limit of " + host + ". " + e.getLocalizedMessage());
+        } finally {
+            if (transport != null) {
+                try {
+                    transport.close();
+                } catch (MessagingException e) {
+                    logger.debug(LOG_PREFIX + ": " + e.getLocalizedMessage());
+                }
+            }
+        }
+        return DEFAULT_MAX_MESSAGE_BYTES;
+    }
+
+    /**
+     * This will send a message with the given
+     * attachments and retry it if it fails
+     *
+     * @param session     the mail session
+     * @param subject     the subject
+     * @param attachments the attachments
+     * @throws MessagingException if the last retry has failed
+     */
+    private void send(Session session, String subject, List<MimeBodyPart> attachments) throws MessagingException {
 //			create a default mime message object
-            Message message = new MimeMessage(session);
-            message.setFrom(new InternetAddress(fromAdd));
-            message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(toAdd));
-            message.setSubject(subject);
+        Message message = new MimeMessage(session);
+        message.setFrom(new InternetAddress(fromAdd));
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(toAdd));
+        message.setSubject(subject);
 
 //          body part for message
-            MimeBodyPart mimeBodyPart = new MimeBodyPart();
-            mimeBodyPart.setContent(msg, "text/html");
-
-//          body part for attachments
-            MimeBodyPart attachmentBodyPart = new MimeBodyPart();
-            logger.debug(LOG_PREFIX + ": " + this.attachments.length + " attachments found");
-            for (File file: this.attachments) {
-                attachmentBodyPart.attachFile(file);
-            }
+        MimeBodyPart mimeBodyPart = new MimeBodyPart();
+        mimeBodyPart.setContent(msg, "text/html");
 
 //          create a multipart to combine them together
-            Multipart multipart = new MimeMultipart();
-            multipart.addBodyPart(mimeBodyPart);
-            multipart.addBodyPart(attachmentBodyPart);
+        Multipart multipart = new MimeMultipart();
+        multipart.addBodyPart(mimeBodyPart);
+        for (MimeBodyPart attachment : attachments) {
+            multipart.addBodyPart(attachment);
+        }
 
-            //now set the multipart as the content of the message
-            message.setContent(multipart);
+        //now set the multipart as the content of the message
+        message.setContent(multipart);
 
+        for (int attempt = 0; ; attempt++) {
+            try {
 //			send the message
-            Transport.send(message);
+                Transport.send(message);
+                return;
+            } catch (MessagingException e) {
+                if (attempt >= retries) {
+                    throw e;
+                }
+                long pause = retryMillis << Math.min(attempt, 20);
+                logger.warn(LOG_PREFIX + ": sending " + subject + " failed, retrying in " + pause + " ms. " + e.getLocalizedMessage());
+                try {
+                    Thread.sleep(pause);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
 
-            logger.debug(LOG_PREFIX + ": MESSAGE SENT SUCCESSFULLY");
+    /**
+     * The stream of an attachment that's sent in volumes.
+     * At most {@link #setQueuedVolumes(int)} volumes are held in
+     * memory, so a slow server slows down the writer instead
+     * of filling up the heap
+     */
+    class VolumeOutputStream extends OutputStream {
+
+        private final String fileName;
+        private final Session session;
+        private final int volumeBytes;
+        private final Semaphore queue = new Semaphore(queuedVolumes);
+        private final ExecutorService executor = BackupExecutors.newFixedExecutor("mysql-backup4j-email", queuedVolumes);
+        private final List<Future<?>> sent = new ArrayList<>();
+        private IOException failure;
+        private byte[] volume;
+        private int length;
+        private int volumes;
+        private boolean closed;
+
+        private VolumeOutputStream(String fileName, Session session, int volumeBytes) {
+            this.fileName = fileName;
+            this.session = session;
+            this.volumeBytes = volumeBytes;
+        }
 
-            return true;
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
 
-        } catch (Exception e) {
-            logger.debug(LOG_PREFIX + ": MESSAGE NOT SENT. " + e.getLocalizedMessage());
-            e.printStackTrace();
-            return false;
+        /**
+         * This will add the bytes to the current volume. Once
+         * a volume has failed, the rest of the bytes are dropped
+         * and close() throws, so the writer isn't held up
+         */
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkFailures();
+            while (len > 0 && failure == null) {
+                if (volume == null) {
+                    //the volumes grow with their content, so
+                    //a small attachment doesn't take a whole volume
+                    volume = new byte[Math.min(volumeBytes, Math.max(len, 64 * 1024))];
+                } else if (length == volume.length && length < volumeBytes) {
+                    byte[] larger = new byte[(int) Math.min(volumeBytes, (long) volume.length * 2)];
+                    System.arraycopy(volume, 0, larger, 0, length);
+                    volume = larger;
+                }
+                if (length == volumeBytes) {
+                    //the volume is full. It's only sent once
+                    //the next byte shows that it isn't the last
+                    submit(false);
+                    continue;
+                }
+                int count = Math.min(len, volume.length - length);
+                System.arraycopy(b, off, volume, length, count);
+                length += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+        /**
+         * This will send the current volume in the background.
+         * It blocks while the queue is full
+         *
+         * @param last whether it's the last volume
+         * @throws IOException if a volume has failed before
+         */
+        private void submit(boolean last) throws IOException {
+            checkFailures();
+            if (failure != null) {
+                return;
+            }
+            byte[] content = volume.length == length ? volume : Arrays.copyOf(volume, length);
+            int number = ++volumes;
+            boolean single = last && number == 1;
+            String name = single ? fileName : fileName + String.format(".%03d", number);
+            String volumeSubject = single ? subject : subject + " (part " + number + (last ? " of " + number : "") + ")";
+            volume = null;
+            length = 0;
+
+            try {
+                queue.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(LOG_PREFIX + ": interrupted while sending " + name, e);
+            }
+            sent.add(executor.submit(() -> {
+                try {
+                    MimeBodyPart attachment = new MimeBodyPart();
+                    attachment.setDataHandler(new DataHandler(new ByteArrayDataSource(content, "application/octet-stream")));
+                    attachment.setFileName(name);
+                    send(session, volumeSubject, Collections.singletonList(attachment));
+                    logger.debug(LOG_PREFIX + ": sent " + name + " with " + content.length + " bytes");
+                    return null;
+                } finally {
+                    queue.release();
+                }
+            }));
+        }
+
+        private void checkFailures() {
+            for (Future<?> future : sent) {
+                if (failure == null && future.isDone()) {
+                    try {
+                        await(future);
+                    } catch (IOException e) {
+                        failure = e;
+                        logger.error(e.getLocalizedMessage());
+                    }
+                }
+            }
         }
 
+        private void await(Future<?> future) throws IOException {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IOException(LOG_PREFIX + ": unable to send " + fileName + ". " + e.getCause().getLocalizedMessage(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(LOG_PREFIX + ": interrupted while sending " + fileName, e);
+            }
+        }
+
+        /**
+         * This will send the last volume and wait
+         * until all the volumes have been sent
+         *
+         * @throws IOException if a volume couldn't be sent
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (volume == null) {
+                    volume = new byte[0];
+                }
+                submit(true);
+                for (Future<?> future : sent) {
+                    await(future);
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        /**
+         * This will stop sending without sending
+         * the volume that's being written
+         */
+        void abort() {
+            closed = true;
+            executor.shutdownNow();
+        }
+
+        /**
+         * @return the number of volumes the attachment has been split into
+         */
+        int getVolumes() {
+            return volumes;
+        }
     }
 
 }
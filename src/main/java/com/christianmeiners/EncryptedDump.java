@@ -0,0 +1,387 @@
+package com.christianmeiners;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * The encrypted format of a dump, for backups that
+ * must not be stored or sent in the clear.
+ *
+ * The dump is cut into frames of a fixed size that are encrypted
+ * with AES-GCM on their own, so they can be encrypted in parallel and
+ * any frame can be read without the ones before it:
+ * <pre>
+ * header   MB4JENC1, frame bytes (int), file id (8 random bytes)
+ * frame 0  ciphertext of frame bytes + 16 byte tag
+ * frame 1  ...
+ * last     ciphertext of the rest, possibly empty, + 16 byte tag
+ * </pre>
+ * The nonce of a frame is the file id followed by the frame number,
+ * and every frame authenticates the header and whether it's the last
+ * one. A reordered, altered or truncated file fails to decrypt.
+ */
+public class EncryptedDump {
+
+    public static final String SUFFIX = ".enc";
+    static final int FRAME_BYTES = 1024 * 1024;
+    private static final byte[] MAGIC = "MB4JENC1".getBytes(StandardCharsets.US_ASCII);
+    private static final int HEADER_BYTES = MAGIC.length + 4 + 8;
+    private static final int TAG_BYTES = 16;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private EncryptedDump() {
+    }
+
+    /**
+     * This will decode a base64 encoded AES key
+     *
+     * @param key the key of 16, 24 or 32 bytes in base64
+     * @return the key
+     * @throws IllegalArgumentException if it's not a valid key
+     */
+    public static SecretKeySpec parseKey(String key) {
+        byte[] bytes = Base64.getDecoder().decode(key.trim());
+        if (bytes.length != 16 && bytes.length != 24 && bytes.length != 32) {
+            throw new IllegalArgumentException("An AES key has 16, 24 or 32 bytes, not " + bytes.length);
+        }
+        return new SecretKeySpec(bytes, "AES");
+    }
+
+    /**
+     * @return a new random 256 bit key in base64
+     */
+    public static String generateKey() {
+        byte[] key = new byte[32];
+        RANDOM.nextBytes(key);
+        return Base64.getEncoder().encodeToString(key);
+    }
+
+    /**
+     * This will check whether a file starts
+     * with the header of an encrypted dump
+     *
+     * @param file the file
+     * @return boolean
+     * @throws IOException exception
+     */
+    public static boolean isEncrypted(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.length() < MAGIC.length) {
+                return false;
+            }
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            return Arrays.equals(magic, MAGIC);
+        }
+    }
+
+    /**
+     * This will open an encrypted dump for reading
+     *
+     * @param file the file
+     * @param key  the key in base64
+     * @return FrameReader
+     * @throws IOException if it's not an encrypted dump
+     */
+    public static FrameReader open(File file, String key) throws IOException {
+        return new FrameReader(file, parseKey(key));
+    }
+
+    private static Cipher newCipher(int mode, SecretKeySpec key, byte[] header, long frame, boolean last) throws IOException {
+        try {
+            byte[] nonce = new byte[12];
+            System.arraycopy(header, MAGIC.length + 4, nonce, 0, 8);
+            ByteBuffer.wrap(nonce, 8, 4).putInt((int) frame);
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(mode, key, new GCMParameterSpec(TAG_BYTES * 8, nonce));
+            cipher.updateAAD(header);
+            cipher.updateAAD(new byte[]{(byte) (last ? 1 : 0)});
+            return cipher;
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Unable to initialize AES-GCM", e);
+        }
+    }
+
+    /**
+     * The stream a dump is encrypted with. The frames are
+     * encrypted on the given executor and written in order; a few
+     * frames per thread may be waiting to be written. The encrypted
+     * dump is complete once the stream has been closed
+     */
+    static class FrameWriter extends OutputStream {
+
+        private final OutputStream out;
+        private final SecretKeySpec key;
+        private final ExecutorService executor;
+        private final BackupMetrics metrics;
+        private final int maxPending;
+        private final byte[] header = new byte[HEADER_BYTES];
+        private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+        private byte[] frame = new byte[FRAME_BYTES];
+        private int length;
+        private long frames;
+        private boolean closed;
+
+        /**
+         * @param out      the stream to write the encrypted dump to. It's closed with this one
+         * @param key      the key
+         * @param executor the threads that encrypt the frames. It's shut down on close
+         * @param threads  the number of threads of the executor
+         * @param metrics  the metrics the encryption is timed by
+         * @throws IOException exception
+         */
+        FrameWriter(OutputStream out, SecretKeySpec key, ExecutorService executor, int threads,
+                    BackupMetrics metrics) throws IOException {
+            this.out = out;
+            this.key = key;
+            this.executor = executor;
+            this.metrics = metrics;
+            this.maxPending = 2 * threads;
+
+            ByteBuffer buffer = ByteBuffer.wrap(header);
+            buffer.put(MAGIC).putInt(FRAME_BYTES);
+            byte[] fileId = new byte[8];
+            RANDOM.nextBytes(fileId);
+            buffer.put(fileId);
+            out.write(header);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            frame[length++] = (byte) b;
+            if (length == FRAME_BYTES) {
+                submit(false);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int count = Math.min(len, FRAME_BYTES - length);
+                System.arraycopy(b, off, frame, length, count);
+                length += count;
+                off += count;
+                len -= count;
+                if (length == FRAME_BYTES) {
+                    submit(false);
+                }
+            }
+        }
+
+        /**
+         * This will hand the current frame to the executor and
+         * write the oldest frames once too many are waiting
+         */
+        private void submit(boolean last) throws IOException {
+            if (frames > 0xffffffffL) {
+                throw new IOException("The dump is too large to be encrypted with " + FRAME_BYTES + " byte frames");
+            }
+            byte[] plain = frame;
+            int plainLength = length;
+            long number = frames++;
+            pending.add(executor.submit(() -> {
+                long start = System.nanoTime();
+                byte[] encrypted = newCipher(Cipher.ENCRYPT_MODE, key, header, number, last).doFinal(plain, 0, plainLength);
+                metrics.addStageNanos(BackupStage.ENCRYPTION, System.nanoTime() - start);
+                return encrypted;
+            }));
+            frame = new byte[FRAME_BYTES];
+            length = 0;
+
+            while (pending.size() > maxPending) {
+                writePending();
+            }
+        }
+
+        private void writePending() throws IOException {
+            try {
+                out.write(pending.poll().get());
+            } catch (ExecutionException e) {
+                throw new IOException("Unable to encrypt the dump", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while encrypting the dump", e);
+            }
+        }
+
+        /**
+         * This will encrypt the last frame and
+         * write the frames that are still pending
+         *
+         * @throws IOException exception
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                submit(true);
+                while (!pending.isEmpty()) {
+                    writePending();
+                }
+            } finally {
+                executor.shutdownNow();
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * The stream of an encrypted dump. Every frame is
+     * authenticated before its bytes are returned, and
+     * {@link #seek(long)} goes straight to the frame
+     * of a position
+     */
+    public static class FrameReader extends InputStream {
+
+        private final RandomAccessFile file;
+        private final SecretKeySpec key;
+        private final byte[] header = new byte[HEADER_BYTES];
+        private final int frameBytes;
+        private final long frames;
+        private final long length;
+        private long frame = -1;
+        private byte[] plain = new byte[0];
+        private int position;
+
+        private FrameReader(File file, SecretKeySpec key) throws IOException {
+            this.file = new RandomAccessFile(file, "r");
+            this.key = key;
+            try {
+                if (this.file.length() < HEADER_BYTES) {
+                    throw new IOException(file.getAbsolutePath() + " is not an encrypted dump");
+                }
+                this.file.readFully(header);
+                ByteBuffer buffer = ByteBuffer.wrap(header);
+                byte[] magic = new byte[MAGIC.length];
+                buffer.get(magic);
+                frameBytes = buffer.getInt();
+                if (!Arrays.equals(magic, MAGIC) || frameBytes <= 0) {
+                    throw new IOException(file.getAbsolutePath() + " is not an encrypted dump");
+                }
+
+                //every frame but the last one is full, and the
+                //last one has at least its tag
+                long body = this.file.length() - HEADER_BYTES;
+                long full = frameBytes + TAG_BYTES;
+                long rest = body % full;
+                if (rest < TAG_BYTES) {
+                    throw new IOException(file.getAbsolutePath() + " is truncated");
+                }
+                frames = body / full + 1;
+                length = (frames - 1) * frameBytes + rest - TAG_BYTES;
+            } catch (IOException e) {
+                this.file.close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return the length of the decrypted dump
+         */
+        public long length() {
+            return length;
+        }
+
+        /**
+         * This will continue reading at the given position of the
+         * decrypted dump. Only the frame of the position is decrypted
+         *
+         * @param position the position
+         * @throws IOException exception
+         */
+        public void seek(long position) throws IOException {
+            if (position < 0 || position > length) {
+                throw new IOException("The position " + position + " is outside the dump of " + length + " bytes");
+            }
+            long target = Math.min(position / frameBytes, frames - 1);
+            if (target != frame) {
+                load(target);
+            }
+            this.position = (int) (position - target * frameBytes);
+        }
+
+        private void load(long number) throws IOException {
+            boolean last = number == frames - 1;
+            int cipherLength = (int) (last ? file.length() - HEADER_BYTES - number * (frameBytes + TAG_BYTES) :
+                    frameBytes + TAG_BYTES);
+            byte[] encrypted = new byte[cipherLength];
+            file.seek(HEADER_BYTES + number * (frameBytes + TAG_BYTES));
+            file.readFully(encrypted);
+            try {
+                plain = newCipher(Cipher.DECRYPT_MODE, key, header, number, last).doFinal(encrypted);
+            } catch (AEADBadTagException e) {
+                throw new IOException("The frame " + number + " is corrupted or the key is wrong", e);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Unable to decrypt the frame " + number, e);
+            }
+            frame = number;
+            position = 0;
+        }
+
+        private boolean fill() throws IOException {
+            while (position == plain.length) {
+                if (frame == frames - 1) {
+                    return false;
+                }
+                load(frame + 1);
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? plain[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(len, plain.length - position);
+            System.arraycopy(plain, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if (n <= 0) {
+                return 0;
+            }
+            long current = frame < 0 ? 0 : frame * frameBytes + position;
+            long target = Math.min(length, current + n);
+            seek(target);
+            return target - current;
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.christianmeiners;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The journal of a resumable export.
+ *
+ * Every table is exported in chunks of primary key ranges. Once
+ * a chunk has been generated, its SQL is written to a part file and
+ * the chunk is appended to the journal together with the upper bound
+ * of its key range. Both are synced to disk before the next chunk
+ * starts, so after a failure an export can skip the completed tables
+ * and continue a table after its last committed chunk.
+ *
+ * The journal is a text file with one tab separated entry per line:
+ * <pre>
+ * database  shop
+ * snapshot  mysql-bin.000003:1234
+ * chunk     orders  0  (1000)
+ * chunk     orders  1  -
+ * </pre>
+ * The key of the last chunk of a table is "-". A line that
+ * hasn't been written completely is ignored.
+ */
+class ExportCheckpoint {
+
+    private static Logger logger = LoggerFactory.getLogger(ExportCheckpoint.class);
+
+    static final String UNKNOWN_SNAPSHOT = "unknown";
+    private static final String DATABASE = "database";
+    private static final String SNAPSHOT = "snapshot";
+    private static final String CHUNK = "chunk";
+    private static final String LAST_CHUNK = "-";
+
+    private final File journalFile;
+    private final File partDir;
+    private final String snapshot;
+    private final Map<String, Integer> chunks = new ConcurrentHashMap<>();
+    private final Map<String, String> lastKeys = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> completed = new ConcurrentHashMap<>();
+
+    private ExportCheckpoint(File journalFile, File partDir, String snapshot) {
+        this.journalFile = journalFile;
+        this.partDir = partDir;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * This will start a new journal for the database in the
+     * given directory. An existing journal of the database is deleted
+     *
+     * @param dir      the checkpoint directory
+     * @param database the database that's exported
+     * @param snapshot the binary log coordinates at the start of the export
+     * @return ExportCheckpoint
+     * @throws IOException exception
+     */
+    static ExportCheckpoint create(File dir, String database, String snapshot) throws IOException {
+        ExportCheckpoint checkpoint = new ExportCheckpoint(new File(dir, database + ".journal"), new File(dir, database), snapshot);
+        checkpoint.delete();
+        if (!checkpoint.partDir.mkdirs()) {
+            throw new IOException("Unable to create the checkpoint dir " + checkpoint.partDir.getAbsolutePath());
+        }
+        checkpoint.appendLine(DATABASE + "\t" + database);
+        checkpoint.appendLine(SNAPSHOT + "\t" + snapshot);
+        return checkpoint;
+    }
+
+    /**
+     * This will load the journal of the database from the given
+     * directory to resume the export that wrote it
+     *
+     * @param dir      the checkpoint directory
+     * @param database the database that's exported
+     * @return ExportCheckpoint or null if there is no journal of the database
+     * @throws IOException exception
+     */
+    static ExportCheckpoint resume(File dir, String database) throws IOException {
+        File journalFile = new File(dir, database + ".journal");
+        if (!journalFile.exists()) {
+            return null;
+        }
+
+        String content = new String(Files.readAllBytes(journalFile.toPath()), StandardCharsets.UTF_8);
+        //everything after the last line break is a torn write
+        String[] lines = content.substring(0, content.lastIndexOf('\n') + 1).split("\n");
+        String snapshot = UNKNOWN_SNAPSHOT;
+        String journalDatabase = null;
+        ExportCheckpoint checkpoint = null;
+        for (String line : lines) {
+            String[] fields = line.split("\t");
+            if (fields[0].equals(DATABASE) && fields.length == 2) {
+                journalDatabase = fields[1];
+            } else if (fields[0].equals(SNAPSHOT) && fields.length == 2) {
+                snapshot = fields[1];
+                checkpoint = new ExportCheckpoint(journalFile, new File(dir, database), snapshot);
+            } else if (fields[0].equals(CHUNK) && fields.length == 4 && checkpoint != null) {
+                checkpoint.chunks.put(fields[1], Integer.parseInt(fields[2]) + 1);
+                if (fields[3].equals(LAST_CHUNK)) {
+                    checkpoint.completed.put(fields[1], true);
+                    checkpoint.lastKeys.remove(fields[1]);
+                } else {
+                    checkpoint.lastKeys.put(fields[1], fields[3]);
+                }
+            }
+        }
+
+        if (checkpoint == null || !database.equals(journalDatabase)) {
+            logger.warn("The checkpoint journal " + journalFile.getAbsolutePath() + " is not a journal of " + database + ", it's ignored");
+            return null;
+        }
+        return checkpoint;
+    }
+
+    /**
+     * @return the binary log coordinates at the start of the export
+     */
+    String getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @param table the table
+     * @return true if all the chunks of the table have been committed
+     */
+    boolean isCompleted(String table) {
+        return completed.containsKey(table);
+    }
+
+    /**
+     * @param table the table
+     * @return the number of committed chunks of the table
+     */
+    int getChunks(String table) {
+        return chunks.getOrDefault(table, 0);
+    }
+
+    /**
+     * @param table the table
+     * @return the upper bound of the last committed chunk of the
+     * table as a row constructor of SQL literals, or null if no chunk has been committed
+     */
+    String getLastKey(String table) {
+        return lastKeys.get(table);
+    }
+
+    /**
+     * This will write the SQL of a chunk to its part file
+     * and add the chunk to the journal
+     *
+     * @param table the table of the chunk
+     * @param chunk the index of the chunk in the table
+     * @param key   the upper bound of the chunk as a row constructor of SQL
+     *              literals, or null if it's the last chunk of the table
+     * @param sql   the SQL of the chunk
+     * @throws IOException exception
+     */
+    void commit(String table, int chunk, String key, SpillableBuffer sql) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(getPartFile(table, chunk))) {
+            sql.writeTo(out);
+            out.flush();
+            out.getFD().sync();
+        }
+        appendLine(CHUNK + "\t" + table + "\t" + chunk + "\t" + (key == null ? LAST_CHUNK : key));
+
+        chunks.put(table, chunk + 1);
+        if (key == null) {
+            completed.put(table, true);
+            lastKeys.remove(table);
+        } else {
+            lastKeys.put(table, key);
+        }
+    }
+
+    /**
+     * This will append the SQL of all the committed
+     * chunks of the table to the given buffer
+     *
+     * @param table the table
+     * @param sql   the buffer
+     */
+    void appendTo(String table, SpillableBuffer sql) {
+        for (int chunk = 0; chunk < getChunks(table); chunk++) {
+            sql.append(getPartFile(table, chunk));
+        }
+    }
+
+    private File getPartFile(String table, int chunk) {
+        return new File(partDir, table + "." + chunk + ".sql");
+    }
+
+    private synchronized void appendLine(String line) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+            out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * This will delete the journal and the part files
+     */
+    void delete() {
+        File[] parts = partDir.listFiles();
+        if (parts != null) {
+            for (File part : parts) {
+                part.delete();
+            }
+        }
+        partDir.delete();
+        journalFile.delete();
+        logger.debug("checkpoint " + journalFile.getAbsolutePath() + " deleted");
+    }
+}
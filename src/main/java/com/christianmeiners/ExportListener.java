@@ -0,0 +1,22 @@
+package com.christianmeiners;
+
+/**
+ * Callback interface for following the progress of
+ * {@link MysqlExportService#export()}.
+ * With EXPORT_WORKERS or the MysqlBackupOrchestrator, the
+ * methods are invoked concurrently from the worker threads, so
+ * implementations must be thread safe and should return quickly.
+ * onProgress() is called once per batch of rows, not per row.
+ */
+public interface ExportListener {
+
+    default void onExportStarted(String database, BackupMetrics metrics) {}
+
+    default void onTableStarted(String table, BackupMetrics metrics) {}
+
+    default void onProgress(String table, BackupMetrics metrics) {}
+
+    default void onTableCompleted(String table, BackupMetrics metrics) {}
+
+    default void onExportCompleted(BackupMetrics metrics) {}
+}
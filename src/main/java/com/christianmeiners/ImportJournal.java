@@ -0,0 +1,237 @@
+package com.christianmeiners;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * The journal of a resumable import.
+ *
+ * The executable chunks of a dump are numbered in the order
+ * they're read. Before a batch is executed its chunks are appended to
+ * the journal as pending, and once it has been executed as applied. The
+ * journal is synced to disk each time. A resumed import of the same dump
+ * skips the applied chunks. A chunk that's pending but not applied may or
+ * may not have been executed when the import stopped.
+ *
+ * The journal is a text file with one tab separated entry per line:
+ * <pre>
+ * dump     1a2b3c4d  179620
+ * cleared
+ * pending  0
+ * pending  1
+ * section  0
+ * section  1
+ * </pre>
+ * The dump is identified by the CRC32 and the length of the SQL. A dump
+ * file isn't read for it: it's identified by samples of the file as it's
+ * stored and its size. "cleared" is written once the existing tables have
+ * been dropped or emptied. A line that hasn't been written completely is ignored.
+ */
+class ImportJournal {
+
+    private static Logger logger = LoggerFactory.getLogger(ImportJournal.class);
+
+    private static final String DUMP = "dump";
+    private static final String CLEARED = "cleared";
+    private static final String SECTION = "section";
+    private static final String PENDING = "pending";
+    private static final int CRC_BLOCK_CHARS = 64 * 1024;
+    private static final int SAMPLE_BYTES = 64 * 1024;
+    private static final int SAMPLES = 3;
+
+    private final File file;
+    private final Set<Integer> applied = new HashSet<>();
+    private final Set<Integer> pending = new HashSet<>();
+    private boolean cleared;
+    private boolean resumed;
+
+    private ImportJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * This will open the journal of the dump with the given
+     * identity, see {@link #getDumpId(String)}. Without resume,
+     * or if there is no journal yet, a new one is started
+     *
+     * @param file   the journal file
+     * @param dumpId the identity of the dump that's imported
+     * @param resume whether to continue an existing journal
+     * @return ImportJournal or null if the existing journal belongs to a different dump
+     * @throws IOException exception
+     */
+    static ImportJournal openDump(File file, String dumpId, boolean resume) throws IOException {
+        ImportJournal journal = new ImportJournal(file);
+        String fingerprint = DUMP + "\t" + dumpId;
+        if (resume && file.exists()) {
+            String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            //everything after the last line break is a torn write
+            String[] lines = content.substring(0, content.lastIndexOf('\n') + 1).split("\n");
+            if (!lines[0].isEmpty()) {
+                if (!lines[0].equals(fingerprint)) {
+                    return null;
+                }
+                for (String line : lines) {
+                    String[] fields = line.split("\t");
+                    if (fields[0].equals(CLEARED)) {
+                        journal.cleared = true;
+                    } else if (fields[0].equals(SECTION) && fields.length == 2) {
+                        journal.applied.add(Integer.parseInt(fields[1]));
+                    } else if (fields[0].equals(PENDING) && fields.length == 2) {
+                        journal.pending.add(Integer.parseInt(fields[1]));
+                    }
+                }
+                journal.resumed = true;
+                logger.debug("resuming the import journal " + file.getAbsolutePath() + " after " + journal.applied.size() + " sections");
+                return journal;
+            }
+        }
+
+        Files.deleteIfExists(file.toPath());
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        journal.append(fingerprint + "\n");
+        return journal;
+    }
+
+    /**
+     * @param sql the dump
+     * @return the CRC32 and the length of the dump
+     */
+    static String getDumpId(String sql) {
+        return fingerprint(sql) + "\t" + sql.length();
+    }
+
+    /**
+     * This will identify a dump file without reading it as a whole,
+     * so that it's only read once by the import. The blocks at the start,
+     * in the middle and at the end of the file are sampled. The start
+     * has the export date in the header of a plain dump and the random
+     * file id of an encrypted one, so a different dump of the same size
+     * gets a different identity
+     *
+     * @param file the dump file, as it's stored
+     * @return the CRC32 of the samples and the length in bytes of the file
+     * @throws IOException exception
+     */
+    static String getDumpId(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        long length;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            length = in.length();
+            byte[] sample = new byte[(int) Math.min(length, SAMPLE_BYTES)];
+            for (int i = 0; i < SAMPLES; i++) {
+                in.seek((length - sample.length) * i / (SAMPLES - 1));
+                in.readFully(sample);
+                crc.update(sample);
+            }
+        }
+        return Long.toHexString(crc.getValue()) + "\t" + length;
+    }
+
+    private static String fingerprint(String sql) {
+        CRC32 crc = new CRC32();
+        for (int start = 0; start < sql.length(); start += CRC_BLOCK_CHARS) {
+            crc.update(sql.substring(start, Math.min(sql.length(), start + CRC_BLOCK_CHARS)).getBytes(StandardCharsets.UTF_8));
+        }
+        return Long.toHexString(crc.getValue());
+    }
+
+    /**
+     * @return true if the journal has been written by a previous import
+     */
+    boolean isResumed() {
+        return resumed;
+    }
+
+    /**
+     * @return true if the existing tables have already been dropped or emptied
+     */
+    boolean isCleared() {
+        return cleared;
+    }
+
+    /**
+     * @param section the index of the chunk in the dump
+     * @return true if the chunk has already been executed
+     */
+    boolean isApplied(int section) {
+        return applied.contains(section);
+    }
+
+    /**
+     * @param section the index of the chunk in the dump
+     * @return true if the chunk was being executed when the previous
+     * import stopped, so it may or may not have been applied
+     */
+    boolean isPending(int section) {
+        return pending.contains(section) && !applied.contains(section);
+    }
+
+    void markCleared() throws IOException {
+        append(CLEARED + "\n");
+        cleared = true;
+    }
+
+    /**
+     * This will add the chunks that are about to be executed to the journal
+     *
+     * @param sections the indexes of the chunks in the dump
+     * @throws IOException exception
+     */
+    void markPending(List<Integer> sections) throws IOException {
+        append(PENDING, sections);
+        pending.addAll(sections);
+    }
+
+    /**
+     * This will add the executed chunks to the journal
+     *
+     * @param sections the indexes of the chunks in the dump
+     * @throws IOException exception
+     */
+    void markApplied(List<Integer> sections) throws IOException {
+        append(SECTION, sections);
+        applied.addAll(sections);
+    }
+
+    private void append(String entry, List<Integer> sections) throws IOException {
+        if (sections.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        for (int section : sections) {
+            lines.append(entry).append("\t").append(section).append("\n");
+        }
+        append(lines.toString());
+    }
+
+    private void append(String lines) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(lines.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            out.getFD().sync();
+        }
+    }
+
+    /**
+     * This will delete the journal
+     */
+    void delete() {
+        boolean res = file.delete();
+        logger.debug("import journal " + file.getAbsolutePath() + " deleted successfully? " + res);
+    }
+}
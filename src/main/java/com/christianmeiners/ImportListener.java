@@ -0,0 +1,17 @@
+package com.christianmeiners;
+
+/**
+ * Callback interface for following the progress of
+ * {@link MysqlImportService#importDatabase()}.
+ * The imports of importDatabases() share the listener and
+ * invoke it concurrently from their threads, so implementations
+ * must be thread safe and should return quickly.
+ */
+public interface ImportListener {
+
+    default void onImportStarted(String database, BackupMetrics metrics) {}
+
+    default void onProgress(BackupMetrics metrics) {}
+
+    default void onImportCompleted(BackupMetrics metrics) {}
+}
@@ -0,0 +1,147 @@
+package com.christianmeiners;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A dump that has been read and split into its executable
+ * chunks once, so that it can be imported into many databases
+ * without reading, decrypting, unzipping and splitting it again for
+ * every one of them, see {@link MysqlImportService#setImportPlan(ImportPlan)}
+ * and {@link MysqlImportService#importDatabases(List, int)}.
+ *
+ * A plan is immutable and can be shared by concurrent imports.
+ * It holds the chunks of the whole dump in memory. If the database
+ * the dump has been exported from is given, the chunks that qualify
+ * names with it, e.g. views and routines, are found while parsing and
+ * rewritten to the database that's imported into.
+ */
+public final class ImportPlan {
+
+    private final List<String> chunks;
+    private final BitSet qualified;
+    private final String sourceDatabase;
+    private final int tableDumps;
+    private final long rawBytes;
+    private final String dumpId;
+
+    private ImportPlan(List<String> chunks, BitSet qualified, String sourceDatabase, int tableDumps, long rawBytes,
+                       String dumpId) {
+        this.chunks = Collections.unmodifiableList(chunks);
+        this.qualified = qualified;
+        this.sourceDatabase = sourceDatabase;
+        this.tableDumps = tableDumps;
+        this.rawBytes = rawBytes;
+        this.dumpId = dumpId;
+    }
+
+    /**
+     * This will split the sql into its chunks
+     *
+     * @param sql            the dump
+     * @param sourceDatabase the database the dump has been exported from. Can be null if
+     *                       the names don't have to be rewritten
+     * @return ImportPlan
+     */
+    public static ImportPlan parse(String sql, String sourceDatabase) {
+        List<String> chunks = new ArrayList<>();
+        BitSet qualified = new BitSet();
+        String qualifier = sourceDatabase == null || sourceDatabase.isEmpty() ? null : "`" + sourceDatabase + "`.";
+        int tableDumps = 0;
+        SqlChunkReader reader = new SqlChunkReader(sql);
+        String chunk;
+        while ((chunk = reader.next()) != null) {
+            if (qualifier != null && chunk.contains(qualifier)) {
+                qualified.set(chunks.size());
+            }
+            if (MysqlImportService.isTableDump(chunk)) {
+                tableDumps++;
+            }
+            chunks.add(chunk);
+        }
+        return new ImportPlan(chunks, qualified, qualifier == null ? null : sourceDatabase, tableDumps,
+                MysqlBaseService.utf8Length(sql), ImportJournal.getDumpId(sql));
+    }
+
+    /**
+     * This will read the dump file and split it into its chunks.
+     * It can be zipped and encrypted like the file of
+     * {@link MysqlImportService#setSqlFile(File)}, but not a
+     * {@link BinaryDump}, which is streamed by every import
+     *
+     * @param sqlFile        the dump file
+     * @param encryptionKey  the key of an encrypted file. Can be null
+     * @param sourceDatabase the database the dump has been exported from. Can be null if
+     *                       the names don't have to be rewritten
+     * @return ImportPlan
+     * @throws IOException exception
+     */
+    public static ImportPlan parse(File sqlFile, String encryptionKey, String sourceDatabase) throws IOException {
+        try (InputStream in = MysqlImportService.openSqlFile(sqlFile, encryptionKey)) {
+            if (BinaryDump.isBinaryDump(in)) {
+                throw new IOException(sqlFile.getAbsolutePath() + " is a binary dump, import it with setSqlFile()");
+            }
+            return parse(MysqlImportService.readSql(in), sourceDatabase);
+        }
+    }
+
+    /**
+     * This will return a chunk of the dump with the
+     * names of the source database rewritten to the
+     * given database
+     *
+     * @param index    the index of the chunk
+     * @param database the database that's imported into. Can be null
+     * @return String or null if there are no more chunks
+     */
+    String getChunk(int index, String database) {
+        if (index >= chunks.size()) {
+            return null;
+        }
+        String chunk = chunks.get(index);
+        if (qualified.get(index) && database != null && !database.isEmpty() && !database.equals(sourceDatabase)) {
+            return chunk.replace("`" + sourceDatabase + "`.", "`" + database + "`.");
+        }
+        return chunk;
+    }
+
+    /**
+     * @return the number of chunks
+     */
+    public int size() {
+        return chunks.size();
+    }
+
+    /**
+     * @return the database the dump has been exported from, or null if it's not known
+     */
+    public String getSourceDatabase() {
+        return sourceDatabase;
+    }
+
+    int getTableDumps() {
+        return tableDumps;
+    }
+
+    long getRawBytes() {
+        return rawBytes;
+    }
+
+    /**
+     * @return the identity of the dump in an {@link ImportJournal}
+     */
+    String getDumpId() {
+        return dumpId;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportPlan{chunks=" + chunks.size() + ", tables=" + tableDumps + ", bytes=" + rawBytes +
+                ", sourceDatabase=" + sourceDatabase + ", rewritten chunks=" + qualified.cardinality() + "}";
+    }
+}
@@ -0,0 +1,224 @@
+package com.christianmeiners;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * This splits the insert statement of a table insert chunk into
+ * statements of at most a given number of bytes in UTF-8.
+ *
+ * Older dumps insert all the rows of a table with a single
+ * statement, which can be larger than the max_allowed_packet of the
+ * server. The chunk is fed one character at a time, so it's never
+ * held as a whole: once a statement would grow beyond the limit, the
+ * rows before the current one are cut off as a statement of their own
+ * and the current row continues a new statement with the same
+ * INSERT INTO ... VALUES head. A single row that's larger than the
+ * limit is a statement of its own.
+ *
+ * The rows are found by their parentheses outside of quoted strings,
+ * where a backslash escapes the next character, the same way the server
+ * parses them, and outside of comment lines. They start after the VALUES
+ * keyword. Other chunks, e.g. the create statements and routines, are
+ * passed through as they are.
+ */
+class InsertSplitter {
+
+    static final String INSERT_PATTERN = MysqlBaseService.SQL_START_PATTERN + " table insert";
+    private static final String VALUES = "VALUES";
+
+    private static final int HEAD = 0;
+    private static final int ROWS = 1;
+    private static final int TAIL = 2;
+    private static final int PASS = 3;
+
+    private final long maxStatementBytes;
+    private final Deque<String> statements = new ArrayDeque<>();
+    private final StringBuilder sql = new StringBuilder();
+    private long bytes;
+    private int state;
+    private char quote;
+    private boolean escaped;
+    private boolean comment;
+    private int depth;
+    private boolean keyword;
+    private boolean values;
+    private String head;
+    private long headBytes;
+    private int rowStart;
+    private long rowStartBytes;
+    private int lastRowEnd;
+
+    /**
+     * @param maxStatementBytes the maximum size of a statement in UTF-8
+     */
+    InsertSplitter(long maxStatementBytes) {
+        this.maxStatementBytes = maxStatementBytes;
+        reset();
+    }
+
+    /**
+     * This will split the chunk if it's a table
+     * insert that's larger than the limit
+     *
+     * @param chunk             an executable chunk of a dump
+     * @param maxStatementBytes the maximum size of a statement in UTF-8
+     * @return the statements of the chunk
+     */
+    static List<String> split(String chunk, long maxStatementBytes) {
+        //a character takes at most 3 bytes in UTF-8
+        if (chunk.length() * 3L <= maxStatementBytes || !chunk.startsWith(INSERT_PATTERN)) {
+            return Collections.singletonList(chunk);
+        }
+        InsertSplitter splitter = new InsertSplitter(maxStatementBytes);
+        for (int i = 0; i < chunk.length(); i++) {
+            splitter.append(chunk.charAt(i));
+        }
+        splitter.finish(0);
+        return new ArrayList<>(splitter.statements);
+    }
+
+    /**
+     * This will add the next character of the chunk
+     *
+     * @param c the character
+     */
+    void append(char c) {
+        sql.append(c);
+        bytes += MysqlBaseService.utf8Length(c);
+        if (state == PASS || state == TAIL) {
+            return;
+        }
+        if (sql.length() <= INSERT_PATTERN.length()) {
+            if (c != INSERT_PATTERN.charAt(sql.length() - 1)) {
+                state = PASS;
+            } else if (sql.length() == INSERT_PATTERN.length()) {
+                //the pattern starts the comment line of the chunk
+                comment = true;
+            }
+            return;
+        }
+        if (comment) {
+            comment = c != '\n';
+            return;
+        }
+
+        //VALUES is only a keyword if it's followed by a space or the first row
+        if (keyword) {
+            keyword = false;
+            values = Character.isWhitespace(c) || c == '(';
+        }
+
+        if (quote != 0) {
+            if (escaped) {
+                escaped = false;
+            } else if (c == '\\' && quote != '`') {
+                escaped = true;
+            } else if (c == quote) {
+                quote = 0;
+            }
+        } else if (c == '\'' || c == '"' || c == '`') {
+            quote = c;
+        } else if (c == '(') {
+            if (depth++ == 0 && values) {
+                if (head == null) {
+                    head = sql.substring(0, sql.length() - 1);
+                    headBytes = bytes - 1;
+                    state = ROWS;
+                }
+                rowStart = sql.length() - 1;
+                rowStartBytes = bytes - 1;
+            }
+        } else if (c == ')') {
+            if (--depth == 0 && state == ROWS) {
+                lastRowEnd = sql.length();
+            }
+        } else if (depth == 0 && state == ROWS && c == ';') {
+            state = TAIL;
+            return;
+        } else if (depth == 0 && state == HEAD && c == '-' && isCommentStart()) {
+            comment = true;
+        } else if (depth == 0 && state == HEAD && !values && (c == 'S' || c == 's')) {
+            keyword = endsWithValues();
+        }
+
+        if (state == ROWS && bytes > maxStatementBytes && lastRowEnd > 0 && rowStart > lastRowEnd) {
+            cut();
+        }
+    }
+
+    /**
+     * @return whether the line that's read starts with --
+     */
+    private boolean isCommentStart() {
+        int length = sql.length();
+        return length >= 2 && sql.charAt(length - 2) == '-' && (length == 2 || sql.charAt(length - 3) == '\n');
+    }
+
+    /**
+     * @return whether the last characters are VALUES after a space, a backtick or the column list
+     */
+    private boolean endsWithValues() {
+        int start = sql.length() - VALUES.length();
+        if (start < 1 || !sql.substring(start).equalsIgnoreCase(VALUES)) {
+            return false;
+        }
+        char before = sql.charAt(start - 1);
+        return Character.isWhitespace(before) || before == ')' || before == '`';
+    }
+
+    /**
+     * This will end the statement after the last complete row
+     * and continue the current row in a new statement
+     */
+    private void cut() {
+        statements.add(sql.substring(0, lastRowEnd) + ";\n");
+        String row = sql.substring(rowStart);
+        long rowBytes = bytes - rowStartBytes;
+        sql.setLength(0);
+        sql.append(head).append(row);
+        bytes = headBytes + rowBytes;
+        rowStart = head.length();
+        rowStartBytes = headBytes;
+        lastRowEnd = -1;
+    }
+
+    /**
+     * This will end the chunk. Its last statement
+     * can be taken with poll() then
+     *
+     * @param trailingChars the number of characters at the end that don't belong to the chunk
+     */
+    void finish(int trailingChars) {
+        sql.setLength(sql.length() - trailingChars);
+        statements.add(sql.toString());
+        reset();
+    }
+
+    /**
+     * @return the next complete statement or null if there is none yet
+     */
+    String poll() {
+        return statements.poll();
+    }
+
+    private void reset() {
+        sql.setLength(0);
+        bytes = 0;
+        state = HEAD;
+        quote = 0;
+        escaped = false;
+        comment = false;
+        depth = 0;
+        keyword = false;
+        values = false;
+        head = null;
+        headBytes = 0;
+        rowStart = -1;
+        rowStartBytes = 0;
+        lastRowEnd = -1;
+    }
+}
@@ -0,0 +1,183 @@
+package com.christianmeiners;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * This polls the load of the server on a side connection
+ * and tells the export or import to slow down or pause
+ * when Threads_running, the replica lag or the InnoDB history
+ * length cross the configured thresholds.
+ * A threshold of zero or less disables the respective check.
+ * If the load can't be polled, e.g. the side connection has
+ * died, the batches are no longer held up.
+ */
+class LoadMonitor implements AutoCloseable {
+
+    private static Logger logger = LoggerFactory.getLogger(LoadMonitor.class);
+    private final String LOG_PREFIX = "java-mysql-exporter";
+
+    /**
+     * Above this fraction of a threshold
+     * batches are delayed, at or above 1 they are paused
+     */
+    private static final double SLOWDOWN_RATIO = 0.75;
+    private static final long MAX_SLOWDOWN_MILLIS = 250;
+
+    private final Connection connection;
+    private final long maxThreadsRunning;
+    private final long maxReplicaLagSeconds;
+    private final long maxHistoryLength;
+    private final long pollMillis;
+    private final BooleanSupplier cancelled;
+    private final ScheduledExecutorService scheduler;
+    private volatile double loadRatio;
+    private volatile String loadDescription = "";
+    private boolean replicaStatusSupported = true;
+
+    /**
+     * @param connection           the side connection, it's closed with the monitor
+     * @param maxThreadsRunning    the threshold of Threads_running
+     * @param maxReplicaLagSeconds the threshold of the replica lag
+     * @param maxHistoryLength     the threshold of the InnoDB history length
+     * @param pollMillis           the interval of the polls
+     * @param cancelled            whether the export or import has been cancelled, which ends a pause
+     */
+    LoadMonitor(Connection connection, long maxThreadsRunning, long maxReplicaLagSeconds,
+                long maxHistoryLength, long pollMillis, BooleanSupplier cancelled) {
+        this.connection = connection;
+        this.cancelled = cancelled;
+        this.maxThreadsRunning = maxThreadsRunning;
+        this.maxReplicaLagSeconds = maxReplicaLagSeconds;
+        this.maxHistoryLength = maxHistoryLength;
+        this.pollMillis = pollMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "mysql-backup4j-load-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * This will do a first poll synchronously and
+     * then keep polling in the background
+     *
+     * @return LoadMonitor
+     */
+    LoadMonitor start() {
+        poll();
+        scheduler.scheduleWithFixedDelay(this::poll, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * This is called once per batch. It will return immediately
+     * while the server is healthy, sleep a little when the load
+     * is getting close to a threshold and block while a threshold
+     * is exceeded
+     */
+    void awaitHealthy() {
+        if (loadRatio >= 1) {
+            logger.info(LOG_PREFIX + ": pausing because the server is overloaded: " + loadDescription);
+            long pausedAt = System.nanoTime();
+            while (loadRatio >= 1 && !cancelled.getAsBoolean() && !Thread.currentThread().isInterrupted()) {
+                sleep(pollMillis);
+            }
+            logger.info(LOG_PREFIX + ": resuming after " +
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pausedAt) + "ms: " + loadDescription);
+        } else if (loadRatio > SLOWDOWN_RATIO) {
+            sleep((long) ((loadRatio - SLOWDOWN_RATIO) / (1 - SLOWDOWN_RATIO) * MAX_SLOWDOWN_MILLIS));
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * This will query the configured metrics and
+     * update the load ratio, i.e. the highest observed
+     * value relative to its threshold
+     */
+    private void poll() {
+        double ratio = 0;
+        StringBuilder description = new StringBuilder();
+        try (Statement stmt = connection.createStatement()) {
+
+            if (maxThreadsRunning > 0) {
+                try (ResultSet rs = stmt.executeQuery("SHOW GLOBAL STATUS LIKE 'Threads_running'")) {
+                    if (rs.next()) {
+                        long threadsRunning = rs.getLong(2);
+                        ratio = Math.max(ratio, (double) threadsRunning / maxThreadsRunning);
+                        description.append("Threads_running=").append(threadsRunning).append(" ");
+                    }
+                }
+            }
+
+            if (maxReplicaLagSeconds > 0 && replicaStatusSupported) {
+                try (ResultSet rs = stmt.executeQuery("SHOW SLAVE STATUS")) {
+                    if (rs.next()) {
+                        long lag = rs.getLong("Seconds_Behind_Master");
+                        //NULL means replication is broken or stopped
+                        if (rs.wasNull()) {
+                            lag = maxReplicaLagSeconds;
+                        }
+                        ratio = Math.max(ratio, (double) lag / maxReplicaLagSeconds);
+                        description.append("Seconds_Behind_Master=").append(lag).append(" ");
+                    }
+                } catch (SQLException e) {
+                    logger.debug(LOG_PREFIX + ": replica lag is not available and will not be monitored: " + e.getLocalizedMessage());
+                    replicaStatusSupported = false;
+                }
+            }
+
+            if (maxHistoryLength > 0) {
+                try (ResultSet rs = stmt.executeQuery("SELECT `COUNT` FROM information_schema.INNODB_METRICS WHERE NAME = 'trx_rseg_history_len'")) {
+                    if (rs.next()) {
+                        long historyLength = rs.getLong(1);
+                        ratio = Math.max(ratio, (double) historyLength / maxHistoryLength);
+                        description.append("trx_rseg_history_len=").append(historyLength).append(" ");
+                    }
+                }
+            }
+
+        } catch (SQLException e) {
+            //fail open, a pause would otherwise never end
+            if (loadRatio > 0) {
+                logger.warn(LOG_PREFIX + ": unable to poll server load, continuing without the load checks: " +
+                        e.getLocalizedMessage());
+            } else {
+                logger.debug(LOG_PREFIX + ": unable to poll server load: " + e.getLocalizedMessage());
+            }
+            loadRatio = 0;
+            loadDescription = "unknown";
+            return;
+        }
+
+        loadRatio = ratio;
+        loadDescription = description.toString().trim();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.debug(LOG_PREFIX + ": unable to close load monitor connection: " + e.getLocalizedMessage());
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.christianmeiners;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A sink that writes the dump file to a local directory,
+ * e.g. a mounted network share. The file is written as
+ * name.partial, synced and then renamed.
+ */
+public class LocalFileSink implements BackupSink {
+
+    private final File dir;
+
+    /**
+     * @param dir the directory. It's created if it doesn't exist
+     */
+    public LocalFileSink(File dir) {
+        this.dir = dir;
+    }
+
+    @Override
+    public Upload open(String fileName) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create the dir " + dir.getAbsolutePath());
+        }
+        File file = new File(dir, fileName);
+        File partial = new File(dir, fileName + ".partial");
+        FileOutputStream out = new FileOutputStream(partial);
+        return new Upload() {
+
+            private boolean closed;
+
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    out.getFD().sync();
+                } finally {
+                    out.close();
+                }
+                Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            @Override
+            public void abort() {
+                closed = true;
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    //the file is deleted anyway
+                }
+                partial.delete();
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return dir.getAbsolutePath();
+    }
+}
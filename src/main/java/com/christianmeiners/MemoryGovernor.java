@@ -0,0 +1,98 @@
+package com.christianmeiners;
+
+/**
+ * This keeps the buffers of an export within a heap budget.
+ *
+ * Half of the budget is for the dump, the other half is shared by
+ * the workers for their table sections and their fetched rows. The
+ * bytes per row are tracked while the rows are encoded, so the fetch
+ * size follows the width of the rows: narrow tables are fetched in
+ * large batches, wide ones in small batches or streamed row by row.
+ *
+ * The budget is counted in bytes, with two bytes per buffered character.
+ */
+class MemoryGovernor {
+
+    private static final double ROW_WEIGHT = 0.2;
+    private static final int MIN_FETCH_SIZE = 10;
+    private static final int MAX_FETCH_SIZE = 100000;
+
+    private final long budgetBytes;
+    private final int workers;
+    private volatile double bytesPerRow;
+
+    /**
+     * @param budgetBytes the heap budget of the export
+     * @param workers     the number of tables that are exported concurrently
+     */
+    MemoryGovernor(long budgetBytes, int workers) {
+        this.budgetBytes = budgetBytes;
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * @return the number of characters of the dump kept in memory
+     */
+    long getDumpChars() {
+        return budgetBytes / 2 / 2;
+    }
+
+    /**
+     * @return the number of characters of a table section kept in memory
+     */
+    long getSectionChars() {
+        return getWorkerBytes() * 3 / 4 / 2;
+    }
+
+    private long getWorkerBytes() {
+        return budgetBytes / 2 / workers;
+    }
+
+    private long getFetchBytes() {
+        return getWorkerBytes() / 4;
+    }
+
+    /**
+     * This will return the fetch size for the next table
+     *
+     * @param estimatedTableBytes the estimated size of the table. -1 if it's unknown
+     * @param cursorFetch         whether the driver fetches in batches of the fetch size (useCursorFetch=true).
+     *                            Otherwise a result set is either buffered completely or streamed row by row
+     * @return the fetch size, Integer.MIN_VALUE to stream the rows
+     */
+    int getFetchSize(long estimatedTableBytes, boolean cursorFetch) {
+        if (cursorFetch) {
+            return getCursorFetchSize();
+        }
+        //without cursor fetch the driver buffers the whole result
+        //set unless it's streamed, so only small tables are buffered
+        return estimatedTableBytes >= 0 && estimatedTableBytes <= getFetchBytes() ? 0 : Integer.MIN_VALUE;
+    }
+
+    /**
+     * This will add the size of a batch of encoded rows
+     * to the average row size
+     *
+     * @param rows  the number of rows
+     * @param chars the number of characters they have been encoded to
+     */
+    void observe(long rows, long chars) {
+        if (rows <= 0) {
+            return;
+        }
+        double observed = (double) chars / rows;
+        bytesPerRow = bytesPerRow == 0 ? observed : ROW_WEIGHT * observed + (1 - ROW_WEIGHT) * bytesPerRow;
+    }
+
+    /**
+     * @return the fetch size that keeps the fetched rows of
+     * a worker within its share of the budget
+     */
+    int getCursorFetchSize() {
+        if (bytesPerRow == 0) {
+            return MIN_FETCH_SIZE * 10;
+        }
+        //the encoded rows are used as the estimate of the fetched rows
+        return (int) Math.max(MIN_FETCH_SIZE, Math.min(MAX_FETCH_SIZE, getFetchBytes() / (bytesPerRow * 2)));
+    }
+}
@@ -0,0 +1,307 @@
+package com.christianmeiners;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * This backs up many databases of one server in a single run.
+ *
+ * The databases are either listed in {@link #DATABASES} or
+ * matched by {@link #SCHEMA_PATTERN}. All the databases share one
+ * connection pool and the tables of all of them are scheduled on one
+ * worker pool, so {@link #MAX_CONNECTIONS} is a global limit.
+ * The writes to disk and the compressions are bounded globally by
+ * {@link #MAX_DISK_BYTES_PER_SECOND} and {@link #MAX_COMPRESSION_THREADS}.
+ *
+ * Every other property is handed over to the {@link MysqlExportService}
+ * of each database, e.g. the email and zip settings. The outputs of each
+ * database are written to a sub folder of {@link MysqlExportService#TEMP_DIR}
+ * named after the database.
+ */
+public class MysqlBackupOrchestrator {
+
+    private Logger logger = LoggerFactory.getLogger(getClass());
+    private final String LOG_PREFIX = "java-mysql-exporter";
+
+    public static final String DATABASES = "DATABASES";
+    public static final String SCHEMA_PATTERN = "SCHEMA_PATTERN";
+    public static final String MAX_CONNECTIONS = "MAX_CONNECTIONS";
+    public static final String MAX_DISK_BYTES_PER_SECOND = "MAX_DISK_BYTES_PER_SECOND";
+    public static final String MAX_COMPRESSION_THREADS = "MAX_COMPRESSION_THREADS";
+
+    private static final int DEFAULT_MAX_CONNECTIONS = 8;
+    private static final List<String> SYSTEM_SCHEMAS = Arrays.asList("mysql", "information_schema", "performance_schema", "sys");
+
+    private final Properties properties;
+    private ExportListener exportListener;
+    private final Map<String, Throwable> failures = new ConcurrentHashMap<>();
+
+    public MysqlBackupOrchestrator(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * This function will check if the required minimum
+     * properties are set
+     *
+     * @return bool
+     */
+    private boolean isValidateProperties() {
+        return properties != null &&
+                properties.containsKey(MysqlExportService.DB_USERNAME) &&
+                properties.containsKey(MysqlExportService.DB_PASSWORD) &&
+                (properties.containsKey(DATABASES) || properties.containsKey(SCHEMA_PATTERN));
+    }
+
+    /**
+     * This is the entry point. It will export every database
+     * and wait for all of them to finish. A failure of one database
+     * does not stop the others, see getFailures().
+     *
+     * @return the export services of the databases that were exported successfully
+     * @throws SQLException exception
+     */
+    public Map<String, MysqlExportService> export() throws SQLException {
+
+        failures.clear();
+        if (!isValidateProperties()) {
+            logger.error("Invalid config properties: The config properties is missing important parameters: DB_USERNAME, DB_PASSWORD and DATABASES or SCHEMA_PATTERN");
+            return Collections.emptyMap();
+        }
+
+        int maxConnections = Integer.parseInt(properties.getProperty(MAX_CONNECTIONS, String.valueOf(DEFAULT_MAX_CONNECTIONS)));
+        int maxCompressions = Integer.parseInt(properties.getProperty(MAX_COMPRESSION_THREADS, String.valueOf(maxConnections)));
+        RateLimiter diskRateLimiter = RateLimiter.create(Double.parseDouble(properties.getProperty(MAX_DISK_BYTES_PER_SECOND, "0")));
+        Semaphore compressionPermits = new Semaphore(maxCompressions, true);
+
+        String url = properties.getProperty(MysqlExportService.JDBC_CONNECTION_STRING, "");
+        if (url.isEmpty()) {
+            url = MysqlBaseService.buildURL("");
+        }
+
+        Map<String, MysqlExportService> exports = new LinkedHashMap<>();
+        Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+
+        //one connection per worker, so the workers never wait for a connection
+        ExecutorService executor = BackupExecutors.newFixedExecutor("mysql-backup4j-orchestrator", maxConnections);
+        try (MysqlConnectionPool pool = new MysqlConnectionPool(url,
+                properties.getProperty(MysqlExportService.DB_USERNAME),
+                properties.getProperty(MysqlExportService.DB_PASSWORD),
+                properties.getProperty(MysqlExportService.JDBC_DRIVER_NAME, ""), maxConnections)) {
+
+            List<String> schemas = getSchemas(pool);
+            logger.debug(LOG_PREFIX + ": " + schemas.size() + " databases to export: " + schemas);
+
+            for (String schema : schemas) {
+                MysqlExportService service = new MysqlExportService(getSchemaProperties(schema));
+                service.setExportListener(exportListener);
+                service.setDiskRateLimiter(diskRateLimiter);
+                service.setCompressionPermits(compressionPermits);
+                exports.put(schema, service);
+                futures.put(schema, CompletableFuture.supplyAsync(() -> listTables(pool, schema, service, maxConnections), executor)
+                        .thenCompose(tables -> exportSchema(pool, executor, schema, service, tables))
+                        .whenComplete((result, e) -> {
+                            if (e != null) {
+                                service.clearTempFiles(false);
+                            }
+                            service.finishExport(e == null);
+                        }));
+            }
+
+            for (Map.Entry<String, CompletableFuture<Void>> entry : futures.entrySet()) {
+                try {
+                    entry.getValue().join();
+                } catch (CompletionException e) {
+                    failures.put(entry.getKey(), e.getCause());
+                    exports.remove(entry.getKey());
+                    logger.error(LOG_PREFIX + ": export of " + entry.getKey() + " failed: " + e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return exports;
+    }
+
+    /**
+     * This will return the databases listed in {@link #DATABASES}
+     * or the ones matching {@link #SCHEMA_PATTERN}
+     *
+     * @param pool the connection pool
+     * @return List\<String\>
+     * @throws SQLException exception
+     */
+    private List<String> getSchemas(MysqlConnectionPool pool) throws SQLException {
+        List<String> schemas = new ArrayList<>();
+        if (properties.containsKey(DATABASES)) {
+            for (String schema : properties.getProperty(DATABASES).split(",")) {
+                if (!schema.trim().isEmpty()) {
+                    schemas.add(schema.trim());
+                }
+            }
+            return schemas;
+        }
+
+        try (Connection connection = pool.getConnection();
+             PreparedStatement stmt = connection.prepareStatement(
+                     "SELECT SCHEMA_NAME FROM information_schema.SCHEMATA WHERE SCHEMA_NAME LIKE ? ORDER BY SCHEMA_NAME")) {
+            stmt.setString(1, properties.getProperty(SCHEMA_PATTERN));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (!SYSTEM_SCHEMAS.contains(rs.getString(1).toLowerCase())) {
+                        schemas.add(rs.getString(1));
+                    }
+                }
+            }
+        }
+        return schemas;
+    }
+
+    /**
+     * This will derive the properties of the export
+     * service of a single database
+     *
+     * @param schema the database name
+     * @return Properties
+     */
+    private Properties getSchemaProperties(String schema) {
+        Properties schemaProperties = new Properties();
+        schemaProperties.putAll(properties);
+        schemaProperties.remove(MysqlExportService.JDBC_CONNECTION_STRING);
+        schemaProperties.setProperty(MysqlExportService.DB_NAME, schema);
+        String tempDir = properties.getProperty(MysqlExportService.TEMP_DIR, "java-mysql-exporter-temp");
+        schemaProperties.setProperty(MysqlExportService.TEMP_DIR, tempDir + File.separator + schema);
+        new File(tempDir).mkdirs();
+        return schemaProperties;
+    }
+
+    /**
+     * This will start the export of the database
+     * and return its tables in the order of their dependencies
+     *
+     * @param pool    the connection pool
+     * @param schema  the database name
+     * @param service the export service of the database
+     * @param workers the number of tables that may be exported concurrently
+     * @return List\<String\>
+     */
+    private List<String> listTables(MysqlConnectionPool pool, String schema, MysqlExportService service, int workers) {
+        service.startExport(schema, workers);
+        if (service.isSubset()) {
+            logger.warn(LOG_PREFIX + ": " + MysqlExportService.SUBSET + " is ignored for " + schema +
+                    ", only the table filters are applied");
+        }
+        return withStatement(pool, schema, stmt -> {
+            service.openCheckpoint(stmt);
+            service.loadPartitions(stmt);
+            return service.getTables(stmt);
+        });
+    }
+
+    /**
+     * This will schedule every table of the database on the
+     * worker pool and, once all of them are done, assemble and
+     * write the dump of the database
+     *
+     * @param pool     the connection pool
+     * @param executor the worker pool
+     * @param schema   the database name
+     * @param service  the export service of the database
+     * @param tables   the tables in the order of their dependencies
+     * @return CompletableFuture
+     */
+    private CompletableFuture<Void> exportSchema(MysqlConnectionPool pool, Executor executor, String schema,
+                                                 MysqlExportService service, List<String> tables) {
+        List<CompletableFuture<SpillableBuffer>> sections = new ArrayList<>();
+        for (String table : tables) {
+            sections.add(CompletableFuture.supplyAsync(
+                    () -> withStatement(pool, schema, stmt -> service.exportTable(stmt, stmt, table)), executor));
+        }
+
+        return CompletableFuture.allOf(sections.toArray(new CompletableFuture<?>[0])).thenRunAsync(() -> {
+            try (SpillableBuffer sql = service.newDumpBuffer()) {
+                sql.append(service.getHeader());
+                for (int i = 0; i < sections.size(); i++) {
+                    try (SpillableBuffer tableSql = sections.get(i).join()) {
+                        service.appendTable(sql, tables.get(i), tableSql);
+                    }
+                }
+                sql.append(withStatement(pool, schema, service::getRoutinesAndViews));
+                sql.append(service.getFooter());
+                service.writeOutput(sql);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor).whenComplete((ignored, e) -> closeSections(sections));
+    }
+
+    /**
+     * This will release the sections of the tables that were exported,
+     * e.g. when another table of the database failed and the dump
+     * isn't assembled. Closing a section twice does no harm
+     *
+     * @param sections the sections of the tables
+     */
+    private void closeSections(List<CompletableFuture<SpillableBuffer>> sections) {
+        for (CompletableFuture<SpillableBuffer> section : sections) {
+            if (section.isDone() && !section.isCompletedExceptionally()) {
+                section.join().close();
+            }
+        }
+    }
+
+    /**
+     * This will run the work with a statement on a pooled
+     * connection that uses the given database
+     *
+     * @param pool   the connection pool
+     * @param schema the database name
+     * @param work   the work to do
+     * @param <T>    the result type
+     * @return the result of the work
+     */
+    private <T> T withStatement(MysqlConnectionPool pool, String schema, StatementWork<T> work) {
+        try (Connection connection = pool.getConnection()) {
+            connection.setCatalog(schema);
+            try (Statement stmt = connection.createStatement()) {
+                return work.apply(stmt);
+            }
+        } catch (SQLException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private interface StatementWork<T> {
+        T apply(Statement stmt) throws SQLException;
+    }
+
+    /**
+     * This will set a listener that'll be notified about
+     * the progress of every database. It's called from the
+     * worker threads, so it has to be thread safe
+     *
+     * @param exportListener the listener. Can be null
+     * @return MysqlBackupOrchestrator
+     */
+    public MysqlBackupOrchestrator setExportListener(ExportListener exportListener) {
+        this.exportListener = exportListener;
+        return this;
+    }
+
+    /**
+     * This will return the databases of the last
+     * export() run that failed, with the cause
+     *
+     * @return Map
+     */
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+}
@@ -31,9 +31,21 @@ public class MysqlBaseService {
      * @throws SQLException           exception
      */
     static Connection connect(String username, String password, String database, String driverName) throws ClassNotFoundException, SQLException {
-        String url = "jdbc:mysql://localhost:3306/" + database + "?useUnicode=true&useJDBCCompliantTimezoneShift=true&useLegacyDatetimeCode=false&serverTimezone=UTC&useSSL=false";
         String driver = (Objects.isNull(driverName) || driverName.isEmpty()) ? "com.mysql.cj.jdbc.Driver" : driverName;
-        return doConnect(driver, url, username, password);
+        return doConnect(driver, buildURL(database), username, password);
+    }
+
+    /**
+     * This will build the JDBC URL used by connect()
+     * for a database on localhost at port 3306.
+     * An empty database name gives a URL
+     * to the server without a default database
+     *
+     * @param database database name. Can be empty
+     * @return String
+     */
+    static String buildURL(String database) {
+        return "jdbc:mysql://localhost:3306/" + database + "?useUnicode=true&useJDBCCompliantTimezoneShift=true&useLegacyDatetimeCode=false&serverTimezone=UTC&useSSL=false";
     }
 
     /**
@@ -84,28 +96,181 @@ public class MysqlBaseService {
      * @throws SQLException exception
      */
     static List<String> getAllTables(String database, Statement stmt) throws SQLException {
-        List<String> table = new ArrayList<>();
-        ResultSet rs;
-        rs = stmt.executeQuery("SELECT\n" +
+        Map<String, String> references = new LinkedHashMap<>();
+        try (ResultSet rs = stmt.executeQuery("SELECT\n" +
                 "    table_name,\n" +
                 "    GROUP_CONCAT(referenced_table_name) AS `ref_table`\n" +
                 "FROM INFORMATION_SCHEMA.KEY_COLUMN_USAGE\n" +
                 "WHERE table_schema like '" + database + "'\n" +
-                "GROUP BY table_name;");
+                "GROUP BY table_name\n" +
+                "ORDER BY table_name;")) {
+            while (rs.next()) {
+                references.put(rs.getString("table_name"), rs.getString("ref_table"));
+            }
+        }
+        return sortByDependencies(references);
+    }
 
+    /**
+     * This is a utility function to get the foreign
+     * keys of all the tables in the database supplied
+     *
+     * @param database the database name
+     * @param stmt     Statement object
+     * @return List\<ForeignKey\>
+     * @throws SQLException exception
+     */
+    static List<ForeignKey> getForeignKeys(String database, Statement stmt) throws SQLException {
+        Map<String, ForeignKey> keys = new LinkedHashMap<>();
+        try (ResultSet rs = stmt.executeQuery("SELECT TABLE_NAME, CONSTRAINT_NAME, COLUMN_NAME,\n" +
+                "    REFERENCED_TABLE_NAME, REFERENCED_COLUMN_NAME\n" +
+                "FROM INFORMATION_SCHEMA.KEY_COLUMN_USAGE\n" +
+                "WHERE TABLE_SCHEMA = '" + database + "' AND REFERENCED_TABLE_NAME IS NOT NULL\n" +
+                "AND (REFERENCED_TABLE_SCHEMA IS NULL OR REFERENCED_TABLE_SCHEMA = '" + database + "')\n" +
+                "ORDER BY TABLE_NAME, CONSTRAINT_NAME, ORDINAL_POSITION;")) {
+            while (rs.next()) {
+                String name = rs.getString("TABLE_NAME") + "." + rs.getString("CONSTRAINT_NAME");
+                ForeignKey key = keys.get(name);
+                if (key == null) {
+                    key = new ForeignKey(rs.getString("TABLE_NAME"), rs.getString("REFERENCED_TABLE_NAME"));
+                    keys.put(name, key);
+                }
+                key.columns.add(rs.getString("COLUMN_NAME"));
+                key.referencedColumns.add(rs.getString("REFERENCED_COLUMN_NAME"));
+            }
+        }
+        return new ArrayList<>(keys.values());
+    }
+
+    /**
+     * A foreign key of a table, with its columns in
+     * the order of the referenced columns
+     */
+    static class ForeignKey {
+
+        final String table;
+        final String referencedTable;
+        final List<String> columns = new ArrayList<>();
+        final List<String> referencedColumns = new ArrayList<>();
+
+        ForeignKey(String table, String referencedTable) {
+            this.table = table;
+            this.referencedTable = referencedTable;
+        }
+
+        @Override
+        public String toString() {
+            return table + columns + " -> " + referencedTable + referencedColumns;
+        }
+    }
+
+    /**
+     * This is a utility function to get the partitions of all
+     * the partitioned tables in the database supplied. The
+     * subpartitions of a partition are taken together. The update
+     * time of a partition is only returned once it's at least a second
+     * old, so that no update of the same second can go unnoticed
+     *
+     * @param database the database name
+     * @param stmt     Statement object
+     * @return the partitions of every partitioned table in their order
+     * @throws SQLException exception
+     */
+    static Map<String, List<Partition>> getPartitions(String database, Statement stmt) throws SQLException {
+        Map<String, List<Partition>> partitions = new HashMap<>();
+        try {
+            //MySQL 8 caches the statistics of the tables for a day
+            stmt.execute("SET SESSION information_schema_stats_expiry = 0;");
+        } catch (SQLException e) {
+            logger.debug("the statistics of the tables are not cached: " + e.getLocalizedMessage());
+        }
+        try (ResultSet rs = stmt.executeQuery("SELECT TABLE_NAME, PARTITION_NAME,\n" +
+                "    MAX(CREATE_TIME) AS CREATE_TIME,\n" +
+                "    IF(COUNT(UPDATE_TIME) = COUNT(*) AND MAX(UPDATE_TIME) < NOW() - INTERVAL 1 SECOND,\n" +
+                "        MAX(UPDATE_TIME), NULL) AS UPDATE_TIME,\n" +
+                "    SUM(DATA_LENGTH) AS DATA_LENGTH\n" +
+                "FROM INFORMATION_SCHEMA.PARTITIONS\n" +
+                "WHERE TABLE_SCHEMA = '" + database + "' AND PARTITION_NAME IS NOT NULL\n" +
+                "GROUP BY TABLE_NAME, PARTITION_NAME\n" +
+                "ORDER BY TABLE_NAME, MIN(PARTITION_ORDINAL_POSITION);")) {
+            while (rs.next()) {
+                partitions.computeIfAbsent(rs.getString("TABLE_NAME"), table -> new ArrayList<>())
+                        .add(new Partition(rs.getString("PARTITION_NAME"), rs.getString("CREATE_TIME"),
+                                rs.getString("UPDATE_TIME"), rs.getLong("DATA_LENGTH")));
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * A partition of a table, with the times the server
+     * keeps of it. The update time is null if it's unknown
+     */
+    static class Partition {
+
+        final String name;
+        final String createTime;
+        final String updateTime;
+        final long dataLength;
+
+        Partition(String name, String createTime, String updateTime, long dataLength) {
+            this.name = name;
+            this.createTime = createTime;
+            this.updateTime = updateTime;
+            this.dataLength = dataLength;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * This is a utility function to get the columns
+     * of the primary key of the table supplied
+     *
+     * @param database the database name
+     * @param table    the table name
+     * @param stmt     Statement object
+     * @return List\<String\> in the order of the key. Empty if the table has no primary key
+     * @throws SQLException exception
+     */
+    static List<String> getPrimaryKey(String database, String table, Statement stmt) throws SQLException {
+        List<String> columns = new ArrayList<>();
+        try (ResultSet rs = stmt.executeQuery("SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.KEY_COLUMN_USAGE\n" +
+                "WHERE TABLE_SCHEMA = '" + database + "' AND TABLE_NAME = '" + table + "'\n" +
+                "AND CONSTRAINT_NAME = 'PRIMARY'\n" +
+                "ORDER BY ORDINAL_POSITION;")) {
+            while (rs.next()) {
+                columns.add(rs.getString("COLUMN_NAME"));
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * This will order the given tables so that every
+     * table comes after the tables it references
+     *
+     * @param references the tables in their original order, with
+     *                   the comma separated tables they reference as value. The value can be null
+     * @return List\<String\>
+     */
+    static List<String> sortByDependencies(Map<String, String> references) {
+        List<String> table = new ArrayList<>();
         boolean rerun = true;
         while (rerun) {
             rerun = false;
-            rs.beforeFirst();
-            while (rs.next()) {
+            for (Map.Entry<String, String> entry : references.entrySet()) {
                 //Table already added.
-                if (table.contains(rs.getString("table_name")))
+                if (table.contains(entry.getKey()))
                     continue;
 
                 //No dependency or dependent table already added.
-                if (rs.getString("ref_table") == null
-                        || !missingDepForTable(rs.getString("ref_table"),table))
-                    table.add(rs.getString("table_name"));
+                if (entry.getValue() == null
+                        || !missingDepForTable(entry.getKey(), entry.getValue(), table))
+                    table.add(entry.getKey());
                     //Rerun because dependency not added yet.
                 else
                     rerun = true;
@@ -117,20 +282,45 @@ public class MysqlBaseService {
     /**
      * Returns false if all dependent tables
      * are already in list. Otherwise it returns
-     * true.
+     * true. A reference of the table to itself
+     * is not a dependency.
      *
+     * @param name The table
      * @param ref_table The referenced tables
      * @param table List of added tables
      * @return boolean
      */
-    private static boolean missingDepForTable(String ref_table, List<String> table) {
+    private static boolean missingDepForTable(String name, String ref_table, List<String> table) {
         for (String s : ref_table.split(","))
-            if(!table.contains(s))
+            if(!s.equals(name) && !table.contains(s))
                 return true;
 
         return false;
     }
 
+    /**
+     * This will return the size of the characters in UTF-8,
+     * which is what the raw bytes of the metrics count
+     *
+     * @param chars the characters
+     * @return long
+     */
+    static long utf8Length(CharSequence chars) {
+        long bytes = 0;
+        for (int i = 0; i < chars.length(); i++) {
+            bytes += utf8Length(chars.charAt(i));
+        }
+        return bytes;
+    }
+
+    /**
+     * @param c the character
+     * @return the number of bytes of the character in UTF-8. Each half of a surrogate pair counts 2
+     */
+    static int utf8Length(char c) {
+        return c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+    }
+
     /**
      * This function is an helper function
      * that'll generate a DELETE FROM database.table
@@ -164,23 +354,27 @@ public class MysqlBaseService {
      */
     public static Map<String, String> getAllRoutines(String database, Statement stmt) throws SQLException {
         List<String> names = new LinkedList<>();
+        List<String[]> rows = new ArrayList<>();
         Map<String, String> routines = new HashMap();
-        ResultSet rs = stmt.executeQuery("SELECT SPECIFIC_NAME, ROUTINE_TYPE, ROUTINE_DEFINITION FROM `information_schema`.`ROUTINES` WHERE ROUTINE_SCHEMA='" + database + "';");
-        while (rs.next())
-            names.add(rs.getString("SPECIFIC_NAME"));
+        //the rows are read once, as the statement may be forward only
+        try (ResultSet rs = stmt.executeQuery("SELECT SPECIFIC_NAME, ROUTINE_TYPE, ROUTINE_DEFINITION FROM `information_schema`.`ROUTINES` WHERE ROUTINE_SCHEMA='" + database + "';")) {
+            while (rs.next()) {
+                names.add(rs.getString("SPECIFIC_NAME"));
+                rows.add(new String[]{rs.getString("SPECIFIC_NAME"), rs.getString("ROUTINE_TYPE"), rs.getString("ROUTINE_DEFINITION")});
+            }
+        }
 
         boolean rerun = true;
         while (rerun) {
             rerun = false;
-            rs.beforeFirst();
 
-            while (rs.next()) {
-                if (missingLink(routines.keySet(), names, rs.getString("ROUTINE_DEFINITION"))) {
+            for (String[] row : rows) {
+                if (missingLink(routines.keySet(), names, row[2])) {
                     rerun = true;
                     continue;
                 }
-                if (!routines.containsKey(rs.getString("SPECIFIC_NAME")))
-                    routines.put(rs.getString("SPECIFIC_NAME"), rs.getString("ROUTINE_TYPE"));
+                if (!routines.containsKey(row[0]))
+                    routines.put(row[0], row[1]);
             }
         }
         return routines;
@@ -217,34 +411,29 @@ public class MysqlBaseService {
      * @throws SQLException exception
      */
     static List<String> getAllViews(String database, Statement stmt) throws SQLException {
-        List<String> views = new ArrayList<>();
-        ResultSet rs;
-        rs = stmt.executeQuery("SELECT\n" +
+        Map<String, String> references = new LinkedHashMap<>();
+        try (ResultSet rs = stmt.executeQuery("SELECT\n" +
                 "    VIEW_NAME,\n" +
                 "    GROUP_CONCAT(VIEWS.TABLE_NAME) as ref_views\n" +
                 "FROM INFORMATION_SCHEMA.VIEW_TABLE_USAGE\n" +
                 "LEFT JOIN INFORMATION_SCHEMA.VIEWS on VIEWS.TABLE_NAME = VIEW_TABLE_USAGE.TABLE_NAME\n"+
                 "WHERE VIEW_SCHEMA like '" + database + "'\n" +
-                "GROUP BY VIEW_NAME;");
-
-        boolean rerun = true;
-        while (rerun) {
-            rerun = false;
-            rs.beforeFirst();
+                "GROUP BY VIEW_NAME;")) {
             while (rs.next()) {
-                //Table already added.
-                if (views.contains(rs.getString("VIEW_NAME")))
-                    continue;
-
-                //No dependency or dependent table already added.
-                if (rs.getString("ref_views") == null
-                        || !missingDepForTable(rs.getString("ref_views"),views))
-                    views.add(rs.getString("VIEW_NAME"));
-                    //Rerun because dependency not added yet.
-                else
-                    rerun = true;
+                references.put(rs.getString("VIEW_NAME"), rs.getString("ref_views"));
+            }
+        } catch (SQLException e) {
+            //VIEW_TABLE_USAGE only exists since MySQL 8.0.13.
+            //Older servers and MariaDB get the views without
+            //their dependencies
+            logger.debug("VIEW_TABLE_USAGE is not available, views are not ordered by dependency: " + e.getLocalizedMessage());
+            try (ResultSet rs = stmt.executeQuery("SELECT TABLE_NAME FROM INFORMATION_SCHEMA.VIEWS " +
+                    "WHERE TABLE_SCHEMA like '" + database + "';")) {
+                while (rs.next()) {
+                    references.put(rs.getString("TABLE_NAME"), null);
+                }
             }
         }
-        return views;
+        return sortByDependencies(references);
     }
 }
@@ -0,0 +1,327 @@
+package com.christianmeiners;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * A small pool of connections to one server.
+ * At most maxSize connections are handed out at the same
+ * time, further callers of getConnection() wait for one to be
+ * returned. Closing a connection obtained from the pool
+ * returns it to the pool, the same as closing the connection
+ * of one of its statements. Idle connections are validated
+ * before they are handed out again.
+ *
+ * It can be passed to the services as a DataSource, so that
+ * scheduled backups reuse their connections between runs.
+ */
+public class MysqlConnectionPool implements DataSource, AutoCloseable {
+
+    private static Logger logger = LoggerFactory.getLogger(MysqlConnectionPool.class);
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final String driverName;
+    private final Semaphore permits;
+    private final Deque<Connection> idle = new ArrayDeque<>();
+    private volatile boolean closed;
+    private PrintWriter logWriter;
+
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+    private static final Map<String, MysqlConnectionPool> sharedPools = new ConcurrentHashMap<>();
+
+    /**
+     * @param url        the JDBC URL of the server
+     * @param username   database username
+     * @param password   database password
+     * @param driverName the mysql connector driver class name. Can be empty
+     * @param maxSize    the maximum number of connections
+     */
+    public MysqlConnectionPool(String url, String username, String password, String driverName, int maxSize) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.driverName = driverName;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * @param url      the JDBC URL of the server
+     * @param username database username
+     * @param password database password
+     * @param maxSize  the maximum number of connections
+     */
+    public MysqlConnectionPool(String url, String username, String password, int maxSize) {
+        this(url, username, password, "", maxSize);
+    }
+
+    /**
+     * This will return the pool shared by all callers with
+     * the same URL and credentials in this JVM, creating it on
+     * first use. It's used by the services when a connection
+     * pool size is configured, so that the connections survive
+     * between runs. See closeSharedPools()
+     *
+     * @param url        the JDBC URL of the server
+     * @param username   database username
+     * @param password   database password
+     * @param driverName the mysql connector driver class name. Can be empty
+     * @param maxSize    the maximum number of connections, used when the pool is created
+     * @return MysqlConnectionPool
+     */
+    static MysqlConnectionPool shared(String url, String username, String password, String driverName, int maxSize) {
+        return sharedPools.compute(url + "|" + username + "|" + password, (key, pool) ->
+                pool == null || pool.closed ? new MysqlConnectionPool(url, username, password, driverName, maxSize) : pool);
+    }
+
+    /**
+     * This will close all the pools created through
+     * the CONNECTION_POOL_SIZE option of the services
+     */
+    public static void closeSharedPools() {
+        for (MysqlConnectionPool pool : sharedPools.values()) {
+            pool.close();
+        }
+        sharedPools.clear();
+    }
+
+    /**
+     * This will return a validated idle connection or open a new one.
+     * It blocks while maxSize connections are in use.
+     *
+     * @return Connection
+     * @throws SQLException exception
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("The connection pool has been closed");
+        }
+
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+
+        Connection connection = pollValidConnection();
+        if (connection == null) {
+            try {
+                connection = MysqlBaseService.connectWithURL(username, password, url, driverName);
+            } catch (ClassNotFoundException | SQLException | RuntimeException e) {
+                permits.release();
+                throw e instanceof SQLException ? (SQLException) e : new SQLException(e);
+            }
+        }
+
+        return wrap(connection);
+    }
+
+    /**
+     * This will take idle connections until one
+     * passes the validation. Broken ones are closed
+     *
+     * @return Connection or null if there is no valid idle connection
+     */
+    private Connection pollValidConnection() {
+        while (true) {
+            Connection connection;
+            synchronized (idle) {
+                connection = idle.pollFirst();
+            }
+            if (connection == null) {
+                return null;
+            }
+
+            try {
+                if (connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                    return connection;
+                }
+            } catch (SQLException e) {
+                logger.debug("pooled connection failed validation: " + e.getLocalizedMessage());
+            }
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * This will wrap the physical connection so that close() returns
+     * it to the pool. Its statements are wrapped as well, so that their
+     * getConnection() returns the wrapped connection
+     *
+     * @param physical the physical connection
+     * @return Connection
+     */
+    private Connection wrap(Connection physical) {
+        boolean[] returned = {false};
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            if (!returned[0]) {
+                                returned[0] = true;
+                                release(physical);
+                            }
+                            return null;
+                        case "isClosed":
+                            return returned[0] || physical.isClosed();
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            if (returned[0]) {
+                                throw new SQLException("The connection has been returned to the pool");
+                            }
+                            Object result = invoke(physical, method, args);
+                            if (result instanceof Statement) {
+                                return wrap((Statement) result, method.getReturnType(), (Connection) proxy);
+                            }
+                            return result;
+                    }
+                });
+    }
+
+    /**
+     * This will wrap a statement of a pooled connection
+     * so that getConnection() returns the pooled connection
+     * instead of the physical one
+     *
+     * @param statement  the statement of the physical connection
+     * @param type       the statement interface, e.g. PreparedStatement
+     * @param connection the pooled connection
+     * @return Statement
+     */
+    private static Statement wrap(Statement statement, Class<?> type, Connection connection) {
+        return (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getConnection":
+                            return connection;
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            return invoke(statement, method, args);
+                    }
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * This will put the physical connection back to the idle
+     * connections, or close it if the pool has been closed
+     *
+     * @param physical the physical connection
+     */
+    private void release(Connection physical) {
+        try {
+            if (closed || physical.isClosed()) {
+                closeQuietly(physical);
+                return;
+            }
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            synchronized (idle) {
+                idle.addFirst(physical);
+            }
+        } catch (SQLException e) {
+            closeQuietly(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.debug("unable to close pooled connection: " + e.getLocalizedMessage());
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("The pool only provides connections for its own credentials");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return logWriter;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+        this.logWriter = out;
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+        java.sql.DriverManager.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return java.sql.DriverManager.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    /**
+     * This will close all idle connections. Connections that
+     * are still in use are closed when they are returned
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (idle) {
+            for (Connection connection : idle) {
+                closeQuietly(connection);
+            }
+            idle.clear();
+        }
+    }
+}
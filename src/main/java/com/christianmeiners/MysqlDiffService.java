@@ -0,0 +1,667 @@
+package com.christianmeiners;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This generates the statements that turn a target database
+ * into a copy of the source database, e.g. to refresh a staging
+ * copy without dropping and reimporting it.
+ *
+ * Against a live target the rows of every table are compared by their
+ * primary key: the hashes of the target rows are indexed, the source rows
+ * are looked up while they're streamed, and only the rows that have been
+ * added, changed or removed end up in the delta. A numeric key is indexed
+ * outside of the heap, see {@link RowHashIndex}, any other key in a map.
+ * A table without a primary key is reloaded if its rows differ.
+ *
+ * Against a previous dump that has been exported with
+ * {@link MysqlExportService#CHECKSUMS} and restored to the target, the
+ * checksum ranges of the dump are compared with the source instead, and
+ * the ranges that differ are replaced. This needs no access to the target.
+ *
+ * The delta is split into chunks like a dump, so it can be applied with
+ * {@link MysqlImportService}. The tables must have the same columns on both sides.
+ */
+public class MysqlDiffService {
+
+    private String database;
+    private String username;
+    private String password;
+    private String jdbcConnString;
+    private String jdbcDriver;
+    private DataSource dataSource;
+    private String targetJdbcConnString;
+    private String targetUsername;
+    private String targetPassword;
+    private DataSource targetDataSource;
+    private String targetSqlString;
+    private File targetDumpFile;
+    private String encryptionKey;
+    private List<String> tables = new ArrayList<>();
+    private StringBuilder generatedSql;
+    private long inserts;
+    private long updates;
+    private long deletes;
+    private static final int DIFF_BATCH_ROWS = 1000;
+    private Logger logger = LoggerFactory.getLogger(MysqlDiffService.class);
+
+    private MysqlDiffService() {
+    }
+
+    /**
+     * This will compare the tables of the source with
+     * the target and generate the delta. See getGeneratedSql()
+     *
+     * @return false if the required parameters are missing
+     * @throws SQLException           exception
+     * @throws ClassNotFoundException exception
+     * @throws IOException            exception
+     */
+    public boolean diff() throws SQLException, ClassNotFoundException, IOException {
+
+        if (!assertValidParams()) {
+            logger.error("Required Parameters not set or empty \n" +
+                    "Ensure database, username, password and the target connection string, data source, \n" +
+                    "sqlString or dumpFile params are configured using their respective setters");
+            return false;
+        }
+
+        if (jdbcConnString != null && !jdbcConnString.isEmpty()) {
+            if (jdbcConnString.contains("?")) {
+                database = jdbcConnString.substring(jdbcConnString.lastIndexOf("/") + 1, jdbcConnString.indexOf("?"));
+            } else {
+                database = jdbcConnString.substring(jdbcConnString.lastIndexOf("/") + 1);
+            }
+            logger.debug("database name extracted from connection string: " + database);
+        }
+
+        generatedSql = new StringBuilder();
+        inserts = 0;
+        updates = 0;
+        deletes = 0;
+
+        try (Connection source = openSource();
+             Statement stmt = source.createStatement()) {
+
+            if (database == null || database.isEmpty()) {
+                database = source.getCatalog();
+            }
+            List<String> diffTables = tables.isEmpty() ? MysqlBaseService.getAllTables(database, stmt) : tables;
+
+            if (targetSqlString != null || targetDumpFile != null) {
+                Map<String, List<DumpManifest.Range>> manifest;
+                try (Reader reader = openDump()) {
+                    manifest = DumpManifest.read(reader);
+                }
+                if (manifest.isEmpty()) {
+                    logger.error("The dump has no checksums. Export it with " + MysqlExportService.CHECKSUMS);
+                    return false;
+                }
+                for (String table : diffTables) {
+                    List<DumpManifest.Range> ranges = manifest.get(table);
+                    if (ranges == null) {
+                        logger.warn("diff " + database + ": " + table + " has no checksums in the dump and is skipped");
+                        continue;
+                    }
+                    diffRanges(source, table, MysqlBaseService.getPrimaryKey(database, table, stmt), ranges);
+                }
+            } else {
+                try (Connection target = openTarget()) {
+                    for (String table : diffTables) {
+                        diffTable(source, target, table, MysqlBaseService.getPrimaryKey(database, table, stmt));
+                    }
+                }
+            }
+        }
+
+        logger.debug("diff finished: " + inserts + " inserts, " + updates + " updates and " + deletes + " deletes for " + database);
+        return true;
+    }
+
+    /**
+     * This will compare the rows of a table of the source
+     * with the ones of the target by their primary key
+     *
+     * @param source the source connection
+     * @param target the target connection
+     * @param table  the table
+     * @param key    the columns of the primary key. Empty if there is none
+     * @throws SQLException exception
+     */
+    private void diffTable(Connection source, Connection target, String table, List<String> key) throws SQLException {
+        if (key.isEmpty()) {
+            reloadIfChanged(source, target, table);
+            return;
+        }
+
+        RowHashIndex numericIndex = null;
+        Map<String, Long> index = null;
+        StringBuilder row = new StringBuilder();
+        try (Statement stmt = createStreamingStatement(target);
+             ResultSet rs = stmt.executeQuery("SELECT * FROM `" + table + "`;")) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            int[] keyColumns = MysqlExportService.getKeyColumns(metaData, key);
+            if (isNumericKey(metaData, keyColumns)) {
+                numericIndex = new RowHashIndex();
+            } else {
+                index = new HashMap<>();
+            }
+            while (rs.next()) {
+                row.setLength(0);
+                MysqlExportService.encodeRow(rs, metaData, metaData.getColumnCount(), row);
+                long hash = RowChecksum.hash64(row, 0);
+                if (numericIndex != null) {
+                    numericIndex.put(rs.getLong(keyColumns[0]), hash);
+                } else {
+                    index.put(MysqlExportService.toKeyLiteral(rs, keyColumns), hash);
+                }
+            }
+        }
+
+        //the deletes go first, so the inserts
+        //can't collide with the rows they replace
+        StringBuilder changes = new StringBuilder();
+        try (Statement stmt = createStreamingStatement(source);
+             ResultSet rs = stmt.executeQuery("SELECT * FROM `" + table + "`;")) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            int columnCount = metaData.getColumnCount();
+            int[] keyColumns = MysqlExportService.getKeyColumns(metaData, key);
+            String insert = getInsertHeader(metaData, table);
+            StringBuilder insertRows = new StringBuilder();
+            int batchRows = 0;
+            while (rs.next()) {
+                row.setLength(0);
+                MysqlExportService.encodeRow(rs, metaData, columnCount, row);
+                long hash = RowChecksum.hash64(row, 0);
+                long previous;
+                if (numericIndex != null) {
+                    previous = numericIndex.remove(rs.getLong(keyColumns[0]));
+                } else {
+                    Long value = index.remove(MysqlExportService.toKeyLiteral(rs, keyColumns));
+                    previous = value == null ? 0 : value;
+                }
+
+                if (previous == 0) {
+                    insertRows.append(batchRows == 0 ? "" : ",\n").append(row);
+                    inserts++;
+                    if (++batchRows == DIFF_BATCH_ROWS) {
+                        appendChunk(changes, "insert", table, insert + insertRows);
+                        insertRows.setLength(0);
+                        batchRows = 0;
+                    }
+                } else if (previous != hash) {
+                    appendChunk(changes, "update", table, getUpdateStatement(rs, metaData, table, key, keyColumns));
+                    updates++;
+                }
+            }
+            if (batchRows > 0) {
+                appendChunk(changes, "insert", table, insert + insertRows);
+            }
+        }
+
+        //what's left in the index isn't in the source anymore
+        String delete = "DELETE FROM `" + table + "` WHERE (`" + String.join("`, `", key) + "`) IN (";
+        List<String> deleteKeys = new ArrayList<>();
+        if (numericIndex != null) {
+            numericIndex.forEachKey(value -> addDelete(delete, table, deleteKeys, "(" + value + ")"));
+        } else {
+            for (String value : index.keySet()) {
+                addDelete(delete, table, deleteKeys, value);
+            }
+        }
+        if (!deleteKeys.isEmpty()) {
+            appendChunk(generatedSql, "delete", table, delete + String.join(", ", deleteKeys) + ")");
+        }
+        generatedSql.append(changes);
+    }
+
+    private void addDelete(String delete, String table, List<String> deleteKeys, String key) {
+        deleteKeys.add(key);
+        deletes++;
+        if (deleteKeys.size() == DIFF_BATCH_ROWS) {
+            appendChunk(generatedSql, "delete", table, delete + String.join(", ", deleteKeys) + ")");
+            deleteKeys.clear();
+        }
+    }
+
+    /**
+     * This will compare all the rows of a table without
+     * a primary key and reload it if they differ, as
+     * single rows can't be matched without a key
+     *
+     * @param source the source connection
+     * @param target the target connection
+     * @param table  the table
+     * @throws SQLException exception
+     */
+    private void reloadIfChanged(Connection source, Connection target, String table) throws SQLException {
+        RowChecksum targetChecksum = checksum(target, table, "");
+        RowChecksum sourceChecksum = checksum(source, table, "");
+        if (targetChecksum.getRows() == sourceChecksum.getRows() && targetChecksum.getSum() == sourceChecksum.getSum()) {
+            return;
+        }
+
+        logger.debug("diff " + database + ": " + table + " has no primary key and is reloaded");
+        appendChunk(generatedSql, "delete", table, "DELETE FROM `" + table + "`");
+        deletes += targetChecksum.getRows();
+        appendInserts(source, table, "");
+    }
+
+    /**
+     * This will compare the rows of a table of the source with
+     * the checksum ranges of a dump and replace the ranges that differ
+     *
+     * @param source the source connection
+     * @param table  the table
+     * @param key    the columns of the primary key. Empty if there is none
+     * @param ranges the ranges of the table in the dump
+     * @throws SQLException exception
+     */
+    private void diffRanges(Connection source, String table, List<String> key, List<DumpManifest.Range> ranges) throws SQLException {
+        ranges = new ArrayList<>(ranges);
+        DumpManifest.Range last = ranges.get(ranges.size() - 1);
+        if (!last.upper.equals(DumpManifest.TO_END) && !last.upper.equals(DumpManifest.WHOLE_TABLE)) {
+            //the rows after the last range have been added since
+            ranges.add(new DumpManifest.Range(last.table, last.upper, DumpManifest.TO_END, 0, 0));
+        }
+
+        for (DumpManifest.Range range : ranges) {
+            String condition = range.getCondition(key);
+            RowChecksum checksum = checksum(source, table, condition);
+            if (checksum.getRows() == range.rows && checksum.getSum() == range.sum) {
+                continue;
+            }
+
+            logger.debug("diff " + database + ": " + range + " has changed");
+            if (range.rows > 0) {
+                appendChunk(generatedSql, "delete", table, "DELETE FROM `" + table + "`" + condition);
+                deletes += range.rows;
+            }
+            if (checksum.getRows() > 0) {
+                appendInserts(source, table, condition);
+            }
+        }
+    }
+
+    /**
+     * This will hash the rows of a table the same
+     * way as the checksums of a dump
+     *
+     * @param connection the connection
+     * @param table      the table
+     * @param condition  the WHERE clause of the rows. Empty for all the rows
+     * @return RowChecksum
+     * @throws SQLException exception
+     */
+    private RowChecksum checksum(Connection connection, String table, String condition) throws SQLException {
+        RowChecksum checksum = new RowChecksum(table, new int[0], Long.MAX_VALUE);
+        try (Statement stmt = createStreamingStatement(connection);
+             ResultSet rs = stmt.executeQuery("SELECT * FROM `" + table + "`" + condition + ";")) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            int columnCount = metaData.getColumnCount();
+            StringBuilder row = new StringBuilder();
+            while (rs.next()) {
+                row.setLength(0);
+                MysqlExportService.encodeRow(rs, metaData, columnCount, row);
+                checksum.add(row, 0);
+            }
+        }
+        return checksum;
+    }
+
+    /**
+     * This will add the inserts of the rows
+     * of the source to the delta
+     *
+     * @param source    the source connection
+     * @param table     the table
+     * @param condition the WHERE clause of the rows. Empty for all the rows
+     * @throws SQLException exception
+     */
+    private void appendInserts(Connection source, String table, String condition) throws SQLException {
+        try (Statement stmt = createStreamingStatement(source);
+             ResultSet rs = stmt.executeQuery("SELECT * FROM `" + table + "`" + condition + ";")) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            int columnCount = metaData.getColumnCount();
+            String insert = getInsertHeader(metaData, table);
+            StringBuilder rows = new StringBuilder();
+            int batchRows = 0;
+            while (rs.next()) {
+                if (batchRows > 0) {
+                    rows.append(",\n");
+                }
+                MysqlExportService.encodeRow(rs, metaData, columnCount, rows);
+                inserts++;
+                if (++batchRows == DIFF_BATCH_ROWS) {
+                    appendChunk(generatedSql, "insert", table, insert + rows);
+                    rows.setLength(0);
+                    batchRows = 0;
+                }
+            }
+            if (batchRows > 0) {
+                appendChunk(generatedSql, "insert", table, insert + rows);
+            }
+        }
+    }
+
+    /**
+     * This will generate the update of the row the result
+     * set is on. The key columns are only in the WHERE clause
+     *
+     * @param rs         the result set on the row
+     * @param metaData   the meta data of the result set
+     * @param table      the table
+     * @param key        the columns of the primary key
+     * @param keyColumns the indexes of the key columns in the result set
+     * @return String
+     * @throws SQLException exception
+     */
+    private String getUpdateStatement(ResultSet rs, ResultSetMetaData metaData, String table, List<String> key,
+                                      int[] keyColumns) throws SQLException {
+        StringBuilder update = new StringBuilder("UPDATE `").append(table).append("` SET ");
+        boolean first = true;
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            boolean keyColumn = false;
+            for (int column : keyColumns) {
+                keyColumn |= column == i;
+            }
+            if (keyColumn) {
+                continue;
+            }
+            if (!first) {
+                update.append(", ");
+            }
+            first = false;
+            update.append("`").append(metaData.getColumnName(i)).append("` = ");
+            MysqlExportService.encodeValue(rs, i, metaData.getColumnType(i), update);
+        }
+        return update.append(" WHERE (`").append(String.join("`, `", key)).append("`) = ")
+                .append(MysqlExportService.toKeyLiteral(rs, keyColumns)).toString();
+    }
+
+    private static String getInsertHeader(ResultSetMetaData metaData, String table) throws SQLException {
+        StringBuilder header = new StringBuilder("INSERT INTO `").append(table).append("`(");
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            header.append(i == 1 ? "`" : ", `").append(metaData.getColumnName(i)).append("`");
+        }
+        return header.append(") VALUES \n").toString();
+    }
+
+    /**
+     * This will add a statement as a chunk
+     * the import can pick up
+     *
+     * @param sql       the builder to append to
+     * @param kind      the kind of statement, for the marker
+     * @param table     the table
+     * @param statement the statement without terminator
+     */
+    private static void appendChunk(StringBuilder sql, String kind, String table, String statement) {
+        sql.append("\n--\n")
+                .append(MysqlBaseService.SQL_START_PATTERN).append(" diff ").append(kind).append(" : ").append(table)
+                .append("\n--\n")
+                .append(statement).append(";")
+                .append("\n--\n")
+                .append(MysqlBaseService.SQL_END_PATTERN).append(" diff ").append(kind).append(" : ").append(table)
+                .append("\n--\n");
+    }
+
+    /**
+     * A key of a single integer column is indexed by its value.
+     * BIGINT UNSIGNED is left out, as it doesn't fit a long
+     *
+     * @param metaData   the meta data of the result set
+     * @param keyColumns the indexes of the key columns
+     * @return bool
+     * @throws SQLException exception
+     */
+    private static boolean isNumericKey(ResultSetMetaData metaData, int[] keyColumns) throws SQLException {
+        if (keyColumns.length != 1) {
+            return false;
+        }
+        switch (metaData.getColumnType(keyColumns[0])) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return true;
+            case Types.BIGINT:
+                return metaData.isSigned(keyColumns[0]);
+            default:
+                return false;
+        }
+    }
+
+    private static Statement createStreamingStatement(Connection connection) throws SQLException {
+        Statement stmt = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        //stream the rows instead of buffering the table
+        stmt.setFetchSize(Integer.MIN_VALUE);
+        return stmt;
+    }
+
+    private Connection openSource() throws SQLException, ClassNotFoundException {
+        if (dataSource != null) {
+            Connection connection = dataSource.getConnection();
+            if (database != null && !database.isEmpty()) {
+                connection.setCatalog(database);
+            }
+            return connection;
+        }
+        if (jdbcConnString == null || jdbcConnString.isEmpty()) {
+            return MysqlBaseService.connect(username, password, database, jdbcDriver);
+        }
+        return MysqlBaseService.connectWithURL(username, password, jdbcConnString, jdbcDriver);
+    }
+
+    private Connection openTarget() throws SQLException, ClassNotFoundException {
+        if (targetDataSource != null) {
+            return targetDataSource.getConnection();
+        }
+        return MysqlBaseService.connectWithURL(targetUsername == null ? username : targetUsername,
+                targetPassword == null ? password : targetPassword, targetJdbcConnString, jdbcDriver);
+    }
+
+    /**
+     * This will open the dump the same way the import does. An
+     * encrypted dump file is decrypted, a zipped one is read from
+     * its first entry and a binary dump without its rows
+     *
+     * @return Reader
+     * @throws IOException exception
+     */
+    private Reader openDump() throws IOException {
+        if (targetSqlString != null) {
+            return new StringReader(targetSqlString);
+        }
+        InputStream in = MysqlImportService.openSqlFile(targetDumpFile, encryptionKey);
+
+        //only the sql of a binary dump is needed, its rows are skipped
+        if (BinaryDump.isBinaryDump(in)) {
+            try {
+                return new StringReader(BinaryDump.readSql(in));
+            } finally {
+                in.close();
+            }
+        }
+        return new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * This function will check that required parameters
+     * are set
+     * @return bool
+     */
+    private boolean assertValidParams() {
+        boolean target = targetDataSource != null || targetSqlString != null || targetDumpFile != null ||
+                (targetJdbcConnString != null && !targetJdbcConnString.isEmpty());
+        if (dataSource != null) {
+            return target;
+        }
+        return target && username != null && !this.username.isEmpty() &&
+                password != null &&
+                ((database != null && !this.database.isEmpty()) || (jdbcConnString != null && !jdbcConnString.isEmpty()));
+    }
+
+    /**
+     * This function will create a new
+     * MysqlDiffService instance thereby facilitating
+     * a builder pattern
+     * @return MysqlDiffService
+     */
+    public static MysqlDiffService builder() {
+        return new MysqlDiffService();
+    }
+
+    public MysqlDiffService setDatabase(String database) {
+        this.database = database;
+        return this;
+    }
+
+    public MysqlDiffService setUsername(String username) {
+        this.username = username;
+        return this;
+    }
+
+    public MysqlDiffService setPassword(String password) {
+        this.password = password;
+        return this;
+    }
+
+    public MysqlDiffService setJdbcDriver(String jdbcDriver) {
+        this.jdbcDriver = jdbcDriver;
+        return this;
+    }
+
+    public MysqlDiffService setJdbcConnString(String jdbcConnString) {
+        this.jdbcConnString = jdbcConnString;
+        return this;
+    }
+
+    /**
+     * This will set the data source the source connection
+     * is obtained from. The username, password and JDBC
+     * connection string are not needed then
+     *
+     * @param dataSource the data source. Can be null
+     * @return MysqlDiffService
+     */
+    public MysqlDiffService setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+        return this;
+    }
+
+    /**
+     * @param targetJdbcConnString the JDBC URL of the target database
+     * @return MysqlDiffService
+     */
+    public MysqlDiffService setTargetJdbcConnString(String targetJdbcConnString) {
+        this.targetJdbcConnString = targetJdbcConnString;
+        return this;
+    }
+
+    /**
+     * @param targetUsername the username of the target. Default is the one of the source
+     * @return MysqlDiffService
+     */
+    public MysqlDiffService setTargetUsername(String targetUsername) {
+        this.targetUsername = targetUsername;
+        return this;
+    }
+
+    /**
+     * @param targetPassword the password of the target. Default is the one of the source
+     * @return MysqlDiffService
+     */
+    public MysqlDiffService setTargetPassword(String targetPassword) {
+        this.targetPassword = targetPassword;
+        return this;
+    }
+
+    /**
+     * @param targetDataSource the data source of the target database. Can be null
+     * @return MysqlDiffService
+     */
+    public MysqlDiffService setTargetDataSource(DataSource targetDataSource) {
+        this.targetDataSource = targetDataSource;
+        return this;
+    }
+
+    /**
+     * @param targetSqlString the dump the target has been restored from,
+     *                        exported with {@link MysqlExportService#CHECKSUMS}
+     * @return MysqlDiffService
+     */
+    public MysqlDiffService setTargetSqlString(String targetSqlString) {
+        this.targetSqlString = targetSqlString;
+        return this;
+    }
+
+    /**
+     * @param targetDumpFile the dump file the target has been restored from, zipped, encrypted
+     *                       or neither, exported with {@link MysqlExportService#CHECKSUMS}
+     * @return MysqlDiffService
+     */
+    public MysqlDiffService setTargetDumpFile(File targetDumpFile) {
+        this.targetDumpFile = targetDumpFile;
+        return this;
+    }
+
+    /**
+     * @param encryptionKey the base64 key an encrypted target dump file has been encrypted with
+     * @return MysqlDiffService
+     */
+    public MysqlDiffService setEncryptionKey(String encryptionKey) {
+        this.encryptionKey = encryptionKey;
+        return this;
+    }
+
+    /**
+     * @param tables the tables to compare. Default is all the tables of the source
+     * @return MysqlDiffService
+     */
+    public MysqlDiffService setTables(List<String> tables) {
+        this.tables = tables;
+        return this;
+    }
+
+    /**
+     * This will return the delta of the last diff()
+     * run, for {@link MysqlImportService#setSqlString(String)}
+     *
+     * @return String
+     */
+    public String getGeneratedSql() {
+        return generatedSql == null ? null : generatedSql.toString();
+    }
+
+    public long getInserts() {
+        return inserts;
+    }
+
+    public long getUpdates() {
+        return updates;
+    }
+
+    public long getDeletes() {
+        return deletes;
+    }
+}
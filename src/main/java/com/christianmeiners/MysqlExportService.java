@@ -2,22 +2,59 @@ package com.christianmeiners;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.zeroturnaround.zip.ZipUtil;
 
+import javax.sql.DataSource;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.Date;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 /**
  * Created by seun_ on 24-Feb-18.
  */
 public class MysqlExportService {
 
-    private Statement stmt;
+    private Connection connection;
+    private volatile Statement stmt;
+    private volatile Statement dataStmt;
+    private volatile boolean cancelled;
+    private final Set<Statement> workerStatements = ConcurrentHashMap.newKeySet();
+    private Throttle throttle;
+    private RateLimiter diskRateLimiter;
+    private Semaphore compressionPermits;
+    private DataSource dataSource;
+    private BackupPlan plan;
+    private final List<DumpFileOutputStream> dumpFiles = new ArrayList<>();
+    private int fetchSize;
+    private int chunkRows = DEFAULT_CHUNK_ROWS;
+    private MemoryGovernor memoryGovernor;
+    private TableFilter tableFilter;
+    private Map<String, List<MysqlBaseService.Partition>> partitions = Collections.emptyMap();
+    private PartitionCache partitionCache;
+    private ExportCheckpoint checkpoint;
+    private final List<TablePart> tableParts = new ArrayList<>();
     private String database;
     private String generatedSql = "";
     private Logger logger = LoggerFactory.getLogger(getClass());
@@ -27,6 +64,18 @@ public class MysqlExportService {
     private String zipFileName = "";
     private Properties properties;
     private File generatedZipFile;
+    private String repositoryBackup;
+    private final List<BackupSink> backupSinks = new ArrayList<>();
+    private ExportListener exportListener;
+    private BackupMetrics metrics = new BackupMetrics();
+    private static final int PROGRESS_BATCH_ROWS = 1000;
+    static final long DEFAULT_MAX_THREADS_RUNNING = 50;
+    static final long DEFAULT_MAX_REPLICA_LAG_SECONDS = 60;
+    static final long DEFAULT_MAX_HISTORY_LENGTH = 1000000;
+    static final long DEFAULT_THROTTLE_POLL_MILLIS = 1000;
+    private static final int THROTTLED_NET_WRITE_TIMEOUT = 3600;
+    static final int DEFAULT_CHUNK_ROWS = 100000;
+    static final long DEFAULT_FSYNC_INTERVAL_BYTES = 64L * 1024 * 1024;
 
     public static final String EMAIL_HOST = "EMAIL_HOST";
     public static final String EMAIL_PORT = "EMAIL_PORT";
@@ -36,6 +85,8 @@ public class MysqlExportService {
     public static final String EMAIL_MESSAGE = "EMAIL_MESSAGE";
     public static final String EMAIL_FROM = "EMAIL_FROM";
     public static final String EMAIL_TO = "EMAIL_TO";
+    public static final String EMAIL_MAX_BYTES = "EMAIL_MAX_BYTES";
+    public static final String EMAIL_RETRIES = "EMAIL_RETRIES";
 
     public static final String DB_NAME = "DB_NAME";
     public static final String DB_USERNAME = "DB_USERNAME";
@@ -48,6 +99,43 @@ public class MysqlExportService {
     public static final String PRESERVE_GENERATED_FILE = "PRESERVE_GENERATED_FILE";
     public static final String EXCLUDE_VIEWS = "EXCLUDE_VIEWS";
     public static final String EXCLUDE_ROUTINES = "EXCLUDE_ROUTINES";
+    public static final String REGISTER_MBEAN = "REGISTER_MBEAN";
+
+    public static final String MAX_ROWS_PER_SECOND = "MAX_ROWS_PER_SECOND";
+    public static final String MAX_BYTES_PER_SECOND = "MAX_BYTES_PER_SECOND";
+    public static final String ADAPTIVE_THROTTLE = "ADAPTIVE_THROTTLE";
+    public static final String MAX_THREADS_RUNNING = "MAX_THREADS_RUNNING";
+    public static final String MAX_REPLICA_LAG_SECONDS = "MAX_REPLICA_LAG_SECONDS";
+    public static final String MAX_HISTORY_LENGTH = "MAX_HISTORY_LENGTH";
+    public static final String THROTTLE_POLL_MILLIS = "THROTTLE_POLL_MILLIS";
+    public static final String CONNECTION_POOL_SIZE = "CONNECTION_POOL_SIZE";
+
+    public static final String DRY_RUN = "DRY_RUN";
+    public static final String AUTO_TUNE = "AUTO_TUNE";
+    public static final String TARGET_WINDOW_SECONDS = "TARGET_WINDOW_SECONDS";
+    public static final String HISTORY_FILE = "HISTORY_FILE";
+    public static final String EXPORT_WORKERS = "EXPORT_WORKERS";
+    public static final String FETCH_SIZE = "FETCH_SIZE";
+    public static final String MAX_HEAP_BYTES = "MAX_HEAP_BYTES";
+
+    public static final String CHECKPOINT_DIR = "CHECKPOINT_DIR";
+    public static final String RESUME = "RESUME";
+    public static final String CHUNK_ROWS = "CHUNK_ROWS";
+    public static final String CHECKSUMS = "CHECKSUMS";
+    public static final String REPOSITORY_DIR = "REPOSITORY_DIR";
+    public static final String ENCRYPTION_KEY = "ENCRYPTION_KEY";
+    public static final String ENCRYPTION_THREADS = "ENCRYPTION_THREADS";
+    public static final String BINARY_DUMP = "BINARY_DUMP";
+    public static final String FSYNC_POLICY = "FSYNC_POLICY";
+    public static final String FSYNC_INTERVAL_BYTES = "FSYNC_INTERVAL_BYTES";
+    public static final String INCLUDE_TABLES = "INCLUDE_TABLES";
+    public static final String EXCLUDE_TABLES = "EXCLUDE_TABLES";
+    public static final String TABLE_WHERE = "TABLE_WHERE.";
+    public static final String TABLE_SAMPLE = "TABLE_SAMPLE.";
+    public static final String SUBSET = "SUBSET";
+    public static final String PARTITIONED_EXPORT = "PARTITIONED_EXPORT";
+    public static final String PARTITION_CACHE_DIR = "PARTITION_CACHE_DIR";
+    public static final String ADAPTIVE_COMPRESSION = "ADAPTIVE_COMPRESSION";
 
     /**
      * @deprecated Name changed to {@link #PRESERVE_GENERATED_FILE}
@@ -83,6 +171,9 @@ public class MysqlExportService {
      * @return bool
      */
     private boolean isValidateProperties() {
+        if (properties != null && dataSource != null) {
+            return true;
+        }
         return properties != null &&
                 properties.containsKey(DB_USERNAME) &&
                 properties.containsKey(DB_PASSWORD) &&
@@ -134,6 +225,39 @@ public class MysqlExportService {
                         Boolean.TRUE.toString());
     }
 
+    /**
+     * This function will return true
+     * or false based on the value set
+     * for {@link #BINARY_DUMP}
+     *
+     * @return bool
+     */
+    private boolean isBinaryDump() {
+        return Boolean.parseBoolean(properties.getProperty(BINARY_DUMP, Boolean.FALSE.toString()));
+    }
+
+    /**
+     * This function will return true
+     * or false based on the value set
+     * for {@link #ADAPTIVE_COMPRESSION}
+     *
+     * @return bool
+     */
+    private boolean isAdaptiveCompression() {
+        return Boolean.parseBoolean(properties.getProperty(ADAPTIVE_COMPRESSION, Boolean.FALSE.toString()));
+    }
+
+    /**
+     * This function will return true
+     * or false based on the value set
+     * for {@link #SUBSET}
+     *
+     * @return bool
+     */
+    boolean isSubset() {
+        return Boolean.parseBoolean(properties.getProperty(SUBSET, Boolean.FALSE.toString()));
+    }
+
     /**
      * This function will return true
      * or false based on the value set
@@ -167,32 +291,35 @@ public class MysqlExportService {
      * for creating the table supplied in the
      * method signature
      *
+     * @param stmt  the statement to use
      * @param table the table concerned
      * @return String
      * @throws SQLException exception
      */
-    private String getTableInsertStatement(String table) throws SQLException {
+    private String getTableInsertStatement(Statement stmt, String table) throws SQLException {
 
         StringBuilder sql = new StringBuilder();
-        ResultSet rs;
         boolean addIfNotExists = Boolean.parseBoolean(properties.containsKey(ADD_IF_NOT_EXISTS) ? properties.getProperty(ADD_IF_NOT_EXISTS, Boolean.TRUE.toString()) : Boolean.TRUE.toString());
 
 
         if (table != null && !table.isEmpty()) {
-            rs = stmt.executeQuery("SHOW CREATE TABLE " + table + ";");
-            while (rs.next()) {
-                String qtbl = rs.getString(1);
-                String query = rs.getString(2);
-                sql.append("\n\n--");
-                sql.append("\n").append(MysqlBaseService.SQL_START_PATTERN).append("  table dump : ").append(qtbl);
-                sql.append("\n--\n\n");
-
-                if (addIfNotExists) {
-                    query = query.trim().replace("CREATE TABLE", "CREATE TABLE IF NOT EXISTS");
+            long start = System.nanoTime();
+            try (ResultSet rs = stmt.executeQuery("SHOW CREATE TABLE " + table + ";")) {
+                while (rs.next()) {
+                    String qtbl = rs.getString(1);
+                    String query = rs.getString(2);
+                    sql.append("\n\n--");
+                    sql.append("\n").append(MysqlBaseService.SQL_START_PATTERN).append("  table dump : ").append(qtbl);
+                    sql.append("\n--\n\n");
+
+                    if (addIfNotExists) {
+                        query = query.trim().replace("CREATE TABLE", "CREATE TABLE IF NOT EXISTS");
+                    }
+
+                    sql.append(query).append(";\n\n");
                 }
-
-                sql.append(query).append(";\n\n");
             }
+            metrics.addStageNanos(BackupStage.SHOW_CREATE, System.nanoTime() - start);
 
             sql.append("\n\n--");
             sql.append("\n").append(MysqlBaseService.SQL_END_PATTERN).append("  table dump : ").append(table);
@@ -206,35 +333,156 @@ public class MysqlExportService {
      * This function will generate the insert statements needed
      * to recreate the table under processing.
      *
-     * @param table the table to get inserts statement for
-     * @return String generated SQL insert
+     * @param dataStmt  the statement to read the rows with
+     * @param table     the table to get inserts statement for
+     * @param condition the WHERE clause of the rows to read. Empty for all the rows
+     * @param sql       the buffer to append the generated SQL insert to
      * @throws SQLException exception
      */
-    private String getDataInsertStatement(String table) throws SQLException {
+    private void getDataInsertStatement(Statement dataStmt, String table, String condition, SpillableBuffer sql) throws SQLException {
+        getDataInsertStatement(dataStmt, table, condition, sql, null);
+    }
 
-        StringBuilder sql = new StringBuilder();
+    /**
+     * This function will generate the insert statements of
+     * the rows of a table and, for a subset, record their keys
+     *
+     * @param dataStmt  the statement to read the rows with
+     * @param table     the table to get inserts statement for
+     * @param condition the WHERE clause of the rows to read. Empty for all the rows
+     * @param sql       the buffer to append the generated SQL insert to
+     * @param subset    the keys of the subset. Null if it's not a subset
+     * @throws SQLException exception
+     */
+    private void getDataInsertStatement(Statement dataStmt, String table, String condition, SpillableBuffer sql,
+                                        SubsetKeys subset) throws SQLException {
+        List<String> primaryKey = getOrderKey(dataStmt, table);
+        List<String> key = isChecksums() && subset == null ? primaryKey : null;
+        long start = System.nanoTime();
+        try (ResultSet rs = queryRows(dataStmt, table, condition, primaryKey)) {
+            getDataInsertStatement(rs, table, start, sql, key, subset);
+        }
+    }
+
+    /**
+     * This will add the {@link #TABLE_WHERE} filter and
+     * the {@link #TABLE_SAMPLE} of the table to a WHERE clause
+     *
+     * @param dataStmt the statement to read the rows with
+     * @param table    the table
+     * @param where    the WHERE clause, empty for all the rows
+     * @return the WHERE clause
+     * @throws SQLException exception
+     */
+    private String filterRows(Statement dataStmt, String table, String where) throws SQLException {
+        if (!tableFilter.isFiltered(table)) {
+            return where;
+        }
+        try (Statement keyStmt = dataStmt.getConnection().createStatement()) {
+            return tableFilter.addTo(where, table, MysqlBaseService.getPrimaryKey(database, table, keyStmt));
+        }
+    }
+
+    /**
+     * This will return the primary key the rows are to be read
+     * in the order of. The checksum ranges follow the primary key,
+     * and the chunks of a repository only stay the same between runs
+     * if the rows do too
+     *
+     * @param dataStmt the statement to read the rows with
+     * @param table    the table
+     * @return the columns of the primary key, empty if there is none. Null if the order doesn't matter
+     * @throws SQLException exception
+     */
+    private List<String> getOrderKey(Statement dataStmt, String table) throws SQLException {
+        if (!isChecksums() && !properties.containsKey(REPOSITORY_DIR)) {
+            return null;
+        }
+        try (Statement keyStmt = dataStmt.getConnection().createStatement()) {
+            return MysqlBaseService.getPrimaryKey(database, table, keyStmt);
+        }
+    }
 
-        ResultSet rs = stmt.executeQuery("SELECT * FROM " + table + ";");
+    private boolean isChecksums() {
+        return Boolean.parseBoolean(properties.getProperty(CHECKSUMS, Boolean.FALSE.toString()));
+    }
+
+    /**
+     * This will query the rows of the table with
+     * the fetch size of the memory governor
+     *
+     * @param dataStmt  the statement to read the rows with
+     * @param table     the table
+     * @param condition the WHERE clause of the rows to read. Empty for all the rows
+     * @param orderKey  the columns to order the rows by. Can be null
+     * @return ResultSet
+     * @throws SQLException exception
+     */
+    private ResultSet queryRows(Statement dataStmt, String table, String condition, List<String> orderKey) throws SQLException {
+        String order = orderKey == null || orderKey.isEmpty() ? "" : " ORDER BY `" + String.join("`, `", orderKey) + "`";
+        if (memoryGovernor != null && throttle == null) {
+            Long estimatedBytes = plan == null ? null : plan.getTableBytes().get(table);
+            String url = dataStmt.getConnection().getMetaData().getURL();
+            dataStmt.setFetchSize(memoryGovernor.getFetchSize(estimatedBytes == null ? -1 : estimatedBytes,
+                    url != null && url.contains("useCursorFetch=true")));
+        }
+        return dataStmt.executeQuery("SELECT * FROM " + table + condition + order + ";");
+    }
 
-        //move to the last row to get max rows returned
-        rs.last();
-        int rowCount = rs.getRow();
+    /**
+     * This function will generate the insert statements
+     * from the rows of the given result set
+     *
+     * @param rs    the rows of the table
+     * @param table the table to get inserts statement for
+     * @param start the time the query has been started at
+     * @param sql   the buffer to append the generated SQL insert to
+     * @throws SQLException exception
+     */
+    void getDataInsertStatement(ResultSet rs, String table, long start, SpillableBuffer sql) throws SQLException {
+        getDataInsertStatement(rs, table, start, sql, null, null);
+    }
 
-        //there are no records just return empty string
-        if (rowCount <= 0) {
-            return sql.toString();
+    /**
+     * This function will generate the insert statements
+     * from the rows of the given result set and, if the
+     * primary key is given, the checksums of the rows
+     *
+     * @param rs     the rows of the table, in the order of the primary key if there is one
+     * @param table  the table to get inserts statement for
+     * @param start  the time the query has been started at
+     * @param sql    the buffer to append the generated SQL insert to
+     * @param key    the columns of the primary key for the checksums, empty if there
+     *               is none. Null for no checksums
+     * @param subset the keys of the subset the rows are recorded in. Null if it's not a subset
+     * @throws SQLException exception
+     */
+    private void getDataInsertStatement(ResultSet rs, String table, long start, SpillableBuffer sql, List<String> key,
+                                        SubsetKeys subset) throws SQLException {
+
+        //the result set is only read forward so
+        //it can also be streamed from the server.
+        //there are no records just return
+        if (!rs.next()) {
+            metrics.addStageNanos(BackupStage.ROW_FETCH, System.nanoTime() - start);
+            if (key != null) {
+                //record that there are no rows
+                sql.append(DumpManifest.format(table, key.isEmpty() ? DumpManifest.WHOLE_TABLE : DumpManifest.TO_END, 0, 0));
+            }
+            return;
         }
 
-        sql.append("\n--").append("\n-- Inserts of ").append(table).append("\n--\n\n");
+        StringBuilder header = new StringBuilder();
+        header.append("\n--").append("\n-- Inserts of ").append(table).append("\n--\n\n");
 
         //temporarily disable foreign key constraint
-        sql.append("\n/*!40000 ALTER TABLE `").append(table).append("` DISABLE KEYS */;\n");
+        header.append("\n/*!40000 ALTER TABLE `").append(table).append("` DISABLE KEYS */;\n");
 
-        sql.append("\n--\n")
+        header.append("\n--\n")
                 .append(MysqlBaseService.SQL_START_PATTERN).append(" table insert : ").append(table)
                 .append("\n--\n");
 
-        sql.append("INSERT INTO `").append(table).append("`(");
+        header.append("INSERT INTO `").append(table).append("`(");
 
         ResultSetMetaData metaData = rs.getMetaData();
         int columnCount = metaData.getColumnCount();
@@ -243,51 +491,77 @@ public class MysqlExportService {
         //in the returned result set
         //at this point the insert is INSERT INTO (`col1`, `col2`, ...)
         for (int i = 0; i < columnCount; i++) {
-            sql.append("`")
+            header.append("`")
                     .append(metaData.getColumnName(i + 1))
                     .append("`, ");
         }
 
         //remove the last whitespace and comma
-        sql.deleteCharAt(sql.length() - 1).deleteCharAt(sql.length() - 1).append(") VALUES \n");
+        header.deleteCharAt(header.length() - 1).deleteCharAt(header.length() - 1).append(") VALUES \n");
+        sql.append(header);
 
         //now we're going to build the values for data insertion
-        rs.beforeFirst();
-        while (rs.next()) {
-            sql.append("(");
-            for (int i = 0; i < columnCount; i++) {
-
-                int columnType = metaData.getColumnType(i + 1);
-                int columnIndex = i + 1;
-
-                //this is the part where the values are processed based on their type
-                if (Objects.isNull(rs.getObject(columnIndex))) {
-                    sql.append("").append(rs.getObject(columnIndex)).append(", ");
-                } else if (columnType == Types.INTEGER || columnType == Types.TINYINT || columnType == Types.BIT) {
-                    sql.append(rs.getInt(columnIndex)).append(", ");
-                } else {
-
-                    String val = rs.getString(columnIndex);
-                    //escape the single quotes that might be in the value
-                    val = val.replace("'", "\\'");
+        //fetch and encoding times are summed up locally and
+        //handed over to the metrics once per batch of rows
+        //every row is encoded in a reused builder
+        //and appended to the buffer as a whole
+        long fetchNanos = System.nanoTime() - start;
+        long encodeNanos = 0;
+        int batchRows = 0;
+        long batchStart = sql.length();
+        long batchBytes = 0;
+        boolean firstRow = true;
+        StringBuilder row = new StringBuilder();
+        RowChecksum checksum = key == null ? null : new RowChecksum(table, getKeyColumns(metaData, key), chunkRows);
+        SubsetKeys.Rows subsetRows = subset == null ? null : subset.forRows(table, metaData);
+        do {
+            long encodeStart = System.nanoTime();
+            row.setLength(0);
+
+            //separate this row from the previous one
+            if (!firstRow) {
+                row.append(",\n");
+            }
+            int rowStart = row.length();
+            firstRow = false;
+
+            encodeRow(rs, metaData, columnCount, row);
+            sql.append(row);
+            batchBytes += MysqlBaseService.utf8Length(row);
+            if (checksum != null) {
+                checksum.update(rs, row, rowStart);
+            }
+            if (subsetRows != null) {
+                subsetRows.visit(rs);
+            }
 
-                    sql.append("'").append(val).append("', ");
+            long fetchStart = System.nanoTime();
+            encodeNanos += fetchStart - encodeStart;
+            if (++batchRows == PROGRESS_BATCH_ROWS) {
+                reportBatch(table, batchRows, batchBytes, fetchNanos, encodeNanos);
+                if (memoryGovernor != null) {
+                    //resize the batches of a cursor fetch
+                    //to the observed width of the rows
+                    memoryGovernor.observe(batchRows, sql.length() - batchStart);
+                    if (rs.getFetchSize() > 0) {
+                        rs.setFetchSize(memoryGovernor.getCursorFetchSize());
+                    }
                 }
+                batchRows = 0;
+                batchStart = sql.length();
+                batchBytes = 0;
+                fetchNanos = 0;
+                encodeNanos = 0;
+                fetchStart = System.nanoTime();
             }
 
-            //now that we're done with a row
-            //let's remove the last whitespace and comma
-            sql.deleteCharAt(sql.length() - 1).deleteCharAt(sql.length() - 1);
-
-            //if this is the last row, just append a closing
-            //parenthesis otherwise append a closing parenthesis and a comma
-            //for the next set of values
-            if (rs.isLast()) {
-                sql.append(")");
-            } else {
-                sql.append("),\n");
+            boolean hasNext = rs.next();
+            fetchNanos += System.nanoTime() - fetchStart;
+            if (!hasNext) {
+                break;
             }
-        }
+        } while (true);
+        reportBatch(table, batchRows, batchBytes, fetchNanos, encodeNanos);
 
         //now that we are done processing the entire row
         //let's add the terminator
@@ -300,24 +574,139 @@ public class MysqlExportService {
         //enable FK constraint
         sql.append("\n/*!40000 ALTER TABLE `").append(table).append("` ENABLE KEYS */;\n");
 
-        return sql.toString();
+        if (checksum != null) {
+            sql.append(checksum.finish());
+        }
+    }
+
+    /**
+     * This will encode a row of the result set as
+     * the values of an insert statement
+     *
+     * @param rs          the result set on the row
+     * @param metaData    the meta data of the result set
+     * @param columnCount the number of columns
+     * @param row         the builder to append the values to
+     * @throws SQLException exception
+     */
+    static void encodeRow(ResultSet rs, ResultSetMetaData metaData, int columnCount, StringBuilder row) throws SQLException {
+        row.append("(");
+        for (int i = 0; i < columnCount; i++) {
+            encodeValue(rs, i + 1, metaData.getColumnType(i + 1), row);
+            row.append(", ");
+        }
+
+        //now that we're done with a row
+        //let's remove the last whitespace and comma
+        //and close the parenthesis
+        row.deleteCharAt(row.length() - 1).deleteCharAt(row.length() - 1).append(")");
+    }
+
+    /**
+     * This will encode a value of the row the
+     * result set is on the way it's written to the dump
+     *
+     * @param rs          the result set on the row
+     * @param columnIndex the column index
+     * @param columnType  the type of the column
+     * @param row         the builder to append the value to
+     * @throws SQLException exception
+     */
+    static void encodeValue(ResultSet rs, int columnIndex, int columnType, StringBuilder row) throws SQLException {
+
+        //this is the part where the values are processed based on their type
+        if (Objects.isNull(rs.getObject(columnIndex))) {
+            row.append("").append(rs.getObject(columnIndex));
+        } else if (columnType == Types.INTEGER || columnType == Types.TINYINT || columnType == Types.BIT) {
+            row.append(rs.getInt(columnIndex));
+        } else {
+
+            String val = rs.getString(columnIndex);
+            //escape the single quotes that might be in the value
+            val = val.replace("'", "\\'");
+
+            row.append("'").append(val).append("'");
+        }
+    }
+
+    /**
+     * This will return the indexes of the
+     * key columns in the result set
+     *
+     * @param metaData the meta data of the result set
+     * @param key      the names of the key columns
+     * @return int[]
+     * @throws SQLException exception
+     */
+    static int[] getKeyColumns(ResultSetMetaData metaData, List<String> key) throws SQLException {
+        int[] columns = new int[key.size()];
+        for (int k = 0; k < key.size(); k++) {
+            for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                if (metaData.getColumnName(i).equalsIgnoreCase(key.get(k))) {
+                    columns[k] = i;
+                }
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * This function will hand over the counters
+     * of a batch of rows to the metrics and
+     * notify the listener. This is also where
+     * the throttle is applied
+     *
+     * @param table        the table under processing
+     * @param rows         number of rows in the batch
+     * @param bytes        number of bytes in UTF-8 generated for the batch
+     * @param fetchNanos   time spent fetching the rows
+     * @param encodeNanos  time spent encoding the rows
+     */
+    private void reportBatch(String table, long rows, long bytes, long fetchNanos, long encodeNanos) {
+        metrics.addRows(rows);
+        metrics.addRawBytes(bytes);
+        metrics.addStageNanos(BackupStage.ROW_FETCH, fetchNanos);
+        metrics.addStageNanos(BackupStage.ENCODING, encodeNanos);
+        if (exportListener != null) {
+            exportListener.onProgress(table, metrics);
+        }
+        if (throttle != null) {
+            throttle.onBatch(rows, bytes);
+        }
+        checkCancelled();
+    }
+
+    /**
+     * This will throw a CancellationException
+     * if cancel() has been called
+     */
+    private void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException(LOG_PREFIX + ": export of " + database + " has been cancelled");
+        }
     }
 
     /**
      * This function returns the create
      * statement for the given routine.
      *
+     * @param stmt the statement to use
      * @param name name of the routine
      * @param type type of the routine
      * @return String
      * @throws SQLException exception
      */
-    private String getRoutineCreateStatement(String name, String type) throws SQLException {
+    private String getRoutineCreateStatement(Statement stmt, String name, String type) throws SQLException {
         StringBuilder sql = new StringBuilder();
-        ResultSet rs = stmt.executeQuery("SHOW CREATE " + type + " " + name + ";");
-        rs.next();
+        long start = System.nanoTime();
+        String createStatement;
+        try (ResultSet rs = stmt.executeQuery("SHOW CREATE " + type + " " + name + ";")) {
+            rs.next();
+            createStatement = rs.getString("Create " + type);
+        }
+        metrics.addStageNanos(BackupStage.SHOW_CREATE, System.nanoTime() - start);
 
-        if(rs.getString("Create " + type)==null) {
+        if(createStatement==null) {
             logger.warn("User \""+properties.getProperty(DB_USERNAME)+"\" has no right to read Create Statement for "+type+" "+name);
             return "";
         }
@@ -330,8 +719,8 @@ public class MysqlExportService {
                 .append(" dump : ")
                 .append(name)
                 .append("\n--\n\n")
-                .append(rs.getString("Create " + type))
-                .append((rs.getString("Create " + type).endsWith(";") ? "" : ";"))
+                .append(createStatement)
+                .append((createStatement.endsWith(";") ? "" : ";"))
                 .append("\n\n--\n")
                 .append(MysqlBaseService.SQL_END_PATTERN)
                 .append("  ")
@@ -348,201 +737,1848 @@ public class MysqlExportService {
      * for every table in the database to generate a whole
      * script of SQL
      *
-     * @return String
+     * @param workers the number of tables to export concurrently
+     * @return SpillableBuffer
      * @throws SQLException exception
      */
-    private String exportToSql() throws SQLException {
-
-        StringBuilder sql = new StringBuilder();
-        sql.append("--");
-        sql.append("\n-- Generated by mysql-backup4j");
-        sql.append("\n-- https://github.com/SeunMatt/mysql-backup4j");
-        sql.append("\n-- Date: ").append(new SimpleDateFormat("d-M-Y H:m:s").format(new Date()));
-        sql.append("\n--");
-
-        //these declarations are extracted from HeidiSQL
-        sql.append("\n\n/*!40101 SET @OLD_CHARACTER_SET_CLIENT=@@CHARACTER_SET_CLIENT */;")
-                .append("\n/*!40101 SET NAMES utf8 */;")
-                .append("\n/*!50503 SET NAMES utf8mb4 */;")
-                .append("\n/*!40014 SET @OLD_FOREIGN_KEY_CHECKS=@@FOREIGN_KEY_CHECKS, FOREIGN_KEY_CHECKS=0 */;")
-                .append("\n/*!40101 SET @OLD_SQL_MODE=@@SQL_MODE, SQL_MODE='NO_AUTO_VALUE_ON_ZERO' */;");
-
-
-        //for every table in the database, get the table creation and data insert statement
-        for (String s : MysqlBaseService.getAllTables(database, stmt)) {
-            try {
-                sql.append(getTableInsertStatement(s.trim()));
-                sql.append(getDataInsertStatement(s.trim()));
-            } catch (SQLException e) {
-                e.printStackTrace();
+    private SpillableBuffer exportToSql(int workers) throws SQLException {
+
+        SpillableBuffer sql = newDumpBuffer();
+        try {
+            sql.append(getHeader());
+
+            //for every table in the database, get the table creation and data insert statement
+            List<String> tables = getTables(stmt);
+            if (isSubset() || (workers > 1 && tables.size() > 1)) {
+                List<SpillableBuffer> sections = isSubset() ? exportSubset(tables) : exportTablesConcurrently(tables, workers);
+                for (int i = 0; i < sections.size(); i++) {
+                    try (SpillableBuffer section = sections.get(i)) {
+                        appendTable(sql, tables.get(i), section);
+                    }
+                }
+            } else {
+                for (String s : tables) {
+                    try (SpillableBuffer section = exportTable(stmt, dataStmt, s)) {
+                        appendTable(sql, s, section);
+                    }
+                }
             }
+
+            sql.append(getRoutinesAndViews(stmt));
+            sql.append(getFooter());
+        } catch (SQLException | RuntimeException e) {
+            sql.close();
+            throw e;
         }
 
-        //get the routines that are in the database
-        for (Map.Entry<String, String> stringStringEntry : MysqlBaseService.getAllRoutines(database, stmt).entrySet()) {
-            try {
-                sql.append(getRoutineCreateStatement(stringStringEntry.getKey(), stringStringEntry.getValue()));
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+        //a dump over the heap budget is not kept in memory
+        if (sql.isSpilled()) {
+            logger.warn(LOG_PREFIX + ": the dump of " + database + " exceeds " + MAX_HEAP_BYTES +
+                    " and is not kept in memory. getGeneratedSql() returns an empty string, use " +
+                    PRESERVE_GENERATED_FILE + " to keep the file");
+            this.generatedSql = "";
+        } else {
+            this.generatedSql = sql.toString();
         }
+        return sql;
+    }
 
-        //get the routines that are in the database
-        for (String view : MysqlBaseService.getAllViews(database, stmt)) {
-            try {
-                sql.append(getRoutineCreateStatement(view.trim(), "VIEW"));
-            } catch (SQLException e) {
-                e.printStackTrace();
-            }
+    /**
+     * This will append the section of a table to the dump. With
+     * {@link #ADAPTIVE_COMPRESSION} the codec of the table is picked
+     * from the start of its section
+     *
+     * @param sql     the dump
+     * @param table   the table
+     * @param section the section of the table
+     */
+    void appendTable(SpillableBuffer sql, String table, SpillableBuffer section) {
+        long start = sql.length();
+        sql.append(section);
+        if (isAdaptiveCompression() && !isBinaryDump()) {
+            byte[] sample = section.sample(DumpCodec.SAMPLE_BYTES).getBytes(StandardCharsets.UTF_8);
+            addTablePart(table.trim(), start, sql.length(), DumpCodec.select(sample, Math.min(sample.length, DumpCodec.SAMPLE_BYTES)));
         }
+    }
 
-        sql.append("\n/*!40101 SET SQL_MODE=IFNULL(@OLD_SQL_MODE, '') */;")
-                .append("\n/*!40014 SET FOREIGN_KEY_CHECKS=IF(@OLD_FOREIGN_KEY_CHECKS IS NULL, 1, @OLD_FOREIGN_KEY_CHECKS) */;")
-                .append("\n/*!40101 SET CHARACTER_SET_CLIENT=@OLD_CHARACTER_SET_CLIENT */;");
+    private void addTablePart(String table, long start, long end, DumpCodec codec) {
+        tableParts.add(new TablePart(table, start, end, codec));
+        logger.debug(LOG_PREFIX + ": " + table + " of " + database + " is compressed with " + codec);
+    }
 
-        this.generatedSql = sql.toString();
-        return sql.toString();
+    /**
+     * The part of the dump with the SQL of a table, which
+     * is compressed with the codec that's picked for the table
+     */
+    private static class TablePart {
+        private final String table;
+        private final long start;
+        private final long end;
+        private final DumpCodec codec;
+
+        TablePart(String table, long start, long end, DumpCodec codec) {
+            this.table = table;
+            this.start = start;
+            this.end = end;
+            this.codec = codec;
+        }
     }
 
     /**
-     * This is the entry point for exporting
-     * the database. It performs validation and
-     * the initial object initializations,
-     * database connection and setup
-     * before ca
+     * This will export the subset of {@link #SUBSET}. The tables
+     * are exported on the connection of the export in the reverse order
+     * of their dependencies: the rows of their {@link #TABLE_WHERE} filters
+     * and {@link #TABLE_SAMPLE}s first, then the rows the exported rows
+     * of the other tables reference, see {@link SubsetKeys}. A table
+     * without a filter only has the rows that are referenced
      *
-     * @throws IOException            exception
-     * @throws SQLException           exception
-     * @throws ClassNotFoundException exception
+     * @param tables the tables in the order of their dependencies
+     * @return the sections of the tables in the given order
+     * @throws SQLException exception
      */
-    public void export() throws IOException, SQLException, ClassNotFoundException {
-
-        //check if properties is set or not
-        if (!isValidateProperties()) {
-            logger.error("Invalid config properties: The config properties is missing important parameters: DB_NAME, DB_USERNAME and DB_PASSWORD");
-            return;
+    private List<SpillableBuffer> exportSubset(List<String> tables) throws SQLException {
+        if (isChecksums()) {
+            logger.warn(LOG_PREFIX + ": " + CHECKSUMS + " is ignored for a " + SUBSET + " of " + database +
+                    ", it doesn't match the ranges of the source");
         }
+        long start = System.nanoTime();
+        List<String> names = new ArrayList<>();
+        for (String table : tables) {
+            names.add(table.trim());
+        }
+        SubsetKeys keys = new SubsetKeys(MysqlBaseService.getForeignKeys(database, stmt), names);
+        metrics.addStageNanos(BackupStage.METADATA, System.nanoTime() - start);
 
-        //connect to the database
-        database = properties.getProperty(DB_NAME);
-        String jdbcURL = properties.getProperty(JDBC_CONNECTION_STRING, "");
-        String driverName = properties.getProperty(JDBC_DRIVER_NAME, "");
-
-        Connection connection;
-
-        if (jdbcURL.isEmpty()) {
-            connection = MysqlBaseService.connect(properties.getProperty(DB_USERNAME), properties.getProperty(DB_PASSWORD),
-                    database, driverName);
-        } else {
-            if (jdbcURL.contains("?")) {
-                database = jdbcURL.substring(jdbcURL.lastIndexOf("/") + 1, jdbcURL.indexOf("?"));
-            } else {
-                database = jdbcURL.substring(jdbcURL.lastIndexOf("/") + 1);
+        Map<String, SpillableBuffer> sections = new HashMap<>();
+        try {
+            for (int i = names.size() - 1; i >= 0; i--) {
+                sections.put(names.get(i), exportSubsetTable(names.get(i), keys));
             }
-            logger.debug("database name extracted from connection string: " + database);
-            connection = MysqlBaseService.connectWithURL(properties.getProperty(DB_USERNAME), properties.getProperty(DB_PASSWORD),
-                    jdbcURL, driverName);
+        } catch (SQLException | RuntimeException e) {
+            for (SpillableBuffer section : sections.values()) {
+                section.close();
+            }
+            throw e;
         }
+        if (!keys.getUnresolvedTables().isEmpty()) {
+            logger.warn(LOG_PREFIX + ": the subset of " + database + " misses rows of " + keys.getUnresolvedTables() +
+                    " that are referenced by tables exported after them");
+        }
+        logger.debug(LOG_PREFIX + ": exported the subset of " + database + " with " + keys.getLookups() + " key lookups");
 
-        stmt = connection.createStatement();
-
-        //generate the final SQL
-        String sql = exportToSql();
+        List<SpillableBuffer> result = new ArrayList<>();
+        for (String table : names) {
+            result.add(sections.get(table));
+        }
+        return result;
+    }
 
-        //create a temp dir to store the exported file for processing
-        dirName = properties.getProperty(MysqlExportService.TEMP_DIR, dirName);
-        File file = new File(dirName);
-        if (!file.exists()) {
-            boolean res = file.mkdir();
-            if (!res) {
-//                logger.error(LOG_PREFIX + ": Unable to create temp dir: " + file.getAbsolutePath());
-                throw new IOException(LOG_PREFIX + ": Unable to create temp dir: " + file.getAbsolutePath());
+    /**
+     * This will export the rows of a table that belong to
+     * the subset. A failed query fails the export, as the
+     * subset would be missing the rows it references
+     *
+     * @param table the table
+     * @param keys  the keys of the subset
+     * @return the section of the table. The caller has to close it
+     * @throws SQLException exception
+     */
+    private SpillableBuffer exportSubsetTable(String table, SubsetKeys keys) throws SQLException {
+        checkCancelled();
+        if (exportListener != null) {
+            exportListener.onTableStarted(table, metrics);
+        }
+        SpillableBuffer sql = newSectionBuffer();
+        try {
+            sql.append(getTableInsertStatement(stmt, table));
+            if (tableFilter.isFiltered(table)) {
+                getDataInsertStatement(dataStmt, table, filterRows(dataStmt, table, ""), sql, keys);
+            }
+            String lookup;
+            while ((lookup = keys.nextLookup(table)) != null) {
+                checkCancelled();
+                getDataInsertStatement(dataStmt, table, lookup, sql, keys);
             }
+        } catch (SQLException | RuntimeException e) {
+            sql.close();
+            checkCancelled();
+            throw e;
         }
+        metrics.addTablesDone(1);
+        if (exportListener != null) {
+            exportListener.onTableCompleted(table, metrics);
+        }
+        return sql;
+    }
 
-        File sqlFolder;
-
-        //zip the file
-        if (doZipExport()) {
-            //write the sql file out
-            sqlFolder = new File(dirName + "/sql");
-            if (!sqlFolder.exists()) {
-                boolean res = sqlFolder.mkdir();
-                if (!res) {
-                    throw new IOException(LOG_PREFIX + ": Unable to create temp dir: " + file.getAbsolutePath());
-                }
+    /**
+     * This will export the database in the {@link BinaryDump}
+     * format to a temp file. The tables are exported one after
+     * the other on the connection of the export
+     *
+     * @return the temp file. The caller has to delete it
+     * @throws SQLException exception
+     * @throws IOException  exception
+     */
+    private File exportToBinary() throws SQLException, IOException {
+        File tempDir = new File(properties.getProperty(TEMP_DIR, dirName));
+        if (!tempDir.isDirectory() && !tempDir.mkdirs()) {
+            throw new IOException(LOG_PREFIX + ": Unable to create temp dir: " + tempDir.getAbsolutePath());
+        }
+        if (isSubset()) {
+            logger.warn(LOG_PREFIX + ": " + SUBSET + " is ignored for a " + BINARY_DUMP + ", only the table filters " +
+                    "are applied to the export of " + database);
+        }
+        File file = File.createTempFile("mysql-backup4j", BinaryDump.EXTENSION, tempDir);
+        boolean completed = false;
+        try {
+            BinaryDump.Writer writer = new BinaryDump.Writer(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+            writer.writeSql(getHeader());
+            List<long[]> ranges = new ArrayList<>();
+            List<String> tables = getTables(stmt);
+            for (String table : tables) {
+                long start = writer.getBytes();
+                exportTable(table.trim(), writer);
+                ranges.add(new long[]{start, writer.getBytes()});
+            }
+            writer.writeSql(getRoutinesAndViews(stmt));
+            writer.writeSql(getFooter());
+            writer.close();
+            if (isAdaptiveCompression()) {
+                selectCodecs(file, tables, ranges);
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                file.delete();
             }
-
-            sqlFileName = getSqlFilename();
-            FileOutputStream outputStream = new FileOutputStream(sqlFolder + "/" + sqlFileName);
-            outputStream.write(sql.getBytes());
-            outputStream.close();
-
-            zipFileName = dirName + "/" + sqlFileName.replace(".sql", ".zip");
-            generatedZipFile = new File(zipFileName);
-            ZipUtil.pack(sqlFolder, generatedZipFile);
-        } else {
-            sqlFolder = new File(dirName);
-            sqlFileName = getSqlFilename();
-            FileOutputStream outputStream = new FileOutputStream(sqlFolder.getAbsoluteFile() + "/" + sqlFileName);
-            outputStream.write(sql.getBytes());
-            outputStream.close();
         }
 
-        //mail the zipped file if mail settings are available
-        if (isEmailPropertiesSet()) {
-            boolean emailSendingRes = EmailService.builder()
-                    .setHost(properties.getProperty(EMAIL_HOST))
-                    .setPort(Integer.valueOf(properties.getProperty(EMAIL_PORT)))
-                    .setToAddress(properties.getProperty(EMAIL_TO))
-                    .setFromAddress(properties.getProperty(EMAIL_FROM))
-                    .setUsername(properties.getProperty(EMAIL_USERNAME))
-                    .setPassword(properties.getProperty(EMAIL_PASSWORD))
-                    .setSubject(properties.getProperty(EMAIL_SUBJECT, sqlFileName.replace(".sql", "").toUpperCase()))
-                    .setMessage(properties.getProperty(EMAIL_MESSAGE, "Please find attached database backup of " + database))
-                    .setAttachments(new File[]{new File((doZipExport() ? zipFileName : sqlFolder + "/" + sqlFileName))})
-                    .sendMail();
+        //the rows aren't available as SQL
+        this.generatedSql = "";
+        return file;
+    }
 
-            if (emailSendingRes) {
-                logger.debug(LOG_PREFIX + ": " + (doZipExport() ? "Zip" : "SQL") + " File Sent as Attachment to Email Address Successfully");
-            } else {
-                logger.error(LOG_PREFIX + ": Unable to send " + (doZipExport() ? "zipped" : "") + " file as attachment to email. See log debug for more info");
+    /**
+     * This will pick the codecs of the tables of a binary
+     * dump from the first bytes of each of them
+     *
+     * @param file   the binary dump
+     * @param tables the tables
+     * @param ranges the first and the end position of each table in the dump
+     * @throws IOException exception
+     */
+    private void selectCodecs(File file, List<String> tables, List<long[]> ranges) throws IOException {
+        byte[] sample = new byte[DumpCodec.SAMPLE_BYTES];
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            for (int i = 0; i < tables.size(); i++) {
+                long[] range = ranges.get(i);
+                int length = (int) Math.min(sample.length, range[1] - range[0]);
+                in.seek(range[0]);
+                in.readFully(sample, 0, length);
+                addTablePart(tables.get(i).trim(), range[0], range[1], DumpCodec.select(sample, length));
             }
         }
-
-        //clear the generated temp files
-        clearTempFiles(Boolean.parseBoolean(properties.getProperty(PRESERVE_GENERATED_FILE, Boolean.FALSE.toString())));
-
     }
 
     /**
-     * This function will delete all the
-     * temp files generated ny the library
-     * unless it's otherwise instructed not to do
-     * so by the preserveFile variable
+     * This will write the create statement and
+     * the rows of a table to a binary dump
      *
-     * @param preserveFile bool
+     * @param table  the table to export
+     * @param writer the writer of the dump
+     * @throws SQLException exception
+     * @throws IOException  exception
      */
-    public void clearTempFiles(boolean preserveFile) {
-
-        //delete the temp sql file
-        if (doZipExport()) {
-            File sqlFile = new File(dirName + "/sql/" + sqlFileName);
-            if (sqlFile.exists()) {
-                boolean res = sqlFile.delete();
-                logger.debug(LOG_PREFIX + ": " + sqlFile.getAbsolutePath() + " deleted successfully? " + (res ? " TRUE " : " FALSE "));
+    private void exportTable(String table, BinaryDump.Writer writer) throws SQLException, IOException {
+        checkCancelled();
+        if (exportListener != null) {
+            exportListener.onTableStarted(table, metrics);
+        }
+        writer.writeSql(getTableInsertStatement(stmt, table));
+
+        List<String> primaryKey = getOrderKey(dataStmt, table);
+        long start = System.nanoTime();
+        try (ResultSet rs = queryRows(dataStmt, table, filterRows(dataStmt, table, ""), primaryKey)) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            RowChecksum checksum = isChecksums() ? new RowChecksum(table, getKeyColumns(metaData, primaryKey), chunkRows) : null;
+            StringBuilder row = checksum == null ? null : new StringBuilder();
+            long rows = 0;
+            int batchRows = 0;
+            long batchStart = writer.getBytes();
+            long fetchNanos = 0;
+            long encodeNanos = 0;
+            long fetchStart = start;
+            while (rs.next()) {
+                long encodeStart = System.nanoTime();
+                fetchNanos += encodeStart - fetchStart;
+                if (rows++ == 0) {
+                    writer.startTable(table, metaData);
+                }
+                writer.writeRow(rs);
+                if (checksum != null) {
+                    //the checksums are those of the SQL of the rows,
+                    //so they can be verified against either format
+                    row.setLength(0);
+                    encodeRow(rs, metaData, metaData.getColumnCount(), row);
+                    checksum.update(rs, row, 0);
+                }
+                fetchStart = System.nanoTime();
+                encodeNanos += fetchStart - encodeStart;
+
+                if (++batchRows == PROGRESS_BATCH_ROWS) {
+                    reportBatch(table, batchRows, writer.getBytes() - batchStart, fetchNanos, encodeNanos);
+                    batchRows = 0;
+                    batchStart = writer.getBytes();
+                    fetchNanos = 0;
+                    encodeNanos = 0;
+                    fetchStart = System.nanoTime();
+                }
+            }
+            fetchNanos += System.nanoTime() - fetchStart;
+            if (rows > 0) {
+                writer.endTable();
+            }
+            reportBatch(table, batchRows, writer.getBytes() - batchStart, fetchNanos, encodeNanos);
+
+            if (checksum != null) {
+                writer.writeSql(rows > 0 ? checksum.finish() : DumpManifest.format(table,
+                        primaryKey.isEmpty() ? DumpManifest.WHOLE_TABLE : DumpManifest.TO_END, 0, 0));
+            }
+        }
+
+        metrics.addTablesDone(1);
+        if (exportListener != null) {
+            exportListener.onTableCompleted(table, metrics);
+        }
+    }
+
+    /**
+     * This will create the buffer for a whole dump. It's
+     * spilled to the temp dir once it exceeds its share
+     * of {@link #MAX_HEAP_BYTES}
+     *
+     * @return SpillableBuffer
+     */
+    SpillableBuffer newDumpBuffer() {
+        return new SpillableBuffer(memoryGovernor == null ? Long.MAX_VALUE : memoryGovernor.getDumpChars(),
+                new File(properties.getProperty(TEMP_DIR, dirName)));
+    }
+
+    /**
+     * This will export the tables on the given number of
+     * workers, each with its own connection. The largest tables
+     * of the plan are started first. Note that the workers don't
+     * share a snapshot, just like the tables of a serial export
+     * aren't read in one transaction
+     *
+     * @param tables  the tables in the order of their dependencies
+     * @param workers the number of workers
+     * @return the sections of the tables in the given order
+     * @throws SQLException exception
+     */
+    private List<SpillableBuffer> exportTablesConcurrently(List<String> tables, int workers) throws SQLException {
+        List<String> schedule = new ArrayList<>(tables);
+        if (plan != null) {
+            List<String> largestFirst = new ArrayList<>(plan.getTableBytes().keySet());
+            schedule.sort(Comparator.comparingInt(table -> {
+                int index = largestFirst.indexOf(table);
+                return index < 0 ? Integer.MAX_VALUE : index;
+            }));
+        }
+
+        MysqlConnectionPool ownPool = null;
+        DataSource workerSource = dataSource;
+        if (workerSource == null) {
+            int poolSize = Integer.parseInt(properties.getProperty(CONNECTION_POOL_SIZE, "0"));
+            workerSource = poolSize > 0 ? sharedPool(poolSize) : (ownPool = new MysqlConnectionPool(getConnectionURL(),
+                    properties.getProperty(DB_USERNAME), properties.getProperty(DB_PASSWORD),
+                    properties.getProperty(JDBC_DRIVER_NAME, ""), workers));
+        }
+        DataSource source = workerSource;
+
+        ExecutorService executor = BackupExecutors.newFixedExecutor("mysql-backup4j-export", workers);
+        try {
+            //a partitioned table is split into its create
+            //statement and a task for every partition
+            Map<String, List<Future<SpillableBuffer>>> sections = new HashMap<>();
+            for (String table : schedule) {
+                List<Future<SpillableBuffer>> parts = new ArrayList<>();
+                List<MysqlBaseService.Partition> tablePartitions = getPartitions(table.trim());
+                if (tablePartitions.isEmpty()) {
+                    parts.add(submit(executor, source, (workerStmt, workerDataStmt) ->
+                            exportTable(workerStmt, workerDataStmt, table)));
+                } else {
+                    parts.add(submit(executor, source, (workerStmt, workerDataStmt) -> {
+                        checkCancelled();
+                        if (exportListener != null) {
+                            exportListener.onTableStarted(table.trim(), metrics);
+                        }
+                        return newSectionBuffer().append(getTableInsertStatement(workerStmt, table.trim()));
+                    }));
+                    for (MysqlBaseService.Partition partition : tablePartitions) {
+                        parts.add(submit(executor, source, (workerStmt, workerDataStmt) ->
+                                exportPartition(workerStmt, workerDataStmt, table.trim(), partition)));
+                    }
+                }
+                sections.put(table, parts);
+            }
+
+            List<SpillableBuffer> result = new ArrayList<>();
+            try {
+                for (String table : tables) {
+                    List<Future<SpillableBuffer>> parts = sections.get(table);
+                    if (getPartitions(table.trim()).isEmpty()) {
+                        result.add(parts.get(0).get());
+                        continue;
+                    }
+                    SpillableBuffer section = newSectionBuffer();
+                    result.add(section);
+                    for (Future<SpillableBuffer> part : parts) {
+                        try (SpillableBuffer partSection = part.get()) {
+                            section.append(partSection);
+                        }
+                    }
+                    metrics.addTablesDone(1);
+                    if (exportListener != null) {
+                        exportListener.onTableCompleted(table.trim(), metrics);
+                    }
+                }
+            } catch (ExecutionException | InterruptedException | RuntimeException e) {
+                for (SpillableBuffer section : result) {
+                    section.close();
+                }
+                abandonSections(executor, sections.values());
+                throw e;
+            }
+            return result;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e.getCause() instanceof SQLException ? (SQLException) e.getCause() : new SQLException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException(LOG_PREFIX + ": export of " + database + " has been interrupted");
+        } finally {
+            executor.shutdownNow();
+            if (ownPool != null) {
+                ownPool.close();
+            }
+        }
+    }
+
+    /**
+     * This will stop the workers once a table has failed and release
+     * the sections the other tables have produced anyway. The tables that
+     * haven't started are dropped and the running ones cancelled on the
+     * server. Closing a section twice does no harm
+     *
+     * @param executor the executor of the workers
+     * @param sections the sections of the tables
+     */
+    private void abandonSections(ExecutorService executor, Collection<List<Future<SpillableBuffer>>> sections) {
+        executor.shutdownNow();
+        for (Statement workerStatement : workerStatements) {
+            cancelStatement(workerStatement);
+        }
+
+        //the sections are only known once the workers have returned
+        boolean interrupted = Thread.interrupted();
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (List<Future<SpillableBuffer>> parts : sections) {
+            for (Future<SpillableBuffer> part : parts) {
+                if (!part.isDone() || part.isCancelled()) {
+                    continue;
+                }
+                try {
+                    part.get().close();
+                } catch (ExecutionException | InterruptedException e) {
+                    //the part failed and has nothing to release
+                }
+            }
+        }
+    }
+
+    /**
+     * A part of the export that runs on a worker connection
+     */
+    private interface WorkerTask {
+        SpillableBuffer run(Statement stmt, Statement dataStmt) throws SQLException;
+    }
+
+    /**
+     * This will run the task on the executor
+     * with a connection of its own
+     *
+     * @param executor the executor
+     * @param source   the source of the worker connections
+     * @param task     the task
+     * @return Future\<SpillableBuffer\>
+     */
+    private Future<SpillableBuffer> submit(ExecutorService executor, DataSource source, WorkerTask task) {
+        return executor.submit(() -> {
+            try (Connection workerConnection = source.getConnection()) {
+                //the statements stay on the database
+                //the connection is on when they're created
+                if (dataSource != null) {
+                    workerConnection.setCatalog(database);
+                }
+                try (Statement workerStmt = workerConnection.createStatement();
+                     Statement workerDataStmt = createDataStatement(workerConnection, workerStmt)) {
+                    //the statements are cancelled with the export
+                    workerStatements.add(workerStmt);
+                    workerStatements.add(workerDataStmt);
+                    try {
+                        checkCancelled();
+                        return task.run(workerStmt, workerDataStmt);
+                    } finally {
+                        workerStatements.remove(workerStmt);
+                        workerStatements.remove(workerDataStmt);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * This will create the statement the rows are read with.
+     * With a throttle the rows are streamed, so that the throttle
+     * also paces the reads on the server, and the server gets enough
+     * patience for the pauses. Otherwise the fetch size is applied,
+     * which the driver honours with useCursorFetch=true
+     *
+     * @param connection the connection
+     * @param stmt       a statement of the connection for the session settings
+     * @return Statement
+     * @throws SQLException exception
+     */
+    private Statement createDataStatement(Connection connection, Statement stmt) throws SQLException {
+        Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        if (throttle != null) {
+            statement.setFetchSize(Integer.MIN_VALUE);
+            stmt.execute("SET SESSION net_write_timeout = " + THROTTLED_NET_WRITE_TIMEOUT);
+        } else if (fetchSize > 0) {
+            statement.setFetchSize(fetchSize);
+        }
+        return statement;
+    }
+
+    /**
+     * This will generate the header of the dump
+     *
+     * @return String
+     */
+    String getHeader() {
+        StringBuilder sql = new StringBuilder();
+        sql.append("--");
+        sql.append("\n-- Generated by mysql-backup4j");
+        sql.append("\n-- https://github.com/SeunMatt/mysql-backup4j");
+        sql.append("\n-- Date: ").append(new SimpleDateFormat("d-M-Y H:m:s").format(new Date()));
+        sql.append("\n--");
+
+        //these declarations are extracted from HeidiSQL
+        sql.append("\n\n/*!40101 SET @OLD_CHARACTER_SET_CLIENT=@@CHARACTER_SET_CLIENT */;")
+                .append("\n/*!40101 SET NAMES utf8 */;")
+                .append("\n/*!50503 SET NAMES utf8mb4 */;")
+                .append("\n/*!40014 SET @OLD_FOREIGN_KEY_CHECKS=@@FOREIGN_KEY_CHECKS, FOREIGN_KEY_CHECKS=0 */;")
+                .append("\n/*!40101 SET @OLD_SQL_MODE=@@SQL_MODE, SQL_MODE='NO_AUTO_VALUE_ON_ZERO' */;");
+        return sql.toString();
+    }
+
+    /**
+     * This will generate the footer of the dump
+     *
+     * @return String
+     */
+    String getFooter() {
+        return "\n/*!40101 SET SQL_MODE=IFNULL(@OLD_SQL_MODE, '') */;" +
+                "\n/*!40014 SET FOREIGN_KEY_CHECKS=IF(@OLD_FOREIGN_KEY_CHECKS IS NULL, 1, @OLD_FOREIGN_KEY_CHECKS) */;" +
+                "\n/*!40101 SET CHARACTER_SET_CLIENT=@OLD_CHARACTER_SET_CLIENT */;";
+    }
+
+    /**
+     * This will return the tables of the database in the order
+     * of their dependencies, without the ones that are excluded
+     * by {@link #INCLUDE_TABLES} and {@link #EXCLUDE_TABLES}
+     *
+     * @param stmt the statement to use
+     * @return List\<String\>
+     * @throws SQLException exception
+     */
+    List<String> getTables(Statement stmt) throws SQLException {
+        long start = System.nanoTime();
+        List<String> tables = MysqlBaseService.getAllTables(database, stmt);
+        tables.removeIf(table -> !tableFilter.isIncluded(table.trim()));
+        metrics.addStageNanos(BackupStage.METADATA, System.nanoTime() - start);
+        metrics.setTablesTotal(tables.size());
+        return tables;
+    }
+
+    /**
+     * This will generate the create and the insert
+     * statements of a single table. It only uses the given
+     * statements, so tables can be exported concurrently
+     * on different connections.
+     *
+     * @param stmt     the statement for SHOW CREATE TABLE
+     * @param dataStmt the statement to read the rows with
+     * @param table    the table to export
+     * @return the section of the table. The caller has to close it
+     * @throws SQLException if a chunk of a resumable export fails
+     */
+    SpillableBuffer exportTable(Statement stmt, Statement dataStmt, String table) throws SQLException {
+        checkCancelled();
+        SpillableBuffer sql = newSectionBuffer();
+        if (exportListener != null) {
+            exportListener.onTableStarted(table.trim(), metrics);
+        }
+        if (checkpoint != null) {
+            //a failed chunk fails the export,
+            //so that it can be resumed
+            try {
+                exportChunks(stmt, dataStmt, table.trim(), sql);
+            } catch (SQLException | RuntimeException e) {
+                sql.close();
+                checkCancelled();
+                throw e;
+            }
+        } else {
+            try {
+                String createStatement = getTableInsertStatement(stmt, table.trim());
+                sql.append(createStatement);
+                List<MysqlBaseService.Partition> tablePartitions = getPartitions(table.trim());
+                for (MysqlBaseService.Partition partition : tablePartitions) {
+                    try (SpillableBuffer part = exportPartition(stmt, dataStmt, table.trim(), partition)) {
+                        sql.append(part);
+                    }
+                }
+                try {
+                    if (tablePartitions.isEmpty()) {
+                        getDataInsertStatement(dataStmt, table.trim(), filterRows(dataStmt, table.trim(), ""), sql);
+                    }
+                } catch (SQLException e) {
+                    //leave out the rows of the failed table
+                    sql.close();
+                    sql.append(createStatement);
+                    throw e;
+                }
+            } catch (SQLException e) {
+                //a cancelled statement ends up here
+                checkCancelled();
+                e.printStackTrace();
+            } catch (RuntimeException e) {
+                sql.close();
+                throw e;
+            }
+        }
+        metrics.addTablesDone(1);
+        if (exportListener != null) {
+            exportListener.onTableCompleted(table.trim(), metrics);
+        }
+        return sql;
+    }
+
+    /**
+     * This will find the partitions of the tables if
+     * {@link #PARTITIONED_EXPORT} is set, so that every partition
+     * is exported on its own. It doesn't apply to exports with a
+     * checkpoint, checksums, a subset or a binary dump, as they
+     * read a table along its primary key
+     *
+     * @param stmt the statement to use
+     * @throws SQLException exception
+     */
+    void loadPartitions(Statement stmt) throws SQLException {
+        partitions = Collections.emptyMap();
+        partitionCache = null;
+        if (!Boolean.parseBoolean(properties.getProperty(PARTITIONED_EXPORT, Boolean.FALSE.toString()))) {
+            return;
+        }
+        if (checkpoint != null || isChecksums() || isSubset() || isBinaryDump()) {
+            logger.warn(LOG_PREFIX + ": " + PARTITIONED_EXPORT + " is ignored with " + CHECKPOINT_DIR + ", " + CHECKSUMS +
+                    ", " + SUBSET + " or " + BINARY_DUMP + ", the tables of " + database + " are exported as a whole");
+            return;
+        }
+        long start = System.nanoTime();
+        partitions = MysqlBaseService.getPartitions(database, stmt);
+        metrics.addStageNanos(BackupStage.METADATA, System.nanoTime() - start);
+        if (properties.containsKey(PARTITION_CACHE_DIR)) {
+            partitionCache = new PartitionCache(new File(properties.getProperty(PARTITION_CACHE_DIR)), database);
+        }
+    }
+
+    private List<MysqlBaseService.Partition> getPartitions(String table) {
+        return partitions.getOrDefault(table, Collections.emptyList());
+    }
+
+    /**
+     * This will generate the insert statements of one partition
+     * of a table with SELECT ... PARTITION. With
+     * {@link #PARTITION_CACHE_DIR} the section of a partition that
+     * hasn't changed since the previous export is reused. If the
+     * partition fails, its rows are left out like the rows of a
+     * failed table
+     *
+     * @param stmt      the statement for the fingerprint of the partition
+     * @param dataStmt  the statement to read the rows with
+     * @param table     the table
+     * @param partition the partition
+     * @return the section of the partition. The caller has to close it
+     */
+    SpillableBuffer exportPartition(Statement stmt, Statement dataStmt, String table,
+                                    MysqlBaseService.Partition partition) {
+        checkCancelled();
+        SpillableBuffer sql = newSectionBuffer();
+        try {
+            String condition = filterRows(dataStmt, table, "");
+            String fingerprint = null;
+            if (partitionCache != null) {
+                fingerprint = partitionCache.getFingerprint(stmt, database, table, partition, condition);
+                if (partitionCache.reuse(table, partition.name, fingerprint, sql)) {
+                    logger.debug(LOG_PREFIX + ": reused the unchanged partition " + partition + " of " + table);
+                    return sql;
+                }
+            }
+            getDataInsertStatement(dataStmt, table, " PARTITION (`" + partition.name + "`)" + condition, sql);
+            if (partitionCache != null) {
+                partitionCache.store(table, partition.name, fingerprint, sql);
+            }
+        } catch (SQLException e) {
+            //a cancelled statement ends up here
+            sql.close();
+            checkCancelled();
+            logger.error(LOG_PREFIX + ": the rows of the partition " + partition + " of " + table +
+                    " are left out: " + e.getLocalizedMessage(), e);
+        } catch (IOException e) {
+            sql.close();
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            sql.close();
+            throw e;
+        }
+        return sql;
+    }
+
+    private SpillableBuffer newSectionBuffer() {
+        return new SpillableBuffer(memoryGovernor == null ? Long.MAX_VALUE : memoryGovernor.getSectionChars(),
+                new File(properties.getProperty(TEMP_DIR, dirName)));
+    }
+
+    /**
+     * This will export the table in chunks of {@link #CHUNK_ROWS}
+     * rows along its primary key and commit every chunk to the
+     * checkpoint. The chunks committed by a previous run are
+     * skipped. A table without a primary key is a single chunk
+     *
+     * @param stmt     the statement for SHOW CREATE TABLE and the chunk bounds
+     * @param dataStmt the statement to read the rows with
+     * @param table    the table to export
+     * @param sql      the buffer to append the SQL of all the chunks to
+     * @throws SQLException exception
+     */
+    private void exportChunks(Statement stmt, Statement dataStmt, String table, SpillableBuffer sql) throws SQLException {
+        if (checkpoint.isCompleted(table)) {
+            logger.debug(LOG_PREFIX + ": " + table + " has been exported before the resume");
+        } else {
+            List<String> key = MysqlBaseService.getPrimaryKey(database, table, stmt);
+            int chunk = checkpoint.getChunks(table);
+            String lower = checkpoint.getLastKey(table);
+            if (chunk > 0) {
+                logger.debug(LOG_PREFIX + ": resuming " + table + " after chunk " + (chunk - 1) + " at key " + lower);
+            }
+
+            String upper;
+            do {
+                checkCancelled();
+                upper = key.isEmpty() ? null : getChunkBound(stmt, table, key, lower, chunkRows);
+                try (SpillableBuffer part = newSectionBuffer()) {
+                    if (chunk == 0) {
+                        part.append(getTableInsertStatement(stmt, table));
+                    }
+                    getDataInsertStatement(dataStmt, table, tableFilter.addTo(getChunkCondition(key, lower, upper), table, key), part);
+                    checkpoint.commit(table, chunk++, upper, part);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                lower = upper;
+            } while (upper != null);
+        }
+        checkpoint.appendTo(table, sql);
+    }
+
+    /**
+     * This will find the upper bound of the next chunk of
+     * the table, i.e. the key of its last row
+     *
+     * @param stmt  the statement to use
+     * @param table the table
+     * @param key   the columns of the primary key
+     * @param lower the upper bound of the previous chunk. Null for the first chunk
+     * @param rows  the number of rows of a chunk
+     * @return the key as a row constructor of SQL literals, or null if the rest of the table fits in the chunk
+     * @throws SQLException exception
+     */
+    private String getChunkBound(Statement stmt, String table, List<String> key, String lower, int rows) throws SQLException {
+        String columns = "`" + String.join("`, `", key) + "`";
+        try (ResultSet rs = stmt.executeQuery("SELECT " + columns + " FROM " + table +
+                getChunkCondition(key, lower, null) + " ORDER BY " + columns + " LIMIT " + (rows - 1) + ", 1;")) {
+            if (!rs.next()) {
+                return null;
+            }
+
+            int[] keyColumns = new int[key.size()];
+            for (int i = 0; i < keyColumns.length; i++) {
+                keyColumns[i] = i + 1;
+            }
+            return toKeyLiteral(rs, keyColumns);
+        }
+    }
+
+    /**
+     * This will render the key of the current
+     * row as a row constructor of SQL literals
+     *
+     * @param rs      the result set on the row
+     * @param columns the indexes of the key columns
+     * @return String
+     * @throws SQLException exception
+     */
+    static String toKeyLiteral(ResultSet rs, int[] columns) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        StringJoiner literals = new StringJoiner(", ", "(", ")");
+        for (int column : columns) {
+            literals.add(toLiteral(rs, column, metaData.getColumnType(column)));
+        }
+        return literals.toString();
+    }
+
+    /**
+     * This will render a key value as an SQL literal. Numbers
+     * are kept unquoted so they're compared as numbers, binary values
+     * are hex encoded and everything else is an escaped string
+     * without line breaks or tabs, so that it fits in a line of the journal
+     *
+     * @param rs     the result set
+     * @param column the column index
+     * @param type   the type of the column
+     * @return String
+     * @throws SQLException exception
+     */
+    static String toLiteral(ResultSet rs, int column, int type) throws SQLException {
+        switch (type) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return rs.getString(column);
+            case Types.BIT:
+                return String.valueOf(rs.getLong(column));
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                StringBuilder hex = new StringBuilder("0x");
+                for (byte b : rs.getBytes(column)) {
+                    hex.append(String.format("%02x", b));
+                }
+                return hex.toString();
+            default:
+                return "'" + rs.getString(column).replace("\\", "\\\\").replace("'", "\\'")
+                        .replace("\n", "\\n").replace("\r", "\\r").replace("\t", "\\t") + "'";
+        }
+    }
+
+    /**
+     * This will return the WHERE clause of the rows
+     * of a chunk, i.e. the rows whose keys are
+     * after the lower bound up to the upper bound
+     *
+     * @param key   the columns of the primary key
+     * @param lower the lower bound. Null for the first chunk
+     * @param upper the upper bound. Null for the last chunk
+     * @return String
+     */
+    static String getChunkCondition(List<String> key, String lower, String upper) {
+        String columns = "(`" + String.join("`, `", key) + "`)";
+        List<String> conditions = new ArrayList<>();
+        if (lower != null) {
+            conditions.add(columns + " > " + lower);
+        }
+        if (upper != null) {
+            conditions.add(columns + " <= " + upper);
+        }
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    /**
+     * This will generate the create statements
+     * of the routines and views of the database
+     *
+     * @param stmt the statement to use
+     * @return String
+     * @throws SQLException exception
+     */
+    String getRoutinesAndViews(Statement stmt) throws SQLException {
+        StringBuilder sql = new StringBuilder();
+
+        //get the routines that are in the database
+        long start = System.nanoTime();
+        Map<String, String> routines = MysqlBaseService.getAllRoutines(database, stmt);
+        List<String> views = MysqlBaseService.getAllViews(database, stmt);
+        metrics.addStageNanos(BackupStage.METADATA, System.nanoTime() - start);
+        for (Map.Entry<String, String> stringStringEntry : routines.entrySet()) {
+            checkCancelled();
+            try {
+                sql.append(getRoutineCreateStatement(stmt, stringStringEntry.getKey(), stringStringEntry.getValue()));
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+
+        //get the views that are in the database
+        for (String view : views) {
+            checkCancelled();
+            try {
+                sql.append(getRoutineCreateStatement(stmt, view.trim(), "VIEW"));
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        return sql.toString();
+    }
+
+    /**
+     * This is the entry point for exporting
+     * the database. It performs validation and
+     * the initial object initializations,
+     * database connection and setup
+     * before ca
+     *
+     * @throws IOException            exception
+     * @throws SQLException           exception
+     * @throws ClassNotFoundException exception
+     */
+    public void export() throws IOException, SQLException, ClassNotFoundException {
+        cancelled = false;
+        runExport();
+    }
+
+    /**
+     * This will run the export without clearing a
+     * cancel() that arrived before it started
+     *
+     * @throws IOException            exception
+     * @throws SQLException           exception
+     * @throws ClassNotFoundException exception
+     */
+    private void runExport() throws IOException, SQLException, ClassNotFoundException {
+
+        //check if properties is set or not
+        if (!isValidateProperties()) {
+            logger.error("Invalid config properties: The config properties is missing important parameters: DB_NAME, DB_USERNAME and DB_PASSWORD");
+            return;
+        }
+
+        //a wrong key or policy fails before the tables are dumped
+        if (properties.containsKey(ENCRYPTION_KEY)) {
+            EncryptedDump.parseKey(properties.getProperty(ENCRYPTION_KEY));
+        }
+        getFsyncPolicy();
+
+        //connect to the database
+        database = resolveDatabase();
+        connection = openConnection();
+        try {
+            if (database == null || database.isEmpty()) {
+                //the database of a data source is the default
+                //catalog of its connections
+                database = connection.getCatalog();
+            } else if (dataSource != null) {
+                connection.setCatalog(database);
+            }
+            stmt = connection.createStatement();
+
+            //estimate the export and pick the workers
+            //and the fetch size if it's asked for
+            boolean autoTune = Boolean.parseBoolean(properties.getProperty(AUTO_TUNE, Boolean.FALSE.toString()));
+            boolean dryRun = Boolean.parseBoolean(properties.getProperty(DRY_RUN, Boolean.FALSE.toString()));
+            plan = autoTune || dryRun || properties.containsKey(HISTORY_FILE) || properties.containsKey(MAX_HEAP_BYTES)
+                    ? createPlan(stmt) : null;
+            if (dryRun) {
+                logger.info(LOG_PREFIX + ": dry run: " + plan);
+                return;
+            }
+            int workers = autoTune ? plan.getWorkers() : Integer.parseInt(properties.getProperty(EXPORT_WORKERS, "1"));
+            fetchSize = autoTune ? plan.getFetchSize() : Integer.parseInt(properties.getProperty(FETCH_SIZE, "0"));
+            if (plan != null) {
+                logger.debug(LOG_PREFIX + ": " + plan);
+            }
+
+            //a cancel() while connecting or planning
+            checkCancelled();
+            startExport(database, workers);
+            boolean completed = false;
+            try {
+                throttle = createThrottle();
+                dataStmt = createDataStatement(connection, stmt);
+                openCheckpoint(stmt);
+                loadPartitions(stmt);
+
+                if (isBinaryDump()) {
+                    File binary = exportToBinary();
+                    try {
+                        writeOutput(out -> DumpFileOutputStream.copy(binary, out),
+                                (ends, parts) -> copyParts(binary, ends, parts), binary.length(), binary.length());
+                    } finally {
+                        binary.delete();
+                    }
+                } else {
+                    try (SpillableBuffer sql = exportToSql(workers)) {
+                        writeOutput(sql);
+                    }
+                }
+                completed = true;
+            } catch (CancellationException e) {
+                //remove whatever has been written so far
+                clearTempFiles(false);
+                throw e;
+            } finally {
+                if (throttle != null) {
+                    throttle.close();
+                    throttle = null;
+                }
+                finishExport(completed);
+            }
+            if (plan != null) {
+                new BackupPlanner(getHistoryFile()).record(plan, metrics, workers);
+            }
+        } finally {
+            closeConnection();
+        }
+    }
+
+    /**
+     * This will estimate the export of the database configured
+     * in the properties without exporting it. The estimate is
+     * based on the table statistics of the server and, if
+     * {@link #HISTORY_FILE} is set, the throughput of previous runs.
+     * The workers are picked to fit {@link #TARGET_WINDOW_SECONDS},
+     * up to {@link #EXPORT_WORKERS}
+     *
+     * @return BackupPlan or null if the properties are invalid
+     * @throws SQLException           exception
+     * @throws ClassNotFoundException exception
+     */
+    public BackupPlan plan() throws SQLException, ClassNotFoundException {
+        if (!isValidateProperties()) {
+            logger.error("Invalid config properties: The config properties is missing important parameters: DB_NAME, DB_USERNAME and DB_PASSWORD");
+            return null;
+        }
+
+        database = resolveDatabase();
+        try (Connection planConnection = openConnection();
+             Statement planStmt = planConnection.createStatement()) {
+            if (database == null || database.isEmpty()) {
+                database = planConnection.getCatalog();
+            }
+            plan = createPlan(planStmt);
+            return plan;
+        }
+    }
+
+    private BackupPlan createPlan(Statement stmt) throws SQLException {
+        int maxWorkers = Integer.parseInt(properties.getProperty(EXPORT_WORKERS,
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        return new BackupPlanner(getHistoryFile()).plan(stmt, database, doZipExport(),
+                Long.parseLong(properties.getProperty(TARGET_WINDOW_SECONDS, "0")), maxWorkers);
+    }
+
+    private File getHistoryFile() {
+        return properties.containsKey(HISTORY_FILE) ? new File(properties.getProperty(HISTORY_FILE)) : null;
+    }
+
+    /**
+     * This will close the statements and the connection
+     * of the export. A pooled connection is returned
+     * to its pool
+     */
+    private void closeConnection() {
+        try {
+            if (dataStmt != null && dataStmt != stmt) {
+                dataStmt.close();
+            }
+            if (stmt != null) {
+                stmt.close();
+            }
+        } catch (SQLException e) {
+            logger.debug(LOG_PREFIX + ": unable to close statement: " + e.getLocalizedMessage());
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.debug(LOG_PREFIX + ": unable to close connection: " + e.getLocalizedMessage());
+        }
+        dataStmt = null;
+        stmt = null;
+        connection = null;
+    }
+
+    /**
+     * This will resolve the database name from the
+     * {@link #DB_NAME} or the {@link #JDBC_CONNECTION_STRING}
+     * properties
+     *
+     * @return String or null if neither is set
+     */
+    private String resolveDatabase() {
+        String database = properties.getProperty(DB_NAME);
+        String jdbcURL = properties.getProperty(JDBC_CONNECTION_STRING, "");
+        if (!jdbcURL.isEmpty()) {
+            if (jdbcURL.contains("?")) {
+                database = jdbcURL.substring(jdbcURL.lastIndexOf("/") + 1, jdbcURL.indexOf("?"));
+            } else {
+                database = jdbcURL.substring(jdbcURL.lastIndexOf("/") + 1);
+            }
+            logger.debug("database name extracted from connection string: " + database);
+        }
+        return database;
+    }
+
+    /**
+     * This will start the metrics of a new export run
+     * and the memory governor if {@link #MAX_HEAP_BYTES} is set
+     *
+     * @param database the database that's exported
+     * @param workers  the number of tables that are exported concurrently
+     */
+    void startExport(String database, int workers) {
+        this.database = database;
+        tableParts.clear();
+        tableFilter = new TableFilter(properties);
+        chunkRows = getChunkRows();
+        long maxHeapBytes = Long.parseLong(properties.getProperty(MAX_HEAP_BYTES, "0"));
+        memoryGovernor = maxHeapBytes > 0 ? new MemoryGovernor(maxHeapBytes, workers) : null;
+        metrics = new BackupMetrics();
+        if (Boolean.parseBoolean(properties.getProperty(REGISTER_MBEAN, Boolean.FALSE.toString()))) {
+            metrics.register(getClass().getSimpleName(), database);
+        }
+        if (exportListener != null) {
+            exportListener.onExportStarted(database, metrics);
+        }
+    }
+
+    /**
+     * @return the rows of a chunk, see {@link #CHUNK_ROWS}
+     * @throws IllegalArgumentException if it isn't a positive number
+     */
+    private int getChunkRows() {
+        String value = properties.getProperty(CHUNK_ROWS, String.valueOf(DEFAULT_CHUNK_ROWS)).trim();
+        try {
+            int rows = Integer.parseInt(value);
+            if (rows > 0) {
+                return rows;
+            }
+        } catch (NumberFormatException e) {
+            //reported below
+        }
+        throw new IllegalArgumentException(CHUNK_ROWS + " must be a positive number of rows, not " + value);
+    }
+
+    /**
+     * This will start the checkpoint journal if {@link #CHECKPOINT_DIR}
+     * is set. With {@link #RESUME} the journal of a previous run of the
+     * database is continued instead. The chunks of that run are only
+     * consistent with the new ones if the server hasn't been written to
+     * in between, which is checked with the binary log coordinates
+     *
+     * @param stmt the statement to use
+     */
+    void openCheckpoint(Statement stmt) {
+        checkpoint = null;
+        String dir = properties.getProperty(CHECKPOINT_DIR, "");
+        if (dir.isEmpty()) {
+            return;
+        }
+        if (isBinaryDump() || isSubset()) {
+            logger.warn(LOG_PREFIX + ": " + CHECKPOINT_DIR + " is ignored for a " + (isBinaryDump() ? BINARY_DUMP : SUBSET) +
+                    ", the export of " + database + " can't be resumed");
+            return;
+        }
+
+        String snapshot = getSnapshot(stmt);
+        try {
+            if (Boolean.parseBoolean(properties.getProperty(RESUME, Boolean.FALSE.toString()))) {
+                checkpoint = ExportCheckpoint.resume(new File(dir), database);
+                if (checkpoint == null) {
+                    logger.debug(LOG_PREFIX + ": there is no checkpoint of " + database + " to resume");
+                } else if (snapshot.equals(ExportCheckpoint.UNKNOWN_SNAPSHOT) || !snapshot.equals(checkpoint.getSnapshot())) {
+                    logger.warn(LOG_PREFIX + ": resuming the export of " + database + " from a checkpoint, but the snapshot at " +
+                            checkpoint.getSnapshot() + " can't be reused (now at " + snapshot + "). The tables and chunks " +
+                            "exported before the resume may not be consistent with the ones exported after it");
+                } else {
+                    logger.debug(LOG_PREFIX + ": resuming the export of " + database + " from a checkpoint at " + snapshot);
+                }
+            }
+            if (checkpoint == null) {
+                checkpoint = ExportCheckpoint.create(new File(dir), database, snapshot);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * This will return the binary log coordinates
+     * of the server, including the executed GTIDs if there are any
+     *
+     * @param stmt the statement to use
+     * @return String or {@link ExportCheckpoint#UNKNOWN_SNAPSHOT} if the binary log is not available
+     */
+    private String getSnapshot(Statement stmt) {
+        try (ResultSet rs = stmt.executeQuery("SHOW MASTER STATUS;")) {
+            if (!rs.next()) {
+                return ExportCheckpoint.UNKNOWN_SNAPSHOT;
+            }
+            String snapshot = rs.getString("File") + ":" + rs.getLong("Position");
+            if (rs.getMetaData().getColumnCount() >= 5 && rs.getString(5) != null && !rs.getString(5).isEmpty()) {
+                snapshot += ":" + rs.getString(5).replaceAll("\\s", "");
+            }
+            return snapshot;
+        } catch (SQLException e) {
+            logger.debug(LOG_PREFIX + ": unable to read the binary log coordinates: " + e.getLocalizedMessage());
+            return ExportCheckpoint.UNKNOWN_SNAPSHOT;
+        }
+    }
+
+    /**
+     * This will stop the metrics of the export run
+     * and notify the listener if it has completed.
+     * The checkpoint of a completed run is deleted
+     *
+     * @param completed whether the export has completed successfully
+     */
+    void finishExport(boolean completed) {
+        metrics.finish();
+        metrics.unregister();
+        if (completed && checkpoint != null) {
+            checkpoint.delete();
+        }
+        checkpoint = null;
+        if (completed) {
+            logger.debug(LOG_PREFIX + ": export finished: " + metrics);
+            if (exportListener != null) {
+                exportListener.onExportCompleted(metrics);
+            }
+        }
+    }
+
+    /**
+     * This will get a connection from the data source if
+     * one has been set, from the shared pool if {@link #CONNECTION_POOL_SIZE}
+     * is set or else open a new connection to the
+     * database configured in the properties
+     *
+     * @return Connection
+     * @throws SQLException           exception
+     * @throws ClassNotFoundException exception
+     */
+    private Connection openConnection() throws SQLException, ClassNotFoundException {
+        if (dataSource != null) {
+            return dataSource.getConnection();
+        }
+
+        String jdbcURL = properties.getProperty(JDBC_CONNECTION_STRING, "");
+        String driverName = properties.getProperty(JDBC_DRIVER_NAME, "");
+
+        int poolSize = Integer.parseInt(properties.getProperty(CONNECTION_POOL_SIZE, "0"));
+        if (poolSize > 0) {
+            return sharedPool(poolSize).getConnection();
+        }
+
+        if (jdbcURL.isEmpty()) {
+            return MysqlBaseService.connect(properties.getProperty(DB_USERNAME), properties.getProperty(DB_PASSWORD),
+                    database, driverName);
+        }
+        return MysqlBaseService.connectWithURL(properties.getProperty(DB_USERNAME), properties.getProperty(DB_PASSWORD),
+                jdbcURL, driverName);
+    }
+
+    private MysqlConnectionPool sharedPool(int poolSize) {
+        return MysqlConnectionPool.shared(getConnectionURL(), properties.getProperty(DB_USERNAME),
+                properties.getProperty(DB_PASSWORD), properties.getProperty(JDBC_DRIVER_NAME, ""), poolSize);
+    }
+
+    private String getConnectionURL() {
+        String jdbcURL = properties.getProperty(JDBC_CONNECTION_STRING, "");
+        return jdbcURL.isEmpty() ? MysqlBaseService.buildURL(database) : jdbcURL;
+    }
+
+    /**
+     * This will create the throttle for the fetch loop
+     * from {@link #MAX_ROWS_PER_SECOND}, {@link #MAX_BYTES_PER_SECOND}
+     * and {@link #ADAPTIVE_THROTTLE}. The adaptive mode polls
+     * the server on a separate connection.
+     *
+     * @return Throttle or null if no throttling is configured
+     * @throws SQLException           exception
+     * @throws ClassNotFoundException exception
+     */
+    private Throttle createThrottle() throws SQLException, ClassNotFoundException {
+        RateLimiter rowLimiter = RateLimiter.create(Double.parseDouble(properties.getProperty(MAX_ROWS_PER_SECOND, "0")));
+        RateLimiter byteLimiter = RateLimiter.create(Double.parseDouble(properties.getProperty(MAX_BYTES_PER_SECOND, "0")));
+
+        LoadMonitor loadMonitor = null;
+        if (Boolean.parseBoolean(properties.getProperty(ADAPTIVE_THROTTLE, Boolean.FALSE.toString()))) {
+            loadMonitor = new LoadMonitor(openConnection(),
+                    Long.parseLong(properties.getProperty(MAX_THREADS_RUNNING, String.valueOf(DEFAULT_MAX_THREADS_RUNNING))),
+                    Long.parseLong(properties.getProperty(MAX_REPLICA_LAG_SECONDS, String.valueOf(DEFAULT_MAX_REPLICA_LAG_SECONDS))),
+                    Long.parseLong(properties.getProperty(MAX_HISTORY_LENGTH, String.valueOf(DEFAULT_MAX_HISTORY_LENGTH))),
+                    Long.parseLong(properties.getProperty(THROTTLE_POLL_MILLIS, String.valueOf(DEFAULT_THROTTLE_POLL_MILLIS))),
+                    () -> cancelled).start();
+        }
+
+        if (rowLimiter == null && byteLimiter == null && loadMonitor == null) {
+            return null;
+        }
+        return new Throttle(rowLimiter, byteLimiter, loadMonitor);
+    }
+
+    /**
+     * This function will write the generated SQL to the
+     * temp dir, zip it and send it by email as configured
+     *
+     * @param sql the generated SQL
+     * @throws IOException exception
+     */
+    void writeOutput(String sql) throws IOException {
+        //the SQL isn't split by tables
+        tableParts.clear();
+        try (SpillableBuffer buffer = SpillableBuffer.inMemory()) {
+            writeOutput(buffer.append(sql));
+        }
+    }
+
+    /**
+     * This function will write the generated SQL to the
+     * temp dir in UTF-8, zip it and send it by email as configured
+     *
+     * @param sql the generated SQL
+     * @throws IOException exception
+     */
+    void writeOutput(SpillableBuffer sql) throws IOException {
+        writeOutput(sql::writeTo, sql::writeParts, sql.length(), sql.utf8Length());
+    }
+
+    /**
+     * The content of a dump, which is written
+     * out to as many streams as needed
+     */
+    private interface DumpContent {
+
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * The content of a dump, written in consecutive parts
+     */
+    private interface DumpParts {
+
+        void writeTo(long[] ends, DumpCodec.PartStreams parts) throws IOException;
+    }
+
+    /**
+     * This will write a file in consecutive parts
+     *
+     * @param file  the file
+     * @param ends  the position each part ends at
+     * @param parts the streams of the parts
+     * @throws IOException exception
+     */
+    private static void copyParts(File file, long[] ends, DumpCodec.PartStreams parts) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new FileInputStream(file)) {
+            long start = 0;
+            for (int i = 0; i < ends.length; i++) {
+                OutputStream out = parts.open(i);
+                for (long remaining = ends[i] - start; remaining > 0; ) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        throw new IOException(file.getAbsolutePath() + " ends before " + ends[i]);
+                    }
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+                }
+                start = ends[i];
+            }
+        }
+    }
+
+    /**
+     * This function will write the dump to the temp
+     * dir, zip it and send it by email as configured
+     *
+     * @param sql           the dump
+     * @param parts         the dump in parts, for the tables to be compressed with their codecs
+     * @param length        the length of the dump in the unit of the parts
+     * @param expectedBytes the size of the dump in bytes the free space is checked against
+     * @throws IOException exception
+     */
+    private void writeOutput(DumpContent sql, DumpParts parts, long length, long expectedBytes) throws IOException {
+
+        //the codecs only apply to a zip
+        if (isAdaptiveCompression() && (!doZipExport() || properties.containsKey(REPOSITORY_DIR))) {
+            logger.warn(LOG_PREFIX + ": " + ADAPTIVE_COMPRESSION + " is ignored for the dump of " + database +
+                    ", it's only applied to a zipped dump");
+        }
+        boolean adaptive = isAdaptiveCompression() && !tableParts.isEmpty();
+
+        if (properties.containsKey(REPOSITORY_DIR)) {
+            writeToRepository(sql);
+            return;
+        }
+
+        //create a temp dir to store the exported file for processing
+        dirName = properties.getProperty(MysqlExportService.TEMP_DIR, dirName);
+        File file = new File(dirName);
+        if (!file.exists()) {
+            boolean res = file.mkdir();
+            if (!res) {
+//                logger.error(LOG_PREFIX + ": Unable to create temp dir: " + file.getAbsolutePath());
+                throw new IOException(LOG_PREFIX + ": Unable to create temp dir: " + file.getAbsolutePath());
+            }
+        }
+
+        sqlFileName = getSqlFilename();
+        boolean encrypt = properties.containsKey(ENCRYPTION_KEY);
+        long zipBytes = plan == null ? 0 : plan.getEstimatedCompressedBytes();
+        String outputName = (doZipExport() ? getBaseName() + ".zip" : sqlFileName) +
+                (encrypt ? EncryptedDump.SUFFIX : "");
+
+        //the email is sent while the file is written,
+        //in volumes if it's too large for a message
+        EmailService.VolumeOutputStream volumes = null;
+        if (isEmailPropertiesSet()) {
+            volumes = createEmailService().openVolumes(outputName);
+        }
+
+        //the sinks are uploaded to while the file is written. With
+        //sinks the temp files are only written if they're to be kept
+        SinkFanOut sinks = null;
+        boolean written = false;
+        try {
+            sinks = backupSinks.isEmpty() ? null : new SinkFanOut(backupSinks, outputName);
+            boolean keepFile = sinks == null ||
+                    Boolean.parseBoolean(properties.getProperty(PRESERVE_GENERATED_FILE, Boolean.FALSE.toString()));
+            OutputStream[] branches = Stream.of(volumes, sinks).filter(Objects::nonNull).toArray(OutputStream[]::new);
+
+            //zip the sql straight into the zip file
+            if (doZipExport()) {
+                zipFileName = dirName + "/" + outputName;
+                generatedZipFile = new File(zipFileName);
+                compress(sql, adaptive ? parts : null, length, encrypt(new TeeOutputStream(keepFile ? openOutputStream(generatedZipFile, zipBytes) : null, branches)));
+                metrics.addCompressedBytes(keepFile ? generatedZipFile.length() : sinks.getBytes());
             } else {
-                logger.debug(LOG_PREFIX + ": " + sqlFile.getAbsolutePath() + " DOES NOT EXIST while clearing Temp Files");
+                writeTo(sql, encrypt(new TeeOutputStream(keepFile ?
+                        openOutputStream(new File(file.getAbsoluteFile() + "/" + outputName), expectedBytes) : null, branches)));
+            }
+            written = true;
+        } finally {
+            if (!written) {
+                abortDumpFiles();
+                if (volumes != null) {
+                    volumes.abort();
+                }
+                if (sinks != null) {
+                    sinks.abort();
+                }
             }
+        }
 
-            File sqlFolder = new File(dirName + "/sql");
-            if (sqlFolder.exists()) {
-                boolean res = sqlFolder.delete();
-                logger.debug(LOG_PREFIX + ": " + sqlFolder.getAbsolutePath() + " deleted successfully? " + (res ? " TRUE " : " FALSE "));
+        //wait for the uploads that are still running
+        if (sinks != null) {
+            long start = System.nanoTime();
+            try {
+                sinks.close();
+            } finally {
+                metrics.addStageNanos(BackupStage.UPLOAD, System.nanoTime() - start);
+            }
+            logger.debug(LOG_PREFIX + ": " + outputName + " uploaded to " + backupSinks);
+        }
+
+        //wait for the email volumes that are still being sent
+        if (volumes != null) {
+            long start = System.nanoTime();
+            boolean emailSendingRes;
+            try {
+                volumes.close();
+                emailSendingRes = true;
+            } catch (IOException e) {
+                logger.debug(LOG_PREFIX + ": " + e.getLocalizedMessage());
+                emailSendingRes = false;
+            }
+            metrics.addStageNanos(BackupStage.EMAIL, System.nanoTime() - start);
+
+            if (emailSendingRes) {
+                logger.debug(LOG_PREFIX + ": " + (doZipExport() ? "Zip" : "SQL") + " File Sent as Attachment to Email Address Successfully" +
+                        (volumes.getVolumes() > 1 ? " in " + volumes.getVolumes() + " volumes" : ""));
             } else {
-                logger.debug(LOG_PREFIX + ": " + sqlFolder.getAbsolutePath() + " DOES NOT EXIST while clearing Temp Files");
+                logger.error(LOG_PREFIX + ": Unable to send " + (doZipExport() ? "zipped" : "") + " file as attachment to email. See log debug for more info");
+            }
+        }
+
+        //clear the generated temp files
+        dumpFiles.clear();
+        clearTempFiles(Boolean.parseBoolean(properties.getProperty(PRESERVE_GENERATED_FILE, Boolean.FALSE.toString())));
+
+    }
+
+    /**
+     * This will write the dump to the stream and close it. If
+     * it fails, the dump files are aborted before the stream is
+     * closed, so that no incomplete file gets its final name
+     *
+     * @param sql the dump
+     * @param out the stream
+     * @throws IOException exception
+     */
+    private void writeTo(DumpContent sql, OutputStream out) throws IOException {
+        try {
+            sql.writeTo(out);
+        } catch (IOException | RuntimeException e) {
+            abortDumpFiles();
+            closeAfterFailure(out, e);
+            throw e;
+        }
+        out.close();
+    }
+
+    private void closeAfterFailure(OutputStream out, Exception e) {
+        try {
+            out.close();
+        } catch (IOException suppressed) {
+            e.addSuppressed(suppressed);
+        }
+    }
+
+    /**
+     * This will delete the partial files of
+     * the dump files that haven't been published
+     */
+    private void abortDumpFiles() {
+        for (DumpFileOutputStream dumpFile : dumpFiles) {
+            dumpFile.abort();
+        }
+        dumpFiles.clear();
+    }
+
+    /**
+     * This will store the generated SQL in the repository
+     * of {@link #REPOSITORY_DIR} instead of the temp dir. Only the
+     * chunks the repository doesn't have yet are written
+     *
+     * @param sql the generated SQL
+     * @throws IOException exception
+     */
+    private void writeToRepository(DumpContent sql) throws IOException {
+        if (isEmailPropertiesSet()) {
+            logger.warn(LOG_PREFIX + ": the dump of " + database + " is stored in " + REPOSITORY_DIR + " and not sent by email");
+        }
+        if (properties.containsKey(ENCRYPTION_KEY)) {
+            logger.warn(LOG_PREFIX + ": the dump of " + database + " is stored in " + REPOSITORY_DIR + " unencrypted, " +
+                    "encrypted chunks can't be deduplicated");
+        }
+
+        sqlFileName = getSqlFilename();
+        repositoryBackup = getBaseName();
+        BackupRepository repository = new BackupRepository(new File(properties.getProperty(REPOSITORY_DIR)));
+        long start = System.nanoTime();
+        BackupRepository.BackupWriter writer = repository.openBackup(repositoryBackup);
+        try (OutputStream outputStream = diskRateLimiter == null ? writer : new ThrottledOutputStream(writer, diskRateLimiter)) {
+            sql.writeTo(outputStream);
+        }
+        metrics.addStageNanos(BackupStage.COMPRESSION, System.nanoTime() - start);
+        metrics.addCompressedBytes(writer.getStoredBytes());
+        logger.debug(LOG_PREFIX + ": stored " + repositoryBackup + " with " + writer.getNewChunks() + " new of " +
+                writer.getChunks() + " chunks");
+    }
+
+    /**
+     * This will run export() on a shared executor, on a
+     * virtual thread where the runtime supports it.
+     * Cancelling the returned future has the same effect
+     * as calling cancel()
+     *
+     * @return CompletableFuture
+     */
+    public CompletableFuture<Void> exportAsync() {
+        return exportAsync(BackupExecutors.defaultExecutor());
+    }
+
+    /**
+     * This will run export() on the given executor.
+     * Cancelling the returned future has the same effect
+     * as calling cancel()
+     *
+     * @param executor the executor to run the export on
+     * @return CompletableFuture
+     */
+    public CompletableFuture<Void> exportAsync(Executor executor) {
+        //a cancel() before the export starts is kept
+        cancelled = false;
+        return BackupExecutors.submit(executor, () -> {
+            runExport();
+            return null;
+        }, this::cancel);
+    }
+
+    /**
+     * This will stop a running export. The statement
+     * that is currently fetching rows is cancelled on the server,
+     * the temp files written so far are removed and export()
+     * ends with a CancellationException
+     */
+    public void cancel() {
+        cancelled = true;
+        cancelStatement(dataStmt);
+        cancelStatement(stmt);
+        for (Statement workerStatement : workerStatements) {
+            cancelStatement(workerStatement);
+        }
+    }
+
+    private void cancelStatement(Statement statement) {
+        if (statement == null) {
+            return;
+        }
+        try {
+            statement.cancel();
+        } catch (SQLException e) {
+            logger.debug(LOG_PREFIX + ": unable to cancel statement: " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * This will open the file for writing. The
+     * writes are paced by the disk rate limiter
+     * if one has been set
+     *
+     * @param file          the file to write
+     * @param expectedBytes the expected size of the file or 0 if it's unknown
+     * @return OutputStream
+     * @throws IOException exception
+     */
+    private OutputStream openOutputStream(File file, long expectedBytes) throws IOException {
+        OutputStream outputStream = openDumpFile(file, expectedBytes);
+        return diskRateLimiter == null ? outputStream : new ThrottledOutputStream(outputStream, diskRateLimiter);
+    }
+
+    /**
+     * This will open a dump file. It's written as name.partial
+     * and renamed once it has been closed, and synced as
+     * {@link #FSYNC_POLICY} says
+     *
+     * @param file          the file to write
+     * @param expectedBytes the expected size of the file or 0 if it's unknown
+     * @return DumpFileOutputStream
+     * @throws IOException exception
+     */
+    private DumpFileOutputStream openDumpFile(File file, long expectedBytes) throws IOException {
+        DumpFileOutputStream dumpFile = new DumpFileOutputStream(file, expectedBytes, getFsyncPolicy(),
+                Long.parseLong(properties.getProperty(FSYNC_INTERVAL_BYTES, String.valueOf(DEFAULT_FSYNC_INTERVAL_BYTES))));
+        dumpFiles.add(dumpFile);
+        return dumpFile;
+    }
+
+    /**
+     * This will get the {@link #FSYNC_POLICY}: NONE, CLOSE
+     * or INTERVAL for every {@link #FSYNC_INTERVAL_BYTES}.
+     * Default is CLOSE
+     *
+     * @return FsyncPolicy
+     */
+    private DumpFileOutputStream.FsyncPolicy getFsyncPolicy() {
+        return DumpFileOutputStream.FsyncPolicy.parse(properties.getProperty(FSYNC_POLICY,
+                DumpFileOutputStream.FsyncPolicy.CLOSE.name()));
+    }
+
+    /**
+     * This will create the email service from
+     * the email properties
+     *
+     * @return EmailService
+     */
+    private EmailService createEmailService() {
+        return EmailService.builder()
+                .setHost(properties.getProperty(EMAIL_HOST))
+                .setPort(Integer.valueOf(properties.getProperty(EMAIL_PORT)))
+                .setToAddress(properties.getProperty(EMAIL_TO))
+                .setFromAddress(properties.getProperty(EMAIL_FROM))
+                .setUsername(properties.getProperty(EMAIL_USERNAME))
+                .setPassword(properties.getProperty(EMAIL_PASSWORD))
+                .setSubject(properties.getProperty(EMAIL_SUBJECT, getBaseName().toUpperCase()))
+                .setMessage(properties.getProperty(EMAIL_MESSAGE, "Please find attached database backup of " + database))
+                .setMaxMessageBytes(Long.parseLong(properties.getProperty(EMAIL_MAX_BYTES, "0")))
+                .setRetries(Integer.parseInt(properties.getProperty(EMAIL_RETRIES, String.valueOf(EmailService.DEFAULT_RETRIES))));
+    }
+
+    /**
+     * This will encrypt what's written to the stream with the
+     * {@link #ENCRYPTION_KEY}, if it's set. The frames are encrypted
+     * on {@link #ENCRYPTION_THREADS} threads
+     *
+     * @param out the stream to write the encrypted dump to
+     * @return OutputStream
+     * @throws IOException exception
+     */
+    private OutputStream encrypt(OutputStream out) throws IOException {
+        if (!properties.containsKey(ENCRYPTION_KEY)) {
+            return out;
+        }
+        int threads = Math.max(1, Integer.parseInt(properties.getProperty(ENCRYPTION_THREADS,
+                String.valueOf(Runtime.getRuntime().availableProcessors()))));
+        return new EncryptedDump.FrameWriter(out, EncryptedDump.parseKey(properties.getProperty(ENCRYPTION_KEY)),
+                BackupExecutors.newFixedExecutor("mysql-backup4j-encrypt", threads), threads, metrics);
+    }
+
+    /**
+     * This will zip the generated SQL straight into the
+     * given stream, without writing the sql file first. With
+     * the parts of the tables, each table is an entry of its own
+     * that's compressed with its codec, see {@link DumpCodec}
+     *
+     * @param sql    the generated SQL
+     * @param parts  the generated SQL in parts or null for a single entry
+     * @param length the length of the generated SQL in the unit of the parts
+     * @param out    the stream to write the zip to. It's closed
+     * @throws IOException exception
+     */
+    private void compress(DumpContent sql, DumpParts parts, long length, OutputStream out) throws IOException {
+        if (compressionPermits != null) {
+            try {
+                compressionPermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                IOException failure = new IOException(LOG_PREFIX + ": interrupted while waiting to compress " + sqlFileName, e);
+                abortDumpFiles();
+                closeAfterFailure(out, failure);
+                throw failure;
+            }
+        }
+        try {
+            long start = System.nanoTime();
+            ZipOutputStream zip = new ZipOutputStream(out);
+            writeTo(zipOut -> {
+                if (parts == null) {
+                    zip.putNextEntry(new ZipEntry(sqlFileName));
+                    sql.writeTo(zip);
+                } else {
+                    writeEntries(zip, parts, length);
+                }
+                zip.closeEntry();
+                zip.finish();
+            }, zip);
+            metrics.addStageNanos(BackupStage.COMPRESSION, System.nanoTime() - start);
+        } finally {
+            if (compressionPermits != null) {
+                compressionPermits.release();
+            }
+        }
+    }
+
+    /**
+     * This will write the manifest and an entry per table,
+     * with the SQL before, between and after the tables
+     * in entries of their own
+     *
+     * @param zip    the zip
+     * @param parts  the generated SQL in parts
+     * @param length the length of the generated SQL
+     * @throws IOException exception
+     */
+    private void writeEntries(ZipOutputStream zip, DumpParts parts, long length) throws IOException {
+        List<TablePart> entries = new ArrayList<>();
+        long position = 0;
+        for (TablePart part : tableParts) {
+            if (part.start > position) {
+                entries.add(new TablePart(DumpCodec.NO_TABLE, position, part.start, DumpCodec.FAST));
             }
+            entries.add(part);
+            position = part.end;
+        }
+        if (length > position) {
+            entries.add(new TablePart(DumpCodec.NO_TABLE, position, length, DumpCodec.FAST));
+        }
+
+        StringBuilder manifest = new StringBuilder();
+        String[] names = new String[entries.size()];
+        long[] ends = new long[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            TablePart entry = entries.get(i);
+            String name = entry.table.equals(DumpCodec.NO_TABLE) ? (i == 0 ? "header" : "footer") : entry.table;
+            names[i] = String.format("%04d-%s%s", i, name, isBinaryDump() ? BinaryDump.EXTENSION : ".sql");
+            ends[i] = entry.end;
+            manifest.append(DumpCodec.formatEntry(names[i], entry.table, entry.codec));
+        }
+        zip.putNextEntry(new ZipEntry(DumpCodec.MANIFEST_ENTRY));
+        zip.write(manifest.toString().getBytes(StandardCharsets.UTF_8));
+
+        parts.writeTo(ends, part -> {
+            zip.closeEntry();
+            zip.setLevel(entries.get(part).codec.getLevel());
+            zip.putNextEntry(new ZipEntry(names[part]));
+            return zip;
+        });
+    }
+
+    /**
+     * This will pace all the writes to disk. It's used by
+     * {@link MysqlBackupOrchestrator} to share one disk budget
+     * between all the exports
+     *
+     * @param diskRateLimiter bytes per second limiter
+     */
+    void setDiskRateLimiter(RateLimiter diskRateLimiter) {
+        this.diskRateLimiter = diskRateLimiter;
+    }
+
+    /**
+     * This will bound the number of concurrent compressions.
+     * It's used by {@link MysqlBackupOrchestrator} to share one CPU
+     * budget between all the exports
+     *
+     * @param compressionPermits the permits
+     */
+    void setCompressionPermits(Semaphore compressionPermits) {
+        this.compressionPermits = compressionPermits;
+    }
+
+    /**
+     * This function will delete all the
+     * temp files generated ny the library
+     * unless it's otherwise instructed not to do
+     * so by the preserveFile variable
+     *
+     * @param preserveFile bool
+     */
+    public void clearTempFiles(boolean preserveFile) {
 
+        if (doZipExport()) {
             //only execute this section if the
             //file is not to be preserved
 
@@ -593,8 +2629,66 @@ public class MysqlExportService {
      * @return String
      */
     public String getSqlFilename() {
-        return isSqlFileNamePropertySet() ? properties.getProperty(SQL_FILE_NAME) + ".sql" :
-                new SimpleDateFormat("d_M_Y_H_mm_ss").format(new Date()) + "_" + database + "_database_dump.sql";
+        String extension = isBinaryDump() ? BinaryDump.EXTENSION : ".sql";
+        return isSqlFileNamePropertySet() ? properties.getProperty(SQL_FILE_NAME) + extension :
+                new SimpleDateFormat("d_M_Y_H_mm_ss").format(new Date()) + "_" + database + "_database_dump" + extension;
+    }
+
+    /**
+     * @return the name of the dump file without its extension
+     */
+    private String getBaseName() {
+        return sqlFileName.substring(0, sqlFileName.lastIndexOf('.'));
+    }
+
+    /**
+     * This will set the data source the connections of
+     * export() are obtained from, e.g. an application's
+     * connection pool or a {@link MysqlConnectionPool}.
+     * DB_USERNAME, DB_PASSWORD and JDBC_CONNECTION_STRING are not
+     * needed then. The database is DB_NAME if it's set, else the
+     * catalog of the connection. Adaptive throttling takes
+     * a second connection from the data source
+     *
+     * @param dataSource the data source. Can be null
+     * @return MysqlExportService
+     */
+    public MysqlExportService setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+        return this;
+    }
+
+    /**
+     * This will set a listener that'll be
+     * notified about the progress of export()
+     *
+     * @param exportListener the listener. Can be null
+     * @return MysqlExportService
+     */
+    public MysqlExportService setExportListener(ExportListener exportListener) {
+        this.exportListener = exportListener;
+        return this;
+    }
+
+    /**
+     * This will return the metrics of the
+     * current or last export() run
+     *
+     * @return BackupMetrics
+     */
+    public BackupMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * This will return the plan of the last export() or
+     * plan() run. export() only plans if {@link #DRY_RUN},
+     * {@link #AUTO_TUNE} or {@link #HISTORY_FILE} is set
+     *
+     * @return BackupPlan or null
+     */
+    public BackupPlan getPlan() {
+        return plan;
     }
 
     public String getSqlFileName() {
@@ -605,6 +2699,31 @@ public class MysqlExportService {
         return generatedSql;
     }
 
+    /**
+     * This will add a destination the generated file is
+     * uploaded to while it's written. Several sinks are
+     * uploaded to at the same time. With sinks, the file
+     * is only kept in the temp dir with
+     * {@link #PRESERVE_GENERATED_FILE}
+     *
+     * @param backupSink the sink
+     * @return MysqlExportService
+     */
+    public MysqlExportService addBackupSink(BackupSink backupSink) {
+        this.backupSinks.add(backupSink);
+        return this;
+    }
+
+    /**
+     * This will return the name of the backup in the
+     * repository, if {@link #REPOSITORY_DIR} is set
+     *
+     * @return String or null
+     */
+    public String getRepositoryBackup() {
+        return repositoryBackup;
+    }
+
     public File getGeneratedZipFile() {
         if (generatedZipFile != null && generatedZipFile.exists()) {
             return generatedZipFile;
@@ -617,7 +2736,8 @@ public class MysqlExportService {
             if (generatedZipFile != null && generatedZipFile.exists())
                 return generatedZipFile;
         } else {
-            File file = new File(dirName + File.separatorChar + getSqlFilename());
+            File file = new File(dirName + File.separatorChar + getSqlFilename() +
+                    (properties.containsKey(ENCRYPTION_KEY) ? EncryptedDump.SUFFIX : ""));
             if (file.exists())
                 return file;
         }
@@ -3,12 +3,40 @@ package com.christianmeiners;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.sql.DataSource;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 /**
  * Created by seun_ on 01-Mar-18.
@@ -20,11 +48,53 @@ public class MysqlImportService {
     private String username;
     private String password;
     private String sqlString;
+    private File sqlFile;
+    private ImportPlan importPlan;
+    private String encryptionKey;
+    private boolean binaryDump;
+    private boolean streamedDump;
     private String jdbcConnString;
     private String jdbcDriver;
     private boolean deleteExisting;
     private boolean dropExisting;
     private List<String> tables;
+    private ImportListener importListener;
+    private boolean registerMBean;
+    private BackupMetrics metrics = new BackupMetrics();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long maxStatementBytes;
+    private long statementBytes = DEFAULT_MAX_STATEMENT_BYTES;
+    private double maxStatementsPerSecond;
+    private double maxBytesPerSecond;
+    private boolean adaptiveThrottle;
+    private long maxThreadsRunning = MysqlExportService.DEFAULT_MAX_THREADS_RUNNING;
+    private long maxReplicaLagSeconds = MysqlExportService.DEFAULT_MAX_REPLICA_LAG_SECONDS;
+    private long maxHistoryLength = MysqlExportService.DEFAULT_MAX_HISTORY_LENGTH;
+    private long throttlePollMillis = MysqlExportService.DEFAULT_THROTTLE_POLL_MILLIS;
+    private Throttle throttle;
+    private DataSource dataSource;
+    private int connectionPoolSize;
+    private volatile Statement currentStatement;
+    private volatile boolean cancelled;
+    private int batchStatements;
+    private long batchBytes;
+    private int batchTables;
+    private File journalFile;
+    private boolean resume;
+    private ImportJournal journal;
+    private final List<String> batchSql = new ArrayList<>();
+    private final List<Integer> batchSections = new ArrayList<>();
+    private boolean continueOnError;
+    private File rejectFile;
+    private final List<MysqlImportService> fanOutImports = new CopyOnWriteArrayList<>();
+    private final Map<String, Throwable> failures = new ConcurrentHashMap<>();
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final int READ_BUFFER_BYTES = 64 * 1024;
+    private static final long DEFAULT_MAX_STATEMENT_BYTES = 16 * 1024 * 1024;
+    private static final long PACKET_HEADROOM_BYTES = 1024;
+    private static final int BINARY_BATCH_ROWS = 1000;
+    private static final byte[] ZIP_MAGIC = {'P', 'K', 3, 4};
+    private static final String TABLE_DUMP_PATTERN = MysqlBaseService.SQL_START_PATTERN + "  table dump";
     private Logger logger = LoggerFactory.getLogger(MysqlImportService.class);
 
     private MysqlImportService() {
@@ -40,6 +110,33 @@ public class MysqlImportService {
      * @throws ClassNotFoundException exception
      */
     public boolean importDatabase() throws SQLException, ClassNotFoundException {
+        cancelled = false;
+        return runImport();
+    }
+
+    /**
+     * This will run the import without clearing a
+     * cancel() that arrived before it started
+     *
+     * @return bool
+     * @throws SQLException exception
+     * @throws ClassNotFoundException exception
+     */
+    private boolean runImport() throws SQLException, ClassNotFoundException {
+
+        //the dump file is streamed during the import,
+        //decrypted and unzipped as needed. an import
+        //plan has been read before
+        binaryDump = false;
+        streamedDump = false;
+        if (sqlFile != null && importPlan == null) {
+            try (InputStream in = openSqlFile()) {
+                binaryDump = BinaryDump.isBinaryDump(in);
+                streamedDump = !binaryDump;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
 
         if(!this.assertValidParams()) {
             logger.error("Required Parameters not set or empty \n" +
@@ -50,12 +147,7 @@ public class MysqlImportService {
 
 
         //connect to the database
-        Connection connection;
-        if(jdbcConnString == null || jdbcConnString.isEmpty()) {
-            connection = MysqlBaseService.connect(username, password,
-                    database, jdbcDriver);
-        }
-        else {
+        if(jdbcConnString != null && !jdbcConnString.isEmpty()) {
 
             if (jdbcConnString.contains("?")){
                 database = jdbcConnString.substring(jdbcConnString.lastIndexOf("/") + 1, jdbcConnString.indexOf("?"));
@@ -64,13 +156,252 @@ public class MysqlImportService {
             }
 
             logger.debug("database name extracted from connection string: " + database);
-            connection = MysqlBaseService.connectWithURL(username, password,
-                    jdbcConnString, jdbcDriver);
         }
 
-        Statement stmt = connection.createStatement();
+        //the rejects of a resumed import are added to the previous ones
+        if (rejectFile != null && !resume) {
+            rejectFile.delete();
+        }
 
-         if(deleteExisting || dropExisting) {
+        try (Connection connection = openConnection();
+             Statement stmt = createStatement(connection)) {
+
+            //a failed or cancelled run may have left its batch
+            clearBatch();
+            currentStatement = stmt;
+            statementBytes = getStatementBytes(stmt);
+            if (!openJournal()) {
+                currentStatement = null;
+                return false;
+            }
+            metrics = new BackupMetrics();
+
+            try {
+                //a cancel() while connecting or opening the journal
+                checkCancelled();
+                throttle = createThrottle();
+                if (registerMBean) {
+                    metrics.register(getClass().getSimpleName(), database);
+                }
+                if (importListener != null) {
+                    importListener.onImportStarted(database, metrics);
+                }
+
+                if (binaryDump) {
+                    executeBinaryImport(stmt);
+                } else {
+                    executeImport(stmt);
+                }
+            } catch (SQLException e) {
+                //a cancelled batch ends up here
+                checkCancelled();
+                throw e;
+            } finally {
+                currentStatement = null;
+                metrics.finish();
+                metrics.unregister();
+                if (throttle != null) {
+                    throttle.close();
+                    throttle = null;
+                }
+            }
+        }
+
+        if (journal != null) {
+            journal.delete();
+            journal = null;
+        }
+
+        logger.debug("import finished: " + metrics);
+        if (importListener != null) {
+            importListener.onImportCompleted(metrics);
+        }
+
+        return true;
+    }
+
+    /**
+     * This will create the statement of the import once the
+     * connection is on the database. The driver keeps a statement
+     * on the database of its connection at the time it's created
+     *
+     * @param connection the connection
+     * @return Statement
+     * @throws SQLException exception
+     */
+    private Statement createStatement(Connection connection) throws SQLException {
+        if (database == null || database.isEmpty()) {
+            //the database of a data source is the default
+            //catalog of its connections
+            database = connection.getCatalog();
+        } else if (dataSource != null) {
+            connection.setCatalog(database);
+        }
+        return connection.createStatement();
+    }
+
+    /**
+     * This will return the size the insert statements of the
+     * dump are split to, see {@link #setMaxStatementBytes(long)}
+     *
+     * @param stmt the statement to use
+     * @return long
+     */
+    private long getStatementBytes(Statement stmt) {
+        if (maxStatementBytes > 0) {
+            return maxStatementBytes;
+        }
+        try (ResultSet rs = stmt.executeQuery("SELECT @@max_allowed_packet")) {
+            rs.next();
+            return Math.max(PACKET_HEADROOM_BYTES, Math.min(DEFAULT_MAX_STATEMENT_BYTES, rs.getLong(1) - PACKET_HEADROOM_BYTES));
+        } catch (SQLException e) {
+            logger.debug("unable to read max_allowed_packet: " + e.getLocalizedMessage());
+            return DEFAULT_MAX_STATEMENT_BYTES;
+        }
+    }
+
+    /**
+     * This will continue the journal of a failed import
+     * of the same dump if a journal file is set. The
+     * statements are counted after the inserts have been
+     * split, so the statement size is part of the dump
+     *
+     * @return false if the journal belongs to a different dump
+     */
+    private boolean openJournal() {
+        if (journalFile == null) {
+            return true;
+        }
+        if (binaryDump) {
+            logger.warn("The import journal is not supported for the binary dump " + sqlFile.getAbsolutePath() +
+                    ", the import can't be resumed");
+            return true;
+        }
+        try {
+            String dumpId;
+            if (importPlan != null) {
+                dumpId = importPlan.getDumpId();
+            } else if (streamedDump) {
+                dumpId = ImportJournal.getDumpId(sqlFile);
+            } else {
+                dumpId = ImportJournal.getDumpId(sqlString);
+            }
+            journal = ImportJournal.openDump(journalFile, dumpId + "\t" + statementBytes, resume);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (journal == null) {
+            logger.error("The import journal " + journalFile.getAbsolutePath() + " belongs to a different dump. " +
+                    "Delete it or import without resume");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * This function will add the statements of the sql string
+     * to the batch of the given statement and execute it
+     * batch by batch. A dump file is read while it's imported
+     *
+     * @param stmt the statement to use
+     * @throws SQLException exception
+     */
+    private void executeImport(Statement stmt) throws SQLException {
+        if (streamedDump) {
+            try (Reader in = new InputStreamReader(openSqlFile(), StandardCharsets.UTF_8)) {
+                executeStatements(stmt, SqlStatementReader.of(in, statementBytes));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return;
+        }
+
+        SqlStatementReader reader;
+        if (importPlan != null) {
+            //replay the chunks of the plan without parsing them again
+            int[] chunk = {0};
+            reader = SqlStatementReader.of(() -> importPlan.getChunk(chunk[0]++, database), statementBytes);
+            metrics.addRawBytes(importPlan.getRawBytes());
+            metrics.setTablesTotal(importPlan.getTableDumps());
+        } else {
+            reader = SqlStatementReader.of(new SqlChunkReader(sqlString)::next, statementBytes);
+            metrics.addRawBytes(MysqlBaseService.utf8Length(sqlString));
+            metrics.setTablesTotal(countTableDumps(sqlString));
+        }
+        try {
+            executeStatements(stmt, reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * This will execute the statements of the reader. The size
+     * and the tables of a streamed dump are counted while it's read
+     *
+     * @param stmt   the statement to use
+     * @param reader the statements of the dump
+     * @throws SQLException exception
+     * @throws IOException  exception
+     */
+    private void executeStatements(Statement stmt, SqlStatementReader reader) throws SQLException, IOException {
+        clearExisting(stmt);
+
+        //disable foreign key check
+        addToBatch(stmt, "SET FOREIGN_KEY_CHECKS = 0");
+
+
+        //now process the statements of the dump, with
+        //the oversized inserts split as they're read
+        long start = System.nanoTime();
+        String executable;
+        int section = 0;
+        int tables = 0;
+        long bytes = 0;
+        while ((executable = reader.next()) != null) {
+            metrics.addStageNanos(BackupStage.PARSE, System.nanoTime() - start);
+            if (streamedDump) {
+                metrics.addRawBytes(reader.getBytes() - bytes);
+                bytes = reader.getBytes();
+                if (isTableDump(executable)) {
+                    metrics.setTablesTotal(++tables);
+                }
+            }
+            if (journal != null && journal.isApplied(section)) {
+                //skip what a previous run has applied
+                if (isTableDump(executable)) {
+                    metrics.addTablesDone(1);
+                }
+            } else if (journal != null && journal.isPending(section)) {
+                replay(stmt, executable, section);
+            } else {
+                logger.debug("adding extracted executable SQL chunk to batch : \n" + executable);
+                addToBatch(stmt, executable, section);
+            }
+            section++;
+            start = System.nanoTime();
+
+            //repeat
+        }
+
+
+        //add enable foreign key check
+        addToBatch(stmt, "SET FOREIGN_KEY_CHECKS = 1");
+
+        //now execute the rest of the batch
+        executeBatch(stmt);
+    }
+
+    /**
+     * This will delete or drop the existing tables as configured
+     *
+     * @param stmt the statement to use
+     * @throws SQLException exception
+     */
+    private void clearExisting(Statement stmt) throws SQLException {
+
+         //a resumed import has cleared the tables before
+         if((deleteExisting || dropExisting) && (journal == null || !journal.isCleared())) {
 
             //get all the tables, so as to eliminate delete errors due to non-existent tables
             tables = MysqlBaseService.getAllTables(database, stmt);
@@ -85,55 +416,836 @@ public class MysqlImportService {
                 if(deleteExisting && !dropExisting) {
                     String delQ = "DELETE FROM " + "`" + table + "`;";
                     logger.debug("adding " + delQ + " to batch");
-                    stmt.addBatch(delQ);
+                    addToBatch(stmt, delQ);
                 }
 
                 if(dropExisting) {
                     String dropQ = "DROP TABLE IF EXISTS " + "`" + table + "`";
                     logger.debug("adding " + dropQ + " to batch");
-                    stmt.addBatch(dropQ);
+                    addToBatch(stmt, dropQ);
                 }
 
             }
+
+            if (journal != null) {
+                executeBatch(stmt);
+                markCleared();
+            }
         }
+    }
 
-        //disable foreign key check
-        stmt.addBatch("SET FOREIGN_KEY_CHECKS = 0");
+    /**
+     * This function will import a {@link BinaryDump}. Its SQL is
+     * executed in batches like the chunks of a sql string, and its
+     * rows are bound to a prepared insert per table and executed in
+     * batches of {@link #BINARY_BATCH_ROWS}, without any SQL being
+     * generated or parsed for them
+     *
+     * @param stmt the statement to use
+     * @throws SQLException exception
+     */
+    private void executeBinaryImport(Statement stmt) throws SQLException {
+        clearExisting(stmt);
+        addToBatch(stmt, "SET FOREIGN_KEY_CHECKS = 0");
+
+        try (InputStream in = openSqlFile()) {
+            BinaryDump.Reader reader = new BinaryDump.Reader(in);
+            int tables = 0;
+            long start = System.nanoTime();
+            int section;
+            while ((section = reader.next()) != BinaryDump.END) {
+                metrics.addStageNanos(BackupStage.PARSE, System.nanoTime() - start);
+                if (section == BinaryDump.SQL) {
+                    metrics.addRawBytes(MysqlBaseService.utf8Length(reader.getSql()));
+                    tables += countTableDumps(reader.getSql());
+                    metrics.setTablesTotal(tables);
+                    SqlChunkReader chunks = new SqlChunkReader(reader.getSql());
+                    String executable;
+                    while ((executable = chunks.next()) != null) {
+                        addToBatch(stmt, executable);
+                    }
+                } else {
+                    //the table has to exist before its rows
+                    executeBatch(stmt);
+                    insertRows(stmt, reader);
+                }
+                start = System.nanoTime();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        addToBatch(stmt, "SET FOREIGN_KEY_CHECKS = 1");
+        executeBatch(stmt);
+    }
+
+    /**
+     * This will insert the rows of the current table of the reader
+     *
+     * @param stmt   the statement of the import, whose connection is used
+     * @param reader the reader on a {@link BinaryDump#TABLE} section
+     * @throws SQLException exception
+     * @throws IOException  exception
+     */
+    private void insertRows(Statement stmt, BinaryDump.Reader reader) throws SQLException, IOException {
+        String[] columns = reader.getColumns();
+        int[] kinds = reader.getKinds();
+        int[] types = reader.getTypes();
+        StringBuilder insert = new StringBuilder("INSERT INTO `").append(reader.getTable()).append("` (`")
+                .append(String.join("`, `", columns)).append("`) VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            insert.append(i == 0 ? "?" : ", ?");
+        }
+        insert.append(")");
 
+        Object[] values = new Object[columns.length];
+        try (PreparedStatement insertStmt = stmt.getConnection().prepareStatement(insert.toString())) {
+            currentStatement = insertStmt;
+            int rows = 0;
+            long bytes = 0;
+            long start = System.nanoTime();
+            while (reader.readRow(values)) {
+                for (int i = 0; i < values.length; i++) {
+                    Object value = values[i];
+                    if (value == null) {
+                        insertStmt.setNull(i + 1, types[i]);
+                    } else if (kinds[i] == BinaryDump.KIND_LONG) {
+                        insertStmt.setLong(i + 1, (Long) value);
+                        bytes += 8;
+                    } else if (kinds[i] == BinaryDump.KIND_DOUBLE) {
+                        insertStmt.setDouble(i + 1, (Double) value);
+                        bytes += 8;
+                    } else if (kinds[i] == BinaryDump.KIND_BYTES) {
+                        insertStmt.setBytes(i + 1, (byte[]) value);
+                        bytes += ((byte[]) value).length;
+                    } else {
+                        insertStmt.setString(i + 1, (String) value);
+                        bytes += MysqlBaseService.utf8Length((String) value);
+                    }
+                }
+                insertStmt.addBatch();
 
-        //now process the sql string supplied
-        while (sqlString.contains(MysqlBaseService.SQL_START_PATTERN)) {
+                if (++rows == BINARY_BATCH_ROWS) {
+                    metrics.addStageNanos(BackupStage.PARSE, System.nanoTime() - start);
+                    executeRows(insertStmt, rows, bytes);
+                    rows = 0;
+                    bytes = 0;
+                    start = System.nanoTime();
+                }
+            }
+            metrics.addStageNanos(BackupStage.PARSE, System.nanoTime() - start);
+            executeRows(insertStmt, rows, bytes);
+        } finally {
+            currentStatement = stmt;
+        }
+    }
 
-            //get the chunk of the first statement to execute
-            int startIndex = sqlString.indexOf(MysqlBaseService.SQL_START_PATTERN);
-            int endIndex = sqlString.indexOf(MysqlBaseService.SQL_END_PATTERN);
+    /**
+     * This will execute a batch of rows of a binary
+     * dump, update the metrics and apply the throttle
+     *
+     * @param insertStmt the prepared insert with the batch
+     * @param rows       the number of rows in the batch
+     * @param bytes      the approximate size of the rows
+     * @throws SQLException exception
+     */
+    private void executeRows(PreparedStatement insertStmt, int rows, long bytes) throws SQLException {
+        if (rows == 0) {
+            return;
+        }
+        checkCancelled();
+        long start = System.nanoTime();
+        insertStmt.executeLargeBatch();
+        metrics.addStageNanos(BackupStage.EXECUTE, System.nanoTime() - start);
+        metrics.addRows(rows);
+        metrics.addStatements(rows);
+        metrics.addRawBytes(bytes);
 
-            String executable = sqlString.substring(startIndex, endIndex);
-            logger.debug("adding extracted executable SQL chunk to batch : \n" + executable);
-            stmt.addBatch(executable);
+        if (importListener != null) {
+            importListener.onProgress(metrics);
+        }
+        if (throttle != null) {
+            throttle.onBatch(rows, bytes);
+        }
+        checkCancelled();
+    }
 
-            //remove the chunk from the whole to reduce it
-            sqlString = sqlString.substring(endIndex + 1);
+    /**
+     * This will open the sql file. An encrypted file is
+     * decrypted frame by frame and a zip file is read
+     * from its first entry
+     *
+     * @return a stream that supports mark()
+     * @throws IOException exception
+     */
+    private InputStream openSqlFile() throws IOException {
+        return openSqlFile(sqlFile, encryptionKey);
+    }
 
-            //repeat
+    /**
+     * This will open a dump file. An encrypted file is
+     * decrypted frame by frame and a zip file is read
+     * from its first entry
+     *
+     * @param sqlFile       the dump file
+     * @param encryptionKey the key of an encrypted file. Can be null
+     * @return a stream that supports mark()
+     * @throws IOException exception
+     */
+    static InputStream openSqlFile(File sqlFile, String encryptionKey) throws IOException {
+        InputStream in;
+        if (EncryptedDump.isEncrypted(sqlFile)) {
+            if (encryptionKey == null) {
+                throw new IOException(sqlFile.getAbsolutePath() + " is encrypted, the key has to be set with setEncryptionKey()");
+            }
+            in = EncryptedDump.open(sqlFile, encryptionKey);
+        } else {
+            in = new FileInputStream(sqlFile);
         }
 
+        try {
+            in = new BufferedInputStream(in, READ_BUFFER_BYTES);
+            byte[] magic = new byte[ZIP_MAGIC.length];
+            in.mark(magic.length);
+            int read = in.read(magic);
+            in.reset();
+            if (read == magic.length && Arrays.equals(magic, ZIP_MAGIC)) {
+                ZipInputStream zip = new ZipInputStream(in);
+                in = zip;
+                ZipEntry entry = zip.getNextEntry();
+                if (entry == null) {
+                    throw new IOException("The zip file " + sqlFile.getAbsolutePath() + " is empty");
+                }
+                in = new BufferedInputStream(DumpCodec.open(zip, entry), READ_BUFFER_BYTES);
+            }
+            return in;
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
 
-        //add enable foreign key check
-        stmt.addBatch("SET FOREIGN_KEY_CHECKS = 1");
+    /**
+     * This will read the rest of the stream as UTF-8
+     *
+     * @param in the stream
+     * @return String
+     * @throws IOException exception
+     */
+    static String readSql(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[READ_BUFFER_BYTES];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
 
-        //now execute the batch
-        long[] result = stmt.executeLargeBatch();
+    /**
+     * @param chunk an executable chunk of a dump
+     * @return whether the chunk inserts the rows of a table
+     */
+    static boolean isTableDump(String chunk) {
+        return chunk.startsWith(TABLE_DUMP_PATTERN);
+    }
+
+    /**
+     * This will count the table dumps in the sql
+     * so the metrics can report the tables remaining
+     *
+     * @param sql the sql
+     * @return int
+     */
+    private int countTableDumps(String sql) {
+        int count = 0;
+        int index = 0;
+        while ((index = sql.indexOf(TABLE_DUMP_PATTERN, index)) >= 0) {
+            count++;
+            index += TABLE_DUMP_PATTERN.length();
+        }
+        return count;
+    }
 
-        String resultString = Arrays.stream(result)
-                .mapToObj(String::valueOf)
-                .reduce("", (s1, s2) -> s1 + ", " + s2 + ", ");
-        logger.debug( result.length + " queries were executed in batches for provided SQL String with the following result : \n" + resultString);
+    private void addToBatch(Statement stmt, String sql) throws SQLException {
+        addToBatch(stmt, sql, -1);
+    }
 
-        stmt.close();
-        connection.close();
+    /**
+     * This will add the sql to the batch and execute
+     * the batch once it has reached the configured batch size
+     *
+     * @param stmt    the statement to use
+     * @param sql     the sql to add
+     * @param section the index of the chunk in the dump for the journal. -1 if it's not a chunk of the dump
+     * @throws SQLException exception
+     */
+    private void addToBatch(Statement stmt, String sql, int section) throws SQLException {
+        checkCancelled();
+        stmt.addBatch(sql);
+        batchSql.add(sql);
+        batchSections.add(section);
+        batchStatements++;
+        batchBytes += MysqlBaseService.utf8Length(sql);
+        if (isTableDump(sql)) {
+            batchTables++;
+        }
 
-        return true;
+        //the batch is held in memory until it's executed
+        if (batchStatements >= batchSize || batchBytes >= statementBytes) {
+            executeBatch(stmt);
+        }
+    }
+
+    /**
+     * This will execute the current batch, update the
+     * metrics and apply the throttle
+     *
+     * @param stmt the statement to use
+     * @throws SQLException exception
+     */
+    private void executeBatch(Statement stmt) throws SQLException {
+        if (batchStatements == 0) {
+            return;
+        }
+
+        //the batch is over even if it fails
+        List<String> statements = new ArrayList<>(batchSql);
+        List<Integer> sections = new ArrayList<>(batchSections);
+        int statementCount = batchStatements;
+        long bytes = batchBytes;
+        int tables = batchTables;
+        clearBatch();
+
+        long start = System.nanoTime();
+        long[] result;
+        try {
+            markPending(sections);
+            result = stmt.executeLargeBatch();
+            markApplied(sections, result);
+        } catch (BatchUpdateException e) {
+            //keep the statements that have been applied before the failure
+            result = e.getLargeUpdateCounts() == null ? new long[0] : e.getLargeUpdateCounts();
+            markApplied(sections, result);
+            if (!continueOnError) {
+                throw e;
+            }
+            isolateFailures(stmt, statements, sections, result, e);
+        }
+        metrics.addStageNanos(BackupStage.EXECUTE, System.nanoTime() - start);
+        metrics.addStatements(statementCount);
+        metrics.addTablesDone(tables);
+
+        if (logger.isDebugEnabled()) {
+            String resultString = Arrays.stream(result)
+                    .mapToObj(String::valueOf)
+                    .reduce("", (s1, s2) -> s1 + ", " + s2 + ", ");
+            logger.debug(result.length + " queries were executed in batches for provided SQL String with the following result : \n" + resultString);
+        }
+
+        if (importListener != null) {
+            importListener.onProgress(metrics);
+        }
+        if (throttle != null) {
+            throttle.onBatch(statementCount, bytes);
+        }
+        checkCancelled();
+    }
+
+    /**
+     * This will forget the statements of the current batch
+     */
+    private void clearBatch() {
+        batchSql.clear();
+        batchSections.clear();
+        batchStatements = 0;
+        batchBytes = 0;
+        batchTables = 0;
+    }
+
+    /**
+     * This will execute a chunk that a previous run had started to
+     * execute but not recorded as applied, e.g. because it was killed
+     * while the batch was executing. The chunk is executed on its own,
+     * and a duplicate key or an object that already exists means that it
+     * has been applied. A statement is atomic on transactional tables,
+     * so it's either in place as a whole or not at all
+     *
+     * @param stmt    the statement to use
+     * @param sql     the chunk
+     * @param section the index of the chunk in the dump
+     * @throws SQLException exception
+     */
+    private void replay(Statement stmt, String sql, int section) throws SQLException {
+        //the chunks before it are applied first
+        executeBatch(stmt);
+        checkCancelled();
+
+        long start = System.nanoTime();
+        try {
+            stmt.execute(sql);
+            markApplied(Collections.singletonList(section), new long[]{0});
+        } catch (SQLException e) {
+            //a cancelled chunk isn't rejected
+            checkCancelled();
+            if (isAppliedBefore(e)) {
+                logger.debug("chunk " + section + " has been applied before the resume: " + e.getLocalizedMessage());
+                markApplied(Collections.singletonList(section), new long[]{0});
+            } else if (continueOnError) {
+                reject(sql, section, e);
+            } else {
+                throw e;
+            }
+        }
+        metrics.addStageNanos(BackupStage.EXECUTE, System.nanoTime() - start);
+        metrics.addStatements(1);
+        if (isTableDump(sql)) {
+            metrics.addTablesDone(1);
+        }
+
+        if (importListener != null) {
+            importListener.onProgress(metrics);
+        }
+        if (throttle != null) {
+            throttle.onBatch(1, MysqlBaseService.utf8Length(sql));
+        }
+        checkCancelled();
+    }
+
+    /**
+     * @param e the failure of a replayed chunk
+     * @return true if the chunk has failed because it's in place already
+     */
+    private static boolean isAppliedBefore(SQLException e) {
+        switch (e.getErrorCode()) {
+            case 1050: //ER_TABLE_EXISTS_ERROR
+            case 1062: //ER_DUP_ENTRY
+            case 1304: //ER_SP_ALREADY_EXISTS
+            case 1359: //ER_TRG_ALREADY_EXISTS
+            case 1586: //ER_DUP_ENTRY_WITH_KEY_NAME
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * This will find the statements of a failed batch that
+     * have failed or haven't been executed, depending on whether
+     * the driver continues a batch after an error. If it has continued,
+     * the update counts cover the whole batch and the failed statements
+     * are rejected. Otherwise they're split in halves that are executed
+     * as batches again, so the good statements are still applied in
+     * batches and only the bad ones end up being executed alone
+     *
+     * @param stmt         the statement to use
+     * @param statements   the statements of the batch
+     * @param sections     the chunks of the dump of the statements
+     * @param updateCounts the update counts of the failed batch
+     * @param e            the failure of the batch
+     * @throws SQLException if a statement fails for another reason than its content, e.g. a lost connection
+     */
+    private void isolateFailures(Statement stmt, List<String> statements, List<Integer> sections,
+                                 long[] updateCounts, BatchUpdateException e) throws SQLException {
+        List<String> failed = new ArrayList<>();
+        List<Integer> failedSections = new ArrayList<>();
+        for (int i = 0; i < statements.size(); i++) {
+            if (i >= updateCounts.length || updateCounts[i] == Statement.EXECUTE_FAILED) {
+                failed.add(statements.get(i));
+                failedSections.add(sections.get(i));
+            }
+        }
+
+        if (failed.size() == 1) {
+            reject(failed.get(0), failedSections.get(0), e);
+            return;
+        }
+        if (updateCounts.length >= statements.size()) {
+            //the driver only reports the last error of the batch
+            SQLException batchError = new SQLException("one of " + failed.size() + " failed statements of a batch, " +
+                    "the last error: " + e.getLocalizedMessage(), e.getSQLState(), e.getErrorCode(), e);
+            for (int i = 0; i < failed.size(); i++) {
+                reject(failed.get(i), failedSections.get(i), batchError);
+            }
+            return;
+        }
+
+        int half = failed.size() / 2;
+        executeIsolated(stmt, failed.subList(0, half), failedSections.subList(0, half));
+        executeIsolated(stmt, failed.subList(half, failed.size()), failedSections.subList(half, failed.size()));
+    }
+
+    private void executeIsolated(Statement stmt, List<String> statements, List<Integer> sections) throws SQLException {
+        checkCancelled();
+        for (String sql : statements) {
+            stmt.addBatch(sql);
+        }
+        try {
+            markApplied(sections, stmt.executeLargeBatch());
+        } catch (BatchUpdateException e) {
+            long[] updateCounts = e.getLargeUpdateCounts() == null ? new long[0] : e.getLargeUpdateCounts();
+            markApplied(sections, updateCounts);
+            isolateFailures(stmt, statements, sections, updateCounts, e);
+        }
+    }
+
+    /**
+     * This will write the failed statement to the reject file.
+     * The reject file can be imported again once the statements
+     * have been fixed
+     *
+     * @param sql     the statement
+     * @param section the chunk of the dump of the statement
+     * @param e       the failure of the statement
+     */
+    private void reject(String sql, int section, SQLException e) {
+        metrics.addRejectedStatements(1);
+        String message = String.valueOf(e.getLocalizedMessage()).replace('\n', ' ').replace('\r', ' ');
+        logger.error("statement rejected: " + message);
+        try {
+            if (rejectFile != null) {
+                String chunk = sql.startsWith(MysqlBaseService.SQL_START_PATTERN) ? sql :
+                        MysqlBaseService.SQL_START_PATTERN + "\n" + sql + ";\n";
+                try (OutputStream out = new FileOutputStream(rejectFile, true)) {
+                    out.write(("\n-- rejected: " + message + "\n" + chunk + MysqlBaseService.SQL_END_PATTERN + "\n")
+                            .getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            //a rejected chunk is not retried on resume
+            if (journal != null && section >= 0) {
+                journal.markApplied(Collections.singletonList(section));
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * This will add the chunks of the dump in the
+     * executed batch to the journal, except for the
+     * statements that have failed
+     *
+     * @param sections     the chunks of the dump of the statements in the batch, -1 for other statements
+     * @param updateCounts the update counts of the batch
+     */
+    private void markApplied(List<Integer> sections, long[] updateCounts) {
+        try {
+            if (journal != null && updateCounts != null) {
+                List<Integer> applied = new ArrayList<>();
+                for (int i = 0; i < updateCounts.length && i < sections.size(); i++) {
+                    if (sections.get(i) >= 0 && updateCounts[i] != Statement.EXECUTE_FAILED) {
+                        applied.add(sections.get(i));
+                    }
+                }
+                journal.markApplied(applied);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * This will add the chunks of the dump in the batch
+     * to the journal before the batch is executed
+     *
+     * @param sections the chunks of the dump of the statements in the batch, -1 for other statements
+     */
+    private void markPending(List<Integer> sections) {
+        try {
+            if (journal != null) {
+                List<Integer> pending = new ArrayList<>();
+                for (int section : sections) {
+                    if (section >= 0) {
+                        pending.add(section);
+                    }
+                }
+                journal.markPending(pending);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void markCleared() {
+        try {
+            journal.markCleared();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * This will throw a CancellationException
+     * if cancel() has been called
+     */
+    private void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("import into " + database + " has been cancelled");
+        }
+    }
+
+    /**
+     * This will run importDatabase() on a shared executor, on a
+     * virtual thread where the runtime supports it.
+     * Cancelling the returned future has the same effect
+     * as calling cancel()
+     *
+     * @return CompletableFuture
+     */
+    public CompletableFuture<Boolean> importAsync() {
+        return importAsync(BackupExecutors.defaultExecutor());
+    }
+
+    /**
+     * This will run importDatabase() on the given executor.
+     * Cancelling the returned future has the same effect
+     * as calling cancel()
+     *
+     * @param executor the executor to run the import on
+     * @return CompletableFuture
+     */
+    public CompletableFuture<Boolean> importAsync(Executor executor) {
+        //a cancel() before the import starts is kept
+        cancelled = false;
+        return BackupExecutors.submit(executor, this::runImport, this::cancel);
+    }
+
+    /**
+     * This will stop a running import. The batch that is
+     * currently executing is cancelled on the server and
+     * importDatabase() ends with a CancellationException.
+     * Batches that have completed before stay applied.
+     */
+    public void cancel() {
+        cancelled = true;
+        for (MysqlImportService fanOutImport : fanOutImports) {
+            fanOutImport.cancel();
+        }
+        Statement statement = currentStatement;
+        if (statement != null) {
+            try {
+                statement.cancel();
+            } catch (SQLException e) {
+                logger.debug("unable to cancel statement: " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * This will import the dump of the {@link ImportPlan} into
+     * each of the given databases, into at most the given number of
+     * databases at the same time. Missing databases are created. The
+     * connections are opened with the configured username, password
+     * and JDBC connection string, whose database is left out, or taken
+     * from the data source. Every other setting applies to each of the
+     * imports, e.g. the throttle limits apply per database, and the
+     * journal and the reject file of a database get its name as a
+     * suffix. A failure of one database does not stop the others,
+     * see getFailures()
+     *
+     * @param databases the databases to import into
+     * @param workers   the number of databases to import into concurrently
+     * @return the metrics of the databases that were imported successfully
+     * @throws SQLException if the databases can't be created
+     */
+    public Map<String, BackupMetrics> importDatabases(List<String> databases, int workers) throws SQLException {
+        if (importPlan == null) {
+            throw new IllegalStateException("The dump of a fan-out import has to be set with setImportPlan()");
+        }
+        cancelled = false;
+        Map<String, DataSource> targets = new LinkedHashMap<>();
+        if (dataSource != null) {
+            for (String target : databases) {
+                targets.put(target, dataSource);
+            }
+            return runImports(targets, workers);
+        }
+
+        //one connection per worker to the server, the
+        //imports pick their database with setCatalog()
+        String url = jdbcConnString == null || jdbcConnString.isEmpty() ? MysqlBaseService.buildURL("") : jdbcConnString;
+        int query = url.indexOf('?') < 0 ? url.length() : url.indexOf('?');
+        url = url.substring(0, url.lastIndexOf('/', query) + 1) + url.substring(query);
+        try (MysqlConnectionPool pool = new MysqlConnectionPool(url, username, password,
+                jdbcDriver == null ? "" : jdbcDriver, Math.max(1, workers))) {
+            try (Connection connection = pool.getConnection();
+                 Statement stmt = connection.createStatement()) {
+                for (String target : databases) {
+                    stmt.execute("CREATE DATABASE IF NOT EXISTS `" + target + "`");
+                }
+            }
+            for (String target : databases) {
+                targets.put(target, pool);
+            }
+            return runImports(targets, workers);
+        }
+    }
+
+    /**
+     * This will import the dump of the {@link ImportPlan} into
+     * each of the given databases with connections from its data
+     * source, e.g. on different servers. The databases have to exist.
+     * See importDatabases(List, int)
+     *
+     * @param targets the databases to import into with the data sources of their servers
+     * @param workers the number of databases to import into concurrently
+     * @return the metrics of the databases that were imported successfully
+     */
+    public Map<String, BackupMetrics> importDatabases(Map<String, DataSource> targets, int workers) {
+        if (importPlan == null) {
+            throw new IllegalStateException("The dump of a fan-out import has to be set with setImportPlan()");
+        }
+        cancelled = false;
+        return runImports(targets, workers);
+    }
+
+    /**
+     * This will run the fan-out import without clearing
+     * a cancel() that arrived before it started. The imports
+     * that are still queued don't start once it's cancelled
+     *
+     * @param targets the databases to import into with the data sources of their servers
+     * @param workers the number of databases to import into concurrently
+     * @return the metrics of the databases that were imported successfully
+     */
+    private Map<String, BackupMetrics> runImports(Map<String, DataSource> targets, int workers) {
+        failures.clear();
+        logger.debug("importing " + importPlan + " into " + targets.size() + " databases: " + targets.keySet());
+
+        Map<String, MysqlImportService> imports = new LinkedHashMap<>();
+        Map<String, CompletableFuture<Boolean>> futures = new LinkedHashMap<>();
+        ExecutorService executor = BackupExecutors.newFixedExecutor("mysql-backup4j-import", Math.max(1, workers));
+        try {
+            for (Map.Entry<String, DataSource> target : targets.entrySet()) {
+                MysqlImportService fanOutImport = forTarget(target.getKey(), target.getValue());
+                imports.put(target.getKey(), fanOutImport);
+                fanOutImports.add(fanOutImport);
+                futures.put(target.getKey(), CompletableFuture.supplyAsync(() -> {
+                    try {
+                        checkCancelled();
+                        return fanOutImport.runImport();
+                    } catch (SQLException | ClassNotFoundException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor));
+            }
+
+            Map<String, BackupMetrics> result = new LinkedHashMap<>();
+            for (Map.Entry<String, CompletableFuture<Boolean>> entry : futures.entrySet()) {
+                try {
+                    if (entry.getValue().join()) {
+                        result.put(entry.getKey(), imports.get(entry.getKey()).getMetrics());
+                    } else {
+                        failures.put(entry.getKey(), new IllegalStateException("the import parameters are invalid"));
+                    }
+                } catch (CompletionException e) {
+                    failures.put(entry.getKey(), e.getCause());
+                    logger.error("import into " + entry.getKey() + " failed: " + e.getCause());
+                }
+            }
+            return result;
+        } finally {
+            executor.shutdownNow();
+            fanOutImports.clear();
+        }
+    }
+
+    /**
+     * This will create the import into one database
+     * of a fan-out import with the settings of this one
+     *
+     * @param target     the database
+     * @param dataSource the data source of its server
+     * @return MysqlImportService
+     */
+    private MysqlImportService forTarget(String target, DataSource dataSource) {
+        MysqlImportService fanOutImport = builder()
+                .setImportPlan(importPlan)
+                .setDatabase(target)
+                .setDataSource(dataSource)
+                .setDeleteExisting(deleteExisting)
+                .setDropExisting(dropExisting)
+                .setResume(resume)
+                .setContinueOnError(continueOnError)
+                .setImportListener(importListener)
+                .setRegisterMBean(registerMBean)
+                .setBatchSize(batchSize)
+                .setMaxStatementBytes(maxStatementBytes)
+                .setMaxStatementsPerSecond(maxStatementsPerSecond)
+                .setMaxBytesPerSecond(maxBytesPerSecond)
+                .setAdaptiveThrottle(adaptiveThrottle)
+                .setMaxThreadsRunning(maxThreadsRunning)
+                .setMaxReplicaLagSeconds(maxReplicaLagSeconds)
+                .setMaxHistoryLength(maxHistoryLength)
+                .setThrottlePollMillis(throttlePollMillis);
+        if (journalFile != null) {
+            fanOutImport.setJournalFile(new File(journalFile.getPath() + "." + target));
+        }
+        if (rejectFile != null) {
+            fanOutImport.setRejectFile(new File(rejectFile.getPath() + "." + target));
+        }
+        return fanOutImport;
+    }
+
+    /**
+     * This will return the databases of the last
+     * importDatabases() run that failed, with the cause
+     *
+     * @return Map
+     */
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+
+    /**
+     * This will create the throttle for the import executor
+     * from the configured limits. The adaptive mode polls
+     * the server on a separate connection.
+     *
+     * @return Throttle or null if no throttling is configured
+     * @throws SQLException           exception
+     * @throws ClassNotFoundException exception
+     */
+    private Throttle createThrottle() throws SQLException, ClassNotFoundException {
+        RateLimiter statementLimiter = RateLimiter.create(maxStatementsPerSecond);
+        RateLimiter byteLimiter = RateLimiter.create(maxBytesPerSecond);
+
+        LoadMonitor loadMonitor = null;
+        if (adaptiveThrottle) {
+            loadMonitor = new LoadMonitor(openConnection(), maxThreadsRunning, maxReplicaLagSeconds,
+                    maxHistoryLength, throttlePollMillis, () -> cancelled).start();
+        }
+
+        if (statementLimiter == null && byteLimiter == null && loadMonitor == null) {
+            return null;
+        }
+        return new Throttle(statementLimiter, byteLimiter, loadMonitor);
+    }
+
+    /**
+     * This will get a connection from the data source if one
+     * has been set, from the shared pool if a connection pool
+     * size is set or else open a new connection to the
+     * configured database
+     *
+     * @return Connection
+     * @throws SQLException           exception
+     * @throws ClassNotFoundException exception
+     */
+    private Connection openConnection() throws SQLException, ClassNotFoundException {
+        if (dataSource != null) {
+            return dataSource.getConnection();
+        }
+        if (connectionPoolSize > 0) {
+            return MysqlConnectionPool.shared(jdbcConnString == null || jdbcConnString.isEmpty() ? MysqlBaseService.buildURL(database) : jdbcConnString,
+                    username, password, jdbcDriver, connectionPoolSize).getConnection();
+        }
+        if (jdbcConnString == null || jdbcConnString.isEmpty()) {
+            return MysqlBaseService.connect(username, password,
+                    database, jdbcDriver);
+        }
+        return MysqlBaseService.connectWithURL(username, password,
+                jdbcConnString, jdbcDriver);
     }
 
     /**
@@ -142,9 +1254,13 @@ public class MysqlImportService {
      * @return bool
      */
     private boolean assertValidParams() {
+        boolean dump = binaryDump || streamedDump || importPlan != null || (sqlString != null && !this.sqlString.isEmpty());
+        if (dataSource != null) {
+            return dump;
+        }
         return username != null && !this.username.isEmpty() &&
                 password != null && !this.password.isEmpty() &&
-                sqlString != null && !this.sqlString.isEmpty() &&
+                dump &&
         ( (database != null && !this.database.isEmpty()) || (jdbcConnString != null && !jdbcConnString.isEmpty()) );
     }
 
@@ -178,6 +1294,42 @@ public class MysqlImportService {
         return this;
     }
 
+    /**
+     * This will set the dump file to import instead of
+     * setSqlString(). It can be zipped, a {@link BinaryDump} and
+     * encrypted with {@link MysqlExportService#ENCRYPTION_KEY},
+     * which is detected from its content
+     *
+     * @param sqlFile the dump file
+     * @return MysqlImportService
+     */
+    public MysqlImportService setSqlFile(File sqlFile) {
+        this.sqlFile = sqlFile;
+        return this;
+    }
+
+    /**
+     * This will set a dump that has been read before instead of
+     * setSqlString() or setSqlFile(), so it's not read and split
+     * again. It's needed for importDatabases()
+     *
+     * @param importPlan the dump. Can be null
+     * @return MysqlImportService
+     */
+    public MysqlImportService setImportPlan(ImportPlan importPlan) {
+        this.importPlan = importPlan;
+        return this;
+    }
+
+    /**
+     * @param encryptionKey the base64 key an encrypted sql file has been encrypted with
+     * @return MysqlImportService
+     */
+    public MysqlImportService setEncryptionKey(String encryptionKey) {
+        this.encryptionKey = encryptionKey;
+        return this;
+    }
+
     public MysqlImportService setDeleteExisting(boolean deleteExisting) {
         this.deleteExisting = deleteExisting;
         return this;
@@ -197,4 +1349,190 @@ public class MysqlImportService {
         this.jdbcConnString = jdbcConnString;
         return this;
     }
+
+    /**
+     * This will set the data source the connection of
+     * importDatabase() is obtained from. The username, password
+     * and JDBC connection string are not needed then. The database
+     * is the one set with setDatabase() or else the catalog of the
+     * connection
+     *
+     * @param dataSource the data source. Can be null
+     * @return MysqlImportService
+     */
+    public MysqlImportService setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+        return this;
+    }
+
+    /**
+     * This will make importDatabase() take its connections
+     * from a pool that's shared by all imports to the same
+     * server and user in this JVM, so repeated imports reuse
+     * their connections. See {@link MysqlConnectionPool#closeSharedPools()}
+     *
+     * @param connectionPoolSize the maximum number of pooled connections. 0 disables the pool
+     * @return MysqlImportService
+     */
+    public MysqlImportService setConnectionPoolSize(int connectionPoolSize) {
+        this.connectionPoolSize = connectionPoolSize;
+        return this;
+    }
+
+    /**
+     * This will make importDatabase() record the chunks of the
+     * dump it has executed in the given file. The file is deleted
+     * once the import has completed. See setResume()
+     *
+     * @param journalFile the journal file. Can be null
+     * @return MysqlImportService
+     */
+    public MysqlImportService setJournalFile(File journalFile) {
+        this.journalFile = journalFile;
+        return this;
+    }
+
+    /**
+     * When true, importDatabase() continues the journal of a
+     * failed import of the same dump: the existing tables are not
+     * dropped or emptied again and the chunks that have been
+     * executed before are skipped. Needs setJournalFile()
+     *
+     * @param resume bool
+     * @return MysqlImportService
+     */
+    public MysqlImportService setResume(boolean resume) {
+        this.resume = resume;
+        return this;
+    }
+
+    /**
+     * When true, a statement that fails doesn't fail the import.
+     * A failed batch is bisected to find the failed statements, which
+     * are logged and written to the reject file, while the rest of the
+     * batch is applied. Errors of the connection still fail the import.
+     * See {@link BackupMetrics#getRejectedStatements()}
+     *
+     * @param continueOnError bool
+     * @return MysqlImportService
+     */
+    public MysqlImportService setContinueOnError(boolean continueOnError) {
+        this.continueOnError = continueOnError;
+        return this;
+    }
+
+    /**
+     * This will set the file the rejected statements of
+     * setContinueOnError() are written to, each with its error
+     * message. The file can be imported with this service once
+     * the statements have been fixed. It's replaced by every
+     * import, unless it's resumed
+     *
+     * @param rejectFile the reject file. Can be null
+     * @return MysqlImportService
+     */
+    public MysqlImportService setRejectFile(File rejectFile) {
+        this.rejectFile = rejectFile;
+        return this;
+    }
+
+    public MysqlImportService setImportListener(ImportListener importListener) {
+        this.importListener = importListener;
+        return this;
+    }
+
+    /**
+     * When true, the metrics of importDatabase() will
+     * be published as an MBean under
+     * com.christianmeiners:type=MysqlImportService,name=[database]
+     *
+     * @param registerMBean bool
+     * @return MysqlImportService
+     */
+    public MysqlImportService setRegisterMBean(boolean registerMBean) {
+        this.registerMBean = registerMBean;
+        return this;
+    }
+
+    /**
+     * This sets the number of statements that
+     * are sent to the server in one batch. The
+     * throttle and the listener are applied per batch
+     *
+     * @param batchSize number of statements. Default is 100
+     * @return MysqlImportService
+     */
+    public MysqlImportService setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * This sets the size the insert statements of the dump are
+     * split to. Dumps of older versions insert all the rows of a
+     * table with a single statement, which is split into statements
+     * of this size while it's read. Batches are executed once they
+     * reach this size as well
+     *
+     * @param maxStatementBytes the maximum size of a statement in bytes. Default is max_allowed_packet
+     *                          of the server, but at most 16MB
+     * @return MysqlImportService
+     */
+    public MysqlImportService setMaxStatementBytes(long maxStatementBytes) {
+        this.maxStatementBytes = maxStatementBytes;
+        return this;
+    }
+
+    public MysqlImportService setMaxStatementsPerSecond(double maxStatementsPerSecond) {
+        this.maxStatementsPerSecond = maxStatementsPerSecond;
+        return this;
+    }
+
+    public MysqlImportService setMaxBytesPerSecond(double maxBytesPerSecond) {
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        return this;
+    }
+
+    /**
+     * When true, the server load is polled on a side
+     * connection and the import slows down or pauses
+     * when one of the thresholds is crossed
+     *
+     * @param adaptiveThrottle bool
+     * @return MysqlImportService
+     */
+    public MysqlImportService setAdaptiveThrottle(boolean adaptiveThrottle) {
+        this.adaptiveThrottle = adaptiveThrottle;
+        return this;
+    }
+
+    public MysqlImportService setMaxThreadsRunning(long maxThreadsRunning) {
+        this.maxThreadsRunning = maxThreadsRunning;
+        return this;
+    }
+
+    public MysqlImportService setMaxReplicaLagSeconds(long maxReplicaLagSeconds) {
+        this.maxReplicaLagSeconds = maxReplicaLagSeconds;
+        return this;
+    }
+
+    public MysqlImportService setMaxHistoryLength(long maxHistoryLength) {
+        this.maxHistoryLength = maxHistoryLength;
+        return this;
+    }
+
+    public MysqlImportService setThrottlePollMillis(long throttlePollMillis) {
+        this.throttlePollMillis = throttlePollMillis;
+        return this;
+    }
+
+    /**
+     * This will return the metrics of the
+     * current or last importDatabase() run
+     *
+     * @return BackupMetrics
+     */
+    public BackupMetrics getMetrics() {
+        return metrics;
+    }
 }
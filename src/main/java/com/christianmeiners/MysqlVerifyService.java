@@ -0,0 +1,327 @@
+package com.christianmeiners;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * This verifies a database against the checksums of a dump
+ * exported with {@link MysqlExportService#CHECKSUMS}, e.g. a
+ * restored copy or the live source.
+ *
+ * The rows of every range of the dump are read and hashed the
+ * same way as during the export. The ranges are verified in parallel,
+ * each with its own connection, so large tables are split across the
+ * workers too. Nothing is written, so there is no second dump.
+ */
+public class MysqlVerifyService {
+
+    private String database;
+    private String username;
+    private String password;
+    private String jdbcConnString;
+    private String jdbcDriver;
+    private DataSource dataSource;
+    private String sqlString;
+    private File dumpFile;
+    private String encryptionKey;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private final List<String> mismatches = Collections.synchronizedList(new ArrayList<>());
+    private Logger logger = LoggerFactory.getLogger(MysqlVerifyService.class);
+
+    private MysqlVerifyService() {
+    }
+
+    /**
+     * This will verify every range of the dump and
+     * log the ones that differ. See getMismatches()
+     *
+     * @return true if all the ranges match
+     * @throws SQLException           exception
+     * @throws ClassNotFoundException exception
+     * @throws IOException            exception
+     */
+    public boolean verify() throws SQLException, ClassNotFoundException, IOException {
+
+        if (!assertValidParams()) {
+            logger.error("Required Parameters not set or empty \n" +
+                    "Ensure database, username, password and sqlString or dumpFile params are configured \n" +
+                    "using their respective setters");
+            return false;
+        }
+
+        if (jdbcConnString != null && !jdbcConnString.isEmpty()) {
+            if (jdbcConnString.contains("?")) {
+                database = jdbcConnString.substring(jdbcConnString.lastIndexOf("/") + 1, jdbcConnString.indexOf("?"));
+            } else {
+                database = jdbcConnString.substring(jdbcConnString.lastIndexOf("/") + 1);
+            }
+            logger.debug("database name extracted from connection string: " + database);
+        }
+
+        Map<String, List<DumpManifest.Range>> manifest;
+        try (Reader reader = openDump()) {
+            manifest = DumpManifest.read(reader);
+        }
+        if (manifest.isEmpty()) {
+            logger.error("The dump has no checksums. Export it with " + MysqlExportService.CHECKSUMS);
+            return false;
+        }
+
+        mismatches.clear();
+        MysqlConnectionPool ownPool = null;
+        DataSource source = dataSource;
+        if (source == null) {
+            source = ownPool = new MysqlConnectionPool(jdbcConnString == null || jdbcConnString.isEmpty() ?
+                    MysqlBaseService.buildURL(database) : jdbcConnString, username, password, jdbcDriver, workers);
+        }
+
+        ExecutorService executor = BackupExecutors.newFixedExecutor("mysql-backup4j-verify", workers);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (Map.Entry<String, List<DumpManifest.Range>> table : manifest.entrySet()) {
+                List<String> key;
+                try (Connection connection = getConnection(source);
+                     Statement stmt = connection.createStatement()) {
+                    key = MysqlBaseService.getPrimaryKey(database, table.getKey(), stmt);
+                }
+
+                List<DumpManifest.Range> ranges = new ArrayList<>(table.getValue());
+                DumpManifest.Range last = ranges.get(ranges.size() - 1);
+                if (!last.upper.equals(DumpManifest.TO_END) && !last.upper.equals(DumpManifest.WHOLE_TABLE)) {
+                    //there must be no rows after the last range
+                    ranges.add(new DumpManifest.Range(last.table, last.upper, DumpManifest.TO_END, 0, 0));
+                }
+
+                DataSource rangeSource = source;
+                for (DumpManifest.Range range : ranges) {
+                    results.add(executor.submit(() -> {
+                        verify(rangeSource, range, key);
+                        return null;
+                    }));
+                }
+            }
+
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof SQLException ? (SQLException) e.getCause() : new SQLException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while verifying " + database, e);
+        } finally {
+            executor.shutdownNow();
+            if (ownPool != null) {
+                ownPool.close();
+            }
+        }
+
+        logger.debug("verify finished: " + mismatches.size() + " ranges of " + database + " differ");
+        return mismatches.isEmpty();
+    }
+
+    /**
+     * This will hash the rows of the range and
+     * compare them with the checksum of the dump
+     *
+     * @param source the data source
+     * @param range  the range
+     * @param key    the columns of the primary key of the table
+     * @throws SQLException exception
+     */
+    private void verify(DataSource source, DumpManifest.Range range, List<String> key) throws SQLException {
+        RowChecksum checksum = new RowChecksum(range.table, new int[0], Long.MAX_VALUE);
+        try (Connection connection = getConnection(source);
+             Statement stmt = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            //stream the rows instead of buffering the range
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet rs = stmt.executeQuery("SELECT * FROM " + range.table + range.getCondition(key) + ";")) {
+                ResultSetMetaData metaData = rs.getMetaData();
+                int columnCount = metaData.getColumnCount();
+                StringBuilder row = new StringBuilder();
+                while (rs.next()) {
+                    row.setLength(0);
+                    MysqlExportService.encodeRow(rs, metaData, columnCount, row);
+                    checksum.add(row, 0);
+                }
+            }
+        } catch (SQLException e) {
+            mismatch(range + ": " + e.getLocalizedMessage());
+            return;
+        }
+
+        if (checksum.getRows() != range.rows || checksum.getSum() != range.sum) {
+            mismatch(range + ": expected " + range.rows + " rows with checksum " + Long.toHexString(range.sum) +
+                    ", found " + checksum.getRows() + " rows with checksum " + Long.toHexString(checksum.getSum()));
+        }
+    }
+
+    private void mismatch(String message) {
+        logger.warn("verify " + database + ": " + message);
+        mismatches.add(message);
+    }
+
+    private Connection getConnection(DataSource source) throws SQLException {
+        Connection connection = source.getConnection();
+        if (dataSource != null && database != null && !database.isEmpty()) {
+            connection.setCatalog(database);
+        }
+        return connection;
+    }
+
+    /**
+     * This will open the dump the same way the import does. An
+     * encrypted dump file is decrypted, a zipped one is read from
+     * its first entry and a binary dump without its rows
+     *
+     * @return Reader
+     * @throws IOException exception
+     */
+    private Reader openDump() throws IOException {
+        if (sqlString != null) {
+            return new StringReader(sqlString);
+        }
+        InputStream in = MysqlImportService.openSqlFile(dumpFile, encryptionKey);
+
+        //only the sql of a binary dump is needed, its rows are skipped
+        if (BinaryDump.isBinaryDump(in)) {
+            try {
+                return new StringReader(BinaryDump.readSql(in));
+            } finally {
+                in.close();
+            }
+        }
+        return new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * This function will check that required parameters
+     * are set
+     * @return bool
+     */
+    private boolean assertValidParams() {
+        boolean dump = (sqlString != null && !sqlString.isEmpty()) || dumpFile != null;
+        if (dataSource != null) {
+            return dump;
+        }
+        return dump && username != null && !this.username.isEmpty() &&
+                password != null &&
+                ((database != null && !this.database.isEmpty()) || (jdbcConnString != null && !jdbcConnString.isEmpty()));
+    }
+
+    /**
+     * This function will create a new
+     * MysqlVerifyService instance thereby facilitating
+     * a builder pattern
+     * @return MysqlVerifyService
+     */
+    public static MysqlVerifyService builder() {
+        return new MysqlVerifyService();
+    }
+
+    public MysqlVerifyService setDatabase(String database) {
+        this.database = database;
+        return this;
+    }
+
+    public MysqlVerifyService setUsername(String username) {
+        this.username = username;
+        return this;
+    }
+
+    public MysqlVerifyService setPassword(String password) {
+        this.password = password;
+        return this;
+    }
+
+    public MysqlVerifyService setJdbcDriver(String jdbcDriver) {
+        this.jdbcDriver = jdbcDriver;
+        return this;
+    }
+
+    public MysqlVerifyService setJdbcConnString(String jdbcConnString) {
+        this.jdbcConnString = jdbcConnString;
+        return this;
+    }
+
+    /**
+     * This will set the data source the connections are obtained
+     * from. The username, password and JDBC connection string are
+     * not needed then
+     *
+     * @param dataSource the data source. Can be null
+     * @return MysqlVerifyService
+     */
+    public MysqlVerifyService setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+        return this;
+    }
+
+    /**
+     * @param sqlString the dump, e.g. {@link MysqlExportService#getGeneratedSql()}
+     * @return MysqlVerifyService
+     */
+    public MysqlVerifyService setSqlString(String sqlString) {
+        this.sqlString = sqlString;
+        return this;
+    }
+
+    /**
+     * @param dumpFile the dump file, zipped, encrypted or neither
+     * @return MysqlVerifyService
+     */
+    public MysqlVerifyService setDumpFile(File dumpFile) {
+        this.dumpFile = dumpFile;
+        return this;
+    }
+
+    /**
+     * @param encryptionKey the base64 key an encrypted dump file has been encrypted with
+     * @return MysqlVerifyService
+     */
+    public MysqlVerifyService setEncryptionKey(String encryptionKey) {
+        this.encryptionKey = encryptionKey;
+        return this;
+    }
+
+    /**
+     * @param workers the number of ranges that are verified
+     *                concurrently. Default is the number of processors
+     * @return MysqlVerifyService
+     */
+    public MysqlVerifyService setWorkers(int workers) {
+        this.workers = workers;
+        return this;
+    }
+
+    /**
+     * This will return the ranges that differ in the last
+     * verify() run, with the expected and the found rows
+     *
+     * @return {@code List<String>}
+     */
+    public List<String> getMismatches() {
+        return mismatches;
+    }
+}
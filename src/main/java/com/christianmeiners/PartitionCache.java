@@ -0,0 +1,144 @@
+package com.christianmeiners;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The sections of the partitions of a previous export, see
+ * {@link MysqlExportService#PARTITION_CACHE_DIR}.
+ *
+ * Every partition section is stored with a fingerprint of the
+ * partition and reused as long as the fingerprint doesn't change,
+ * so the old partitions of a table that's partitioned by time are
+ * only read once. The fingerprint is the time the server last
+ * updated the partition. Where the server doesn't know it, e.g. after
+ * a restart, the rows of the partition are counted and hashed on the
+ * server, which is still much cheaper than exporting them.
+ *
+ * A section is written as table.partition.sql next to its fingerprint
+ * in table.partition.fingerprint. The section is written first, so a
+ * crash in between leaves a fingerprint that doesn't match.
+ */
+class PartitionCache {
+
+    private static Logger logger = LoggerFactory.getLogger(PartitionCache.class);
+
+    private final File dir;
+
+    /**
+     * @param dir      the cache directory
+     * @param database the database that's exported
+     */
+    PartitionCache(File dir, String database) {
+        this.dir = new File(dir, database);
+    }
+
+    /**
+     * This will compute the fingerprint of a partition
+     *
+     * @param stmt      the statement to use
+     * @param database  the database
+     * @param table     the table
+     * @param partition the partition
+     * @param condition the WHERE clause the rows are exported with, which is part of the fingerprint
+     * @return String
+     * @throws SQLException exception
+     */
+    String getFingerprint(Statement stmt, String database, String table, MysqlBaseService.Partition partition,
+                          String condition) throws SQLException {
+        String state;
+        if (partition.updateTime != null) {
+            state = "updated " + partition.updateTime;
+        } else {
+            List<String> hashes = new ArrayList<>();
+            try (ResultSet rs = stmt.executeQuery("SELECT COLUMN_NAME FROM INFORMATION_SCHEMA.COLUMNS\n" +
+                    "WHERE TABLE_SCHEMA = '" + database + "' AND TABLE_NAME = '" + table + "'\n" +
+                    "ORDER BY ORDINAL_POSITION;")) {
+                while (rs.next()) {
+                    String column = "`" + rs.getString(1) + "`";
+                    hashes.add(column + ", ISNULL(" + column + ")");
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*), COALESCE(SUM(CRC32(CONCAT_WS(0x1f, " +
+                    String.join(", ", hashes) + "))), 0) FROM " + table + " PARTITION (`" + partition.name + "`);")) {
+                rs.next();
+                state = "rows " + rs.getLong(1) + " crc " + rs.getString(2);
+            }
+        }
+        return "created " + partition.createTime + " " + state + " where" + condition;
+    }
+
+    /**
+     * This will append the stored section of the
+     * partition if its fingerprint hasn't changed
+     *
+     * @param table       the table
+     * @param partition   the partition
+     * @param fingerprint the current fingerprint of the partition
+     * @param sql         the buffer to append the section to
+     * @return whether the section has been reused
+     */
+    boolean reuse(String table, String partition, String fingerprint, SpillableBuffer sql) {
+        File section = getSectionFile(table, partition);
+        File stored = getFingerprintFile(table, partition);
+        try {
+            if (!section.isFile() || !stored.isFile() ||
+                    !fingerprint.equals(new String(Files.readAllBytes(stored.toPath()), StandardCharsets.UTF_8))) {
+                return false;
+            }
+        } catch (IOException e) {
+            logger.debug("unable to read " + stored.getAbsolutePath() + ": " + e.getLocalizedMessage());
+            return false;
+        }
+        sql.append(section);
+        return true;
+    }
+
+    /**
+     * This will store the section of the partition
+     * together with its fingerprint
+     *
+     * @param table       the table
+     * @param partition   the partition
+     * @param fingerprint the fingerprint of the partition when it was read
+     * @param sql         the section of the partition
+     * @throws IOException exception
+     */
+    void store(String table, String partition, String fingerprint, SpillableBuffer sql) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create the partition cache dir " + dir.getAbsolutePath());
+        }
+        File stored = getFingerprintFile(table, partition);
+        Files.deleteIfExists(stored.toPath());
+        DumpFileOutputStream out = new DumpFileOutputStream(getSectionFile(table, partition), sql.utf8Length(),
+                DumpFileOutputStream.FsyncPolicy.CLOSE, 0);
+        try {
+            sql.writeTo(out);
+        } catch (IOException | RuntimeException e) {
+            out.abort();
+            throw e;
+        }
+        out.close();
+        try (DumpFileOutputStream fingerprintOut = new DumpFileOutputStream(stored, 0, DumpFileOutputStream.FsyncPolicy.CLOSE, 0)) {
+            fingerprintOut.write(fingerprint.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private File getSectionFile(String table, String partition) {
+        return new File(dir, table + "." + partition + ".sql");
+    }
+
+    private File getFingerprintFile(String table, String partition) {
+        return new File(dir, table + "." + partition + ".fingerprint");
+    }
+}
@@ -0,0 +1,62 @@
+package com.christianmeiners;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A simple token bucket that allows bursts of up to one
+ * second worth of permits. It is meant to be called once per
+ * batch with the size of the batch, not once per row.
+ */
+class RateLimiter {
+
+    private static final long BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final double nanosPerPermit;
+    private long nextFreeNanos = System.nanoTime();
+
+    RateLimiter(double permitsPerSecond) {
+        this.nanosPerPermit = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+    }
+
+    /**
+     * This will create a limiter for the given
+     * rate or return null if the rate is not positive
+     *
+     * @param permitsPerSecond the rate
+     * @return RateLimiter or null
+     */
+    static RateLimiter create(double permitsPerSecond) {
+        return permitsPerSecond > 0 ? new RateLimiter(permitsPerSecond) : null;
+    }
+
+    /**
+     * This will block the calling thread
+     * until the permits are available.
+     * An interrupt ends the wait early and is preserved
+     * on the thread
+     *
+     * @param permits the number of permits e.g. rows or bytes
+     */
+    void acquire(long permits) {
+        if (permits <= 0) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        long waitNanos;
+        synchronized (this) {
+            if (nextFreeNanos < now - BURST_NANOS) {
+                nextFreeNanos = now - BURST_NANOS;
+            }
+            nextFreeNanos += (long) (permits * nanosPerPermit);
+            waitNanos = nextFreeNanos - now;
+        }
+
+        long deadline = now + waitNanos;
+        while (waitNanos > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(waitNanos);
+            waitNanos = deadline - System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.christianmeiners;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.zip.CRC32;
+
+/**
+ * The checksums of the rows of a table, computed
+ * from the values of the rows as they're written to the dump.
+ *
+ * Every row is hashed with CRC32 and the hashes are summed up
+ * per range of the primary key, so the checksum of a range doesn't
+ * depend on the order its rows are read in. A range ends after a
+ * number of rows and is identified by the key of its last row. A
+ * table without a primary key is a single range.
+ *
+ * The ranges are written to the dump as comments, see {@link DumpManifest}.
+ */
+class RowChecksum {
+
+    private final String table;
+    private final int[] keyColumns;
+    private final long rangeRows;
+    private final CRC32 crc = new CRC32();
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer bytes = ByteBuffer.allocate(1024);
+    private final StringBuilder ranges = new StringBuilder();
+    private long rows;
+    private long sum;
+    private String lastKey;
+
+    /**
+     * @param table      the table
+     * @param keyColumns the indexes of the primary key columns in the result set. Empty if there is none
+     * @param rangeRows  the number of rows of a range
+     */
+    RowChecksum(String table, int[] keyColumns, long rangeRows) {
+        this.table = table;
+        this.keyColumns = keyColumns;
+        this.rangeRows = rangeRows;
+    }
+
+    /**
+     * This will add a row to the current range
+     *
+     * @param rs    the result set on the row
+     * @param row   the encoded row
+     * @param start the index of the values in the encoded row
+     * @throws SQLException exception
+     */
+    void update(ResultSet rs, CharSequence row, int start) throws SQLException {
+        add(row, start);
+        if (keyColumns.length == 0) {
+            return;
+        }
+        lastKey = MysqlExportService.toKeyLiteral(rs, keyColumns);
+        if (rows == rangeRows) {
+            endRange();
+        }
+    }
+
+    /**
+     * This will add an encoded row without
+     * ending any range
+     *
+     * @param row   the encoded row
+     * @param start the index of the values in the encoded row
+     */
+    void add(CharSequence row, int start) {
+        int maxBytes = (int) ((row.length() - start) * (double) encoder.maxBytesPerChar()) + 1;
+        if (bytes.capacity() < maxBytes) {
+            bytes = ByteBuffer.allocate(Math.max(maxBytes, bytes.capacity() * 2));
+        }
+        bytes.clear();
+        encoder.reset();
+        encoder.encode(CharBuffer.wrap(row, start, row.length()), bytes, true);
+        encoder.flush(bytes);
+        bytes.flip();
+
+        crc.reset();
+        crc.update(bytes);
+        sum += crc.getValue();
+        rows++;
+    }
+
+    private void endRange() {
+        ranges.append(DumpManifest.format(table, keyColumns.length == 0 ? DumpManifest.WHOLE_TABLE : lastKey, rows, sum));
+        rows = 0;
+        sum = 0;
+    }
+
+    /**
+     * This will end the last range
+     *
+     * @return the comments of the ranges that haven't been returned yet
+     */
+    String finish() {
+        if (rows > 0) {
+            endRange();
+        }
+        String result = ranges.toString();
+        ranges.setLength(0);
+        return result;
+    }
+
+    /**
+     * This will hash an encoded row to 64 bits, for
+     * comparing single rows where the 32 bits of
+     * CRC32 would collide too often. This is FNV-1a
+     * over the characters with a final mix
+     *
+     * @param row   the encoded row
+     * @param start the index of the values in the encoded row
+     * @return the hash, never 0
+     */
+    static long hash64(CharSequence row, int start) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = start; i < row.length(); i++) {
+            hash ^= row.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash) | 1;
+    }
+
+    /**
+     * This is the finalizer of MurmurHash3, which
+     * spreads every bit of the input over the result
+     *
+     * @param value the value
+     * @return long
+     */
+    static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    long getRows() {
+        return rows;
+    }
+
+    long getSum() {
+        return sum;
+    }
+}
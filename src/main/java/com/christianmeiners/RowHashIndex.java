@@ -0,0 +1,165 @@
+package com.christianmeiners;
+
+import java.nio.ByteBuffer;
+import java.util.function.LongConsumer;
+
+/**
+ * An index of the row hashes of a table by their numeric
+ * primary key, kept outside of the heap.
+ *
+ * The entries are a key and a hash of 8 bytes each in an open
+ * addressing table with linear probing, stored in direct buffers,
+ * so a table of a hundred million rows takes no heap and no objects
+ * per row for the garbage collector to trace. The table is split into
+ * segments, as a single buffer is limited to 2 GB.
+ *
+ * A hash is never 0, see {@link RowChecksum#hash64(CharSequence, int)},
+ * so an empty slot has the hash 0 and every key can be stored.
+ */
+class RowHashIndex {
+
+    private static final int ENTRY_BYTES = 16;
+    private static final int SEGMENT_BITS = 26;
+    private static final int INITIAL_SLOTS = 1 << 16;
+
+    private ByteBuffer[] segments;
+    private long mask;
+    private long size;
+
+    RowHashIndex() {
+        allocate(INITIAL_SLOTS);
+    }
+
+    private void allocate(long slots) {
+        int segmentSlots = (int) Math.min(slots, 1L << SEGMENT_BITS);
+        segments = new ByteBuffer[(int) (slots / segmentSlots)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = ByteBuffer.allocateDirect(segmentSlots * ENTRY_BYTES);
+        }
+        mask = slots - 1;
+    }
+
+    private ByteBuffer segment(long slot) {
+        return segments[(int) (slot >>> SEGMENT_BITS)];
+    }
+
+    private int offset(long slot) {
+        return (int) (slot & ((1L << SEGMENT_BITS) - 1)) * ENTRY_BYTES;
+    }
+
+    private long keyAt(long slot) {
+        return segment(slot).getLong(offset(slot));
+    }
+
+    private long hashAt(long slot) {
+        return segment(slot).getLong(offset(slot) + 8);
+    }
+
+    private void set(long slot, long key, long hash) {
+        ByteBuffer segment = segment(slot);
+        int offset = offset(slot);
+        segment.putLong(offset, key);
+        segment.putLong(offset + 8, hash);
+    }
+
+    private long home(long key) {
+        return RowChecksum.mix(key) & mask;
+    }
+
+    /**
+     * This will add the hash of a row
+     *
+     * @param key  the primary key of the row
+     * @param hash the hash of the row, not 0
+     */
+    void put(long key, long hash) {
+        if (size >= (mask + 1) / 4 * 3) {
+            grow();
+        }
+        long slot = home(key);
+        while (hashAt(slot) != 0) {
+            if (keyAt(slot) == key) {
+                set(slot, key, hash);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        set(slot, key, hash);
+        size++;
+    }
+
+    /**
+     * This will remove the hash of a row
+     *
+     * @param key the primary key of the row
+     * @return the hash or 0 if there is none
+     */
+    long remove(long key) {
+        long slot = home(key);
+        long hash;
+        while ((hash = hashAt(slot)) != 0) {
+            if (keyAt(slot) == key) {
+                closeGap(slot);
+                size--;
+                return hash;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    /**
+     * This will move the following entries of a removed
+     * one back, so no lookup stops at the gap before
+     * reaching its key
+     *
+     * @param gap the slot of the removed entry
+     */
+    private void closeGap(long gap) {
+        long slot = (gap + 1) & mask;
+        long hash;
+        while ((hash = hashAt(slot)) != 0) {
+            long key = keyAt(slot);
+            //the entry can move if the gap isn't before its home slot
+            if (((slot - home(key)) & mask) >= ((slot - gap) & mask)) {
+                set(gap, key, hash);
+                gap = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        set(gap, 0, 0);
+    }
+
+    private void grow() {
+        ByteBuffer[] old = segments;
+        long oldSlots = mask + 1;
+        allocate(oldSlots * 2);
+        size = 0;
+        for (long slot = 0; slot < oldSlots; slot++) {
+            ByteBuffer segment = old[(int) (slot >>> SEGMENT_BITS)];
+            int offset = offset(slot);
+            long hash = segment.getLong(offset + 8);
+            if (hash != 0) {
+                put(segment.getLong(offset), hash);
+            }
+        }
+    }
+
+    /**
+     * This will pass the keys of the
+     * remaining rows to the consumer
+     *
+     * @param consumer the consumer
+     */
+    void forEachKey(LongConsumer consumer) {
+        for (long slot = 0; slot <= mask; slot++) {
+            if (hashAt(slot) != 0) {
+                consumer.accept(keyAt(slot));
+            }
+        }
+    }
+
+    long size() {
+        return size;
+    }
+}
@@ -0,0 +1,426 @@
+package com.christianmeiners;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A sink that uploads the dump file to S3 or an S3 compatible
+ * object store like MinIO, with a multipart upload.
+ *
+ * The file is cut into parts while it's written, and the parts
+ * are uploaded concurrently while the export goes on, so the upload
+ * ends shortly after the export. At most {@link #setConcurrency(int)}
+ * parts are held in memory. A failed part is retried. The object only
+ * appears once all the parts have been uploaded, a failed upload
+ * is aborted. The requests are signed with AWS Signature Version 4
+ * and the objects are addressed path style: endpoint/bucket/key.
+ */
+public class S3Sink implements BackupSink {
+
+    private static Logger logger = LoggerFactory.getLogger(S3Sink.class);
+    static final int MIN_PART_BYTES = 5 * 1024 * 1024;
+    static final int DEFAULT_PART_BYTES = 8 * 1024 * 1024;
+    private static final int RETRIES = 3;
+    private static final Pattern UPLOAD_ID = Pattern.compile("<UploadId>([^<]+)</UploadId>");
+
+    private final String endpoint;
+    private final String region;
+    private final String bucket;
+    private final String accessKey;
+    private final String secretKey;
+    private String prefix = "";
+    private int partBytes = DEFAULT_PART_BYTES;
+    private int concurrency = 4;
+
+    /**
+     * @param endpoint  the URL of the object store, e.g. https://s3.eu-central-1.amazonaws.com or http://localhost:9000
+     * @param region    the region, e.g. eu-central-1. MinIO uses us-east-1 by default
+     * @param bucket    the bucket
+     * @param accessKey the access key
+     * @param secretKey the secret key
+     */
+    public S3Sink(String endpoint, String region, String bucket, String accessKey, String secretKey) {
+        this.endpoint = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+        this.region = region;
+        this.bucket = bucket;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+    }
+
+    /**
+     * @param prefix the prefix of the object keys, e.g. "backups/shop/"
+     * @return S3Sink
+     */
+    public S3Sink setPrefix(String prefix) {
+        this.prefix = prefix;
+        return this;
+    }
+
+    /**
+     * @param partBytes the size of the parts. At least 5 MB, default is 8 MB
+     * @return S3Sink
+     */
+    public S3Sink setPartBytes(int partBytes) {
+        this.partBytes = Math.max(partBytes, MIN_PART_BYTES);
+        return this;
+    }
+
+    /**
+     * @param concurrency the number of parts that are uploaded at the same time. Default is 4
+     * @return S3Sink
+     */
+    public S3Sink setConcurrency(int concurrency) {
+        this.concurrency = Math.max(1, concurrency);
+        return this;
+    }
+
+    @Override
+    public Upload open(String fileName) throws IOException {
+        String key = prefix + fileName;
+        String response = new String(request("POST", key, "uploads=", new byte[0]), StandardCharsets.UTF_8);
+        Matcher matcher = UPLOAD_ID.matcher(response);
+        if (!matcher.find()) {
+            throw new IOException("No upload id in the response of " + this + ": " + response);
+        }
+        logger.debug("started the upload of " + key + " to " + this);
+        return new MultipartUpload(key, matcher.group(1));
+    }
+
+    @Override
+    public String toString() {
+        return endpoint + "/" + bucket;
+    }
+
+    /**
+     * The parts of an object that are uploaded in the background
+     */
+    private class MultipartUpload extends Upload {
+
+        private final String key;
+        private final String uploadId;
+        private final ExecutorService executor = BackupExecutors.newFixedExecutor("mysql-backup4j-s3", concurrency);
+        private final Semaphore inFlight = new Semaphore(concurrency);
+        private final List<Future<String>> parts = new ArrayList<>();
+        private byte[] part = new byte[0];
+        private int length;
+        private boolean closed;
+
+        private MultipartUpload(String key, String uploadId) {
+            this.key = key;
+            this.uploadId = uploadId;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (length == part.length) {
+                    if (length == partBytes) {
+                        submit();
+                    }
+                    //the part grows with its content, so
+                    //a small file doesn't take a whole part
+                    part = Arrays.copyOf(part, Math.min(partBytes, Math.max(64 * 1024, part.length * 2)));
+                }
+                int count = Math.min(len, part.length - length);
+                System.arraycopy(b, off, part, length, count);
+                length += count;
+                off += count;
+                len -= count;
+            }
+        }
+
+        /**
+         * This will upload the current part in the background.
+         * It blocks while the maximum of parts is in flight
+         */
+        private void submit() throws IOException {
+            for (Future<String> uploaded : parts) {
+                if (uploaded.isDone()) {
+                    await(uploaded);
+                }
+            }
+            byte[] content = length == part.length ? part : Arrays.copyOf(part, length);
+            int number = parts.size() + 1;
+            part = new byte[0];
+            length = 0;
+
+            try {
+                inFlight.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while uploading " + key, e);
+            }
+            parts.add(executor.submit(() -> {
+                try {
+                    return uploadPart(number, content);
+                } finally {
+                    inFlight.release();
+                }
+            }));
+        }
+
+        private String uploadPart(int number, byte[] content) throws IOException {
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    HttpURLConnection connection = send("PUT", key, "partNumber=" + number + "&uploadId=" + encode(uploadId), content);
+                    String etag = connection.getHeaderField("ETag");
+                    connection.disconnect();
+                    logger.debug("uploaded part " + number + " of " + key + " with " + content.length + " bytes");
+                    return etag;
+                } catch (IOException e) {
+                    if (attempt >= RETRIES) {
+                        throw e;
+                    }
+                    logger.warn("upload of part " + number + " of " + key + " failed, retrying. " + e.getLocalizedMessage());
+                    try {
+                        Thread.sleep(1000L << attempt);
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        private String await(Future<String> uploaded) throws IOException {
+            try {
+                return uploaded.get();
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while uploading " + key, e);
+            }
+        }
+
+        /**
+         * This will upload the last part and
+         * complete the upload once all the parts are done
+         *
+         * @throws IOException exception. The upload is aborted then
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (length > 0 || parts.isEmpty()) {
+                    submit();
+                }
+                StringBuilder complete = new StringBuilder("<CompleteMultipartUpload>");
+                for (int i = 0; i < parts.size(); i++) {
+                    complete.append("<Part><PartNumber>").append(i + 1).append("</PartNumber><ETag>")
+                            .append(await(parts.get(i))).append("</ETag></Part>");
+                }
+                complete.append("</CompleteMultipartUpload>");
+                String response = new String(request("POST", key, "uploadId=" + encode(uploadId),
+                        complete.toString().getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+                //the completion can fail after a 200 OK
+                if (response.contains("<Error>")) {
+                    throw new IOException("Unable to complete the upload of " + key + ": " + response);
+                }
+                logger.debug("completed the upload of " + key + " in " + parts.size() + " parts");
+            } catch (IOException | RuntimeException e) {
+                abort();
+                throw e;
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        @Override
+        public void abort() {
+            closed = true;
+            executor.shutdownNow();
+            try {
+                request("DELETE", key, "uploadId=" + encode(uploadId), new byte[0]);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("unable to abort the upload of " + key + ": " + e.getLocalizedMessage());
+            }
+        }
+    }
+
+    private byte[] request(String method, String key, String query, byte[] body) throws IOException {
+        HttpURLConnection connection = send(method, key, query, body);
+        try (InputStream in = connection.getInputStream()) {
+            return readAll(in);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * This will send a signed request
+     *
+     * @param method the HTTP method
+     * @param key    the object key
+     * @param query  the canonical query string, i.e. sorted and encoded
+     * @param body   the body
+     * @return the connection with a successful response
+     * @throws IOException if the request fails or the response is an error
+     */
+    private HttpURLConnection send(String method, String key, String query, byte[] body) throws IOException {
+        String path = "/" + bucket + "/" + encodePath(key);
+        URL url = new URL(endpoint + path + (query.isEmpty() ? "" : "?" + query));
+        String host = url.getPort() < 0 ? url.getHost() : url.getHost() + ":" + url.getPort();
+
+        SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String amzDate = format.format(new Date());
+        String payloadHash = toHex(sha256(body));
+
+        Map<String, String> headers = new TreeMap<>();
+        headers.put("host", host);
+        headers.put("x-amz-content-sha256", payloadHash);
+        headers.put("x-amz-date", amzDate);
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("x-amz-content-sha256", payloadHash);
+        connection.setRequestProperty("x-amz-date", amzDate);
+        connection.setRequestProperty("Authorization", sign(method, path, query, headers, payloadHash, amzDate));
+        if (body.length > 0 || method.equals("PUT") || method.equals("POST")) {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+
+        int status = connection.getResponseCode();
+        if (status / 100 != 2) {
+            String error = "";
+            if (connection.getErrorStream() != null) {
+                try (InputStream in = connection.getErrorStream()) {
+                    error = new String(readAll(in), StandardCharsets.UTF_8);
+                }
+            }
+            connection.disconnect();
+            throw new IOException(method + " " + url + " failed with " + status + ": " + error);
+        }
+        return connection;
+    }
+
+    /**
+     * This will compute the Authorization header
+     * of AWS Signature Version 4
+     */
+    private String sign(String method, String path, String query, Map<String, String> headers,
+                        String payloadHash, String amzDate) throws IOException {
+        StringBuilder canonicalHeaders = new StringBuilder();
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            canonicalHeaders.append(header.getKey()).append(":").append(header.getValue().trim()).append("\n");
+        }
+        String signedHeaders = String.join(";", headers.keySet());
+        String canonicalRequest = method + "\n" + path + "\n" + query + "\n" + canonicalHeaders + "\n" +
+                signedHeaders + "\n" + payloadHash;
+
+        String date = amzDate.substring(0, 8);
+        String scope = date + "/" + region + "/s3/aws4_request";
+        String stringToSign = "AWS4-HMAC-SHA256\n" + amzDate + "\n" + scope + "\n" +
+                toHex(sha256(canonicalRequest.getBytes(StandardCharsets.UTF_8)));
+
+        byte[] signingKey = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), date);
+        signingKey = hmac(signingKey, region);
+        signingKey = hmac(signingKey, "s3");
+        signingKey = hmac(signingKey, "aws4_request");
+        String signature = toHex(hmac(signingKey, stringToSign));
+
+        return "AWS4-HMAC-SHA256 Credential=" + accessKey + "/" + scope + ", SignedHeaders=" + signedHeaders +
+                ", Signature=" + signature;
+    }
+
+    private static byte[] hmac(byte[] key, String data) throws IOException {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static byte[] sha256(byte[] data) throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * This will encode a value the way SigV4 expects it,
+     * which is stricter than form encoding
+     */
+    static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8").replace("+", "%20").replace("*", "%2A").replace("%7E", "~");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String encodePath(String key) {
+        StringBuilder path = new StringBuilder();
+        for (String segment : key.split("/", -1)) {
+            if (path.length() > 0) {
+                path.append("/");
+            }
+            path.append(encode(segment));
+        }
+        return path.toString();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
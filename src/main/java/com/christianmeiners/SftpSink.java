@@ -0,0 +1,177 @@
+package com.christianmeiners;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A sink that uploads the dump file to a remote server over SFTP
+ * with the OpenSSH sftp client, which has to be installed. The
+ * client authenticates with a key, e.g. from the ssh-agent, the
+ * default identities or {@link #setIdentityFile(File)}.
+ *
+ * The sftp client only uploads regular files, so the bytes
+ * are spooled to a temp file and uploaded once it's complete.
+ * The upload goes to name.partial, which is renamed when it's done.
+ */
+public class SftpSink implements BackupSink {
+
+    private static Logger logger = LoggerFactory.getLogger(SftpSink.class);
+    private static final long TIMEOUT_MINUTES = 60;
+
+    private final String destination;
+    private final String remoteDir;
+    private int port = 22;
+    private File identityFile;
+    private File spoolDir;
+
+    /**
+     * @param destination the user and host, e.g. backup@files.example.com
+     * @param remoteDir   the directory on the server
+     */
+    public SftpSink(String destination, String remoteDir) {
+        this.destination = destination;
+        this.remoteDir = remoteDir.endsWith("/") ? remoteDir : remoteDir + "/";
+    }
+
+    public SftpSink setPort(int port) {
+        this.port = port;
+        return this;
+    }
+
+    /**
+     * @param identityFile the private key to authenticate with
+     * @return SftpSink
+     */
+    public SftpSink setIdentityFile(File identityFile) {
+        this.identityFile = identityFile;
+        return this;
+    }
+
+    /**
+     * @param spoolDir the directory of the temp file. Default is java.io.tmpdir
+     * @return SftpSink
+     */
+    public SftpSink setSpoolDir(File spoolDir) {
+        this.spoolDir = spoolDir;
+        return this;
+    }
+
+    @Override
+    public Upload open(String fileName) throws IOException {
+        File spool = File.createTempFile("mysql-backup4j-sftp", ".partial", spoolDir);
+        FileOutputStream out = new FileOutputStream(spool);
+        return new Upload() {
+
+            private boolean closed;
+
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                try {
+                    out.close();
+                    upload(spool, fileName);
+                } finally {
+                    spool.delete();
+                }
+            }
+
+            @Override
+            public void abort() {
+                closed = true;
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    //the file is deleted anyway
+                }
+                spool.delete();
+            }
+        };
+    }
+
+    /**
+     * This will run the sftp client in batch mode. A failed
+     * command ends the batch with an error, except the removal
+     * of a previous file of the same name
+     *
+     * @param file     the local file
+     * @param fileName the remote file name
+     * @throws IOException if the upload failed
+     */
+    private void upload(File file, String fileName) throws IOException {
+        String remote = remoteDir + fileName;
+        File batch = File.createTempFile("mysql-backup4j-sftp", ".batch", spoolDir);
+        try {
+            Files.write(batch.toPath(), ("put \"" + file.getAbsolutePath() + "\" \"" + remote + ".partial\"\n" +
+                    "-rm \"" + remote + "\"\n" +
+                    "rename \"" + remote + ".partial\" \"" + remote + "\"\n").getBytes(StandardCharsets.UTF_8));
+
+            List<String> command = new ArrayList<>();
+            command.add("sftp");
+            command.add("-b");
+            command.add(batch.getAbsolutePath());
+            command.add("-P");
+            command.add(String.valueOf(port));
+            command.add("-o");
+            command.add("BatchMode=yes");
+            if (identityFile != null) {
+                command.add("-i");
+                command.add(identityFile.getAbsolutePath());
+            }
+            command.add(destination);
+
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            String output;
+            try (InputStream in = process.getInputStream()) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) >= 0) {
+                    bytes.write(buffer, 0, read);
+                }
+                output = new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+            }
+            if (!process.waitFor(TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                process.destroyForcibly();
+                throw new IOException("The upload of " + remote + " to " + destination + " timed out");
+            }
+            if (process.exitValue() != 0) {
+                throw new IOException("The upload of " + remote + " to " + destination + " failed: " + output.trim());
+            }
+            logger.debug("uploaded " + remote + " to " + destination);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while uploading " + remote, e);
+        } finally {
+            batch.delete();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "sftp://" + destination + ":" + port + remoteDir;
+    }
+}
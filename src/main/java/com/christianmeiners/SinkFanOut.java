@@ -0,0 +1,224 @@
+package com.christianmeiners;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * This streams a file to several {@link BackupSink}s at once.
+ *
+ * The bytes are collected in blocks, and every block is handed to
+ * every sink on a thread of its own. A sink may lag behind the others
+ * by a few blocks, after that the writer waits for it. A sink that fails
+ * is aborted and left out, the others carry on, and close()
+ * reports the failure once all of them are done.
+ */
+class SinkFanOut extends OutputStream {
+
+    private static Logger logger = LoggerFactory.getLogger(SinkFanOut.class);
+    private static final int BLOCK_BYTES = 64 * 1024;
+    private static final int QUEUED_BLOCKS = 16;
+
+    private final List<Target> targets = new ArrayList<>();
+    private byte[] block = new byte[BLOCK_BYTES];
+    private int length;
+    private long bytes;
+    private boolean closed;
+
+    /**
+     * This will open the file in all the sinks
+     *
+     * @param sinks    the sinks
+     * @param fileName the name of the file
+     * @throws IOException if a sink can't be opened
+     */
+    SinkFanOut(List<BackupSink> sinks, String fileName) throws IOException {
+        try {
+            for (BackupSink sink : sinks) {
+                targets.add(new Target(sink, sink.open(fileName)));
+            }
+        } catch (IOException | RuntimeException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[length++] = (byte) b;
+        bytes++;
+        if (length == BLOCK_BYTES) {
+            dispatch();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        bytes += len;
+        while (len > 0) {
+            int count = Math.min(len, BLOCK_BYTES - length);
+            System.arraycopy(b, off, block, length, count);
+            length += count;
+            off += count;
+            len -= count;
+            if (length == BLOCK_BYTES) {
+                dispatch();
+            }
+        }
+    }
+
+    /**
+     * This will hand the current block over to the sinks
+     */
+    private void dispatch() throws IOException {
+        if (length == 0) {
+            return;
+        }
+        byte[] full = length == block.length ? block : Arrays.copyOf(block, length);
+        for (Target target : targets) {
+            target.submit(full);
+        }
+        block = new byte[BLOCK_BYTES];
+        length = 0;
+    }
+
+    /**
+     * This will complete the uploads and wait for them
+     *
+     * @throws IOException if a sink has failed. The other sinks have completed their uploads
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        dispatch();
+        Map<BackupSink, Throwable> failures = new LinkedHashMap<>();
+        for (Target target : targets) {
+            Throwable failure = target.complete();
+            if (failure != null) {
+                failures.put(target.sink, failure);
+            }
+        }
+        if (!failures.isEmpty()) {
+            StringBuilder message = new StringBuilder("Unable to upload to ");
+            for (Map.Entry<BackupSink, Throwable> failure : failures.entrySet()) {
+                message.append(failure.getKey()).append(": ").append(failure.getValue().getLocalizedMessage()).append("; ");
+            }
+            IOException e = new IOException(message.toString());
+            failures.values().forEach(e::addSuppressed);
+            throw e;
+        }
+    }
+
+    /**
+     * This will discard all the uploads
+     */
+    void abort() {
+        closed = true;
+        for (Target target : targets) {
+            target.abort();
+        }
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * A sink with its upload and its thread
+     */
+    private static class Target {
+
+        private final BackupSink sink;
+        private final BackupSink.Upload upload;
+        private final ExecutorService executor = BackupExecutors.newFixedExecutor("mysql-backup4j-sink", 1);
+        private final Semaphore queue = new Semaphore(QUEUED_BLOCKS);
+        private volatile Throwable failure;
+
+        private Target(BackupSink sink, BackupSink.Upload upload) {
+            this.sink = sink;
+            this.upload = upload;
+        }
+
+        private void submit(byte[] block) throws IOException {
+            if (failure != null) {
+                return;
+            }
+            try {
+                queue.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while uploading to " + sink, e);
+            }
+            executor.execute(() -> {
+                try {
+                    if (failure == null) {
+                        upload.write(block);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    fail(e);
+                } finally {
+                    queue.release();
+                }
+            });
+        }
+
+        private void fail(Throwable e) {
+            if (failure == null) {
+                failure = e;
+                logger.error("upload to " + sink + " failed: " + e.getLocalizedMessage());
+                upload.abort();
+            }
+        }
+
+        /**
+         * This will close the upload once the
+         * queued blocks have been written
+         *
+         * @return the failure or null
+         */
+        private Throwable complete() {
+            Future<?> closed = executor.submit(() -> {
+                if (failure == null) {
+                    try {
+                        upload.close();
+                    } catch (IOException | RuntimeException e) {
+                        fail(e);
+                    }
+                }
+            });
+            try {
+                closed.get();
+            } catch (ExecutionException e) {
+                fail(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+            } finally {
+                executor.shutdownNow();
+            }
+            return failure;
+        }
+
+        private void abort() {
+            executor.shutdownNow();
+            upload.abort();
+        }
+    }
+}
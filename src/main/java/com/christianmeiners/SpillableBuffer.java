@@ -0,0 +1,324 @@
+package com.christianmeiners;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A character buffer for the generated SQL that's kept
+ * in memory up to a limit and spills to a temp file
+ * in UTF-8 once it gets larger.
+ *
+ * The I/O errors of the temp file are thrown as
+ * UncheckedIOException, so it can be appended
+ * to like a StringBuilder.
+ */
+class SpillableBuffer implements Closeable {
+
+    private static final int COPY_BUFFER_CHARS = 64 * 1024;
+
+    private final long memoryLimit;
+    private final File spillDir;
+    private StringBuilder memory = new StringBuilder();
+    private File spillFile;
+    private Writer spillWriter;
+    private long length;
+
+    /**
+     * @param memoryLimit the number of characters kept in memory. Long.MAX_VALUE never spills
+     * @param spillDir    the directory of the temp file. Can be null for the default temp dir
+     */
+    SpillableBuffer(long memoryLimit, File spillDir) {
+        this.memoryLimit = memoryLimit;
+        this.spillDir = spillDir;
+    }
+
+    /**
+     * @return a buffer that's never spilled
+     */
+    static SpillableBuffer inMemory() {
+        return new SpillableBuffer(Long.MAX_VALUE, null);
+    }
+
+    SpillableBuffer append(CharSequence chars) {
+        try {
+            if (spillWriter == null && memory.length() + chars.length() > memoryLimit) {
+                spill();
+            }
+            if (spillWriter == null) {
+                memory.append(chars);
+            } else {
+                spillWriter.append(chars);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        length += chars.length();
+        return this;
+    }
+
+    SpillableBuffer append(char c) {
+        return append(String.valueOf(c));
+    }
+
+    SpillableBuffer append(int i) {
+        return append(String.valueOf(i));
+    }
+
+    /**
+     * This will append the content of another buffer,
+     * reading it back from its temp file if it has been spilled
+     *
+     * @param other the buffer to append
+     * @return SpillableBuffer
+     */
+    SpillableBuffer append(SpillableBuffer other) {
+        if (other.spillWriter == null) {
+            return append(other.memory);
+        }
+        try (Reader reader = other.openReader()) {
+            return append(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * This will append the content of a UTF-8 file
+     *
+     * @param file the file to append
+     * @return SpillableBuffer
+     */
+    SpillableBuffer append(File file) {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return append(reader);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private SpillableBuffer append(Reader reader) throws IOException {
+        char[] chars = new char[COPY_BUFFER_CHARS];
+        int read;
+        while ((read = reader.read(chars)) >= 0) {
+            append(CharBuffer.wrap(chars, 0, read));
+        }
+        return this;
+    }
+
+    private void spill() throws IOException {
+        if (spillDir != null) {
+            spillDir.mkdirs();
+        }
+        spillFile = File.createTempFile("mysql-backup4j-", ".sql.part", spillDir);
+        spillWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spillFile), StandardCharsets.UTF_8), COPY_BUFFER_CHARS);
+        spillWriter.append(memory);
+        memory = null;
+    }
+
+    private Reader openReader() throws IOException {
+        spillWriter.flush();
+        return new InputStreamReader(new FileInputStream(spillFile), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the number of characters in the buffer
+     */
+    long length() {
+        return length;
+    }
+
+    /**
+     * This will count the bytes of the content in UTF-8. A
+     * spilled buffer has them in its temp file already
+     *
+     * @return the number of bytes of the buffer in UTF-8
+     */
+    long utf8Length() {
+        if (spillWriter == null) {
+            return MysqlBaseService.utf8Length(memory);
+        }
+        try {
+            spillWriter.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return spillFile.length();
+    }
+
+    boolean isSpilled() {
+        return spillWriter != null;
+    }
+
+    /**
+     * This will write the content of the buffer in UTF-8. It's
+     * encoded in chunks rather than copied into one byte array,
+     * and a dump file gets it encoded straight into its buffers
+     * or the temp file transferred to it
+     *
+     * @param out the stream to write to
+     * @throws IOException exception
+     */
+    void writeTo(OutputStream out) throws IOException {
+        if (out instanceof DumpFileOutputStream) {
+            DumpFileOutputStream file = (DumpFileOutputStream) out;
+            if (spillWriter == null) {
+                file.write(memory);
+            } else {
+                spillWriter.flush();
+                file.transferFrom(spillFile);
+            }
+            return;
+        }
+        if (spillWriter == null) {
+            encodeTo(CharBuffer.wrap(memory), out);
+            return;
+        }
+        spillWriter.flush();
+        byte[] bytes = new byte[COPY_BUFFER_CHARS];
+        try (InputStream in = new FileInputStream(spillFile)) {
+            int read;
+            while ((read = in.read(bytes)) >= 0) {
+                out.write(bytes, 0, read);
+            }
+        }
+    }
+
+    /**
+     * This will write the content of the buffer in UTF-8 in
+     * consecutive parts, e.g. one per table. A spilled buffer
+     * is read back once for all the parts
+     *
+     * @param ends  the position in characters each part ends at
+     * @param parts the streams of the parts
+     * @throws IOException exception
+     */
+    void writeParts(long[] ends, DumpCodec.PartStreams parts) throws IOException {
+        if (spillWriter == null) {
+            int start = 0;
+            for (int i = 0; i < ends.length; i++) {
+                encodeTo(CharBuffer.wrap(memory, start, (int) ends[i]), parts.open(i));
+                start = (int) ends[i];
+            }
+            return;
+        }
+        char[] chars = new char[COPY_BUFFER_CHARS];
+        try (Reader reader = openReader()) {
+            long start = 0;
+            for (int i = 0; i < ends.length; i++) {
+                //the writer is only flushed, the stream stays open
+                Writer writer = new OutputStreamWriter(parts.open(i), StandardCharsets.UTF_8);
+                for (long remaining = ends[i] - start; remaining > 0; ) {
+                    int read = reader.read(chars, 0, (int) Math.min(chars.length, remaining));
+                    if (read < 0) {
+                        throw new IOException("The buffer ends before " + ends[i]);
+                    }
+                    writer.write(chars, 0, read);
+                    remaining -= read;
+                }
+                writer.flush();
+                start = ends[i];
+            }
+        }
+    }
+
+    /**
+     * This will return the first characters of the buffer
+     *
+     * @param chars the number of characters
+     * @return String
+     */
+    String sample(int chars) {
+        if (spillWriter == null) {
+            return memory.substring(0, (int) Math.min(chars, length));
+        }
+        char[] sample = new char[(int) Math.min(chars, length)];
+        int sampled = 0;
+        try (Reader reader = openReader()) {
+            int read;
+            while (sampled < sample.length && (read = reader.read(sample, sampled, sample.length - sampled)) >= 0) {
+                sampled += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new String(sample, 0, sampled);
+    }
+
+    private void encodeTo(CharBuffer in, OutputStream out) throws IOException {
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocate(COPY_BUFFER_CHARS);
+        CoderResult result;
+        do {
+            result = encoder.encode(in, bytes, true);
+            out.write(bytes.array(), 0, bytes.position());
+            bytes.clear();
+        } while (result.isOverflow());
+        do {
+            result = encoder.flush(bytes);
+            out.write(bytes.array(), 0, bytes.position());
+            bytes.clear();
+        } while (result.isOverflow());
+    }
+
+    /**
+     * This will return the content of the buffer. A spilled
+     * buffer is read back into memory, so only use this
+     * if it's known to be small enough
+     *
+     * @return String
+     */
+    @Override
+    public String toString() {
+        if (spillWriter == null) {
+            return memory.toString();
+        }
+        StringBuilder chars = new StringBuilder((int) Math.min(Integer.MAX_VALUE - 8, length));
+        try (Reader reader = openReader()) {
+            char[] buffer = new char[COPY_BUFFER_CHARS];
+            int read;
+            while ((read = reader.read(buffer)) >= 0) {
+                chars.append(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return chars.toString();
+    }
+
+    /**
+     * This will release the memory and delete the temp file
+     */
+    @Override
+    public void close() {
+        memory = new StringBuilder();
+        if (spillWriter != null) {
+            try {
+                spillWriter.close();
+            } catch (IOException e) {
+                //the file is deleted anyway
+            }
+            spillWriter = null;
+            spillFile.delete();
+        }
+        length = 0;
+    }
+}
@@ -0,0 +1,40 @@
+package com.christianmeiners;
+
+/**
+ * This splits a dump into the executable chunks
+ * between the {@link MysqlBaseService#SQL_START_PATTERN}
+ * and {@link MysqlBaseService#SQL_END_PATTERN} markers.
+ *
+ * The chunks are located by index instead of cutting
+ * them off the string, to avoid copying the remaining
+ * sql for every chunk.
+ */
+class SqlChunkReader {
+
+    private final String sql;
+    private int position;
+
+    SqlChunkReader(String sql) {
+        this.sql = sql;
+    }
+
+    /**
+     * This will return the next chunk
+     *
+     * @return String or null if there are no more chunks
+     */
+    String next() {
+        int startIndex = sql.indexOf(MysqlBaseService.SQL_START_PATTERN, position);
+        if (startIndex < 0) {
+            return null;
+        }
+
+        //get the chunk of the next statement to execute
+        int endIndex = sql.indexOf(MysqlBaseService.SQL_END_PATTERN, position);
+        String chunk = sql.substring(startIndex, endIndex);
+
+        //continue after the chunk
+        position = endIndex + 1;
+        return chunk;
+    }
+}
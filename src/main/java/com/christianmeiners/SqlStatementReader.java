@@ -0,0 +1,151 @@
+package com.christianmeiners;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Supplier;
+
+/**
+ * This reads the executable chunks of a dump like the
+ * {@link SqlChunkReader}, with the table inserts split into
+ * statements of a bounded size by the {@link InsertSplitter}.
+ *
+ * The chunks are either taken from a dump that's in memory, or
+ * read from a stream one character at a time, in which case neither
+ * the dump nor a whole chunk is held in memory.
+ */
+class SqlStatementReader {
+
+    private static final int READ_BUFFER_CHARS = 64 * 1024;
+
+    private final Supplier<String> chunks;
+    private final Reader in;
+    private final long maxStatementBytes;
+    private final InsertSplitter splitter;
+    private final Deque<String> pending = new ArrayDeque<>();
+    private final char[] buffer;
+    private final char[] window;
+    private int bufferPosition;
+    private int bufferLength;
+    private boolean inChunk;
+    private long chars;
+    private long bytes;
+
+    private SqlStatementReader(Supplier<String> chunks, Reader in, long maxStatementBytes) {
+        this.chunks = chunks;
+        this.in = in;
+        this.maxStatementBytes = maxStatementBytes;
+        this.splitter = new InsertSplitter(maxStatementBytes);
+        this.buffer = in == null ? null : new char[READ_BUFFER_CHARS];
+        this.window = new char[Math.max(MysqlBaseService.SQL_START_PATTERN.length(), MysqlBaseService.SQL_END_PATTERN.length())];
+    }
+
+    /**
+     * @param chunks            the chunks of the dump, null at the end
+     * @param maxStatementBytes the maximum size of a statement in UTF-8
+     * @return SqlStatementReader
+     */
+    static SqlStatementReader of(Supplier<String> chunks, long maxStatementBytes) {
+        return new SqlStatementReader(chunks, null, maxStatementBytes);
+    }
+
+    /**
+     * @param in                the dump
+     * @param maxStatementBytes the maximum size of a statement in UTF-8
+     * @return SqlStatementReader
+     */
+    static SqlStatementReader of(Reader in, long maxStatementBytes) {
+        return new SqlStatementReader(null, in, maxStatementBytes);
+    }
+
+    /**
+     * This will return the next statement
+     *
+     * @return String or null if there are no more statements
+     * @throws IOException exception
+     */
+    String next() throws IOException {
+        String statement = pending.poll();
+        if (statement != null) {
+            return statement;
+        }
+
+        if (in == null) {
+            String chunk = chunks.get();
+            if (chunk == null) {
+                return null;
+            }
+            chars += chunk.length();
+            bytes += MysqlBaseService.utf8Length(chunk);
+            pending.addAll(InsertSplitter.split(chunk, maxStatementBytes));
+            return pending.poll();
+        }
+
+        //skip to the start of the next chunk
+        if (!inChunk) {
+            while (!endsWith(MysqlBaseService.SQL_START_PATTERN)) {
+                if (read() < 0) {
+                    return null;
+                }
+            }
+            for (int i = 0; i < MysqlBaseService.SQL_START_PATTERN.length(); i++) {
+                splitter.append(MysqlBaseService.SQL_START_PATTERN.charAt(i));
+            }
+            inChunk = true;
+        }
+
+        //split the chunk up to its end while it's read
+        while (!endsWith(MysqlBaseService.SQL_END_PATTERN)) {
+            int c = read();
+            if (c < 0) {
+                throw new IOException("The dump ends in the middle of a chunk");
+            }
+            splitter.append((char) c);
+            statement = splitter.poll();
+            if (statement != null) {
+                return statement;
+            }
+        }
+        inChunk = false;
+        splitter.finish(MysqlBaseService.SQL_END_PATTERN.length());
+        return splitter.poll();
+    }
+
+    private int read() throws IOException {
+        if (bufferPosition == bufferLength) {
+            bufferLength = in.read(buffer);
+            bufferPosition = 0;
+            if (bufferLength < 0) {
+                bufferLength = 0;
+                return -1;
+            }
+        }
+        char c = buffer[bufferPosition++];
+        window[(int) (chars++ % window.length)] = c;
+        bytes += MysqlBaseService.utf8Length(c);
+        return c;
+    }
+
+    /**
+     * @return whether the last characters that have been read are the pattern
+     */
+    private boolean endsWith(String pattern) {
+        if (chars < pattern.length()) {
+            return false;
+        }
+        for (int i = 0; i < pattern.length(); i++) {
+            if (window[(int) ((chars - pattern.length() + i) % window.length)] != pattern.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the size in UTF-8 of the dump that has been read so far
+     */
+    long getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,203 @@
+package com.christianmeiners;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * The keys of the rows of a subset export, see
+ * {@link MysqlExportService#SUBSET}.
+ *
+ * The tables are exported in the reverse order of their
+ * dependencies, so every table is exported after the tables that
+ * reference it. Every exported row requires the rows its foreign
+ * keys point to, and once a table is exported the rows that are
+ * still required are read with batched key lookups. The keys of the
+ * exported rows are remembered per referenced column list, so no
+ * row is exported twice and a required row that's already in the
+ * subset isn't looked up again. Rows of the same table, e.g. of a
+ * tree, are looked up until there are no new ones.
+ *
+ * The keys are rendered as SQL literals and kept in memory.
+ */
+class SubsetKeys {
+
+    private static Logger logger = LoggerFactory.getLogger(SubsetKeys.class);
+    static final int LOOKUP_BATCH = 1000;
+
+    private final Set<String> tables;
+    private final Map<String, List<MysqlBaseService.ForeignKey>> foreignKeys = new HashMap<>();
+    private final Map<String, Set<List<String>>> referencedColumns = new HashMap<>();
+    private final Map<String, Map<List<String>, Set<String>>> exported = new HashMap<>();
+    private final Map<String, Map<List<String>, Set<String>>> required = new HashMap<>();
+    private final Set<MysqlBaseService.ForeignKey> skipped = new HashSet<>();
+    private long lookups;
+
+    /**
+     * @param foreignKeys the foreign keys of the database
+     * @param tables      the tables that are exported
+     */
+    SubsetKeys(List<MysqlBaseService.ForeignKey> foreignKeys, Collection<String> tables) {
+        this.tables = new HashSet<>(tables);
+        for (MysqlBaseService.ForeignKey key : foreignKeys) {
+            this.foreignKeys.computeIfAbsent(key.table, table -> new ArrayList<>()).add(key);
+            referencedColumns.computeIfAbsent(key.referencedTable, table -> new LinkedHashSet<>())
+                    .add(key.referencedColumns);
+        }
+    }
+
+    /**
+     * This will prepare the keys of the rows of a result set
+     *
+     * @param table    the table of the rows
+     * @param metaData the meta data of the result set
+     * @return Rows
+     * @throws SQLException exception
+     */
+    Rows forRows(String table, ResultSetMetaData metaData) throws SQLException {
+        return new Rows(table, metaData);
+    }
+
+    /**
+     * This will return the next batch of rows of the table
+     * that are required but haven't been exported yet
+     *
+     * @param table the table
+     * @return the WHERE clause of the rows, or null if all the required rows have been exported
+     */
+    String nextLookup(String table) {
+        Map<List<String>, Set<String>> keys = required.get(table);
+        if (keys == null) {
+            return null;
+        }
+        for (Map.Entry<List<String>, Set<String>> entry : keys.entrySet()) {
+            Set<String> done = getExported(table, entry.getKey());
+            StringJoiner literals = new StringJoiner(", ", "(", ")");
+            int count = 0;
+            Iterator<String> pending = entry.getValue().iterator();
+            while (pending.hasNext() && count < LOOKUP_BATCH) {
+                String literal = pending.next();
+                pending.remove();
+                if (!done.contains(literal)) {
+                    literals.add(literal);
+                    count++;
+                }
+            }
+            if (count > 0) {
+                lookups++;
+                return " WHERE (`" + String.join("`, `", entry.getKey()) + "`) IN " + literals;
+            }
+        }
+        required.remove(table);
+        return null;
+    }
+
+    /**
+     * @return the number of key lookups so far
+     */
+    long getLookups() {
+        return lookups;
+    }
+
+    /**
+     * @return the tables whose required rows haven't been looked up,
+     * because they had been exported before they were required
+     */
+    Set<String> getUnresolvedTables() {
+        Set<String> unresolved = new HashSet<>();
+        for (Map.Entry<String, Map<List<String>, Set<String>>> entry : required.entrySet()) {
+            for (Set<String> keys : entry.getValue().values()) {
+                if (!keys.isEmpty()) {
+                    unresolved.add(entry.getKey());
+                }
+            }
+        }
+        return unresolved;
+    }
+
+    private Set<String> getExported(String table, List<String> columns) {
+        return exported.computeIfAbsent(table, t -> new HashMap<>()).computeIfAbsent(columns, c -> new HashSet<>());
+    }
+
+    /**
+     * The keys of the rows of one result set
+     */
+    class Rows {
+
+        private final String table;
+        private final List<List<String>> keyColumns = new ArrayList<>();
+        private final List<int[]> keyIndexes = new ArrayList<>();
+        private final List<MysqlBaseService.ForeignKey> parents = new ArrayList<>();
+        private final List<int[]> parentIndexes = new ArrayList<>();
+
+        private Rows(String table, ResultSetMetaData metaData) throws SQLException {
+            this.table = table;
+            for (List<String> columns : referencedColumns.getOrDefault(table, new LinkedHashSet<>())) {
+                keyColumns.add(columns);
+                keyIndexes.add(MysqlExportService.getKeyColumns(metaData, columns));
+            }
+            for (MysqlBaseService.ForeignKey key : foreignKeys.getOrDefault(table, new ArrayList<>())) {
+                if (!tables.contains(key.referencedTable)) {
+                    if (skipped.add(key)) {
+                        logger.warn("the subset doesn't include " + key.referencedTable + ", the rows referenced by " +
+                                key + " are missing");
+                    }
+                    continue;
+                }
+                parents.add(key);
+                parentIndexes.add(MysqlExportService.getKeyColumns(metaData, key.columns));
+            }
+        }
+
+        /**
+         * This will record the row the result set is on as
+         * exported and require the rows it references
+         *
+         * @param rs the result set
+         * @throws SQLException exception
+         */
+        void visit(ResultSet rs) throws SQLException {
+            for (int i = 0; i < keyColumns.size(); i++) {
+                String literal = toLiteral(rs, keyIndexes.get(i));
+                if (literal != null) {
+                    getExported(table, keyColumns.get(i)).add(literal);
+                }
+            }
+            for (int i = 0; i < parents.size(); i++) {
+                String literal = toLiteral(rs, parentIndexes.get(i));
+                MysqlBaseService.ForeignKey key = parents.get(i);
+                if (literal != null && !getExported(key.referencedTable, key.referencedColumns).contains(literal)) {
+                    required.computeIfAbsent(key.referencedTable, t -> new LinkedHashMap<>())
+                            .computeIfAbsent(key.referencedColumns, c -> new LinkedHashSet<>()).add(literal);
+                }
+            }
+        }
+
+        /**
+         * @return the key as a row constructor of
+         * literals, or null if a column is NULL
+         */
+        private String toLiteral(ResultSet rs, int[] columns) throws SQLException {
+            for (int column : columns) {
+                if (rs.getObject(column) == null) {
+                    return null;
+                }
+            }
+            return MysqlExportService.toKeyLiteral(rs, columns);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.christianmeiners;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.regex.Pattern;
+
+/**
+ * The tables and rows an export is limited to, see
+ * {@link MysqlExportService#INCLUDE_TABLES},
+ * {@link MysqlExportService#EXCLUDE_TABLES},
+ * {@link MysqlExportService#TABLE_WHERE} and
+ * {@link MysqlExportService#TABLE_SAMPLE}.
+ *
+ * Tables are matched by name or by a pattern with * and ?,
+ * ignoring case. The WHERE filter and the sample ratio of a
+ * table are looked up by its name first and then by the patterns,
+ * the longest pattern first. A sample keeps the rows whose
+ * primary key hashes below the ratio, so the same rows are picked
+ * every time, and random rows of a table without a primary key.
+ */
+class TableFilter {
+
+    private final List<Pattern> includes;
+    private final List<Pattern> excludes;
+    private final Map<String, String> conditions;
+    private final Map<String, String> samples;
+
+    TableFilter(Properties properties) {
+        this.includes = compile(properties.getProperty(MysqlExportService.INCLUDE_TABLES, ""));
+        this.excludes = compile(properties.getProperty(MysqlExportService.EXCLUDE_TABLES, ""));
+        this.conditions = getPrefixed(properties, MysqlExportService.TABLE_WHERE);
+        this.samples = getPrefixed(properties, MysqlExportService.TABLE_SAMPLE);
+        for (Map.Entry<String, String> sample : samples.entrySet()) {
+            double ratio = Double.parseDouble(sample.getValue());
+            if (ratio < 0 || ratio > 1) {
+                throw new IllegalArgumentException(MysqlExportService.TABLE_SAMPLE + sample.getKey() +
+                        " is a ratio between 0 and 1, not " + sample.getValue());
+            }
+        }
+    }
+
+    private static List<Pattern> compile(String patterns) {
+        List<Pattern> compiled = new ArrayList<>();
+        for (String pattern : patterns.split(",")) {
+            if (!pattern.trim().isEmpty()) {
+                compiled.add(toPattern(pattern.trim()));
+            }
+        }
+        return compiled;
+    }
+
+    private static Pattern toPattern(String pattern) {
+        StringBuilder regex = new StringBuilder();
+        for (String part : pattern.split("((?<=[*?])|(?=[*?]))")) {
+            regex.append(part.equals("*") ? ".*" : part.equals("?") ? "." : Pattern.quote(part));
+        }
+        return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE);
+    }
+
+    private static Map<String, String> getPrefixed(Properties properties, String prefix) {
+        List<String> names = new ArrayList<>(properties.stringPropertyNames());
+        names.sort(Comparator.comparingInt(String::length).reversed());
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String name : names) {
+            if (name.startsWith(prefix) && name.length() > prefix.length()) {
+                values.put(name.substring(prefix.length()), properties.getProperty(name).trim());
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return whether there are any filters
+     */
+    boolean isEmpty() {
+        return includes.isEmpty() && excludes.isEmpty() && conditions.isEmpty() && samples.isEmpty();
+    }
+
+    /**
+     * @param table the table
+     * @return whether the table is exported
+     */
+    boolean isIncluded(String table) {
+        return (includes.isEmpty() || matchesAny(includes, table)) && !matchesAny(excludes, table);
+    }
+
+    private static boolean matchesAny(List<Pattern> patterns, String table) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(table).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param table the table
+     * @return whether only some rows of the table are exported
+     */
+    boolean isFiltered(String table) {
+        return lookup(conditions, table) != null || lookup(samples, table) != null;
+    }
+
+    private static String lookup(Map<String, String> values, String table) {
+        String value = values.get(table);
+        if (value != null) {
+            return value;
+        }
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            if (toPattern(entry.getKey()).matcher(table).matches()) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * This will return the condition of the rows of the
+     * table that are exported, i.e. its WHERE filter and
+     * its sample
+     *
+     * @param table      the table
+     * @param primaryKey the columns of its primary key, empty if there is none
+     * @return the condition or null if all the rows are exported
+     */
+    String getCondition(String table, List<String> primaryKey) {
+        List<String> parts = new ArrayList<>();
+        String condition = lookup(conditions, table);
+        if (condition != null) {
+            parts.add("(" + condition + ")");
+        }
+        String sample = lookup(samples, table);
+        if (sample != null) {
+            double ratio = Double.parseDouble(sample);
+            if (primaryKey.isEmpty()) {
+                parts.add("RAND() < " + ratio);
+            } else {
+                //CRC32 is evenly spread over 32 bits
+                parts.add("CRC32(CONCAT_WS(0x1f, `" + String.join("`, `", primaryKey) + "`)) < " +
+                        (long) (ratio * 4294967296d));
+            }
+        }
+        return parts.isEmpty() ? null : String.join(" AND ", parts);
+    }
+
+    /**
+     * This will add the filter of the table to a WHERE clause
+     *
+     * @param where      the WHERE clause, empty for all the rows
+     * @param table      the table
+     * @param primaryKey the columns of its primary key, empty if there is none
+     * @return the WHERE clause
+     */
+    String addTo(String where, String table, List<String> primaryKey) {
+        String condition = getCondition(table, primaryKey);
+        if (condition == null) {
+            return where;
+        }
+        return where.isEmpty() ? " WHERE " + condition : where + " AND " + condition;
+    }
+
+    @Override
+    public String toString() {
+        return "TableFilter{include=" + includes + ", exclude=" + excludes + ", where=" + conditions +
+                ", sample=" + samples + "}";
+    }
+}
@@ -0,0 +1,63 @@
+package com.christianmeiners;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An OutputStream that writes everything to several streams,
+ * e.g. to the generated file, the email volumes and the sinks.
+ * Closing it closes the first stream only, the branches
+ * are closed by their owners.
+ */
+class TeeOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final OutputStream[] branches;
+
+    /**
+     * @param out      the stream that's closed with this one. Can be null
+     * @param branches the other streams
+     */
+    TeeOutputStream(OutputStream out, OutputStream... branches) {
+        this.out = out;
+        this.branches = branches;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (out != null) {
+            out.write(b);
+        }
+        for (OutputStream branch : branches) {
+            branch.write(b);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (out != null) {
+            out.write(b, off, len);
+        }
+        for (OutputStream branch : branches) {
+            branch.write(b, off, len);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+        for (OutputStream branch : branches) {
+            branch.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        if (out != null) {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.christianmeiners;
+
+/**
+ * This combines the rows/s and bytes/s limits
+ * with the optional adaptive {@link LoadMonitor}.
+ * The services call onBatch() once per batch.
+ */
+class Throttle implements AutoCloseable {
+
+    private final RateLimiter rowLimiter;
+    private final RateLimiter byteLimiter;
+    private final LoadMonitor loadMonitor;
+
+    Throttle(RateLimiter rowLimiter, RateLimiter byteLimiter, LoadMonitor loadMonitor) {
+        this.rowLimiter = rowLimiter;
+        this.byteLimiter = byteLimiter;
+        this.loadMonitor = loadMonitor;
+    }
+
+    /**
+     * This will block as long as needed to stay
+     * within the configured limits
+     *
+     * @param rows  number of rows or statements in the batch
+     * @param bytes number of bytes in the batch
+     */
+    void onBatch(long rows, long bytes) {
+        if (rowLimiter != null) {
+            rowLimiter.acquire(rows);
+        }
+        if (byteLimiter != null) {
+            byteLimiter.acquire(bytes);
+        }
+        if (loadMonitor != null) {
+            loadMonitor.awaitHealthy();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (loadMonitor != null) {
+            loadMonitor.close();
+        }
+    }
+}
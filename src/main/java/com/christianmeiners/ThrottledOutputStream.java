@@ -0,0 +1,39 @@
+package com.christianmeiners;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An OutputStream that paces the bytes written
+ * through it with a {@link RateLimiter}. Large writes
+ * are split so that the pacing stays smooth.
+ */
+class ThrottledOutputStream extends FilterOutputStream {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final RateLimiter rateLimiter;
+
+    ThrottledOutputStream(OutputStream out, RateLimiter rateLimiter) {
+        super(out);
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        rateLimiter.acquire(1);
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int chunk = Math.min(len, CHUNK_SIZE);
+            rateLimiter.acquire(chunk);
+            out.write(b, off, chunk);
+            off += chunk;
+            len -= chunk;
+        }
+    }
+}
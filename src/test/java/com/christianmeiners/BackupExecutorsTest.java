@@ -0,0 +1,103 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackupExecutorsTest {
+
+    @Test
+    void futureCompletesWithTheResultOrTheFailure() throws Exception {
+        assertEquals("done", BackupExecutors.submit(BackupExecutors.defaultExecutor(), () -> "done", () -> {})
+                .get(10, TimeUnit.SECONDS));
+
+        CompletableFuture<Object> failed = BackupExecutors.submit(BackupExecutors.defaultExecutor(), () -> {
+            throw new IOException("disk full");
+        }, () -> {});
+        ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IOException);
+    }
+
+    @Test
+    void cancelStopsTheRunningTask() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean stop = new AtomicBoolean();
+        CompletableFuture<Void> future = BackupExecutors.submit(BackupExecutors.defaultExecutor(), () -> {
+            started.countDown();
+            while (!stop.get()) {
+                Thread.sleep(5);
+            }
+            return null;
+        }, () -> stop.set(true));
+
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        assertTrue(future.cancel(true));
+        assertThrows(CancellationException.class, future::join);
+        assertTrue(stop.get());
+    }
+
+    @Test
+    void taskCancelledBeforeItStartsDoesntRun() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch blocked = new CountDownLatch(1);
+            executor.execute(() -> {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            AtomicBoolean ran = new AtomicBoolean();
+            CompletableFuture<Void> future = BackupExecutors.submit(executor, () -> {
+                ran.set(true);
+                return null;
+            }, () -> {});
+            future.cancel(true);
+            blocked.countDown();
+            executor.submit(() -> {}).get(10, TimeUnit.SECONDS);
+            assertFalse(ran.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void fixedExecutorRunsAtMostItsParallelism() throws Exception {
+        ExecutorService executor = BackupExecutors.newFixedExecutor("test", 2);
+        try {
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger peak = new AtomicInteger();
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[8];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = CompletableFuture.runAsync(() -> {
+                    peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                }, executor);
+            }
+            CompletableFuture.allOf(futures).get(10, TimeUnit.SECONDS);
+            assertEquals(2, peak.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
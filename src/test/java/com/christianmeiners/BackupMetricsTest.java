@@ -0,0 +1,71 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackupMetricsTest {
+
+    @Test
+    void stagesAndCountersAddUp() {
+        BackupMetrics metrics = new BackupMetrics();
+        metrics.addStageNanos(BackupStage.PARSE, TimeUnit.MILLISECONDS.toNanos(30));
+        metrics.addStageNanos(BackupStage.PARSE, TimeUnit.MILLISECONDS.toNanos(20));
+        metrics.addStageNanos(BackupStage.EXECUTE, TimeUnit.MILLISECONDS.toNanos(7));
+        metrics.setTablesTotal(5);
+        metrics.addTablesDone(2);
+        metrics.addRows(100);
+        metrics.addRows(50);
+
+        assertEquals(50, metrics.getParseMillis());
+        assertEquals(50, metrics.getStageMillis(BackupStage.PARSE));
+        assertEquals(7, metrics.getExecuteMillis());
+        assertEquals(0, metrics.getUploadMillis());
+        assertEquals(3, metrics.getTablesRemaining());
+        assertEquals(150, metrics.getRows());
+        metrics.addTablesDone(4);
+        assertEquals(0, metrics.getTablesRemaining());
+    }
+
+    @Test
+    void finishStopsTheClockOfTheRates() throws InterruptedException {
+        BackupMetrics metrics = new BackupMetrics();
+        metrics.addRawBytes(1000);
+        Thread.sleep(20);
+        metrics.finish();
+        long elapsed = metrics.getElapsedMillis();
+        Thread.sleep(20);
+        assertEquals(elapsed, metrics.getElapsedMillis());
+        assertEquals(1000 * 1000d / elapsed, metrics.getRawBytesPerSecond(), 0.001);
+    }
+
+    @Test
+    void metricsArePublishedAsAnMBeanWhileRegistered() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.christianmeiners:type=BackupMetricsTest,name=" + ObjectName.quote("shop"));
+        BackupMetrics metrics = new BackupMetrics();
+        metrics.register("BackupMetricsTest", "shop");
+        try {
+            metrics.addRows(42);
+            assertEquals(42L, server.getAttribute(name, "Rows"));
+
+            //a second run on the same database doesn't take over the name
+            BackupMetrics other = new BackupMetrics();
+            other.register("BackupMetricsTest", "shop");
+            other.addRows(1);
+            assertEquals(42L, server.getAttribute(name, "Rows"));
+            other.unregister();
+            assertTrue(server.isRegistered(name));
+        } finally {
+            metrics.unregister();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+}
@@ -0,0 +1,131 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackupPlannerTest {
+
+    private TestDatabase database;
+    private File history;
+
+    @BeforeEach
+    void createDatabase() throws SQLException, IOException {
+        database = TestDatabase.create();
+        //empty InnoDB tables have a DATA_LENGTH of one page
+        database.execute("CREATE TABLE `a` (`id` INT PRIMARY KEY) ENGINE=InnoDB",
+                "CREATE TABLE `b` (`id` INT PRIMARY KEY) ENGINE=InnoDB",
+                "CREATE TABLE `c` (`id` INT PRIMARY KEY) ENGINE=InnoDB",
+                "CREATE TABLE `d` (`id` INT PRIMARY KEY) ENGINE=InnoDB",
+                "CREATE VIEW `v` AS SELECT * FROM `a`");
+        history = File.createTempFile("backup-history", ".properties");
+    }
+
+    @AfterEach
+    void dropDatabase() throws SQLException {
+        if (database != null) {
+            database.close();
+        }
+        if (history != null) {
+            history.delete();
+        }
+    }
+
+    private void writeHistory(String... keysAndValues) throws IOException {
+        Properties properties = new Properties();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            properties.setProperty(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        try (OutputStream out = new FileOutputStream(history)) {
+            properties.store(out, null);
+        }
+    }
+
+    private BackupPlan plan(boolean zip, long targetWindowSeconds, int maxWorkers) throws SQLException {
+        try (Connection connection = database.connect(); Statement stmt = connection.createStatement()) {
+            return new BackupPlanner(history).plan(stmt, database.getName(), zip, targetWindowSeconds, maxWorkers);
+        }
+    }
+
+    @Test
+    void planUsesTheLeastWorkersThatFitTheWindow() throws Exception {
+        writeHistory(BackupPlanner.BYTES_PER_SECOND_PER_WORKER, "1000", BackupPlanner.RUNS, "1");
+        long page = plan(false, 0, 8).getTableBytes().get("a");
+
+        BackupPlan single = plan(false, 0, 8);
+        assertEquals(1, single.getWorkers());
+        assertEquals(4 * page, single.getEstimatedDumpBytes());
+        assertEquals(4 * page, single.getEstimatedMillis());
+        assertEquals(0, single.getEstimatedCompressedBytes());
+        assertTrue(single.isFromHistory());
+        //the view isn't a table of its own
+        assertEquals(Arrays.asList("a", "b", "c", "d"), Arrays.asList(single.getTableBytes().keySet().stream().sorted().toArray()));
+
+        assertEquals(2, plan(false, 2 * page / 1000 + 1, 8).getWorkers());
+        //the largest table can't be split
+        BackupPlan unfit = plan(false, 1, 8);
+        assertEquals(4, unfit.getWorkers());
+        assertFalse(unfit.fitsWindow());
+        assertEquals(3, plan(false, 1, 3).getWorkers());
+    }
+
+    @Test
+    void zippedDumpIsEstimatedWithTheCompressionRatio() throws Exception {
+        writeHistory(BackupPlanner.COMPRESSION_RATIO, "0.5", BackupPlanner.DUMP_EXPANSION, "2");
+        BackupPlan plan = plan(true, 0, 1);
+        assertEquals(2 * plan.getSourceBytes(), plan.getEstimatedDumpBytes());
+        assertEquals(plan.getSourceBytes(), plan.getEstimatedCompressedBytes());
+        assertFalse(plan.isFromHistory());
+    }
+
+    @Test
+    void recordAveragesTheThroughput() throws Exception {
+        writeHistory(BackupPlanner.BYTES_PER_SECOND_PER_WORKER, "1000");
+        BackupPlan plan = plan(false, 0, 1);
+        BackupMetrics metrics = new BackupMetrics();
+        metrics.addRawBytes(1000000);
+        Thread.sleep(20);
+        metrics.finish();
+        new BackupPlanner(history).record(plan, metrics, 2);
+
+        Properties recorded = new Properties();
+        try (InputStream in = new FileInputStream(history)) {
+            recorded.load(in);
+        }
+        double observed = metrics.getRawBytesPerSecond() / 2;
+        assertEquals(0.3 * observed + 0.7 * 1000,
+                Double.parseDouble(recorded.getProperty(BackupPlanner.BYTES_PER_SECOND_PER_WORKER)), 0.001);
+        assertEquals("1", recorded.getProperty(BackupPlanner.RUNS));
+    }
+
+    @Test
+    void dryRunOnlyPlans() throws Exception {
+        File dir = java.nio.file.Files.createTempDirectory("plan-test").toFile();
+        try {
+            Properties properties = database.exportProperties(dir.getAbsolutePath());
+            properties.setProperty(MysqlExportService.DRY_RUN, "true");
+            MysqlExportService export = new MysqlExportService(properties);
+            export.export();
+            assertEquals(4, export.getPlan().getTableBytes().size());
+            assertEquals(0, dir.list().length);
+        } finally {
+            dir.delete();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackupRepositoryTest {
+
+    private static final String[] WORDS = {"alpha", "beta", "gamma", "delta", "O'Brien", "line\\n", "42", "NULL"};
+
+    private File dir;
+    private BackupRepository repository;
+
+    @BeforeEach
+    void createRepository() throws IOException {
+        dir = Files.createTempDirectory("backup-repository-test").toFile();
+        repository = new BackupRepository(dir);
+    }
+
+    @AfterEach
+    void deleteRepository() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static String dump(int firstRow, int rows) {
+        Random random = new Random(firstRow);
+        StringBuilder sql = new StringBuilder("-- start table insert : orders\nINSERT INTO `orders` VALUES \n");
+        for (int i = firstRow; i < firstRow + rows; i++) {
+            sql.append("(").append(i).append(", '").append(WORDS[random.nextInt(WORDS.length)]).append(" ")
+                    .append(random.nextLong()).append("'),\n");
+        }
+        return sql.toString();
+    }
+
+    private static String dump() {
+        return dump(0, 20000);
+    }
+
+    private BackupRepository.BackupWriter store(String name, String sql) throws IOException {
+        BackupRepository.BackupWriter writer = repository.openBackup(name);
+        try (OutputStream out = writer) {
+            out.write(sql.getBytes(StandardCharsets.UTF_8));
+        }
+        return writer;
+    }
+
+    private List<String> lines(String backup) throws IOException {
+        return Files.readAllLines(new File(new File(dir, "backups"), backup).toPath());
+    }
+
+    @Test
+    void backupIsRestoredInChunksOfBoundedSize() throws IOException {
+        String sql = dump();
+        BackupRepository.BackupWriter writer = store("monday", sql);
+
+        assertEquals(sql, repository.restore("monday"));
+        List<String> chunks = lines("monday");
+        assertEquals(writer.getChunks(), chunks.size());
+        assertTrue(chunks.size() > 10);
+        for (int i = 0; i < chunks.size(); i++) {
+            int length = Integer.parseInt(chunks.get(i).split("\t")[1]);
+            assertTrue(length <= BackupRepository.MAX_CHUNK_BYTES);
+            assertTrue(length >= BackupRepository.MIN_CHUNK_BYTES || i == chunks.size() - 1);
+        }
+    }
+
+    @Test
+    void changedDumpOnlyAddsTheChunksAroundTheChange() throws IOException {
+        String sql = dump();
+        BackupRepository.BackupWriter first = store("monday", sql);
+        assertEquals(first.getChunks(), first.getNewChunks());
+
+        //rows inserted in the middle shift the rest of the dump
+        int middle = sql.length() / 2;
+        middle = sql.indexOf("\n", middle) + 1;
+        String changed = sql.substring(0, middle) + "(99999, 'inserted'),\n(99998, 'rows'),\n" + sql.substring(middle);
+        BackupRepository.BackupWriter second = store("tuesday", changed);
+
+        assertTrue(second.getNewChunks() <= 3, second.getNewChunks() + " of " + second.getChunks() + " chunks are new");
+        assertEquals(changed, repository.restore("tuesday"));
+        assertEquals(sql, repository.restore("monday"));
+
+        BackupRepository.BackupWriter same = store("wednesday", sql);
+        assertEquals(0, same.getNewChunks());
+        assertEquals(0, same.getStoredBytes());
+    }
+
+    @Test
+    void pruneKeepsTheChunksOfTheRemainingBackups() throws IOException {
+        store("monday", dump(0, 10000));
+        store("tuesday", dump(0, 10000) + dump(50000, 10000));
+        store("wednesday", dump(90000, 10000));
+        assertEquals(Arrays.asList("monday", "tuesday", "wednesday"), repository.list());
+
+        assertEquals(0, repository.prune());
+        assertTrue(repository.delete("tuesday"));
+        long pruned = repository.prune();
+        assertTrue(pruned > 0);
+        assertEquals(0, repository.prune());
+
+        assertEquals(Arrays.asList("monday", "wednesday"), repository.list());
+        assertEquals(dump(0, 10000), repository.restore("monday"));
+        assertEquals(dump(90000, 10000), repository.restore("wednesday"));
+        assertThrows(IOException.class, () -> repository.restore("tuesday"));
+    }
+
+    @Test
+    void corruptedChunkFailsTheRestore() throws IOException {
+        store("monday", dump(0, 1000));
+        String hash = lines("monday").get(0).split("\t")[0];
+        int length = Integer.parseInt(lines("monday").get(0).split("\t")[1]);
+        File chunk = new File(new File(new File(dir, "chunks"), hash.substring(0, 2)), hash);
+
+        byte[] other = new byte[length];
+        Arrays.fill(other, (byte) 'x');
+        try (OutputStream out = new DeflaterOutputStream(new FileOutputStream(chunk))) {
+            out.write(other);
+        }
+        IOException corrupted = assertThrows(IOException.class, () -> repository.restore("monday"));
+        assertTrue(corrupted.getMessage().contains("corrupted"), corrupted.getMessage());
+
+        try (OutputStream out = new DeflaterOutputStream(new FileOutputStream(chunk))) {
+            out.write(other, 0, length - 1);
+        }
+        IOException truncated = assertThrows(IOException.class, () -> repository.restore("monday"));
+        assertTrue(truncated.getMessage().contains("wrong length"), truncated.getMessage());
+    }
+
+    @Test
+    void invalidNamesAreRefused() {
+        for (String name : new String[]{"", "a/b", ".hidden"}) {
+            assertThrows(IOException.class, () -> repository.openBackup(name));
+        }
+    }
+}
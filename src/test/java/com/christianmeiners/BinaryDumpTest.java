@@ -0,0 +1,201 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryDumpTest {
+
+    private static final String[] NAMES = {"id", "delta", "big", "price", "name", "photo", "born",
+            "a", "b", "c"};
+    private static final int[] TYPES = {Types.INTEGER, Types.BIGINT, Types.BIGINT, Types.DOUBLE, Types.VARCHAR,
+            Types.BLOB, Types.DATE, Types.TINYINT, Types.TINYINT, Types.VARCHAR};
+    private static final String[] TYPE_NAMES = {"INT", "BIGINT", "BIGINT UNSIGNED", "DOUBLE", "VARCHAR",
+            "BLOB", "YEAR", "TINYINT", "TINYINT", "VARCHAR"};
+
+    private static final String HEADER = "-- header\nSET NAMES utf8mb4;\n";
+    private static final String CREATE = "CREATE TABLE `orders` (`id` int);\n";
+    private static final String FOOTER = "-- routines\n";
+
+    /**
+     * @return the values of a row as they're read back
+     */
+    private static Object[] values(int i) {
+        boolean nulls = i % 7 == 0;
+        return new Object[]{(long) i, (long) -i * 1000000007L, "18446744073709551615",
+                nulls ? null : i / 3.0, nulls ? null : "name \u00e9\u20ac " + i + " '\\\n",
+                nulls ? null : new byte[]{0, (byte) i, -1}, 1990L + i % 30, nulls ? null : 1L, 0L, ""};
+    }
+
+    /**
+     * @return a result set on the current row of the given rows with the columns of the test
+     */
+    private static ResultSet resultSet(List<Object[]> rows, int[] current) {
+        boolean[] wasNull = {false};
+        return (ResultSet) Proxy.newProxyInstance(BinaryDumpTest.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("wasNull")) {
+                        return wasNull[0];
+                    }
+                    Object value = rows.get(current[0])[(Integer) args[0] - 1];
+                    wasNull[0] = value == null;
+                    switch (method.getName()) {
+                        case "getLong":
+                            return value == null ? 0L : value;
+                        case "getDouble":
+                            return value == null ? 0d : value;
+                        case "getBytes":
+                            return value;
+                        case "getString":
+                            return value == null ? null : value.toString();
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static ResultSetMetaData metaData() {
+        return (ResultSetMetaData) Proxy.newProxyInstance(BinaryDumpTest.class.getClassLoader(),
+                new Class<?>[]{ResultSetMetaData.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getColumnCount":
+                            return NAMES.length;
+                        case "getColumnName":
+                            return NAMES[(Integer) args[0] - 1];
+                        case "getColumnType":
+                            return TYPES[(Integer) args[0] - 1];
+                        case "getColumnTypeName":
+                            return TYPE_NAMES[(Integer) args[0] - 1];
+                        case "isSigned":
+                            return !TYPE_NAMES[(Integer) args[0] - 1].contains("UNSIGNED");
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static byte[] dump(int rowCount) throws IOException, SQLException {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < rowCount; i++) {
+            rows.add(values(i));
+        }
+        int[] current = {0};
+        ResultSet rs = resultSet(rows, current);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryDump.Writer writer = new BinaryDump.Writer(out);
+        writer.writeSql(HEADER);
+        writer.writeSql("");
+        writer.writeSql(CREATE);
+        writer.startTable("orders", metaData());
+        for (current[0] = 0; current[0] < rowCount; current[0]++) {
+            writer.writeRow(rs);
+        }
+        writer.endTable();
+        writer.startTable("empty", metaData());
+        writer.endTable();
+        writer.writeSql(FOOTER);
+        long bytes = writer.getBytes();
+        writer.close();
+        assertEquals(bytes + 1, out.size());
+        return out.toByteArray();
+    }
+
+    @Test
+    void rowsAreReadBackWithTheirTypes() throws IOException, SQLException {
+        //enough rows for several blocks
+        int rowCount = 5000;
+        BinaryDump.Reader reader = new BinaryDump.Reader(new ByteArrayInputStream(dump(rowCount)));
+
+        assertEquals(BinaryDump.SQL, reader.next());
+        assertEquals(HEADER, reader.getSql());
+        assertEquals(BinaryDump.SQL, reader.next());
+        assertEquals(CREATE, reader.getSql());
+
+        assertEquals(BinaryDump.TABLE, reader.next());
+        assertEquals("orders", reader.getTable());
+        assertArrayEquals(NAMES, reader.getColumns());
+        assertArrayEquals(TYPES, reader.getTypes());
+        assertArrayEquals(new int[]{BinaryDump.KIND_LONG, BinaryDump.KIND_LONG, BinaryDump.KIND_TEXT,
+                BinaryDump.KIND_DOUBLE, BinaryDump.KIND_TEXT, BinaryDump.KIND_BYTES, BinaryDump.KIND_LONG,
+                BinaryDump.KIND_LONG, BinaryDump.KIND_LONG, BinaryDump.KIND_TEXT}, reader.getKinds());
+        Object[] values = new Object[NAMES.length];
+        for (int i = 0; i < rowCount; i++) {
+            assertTrue(reader.readRow(values));
+            Object[] expected = values(i);
+            for (int column = 0; column < values.length; column++) {
+                if (expected[column] instanceof byte[]) {
+                    assertArrayEquals((byte[]) expected[column], (byte[]) values[column]);
+                } else {
+                    assertEquals(expected[column], values[column], "row " + i + " column " + NAMES[column]);
+                }
+            }
+        }
+        assertFalse(reader.readRow(values));
+
+        assertEquals(BinaryDump.TABLE, reader.next());
+        assertEquals("empty", reader.getTable());
+        assertFalse(reader.readRow(values));
+        assertEquals(BinaryDump.SQL, reader.next());
+        assertEquals(FOOTER, reader.getSql());
+        assertEquals(BinaryDump.END, reader.next());
+    }
+
+    @Test
+    void sqlIsReadWithoutTheRows() throws IOException, SQLException {
+        assertEquals(HEADER + CREATE + FOOTER, BinaryDump.readSql(new ByteArrayInputStream(dump(3000))));
+    }
+
+    @Test
+    void binaryDumpIsDetectedAndTheStreamReset() throws IOException, SQLException {
+        InputStream binary = new BufferedInputStream(new ByteArrayInputStream(dump(1)));
+        assertTrue(BinaryDump.isBinaryDump(binary));
+        assertEquals(BinaryDump.SQL, new BinaryDump.Reader(binary).next());
+
+        byte[] sql = "-- MB4J\nSELECT 1;".getBytes(StandardCharsets.UTF_8);
+        InputStream text = new BufferedInputStream(new ByteArrayInputStream(sql));
+        assertFalse(BinaryDump.isBinaryDump(text));
+        assertEquals('-', text.read());
+        assertFalse(BinaryDump.isBinaryDump(new BufferedInputStream(new ByteArrayInputStream(new byte[3]))));
+        assertThrows(IOException.class, () -> new BinaryDump.Reader(new ByteArrayInputStream(sql)));
+    }
+
+    @Test
+    void truncatedDumpFails() throws IOException, SQLException {
+        byte[] dump = dump(3000);
+        for (int length : new int[]{dump.length - 1, dump.length / 2, 20}) {
+            byte[] truncated = Arrays.copyOf(dump, length);
+            assertThrows(IOException.class, () -> BinaryDump.readSql(new ByteArrayInputStream(truncated)));
+        }
+    }
+
+    @Test
+    void kindsFollowTheColumnTypes() {
+        assertEquals(BinaryDump.KIND_LONG, BinaryDump.getKind(Types.BIGINT, "BIGINT", true));
+        assertEquals(BinaryDump.KIND_TEXT, BinaryDump.getKind(Types.BIGINT, "BIGINT UNSIGNED", false));
+        assertEquals(BinaryDump.KIND_LONG, BinaryDump.getKind(Types.DATE, "YEAR", true));
+        assertEquals(BinaryDump.KIND_BYTES, BinaryDump.getKind(Types.VARBINARY, "VARBINARY", true));
+        assertEquals(BinaryDump.KIND_DOUBLE, BinaryDump.getKind(Types.FLOAT, "FLOAT", true));
+        assertEquals(BinaryDump.KIND_TEXT, BinaryDump.getKind(Types.DECIMAL, "DECIMAL", true));
+        assertEquals(BinaryDump.KIND_TEXT, BinaryDump.getKind(Types.TIMESTAMP, "DATETIME", true));
+    }
+}
@@ -0,0 +1,116 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DumpCodecTest {
+
+    private static final String[] WORDS = {"alpha", "beta", "gamma", "delta", "O'Brien", "line\\n", "42", "NULL"};
+
+    private static DumpCodec select(byte[] sample) {
+        return DumpCodec.select(sample, Math.min(sample.length, DumpCodec.SAMPLE_BYTES));
+    }
+
+    private static byte[] rows(boolean repeated) {
+        Random random = new Random(1);
+        StringBuilder sql = new StringBuilder("INSERT INTO `orders` VALUES \n");
+        for (int i = 0; sql.length() < DumpCodec.SAMPLE_BYTES; i++) {
+            if (repeated) {
+                sql.append("(1, 'alpha', 'pending', NULL, '2020-01-01 00:00:00'),\n");
+            } else {
+                sql.append("(").append(i).append(", '").append(WORDS[random.nextInt(WORDS.length)]).append(" ")
+                        .append(random.nextLong()).append("'),\n");
+            }
+        }
+        return sql.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param entries the names and contents of the entries, the manifest first if there is one
+     * @return the dump of the zip
+     */
+    private static String read(String... entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (int i = 0; i < entries.length; i += 2) {
+                zip.putNextEntry(new ZipEntry(entries[i]));
+                zip.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = DumpCodec.open(zip, zip.getNextEntry())) {
+            byte[] buffer = new byte[7];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void codecFollowsTheCompressibilityOfTheSample() {
+        byte[] random = new byte[DumpCodec.SAMPLE_BYTES];
+        new Random(1).nextBytes(random);
+        assertEquals(DumpCodec.STORE, select(random));
+        assertEquals(DumpCodec.STRONG, select(rows(true)));
+        assertEquals(DumpCodec.FAST, select(rows(false)));
+        assertEquals(DumpCodec.FAST, DumpCodec.select(new byte[0], 0));
+    }
+
+    @Test
+    void onlyTheGivenLengthOfTheSampleIsUsed() {
+        //repeated rows followed by random bytes, which are just compressible enough as a whole
+        byte[] sample = new byte[DumpCodec.SAMPLE_BYTES];
+        new Random(1).nextBytes(sample);
+        System.arraycopy(rows(true), 0, sample, 0, 4096);
+        assertEquals(DumpCodec.STRONG, DumpCodec.select(sample, 4096));
+        assertEquals(DumpCodec.FAST, DumpCodec.select(sample, sample.length));
+    }
+
+    @Test
+    void entriesAreReadInTheOrderOfTheManifest() throws IOException {
+        String manifest = DumpCodec.formatEntry("0000-header.sql", DumpCodec.NO_TABLE, DumpCodec.FAST)
+                + DumpCodec.formatEntry("0001-orders.sql", "orders", DumpCodec.STRONG)
+                + DumpCodec.formatEntry("0002-empty.sql", "empty", DumpCodec.FAST)
+                + DumpCodec.formatEntry("0003-footer.sql", DumpCodec.NO_TABLE, DumpCodec.STORE);
+        assertEquals("0001-orders.sql\torders\tSTRONG\n", manifest.split("(?<=\n)")[1]);
+        assertEquals("-- header\nINSERT INTO `orders` VALUES (1);\n-- footer\n",
+                read(DumpCodec.MANIFEST_ENTRY, manifest, "0000-header.sql", "-- header\n",
+                        "0001-orders.sql", "INSERT INTO `orders` VALUES (1);\n", "0002-empty.sql", "",
+                        "0003-footer.sql", "-- footer\n"));
+    }
+
+    @Test
+    void zipWithoutManifestIsItsFirstEntry() throws IOException {
+        assertEquals("SELECT 1;\n", read("dump.sql", "SELECT 1;\n", "other.sql", "SELECT 2;\n"));
+    }
+
+    @Test
+    void entriesThatDontMatchTheManifestFail() {
+        String manifest = DumpCodec.formatEntry("0000-header.sql", DumpCodec.NO_TABLE, DumpCodec.FAST)
+                + DumpCodec.formatEntry("0001-orders.sql", "orders", DumpCodec.FAST);
+        assertThrows(IOException.class, () -> read(DumpCodec.MANIFEST_ENTRY, manifest,
+                "0000-header.sql", "-- header\n"));
+        assertThrows(IOException.class, () -> read(DumpCodec.MANIFEST_ENTRY, manifest,
+                "0001-orders.sql", "(1)", "0000-header.sql", "-- header\n"));
+        assertThrows(IOException.class, () -> read(DumpCodec.MANIFEST_ENTRY, "0000-header.sql\t-\tLZMA\n",
+                "0000-header.sql", "-- header\n"));
+        assertThrows(IOException.class, () -> read(DumpCodec.MANIFEST_ENTRY, "0000-header.sql\n",
+                "0000-header.sql", "-- header\n"));
+    }
+}
@@ -0,0 +1,122 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DumpFileOutputStreamTest {
+
+    private File dir;
+
+    @BeforeEach
+    void createDir() throws IOException {
+        dir = Files.createTempDirectory("dump-file-test").toFile();
+    }
+
+    @AfterEach
+    void deleteDir() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static DumpFileOutputStream open(File file, long expectedBytes) throws IOException {
+        return new DumpFileOutputStream(file, expectedBytes, DumpFileOutputStream.FsyncPolicy.CLOSE, 0);
+    }
+
+    @Test
+    void fileIsPublishedOnceItsComplete() throws Exception {
+        File file = new File(dir, "dump.sql");
+        File partial = new File(dir, "dump.sql" + DumpFileOutputStream.PARTIAL_SUFFIX);
+        byte[] content = new byte[DumpFileOutputStream.BUFFER_BYTES * DumpFileOutputStream.GATHER_BUFFERS * 2 + 123];
+        new Random(1).nextBytes(content);
+
+        DumpFileOutputStream out = open(file, 10L * content.length);
+        //the expected size isn't written up front
+        assertEquals(0, partial.length());
+        out.write(content, 0, 1000);
+        out.write(content[1000]);
+        out.write(content, 1001, content.length - 1001);
+        assertEquals(content.length, out.getBytes());
+        assertFalse(file.exists());
+        out.close();
+
+        assertFalse(partial.exists());
+        assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+        assertThrows(IOException.class, () -> out.write(1));
+    }
+
+    @Test
+    void charactersAreWrittenInUtf8() throws Exception {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            sql.append("('gr\u00fc\u00dfe', '\u20ac', '\ud83d\ude00'),\n");
+        }
+        File file = new File(dir, "dump.sql");
+        try (DumpFileOutputStream out = open(file, MysqlBaseService.utf8Length(sql))) {
+            out.write("INSERT INTO `t` VALUES\n".getBytes(StandardCharsets.UTF_8));
+            out.write(sql);
+        }
+        assertEquals("INSERT INTO `t` VALUES\n" + sql, new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void fileIsAppendedByTransfer() throws Exception {
+        File from = new File(dir, "section.sql");
+        byte[] section = new byte[300000];
+        new Random(2).nextBytes(section);
+        Files.write(from.toPath(), section);
+
+        File file = new File(dir, "dump.sql");
+        try (DumpFileOutputStream out = open(file, 0)) {
+            out.write('a');
+            DumpFileOutputStream.copy(from, out);
+            out.write('b');
+        }
+        byte[] written = Files.readAllBytes(file.toPath());
+        assertEquals(section.length + 2, written.length);
+        assertEquals('a', written[0]);
+        assertEquals(section[section.length - 1], written[section.length]);
+        assertEquals('b', written[section.length + 1]);
+    }
+
+    @Test
+    void abortedFileIsNeverPublished() throws Exception {
+        File file = new File(dir, "dump.sql");
+        DumpFileOutputStream out = open(file, 0);
+        out.write(new byte[DumpFileOutputStream.BUFFER_BYTES * DumpFileOutputStream.GATHER_BUFFERS + 1]);
+        out.abort();
+        out.close();
+
+        assertFalse(file.exists());
+        assertEquals(0, dir.list().length);
+    }
+
+    @Test
+    void expectedSizeIsCheckedAgainstTheFreeSpace() throws Exception {
+        File file = new File(dir, "dump.sql");
+        try (DumpFileOutputStream out = open(file, Long.MAX_VALUE / 2)) {
+            assertTrue(out.checkFreeSpace(0));
+            assertTrue(out.checkFreeSpace(1000));
+            assertFalse(out.checkFreeSpace(Long.MAX_VALUE / 2));
+            out.write(1);
+        }
+        assertEquals(1, file.length());
+    }
+}
@@ -0,0 +1,170 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.mail.BodyPart;
+import javax.mail.Multipart;
+import javax.mail.Part;
+import javax.mail.internet.MimeMessage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmailServiceTest {
+
+    private File dir;
+
+    @BeforeEach
+    void createDir() throws IOException {
+        dir = Files.createTempDirectory("email-test").toFile();
+    }
+
+    @AfterEach
+    void deleteDir() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private File file(String name, int bytes) throws IOException {
+        byte[] content = new byte[bytes];
+        new Random(bytes).nextBytes(content);
+        File file = new File(dir, name);
+        Files.write(file.toPath(), content);
+        return file;
+    }
+
+    /**
+     * @return the attachments of the messages by their name
+     */
+    private static Map<String, byte[]> attachments(Iterable<MimeMessage> messages) throws Exception {
+        Map<String, byte[]> attachments = new TreeMap<>();
+        for (MimeMessage message : messages) {
+            Multipart multipart = (Multipart) message.getContent();
+            for (int i = 0; i < multipart.getCount(); i++) {
+                BodyPart part = multipart.getBodyPart(i);
+                if (Part.ATTACHMENT.equalsIgnoreCase(part.getDisposition()) || part.getFileName() != null) {
+                    ByteArrayOutputStream content = new ByteArrayOutputStream();
+                    try (InputStream in = part.getInputStream()) {
+                        byte[] buffer = new byte[8192];
+                        int read;
+                        while ((read = in.read(buffer)) >= 0) {
+                            content.write(buffer, 0, read);
+                        }
+                    }
+                    attachments.put(part.getFileName(), content.toByteArray());
+                }
+            }
+        }
+        return attachments;
+    }
+
+    @Test
+    void everyAttachmentHasAPartOfItsOwn() throws Exception {
+        File dump = file("dump.sql", 3000);
+        File checksums = file("dump.checksums", 500);
+        try (TestSmtpServer server = new TestSmtpServer(1024 * 1024, 0)) {
+            assertTrue(server.emailService().setAttachments(new File[]{dump, checksums}).sendMail());
+
+            assertEquals(1, server.getMessages().size());
+            Map<String, byte[]> attachments = attachments(server.getMessages());
+            assertEquals(2, attachments.size());
+            assertArrayEquals(Files.readAllBytes(dump.toPath()), attachments.get("dump.sql"));
+            assertArrayEquals(Files.readAllBytes(checksums.toPath()), attachments.get("dump.checksums"));
+        }
+    }
+
+    @Test
+    void attachmentLargerThanTheServerSizeIsSentInVolumes() throws Exception {
+        File dump = file("dump.zip", 20000);
+        //the server takes 5700 attachment bytes in a message
+        try (TestSmtpServer server = new TestSmtpServer(16 * 1024 + 78 * 100, 0)) {
+            assertTrue(server.emailService().setAttachments(new File[]{dump}).sendMail());
+
+            Map<String, byte[]> volumes = attachments(server.getMessages());
+            assertEquals("[dump.zip.001, dump.zip.002, dump.zip.003, dump.zip.004]", volumes.keySet().toString());
+            ByteArrayOutputStream joined = new ByteArrayOutputStream();
+            for (byte[] volume : volumes.values()) {
+                assertTrue(volume.length <= 5700, volume.length + " bytes");
+                joined.write(volume);
+            }
+            assertArrayEquals(Files.readAllBytes(dump.toPath()), joined.toByteArray());
+        }
+    }
+
+    @Test
+    void streamIsSentAsItsWritten() throws Exception {
+        byte[] content = new byte[12000];
+        new Random(1).nextBytes(content);
+        try (TestSmtpServer server = new TestSmtpServer(1024 * 1024, 0)) {
+            EmailService.VolumeOutputStream volumes = server.emailService()
+                    .setMaxMessageBytes(16 * 1024 + 78 * 100)
+                    .setQueuedVolumes(1)
+                    .openVolumes("dump.zip");
+            for (int i = 0; i < content.length; i += 1000) {
+                volumes.write(content, i, 1000);
+            }
+            //the full volumes are sent before the stream is closed
+            long deadline = System.currentTimeMillis() + 10000;
+            while (server.getMessages().size() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, server.getMessages().size());
+            volumes.close();
+
+            assertEquals(3, volumes.getVolumes());
+            ByteArrayOutputStream joined = new ByteArrayOutputStream();
+            for (byte[] volume : attachments(server.getMessages()).values()) {
+                joined.write(volume);
+            }
+            assertArrayEquals(content, joined.toByteArray());
+        }
+    }
+
+    @Test
+    void rejectedMessageIsRetried() throws Exception {
+        File dump = file("dump.sql", 1000);
+        try (TestSmtpServer server = new TestSmtpServer(1024 * 1024, 2)) {
+            assertTrue(server.emailService()
+                    .setAttachments(new File[]{dump})
+                    .setRetries(2)
+                    .setRetryMillis(10)
+                    .sendMail());
+            assertEquals(3, server.getAttempts());
+            assertEquals(1, server.getMessages().size());
+        }
+    }
+
+    @Test
+    void volumeThatCantBeSentFailsTheClose() throws Exception {
+        try (TestSmtpServer server = new TestSmtpServer(1024 * 1024, Integer.MAX_VALUE)) {
+            EmailService.VolumeOutputStream volumes = server.emailService()
+                    .setRetries(1)
+                    .setRetryMillis(10)
+                    .openVolumes("dump.zip");
+            volumes.write(new byte[100]);
+            assertThrows(IOException.class, volumes::close);
+            assertEquals(2, server.getAttempts());
+
+            File dump = file("dump.sql", 100);
+            assertFalse(server.emailService().setAttachments(new File[]{dump}).setRetries(0).sendMail());
+        }
+    }
+}
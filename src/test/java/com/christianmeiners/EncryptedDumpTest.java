@@ -0,0 +1,163 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EncryptedDumpTest {
+
+    //the magic, the frame size and the file id
+    private static final int HEADER_BYTES = 8 + 4 + 8;
+    private static final int FRAME_FILE_BYTES = EncryptedDump.FRAME_BYTES + 16;
+
+    private final String key = EncryptedDump.generateKey();
+    private File file;
+
+    @BeforeEach
+    void createFile() throws IOException {
+        file = File.createTempFile("encrypted-dump-test", EncryptedDump.SUFFIX);
+    }
+
+    @AfterEach
+    void deleteFile() {
+        file.delete();
+    }
+
+    private static byte[] dump(int length) {
+        byte[] dump = new byte[length];
+        new Random(length).nextBytes(dump);
+        return dump;
+    }
+
+    private void encrypt(byte[] dump) throws IOException {
+        try (EncryptedDump.FrameWriter out = new EncryptedDump.FrameWriter(new FileOutputStream(file),
+                EncryptedDump.parseKey(key), Executors.newFixedThreadPool(2), 2, new BackupMetrics())) {
+            //written in pieces that don't line up with the frames
+            for (int offset = 0; offset < dump.length; offset += 100000) {
+                out.write(dump, offset, Math.min(100000, dump.length - offset));
+            }
+        }
+    }
+
+    private byte[] decrypt(String key) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = EncryptedDump.open(file, key)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private void truncate(long length) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.setLength(length);
+        }
+    }
+
+    @Test
+    void dumpIsRestoredOverSeveralFrames() throws IOException {
+        for (int length : new int[]{0, 1000, EncryptedDump.FRAME_BYTES * 2, EncryptedDump.FRAME_BYTES * 2 + 12345}) {
+            byte[] dump = dump(length);
+            encrypt(dump);
+            assertTrue(EncryptedDump.isEncrypted(file));
+            assertArrayEquals(dump, decrypt(key));
+            try (EncryptedDump.FrameReader in = EncryptedDump.open(file, key)) {
+                assertEquals(length, in.length());
+            }
+        }
+    }
+
+    @Test
+    void seekDecryptsOnlyTheFrameOfThePosition() throws IOException {
+        byte[] dump = dump(EncryptedDump.FRAME_BYTES * 2 + 500);
+        encrypt(dump);
+        //a corrupted first frame doesn't matter
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(HEADER_BYTES + 10);
+            out.write(~out.read());
+        }
+        try (EncryptedDump.FrameReader in = EncryptedDump.open(file, key)) {
+            long position = EncryptedDump.FRAME_BYTES * 2L - 3;
+            in.seek(position);
+            byte[] read = new byte[10];
+            int offset = 0;
+            while (offset < read.length) {
+                offset += in.read(read, offset, read.length - offset);
+            }
+            assertArrayEquals(Arrays.copyOfRange(dump, (int) position, (int) position + 10), read);
+        }
+    }
+
+    @Test
+    void wrongKeyFails() throws IOException {
+        encrypt(dump(1000));
+        assertThrows(IOException.class, () -> decrypt(EncryptedDump.generateKey()));
+    }
+
+    @Test
+    void tamperedFrameFails() throws IOException {
+        encrypt(dump(EncryptedDump.FRAME_BYTES + 1000));
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(HEADER_BYTES + FRAME_FILE_BYTES + 100);
+            out.write(~out.read());
+        }
+        IOException e = assertThrows(IOException.class, () -> decrypt(key));
+        assertTrue(e.getMessage().contains("frame 1"), e.getMessage());
+    }
+
+    @Test
+    void truncatedDumpFails() throws IOException {
+        encrypt(dump(EncryptedDump.FRAME_BYTES * 2 + 1000));
+
+        //without the last frame, the one before it isn't the last one
+        truncate(HEADER_BYTES + FRAME_FILE_BYTES * 2L);
+        assertThrows(IOException.class, () -> decrypt(key));
+
+        //a cut inside a frame
+        truncate(HEADER_BYTES + FRAME_FILE_BYTES + 5);
+        assertThrows(IOException.class, () -> decrypt(key));
+
+        //a cut inside the header
+        truncate(HEADER_BYTES - 1);
+        assertTrue(EncryptedDump.isEncrypted(file));
+        assertThrows(IOException.class, () -> decrypt(key));
+    }
+
+    @Test
+    void reorderedFramesFail() throws IOException {
+        encrypt(dump(EncryptedDump.FRAME_BYTES * 2 + 1000));
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        byte[] reordered = bytes.clone();
+        System.arraycopy(bytes, HEADER_BYTES, reordered, HEADER_BYTES + FRAME_FILE_BYTES, FRAME_FILE_BYTES);
+        System.arraycopy(bytes, HEADER_BYTES + FRAME_FILE_BYTES, reordered, HEADER_BYTES, FRAME_FILE_BYTES);
+        Files.write(file.toPath(), reordered);
+
+        IOException e = assertThrows(IOException.class, () -> decrypt(key));
+        assertTrue(e.getMessage().contains("frame 0"), e.getMessage());
+    }
+
+    @Test
+    void invalidKeysAreRefused() {
+        assertThrows(IllegalArgumentException.class, () -> EncryptedDump.parseKey("c2hvcnQ="));
+        assertEquals(32, EncryptedDump.parseKey(EncryptedDump.generateKey()).getEncoded().length);
+    }
+}
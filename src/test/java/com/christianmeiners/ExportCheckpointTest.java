@@ -0,0 +1,92 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExportCheckpointTest {
+
+    private File dir;
+
+    @BeforeEach
+    void createDir() throws IOException {
+        dir = Files.createTempDirectory("checkpoint-test").toFile();
+    }
+
+    @AfterEach
+    void deleteDir() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static SpillableBuffer sql(String sql) {
+        return SpillableBuffer.inMemory().append(sql);
+    }
+
+    @Test
+    void resumeContinuesAfterTheLastCommittedChunk() throws IOException {
+        ExportCheckpoint checkpoint = ExportCheckpoint.create(dir, "shop", "mysql-bin.000003:1234");
+        checkpoint.commit("customers", 0, "(100)", sql("customers 0\n"));
+        checkpoint.commit("customers", 1, null, sql("customers 1\n"));
+        checkpoint.commit("orders", 0, "('a', 7)", sql("orders 0\n"));
+
+        ExportCheckpoint resumed = ExportCheckpoint.resume(dir, "shop");
+        assertEquals("mysql-bin.000003:1234", resumed.getSnapshot());
+        assertTrue(resumed.isCompleted("customers"));
+        assertEquals(2, resumed.getChunks("customers"));
+        assertNull(resumed.getLastKey("customers"));
+        assertFalse(resumed.isCompleted("orders"));
+        assertEquals(1, resumed.getChunks("orders"));
+        assertEquals("('a', 7)", resumed.getLastKey("orders"));
+        assertEquals(0, resumed.getChunks("items"));
+
+        resumed.commit("orders", 1, null, sql("orders 1\n"));
+        SpillableBuffer orders = SpillableBuffer.inMemory();
+        resumed.appendTo("orders", orders);
+        assertEquals("orders 0\norders 1\n", orders.toString());
+    }
+
+    @Test
+    void tornLineIsIgnored() throws IOException {
+        ExportCheckpoint checkpoint = ExportCheckpoint.create(dir, "shop", ExportCheckpoint.UNKNOWN_SNAPSHOT);
+        checkpoint.commit("orders", 0, "(100)", sql("orders 0\n"));
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "shop.journal"), true)) {
+            out.write("chunk\torders\t1\t(2".getBytes(StandardCharsets.UTF_8));
+        }
+
+        ExportCheckpoint resumed = ExportCheckpoint.resume(dir, "shop");
+        assertEquals(1, resumed.getChunks("orders"));
+        assertEquals("(100)", resumed.getLastKey("orders"));
+    }
+
+    @Test
+    void journalOfAnotherDatabaseIsntResumed() throws IOException {
+        assertNull(ExportCheckpoint.resume(dir, "shop"));
+        ExportCheckpoint.create(dir, "shop", ExportCheckpoint.UNKNOWN_SNAPSHOT);
+        Files.move(new File(dir, "shop.journal").toPath(), new File(dir, "other.journal").toPath());
+        assertNull(ExportCheckpoint.resume(dir, "other"));
+    }
+
+    @Test
+    void deleteRemovesTheJournalAndTheParts() throws IOException {
+        ExportCheckpoint checkpoint = ExportCheckpoint.create(dir, "shop", ExportCheckpoint.UNKNOWN_SNAPSHOT);
+        checkpoint.commit("orders", 0, null, sql("orders 0\n"));
+        checkpoint.delete();
+        assertEquals(0, dir.list().length);
+    }
+}
@@ -0,0 +1,108 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImportJournalTest {
+
+    private File dir;
+    private File file;
+
+    @BeforeEach
+    void createDir() throws IOException {
+        dir = Files.createTempDirectory("import-journal-test").toFile();
+        file = new File(dir, "restore.journal");
+    }
+
+    @AfterEach
+    void deleteDir() {
+        for (File child : dir.listFiles()) {
+            child.delete();
+        }
+        dir.delete();
+    }
+
+    @Test
+    void resumeKnowsTheAppliedAndThePendingChunks() throws IOException {
+        ImportJournal journal = ImportJournal.openDump(file, "1a2b\t100", true);
+        assertFalse(journal.isResumed());
+        journal.markCleared();
+        journal.markPending(Arrays.asList(0, 1, 2));
+        journal.markApplied(Arrays.asList(0, 1, 2));
+        journal.markPending(Arrays.asList(3, 4));
+        assertTrue(journal.isPending(3));
+        assertFalse(journal.isPending(2));
+
+        ImportJournal resumed = ImportJournal.openDump(file, "1a2b\t100", true);
+        assertTrue(resumed.isResumed());
+        assertTrue(resumed.isCleared());
+        assertTrue(resumed.isApplied(2));
+        assertFalse(resumed.isApplied(3));
+        assertTrue(resumed.isPending(3));
+        assertTrue(resumed.isPending(4));
+        assertFalse(resumed.isPending(5));
+
+        resumed.markApplied(Collections.singletonList(3));
+        assertFalse(resumed.isPending(3));
+    }
+
+    @Test
+    void tornLineIsIgnored() throws IOException {
+        ImportJournal journal = ImportJournal.openDump(file, "1a2b\t100", false);
+        journal.markApplied(Collections.singletonList(0));
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write("section\t1".getBytes(StandardCharsets.UTF_8));
+        }
+
+        ImportJournal resumed = ImportJournal.openDump(file, "1a2b\t100", true);
+        assertTrue(resumed.isApplied(0));
+        assertFalse(resumed.isApplied(1));
+    }
+
+    @Test
+    void journalOfAnotherDumpIsRefused() throws IOException {
+        ImportJournal.openDump(file, "1a2b\t100", false).markApplied(Collections.singletonList(0));
+        assertNull(ImportJournal.openDump(file, "3c4d\t100", true));
+
+        //without resume the journal starts over
+        ImportJournal journal = ImportJournal.openDump(file, "3c4d\t100", false);
+        assertFalse(journal.isResumed());
+        assertFalse(journal.isApplied(0));
+
+        journal.delete();
+        assertFalse(file.exists());
+    }
+
+    @Test
+    void dumpIdChangesWithTheContent() throws IOException {
+        assertEquals(ImportJournal.getDumpId("INSERT 1"), ImportJournal.getDumpId("INSERT 1"));
+        assertNotEquals(ImportJournal.getDumpId("INSERT 1"), ImportJournal.getDumpId("INSERT 2"));
+
+        File dump = new File(dir, "dump.sql");
+        byte[] content = new byte[300 * 1024];
+        Arrays.fill(content, (byte) 'x');
+        Files.write(dump.toPath(), content);
+        String id = ImportJournal.getDumpId(dump);
+        assertTrue(id.endsWith("\t" + content.length), id);
+
+        //the middle of the file is sampled as well
+        content[content.length / 2] = 'y';
+        Files.write(dump.toPath(), content);
+        assertNotEquals(id, ImportJournal.getDumpId(dump));
+    }
+}
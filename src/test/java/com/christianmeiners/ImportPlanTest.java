@@ -0,0 +1,62 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ImportPlanTest {
+
+    private static final String TABLE = "-- start  table dump : orders\n" +
+            "CREATE TABLE `orders` (`id` int);\nINSERT INTO `orders` VALUES (1, 'caf\u00e9');\n-- end\n";
+    private static final String VIEW = "-- start view\n" +
+            "CREATE VIEW `shop`.`totals` AS SELECT `shop`.`orders`.`id` FROM `shop`.`orders`;\n-- end\n";
+    private static final String ROUTINE = "-- start routine\n" +
+            "CREATE PROCEDURE `shop_2`.`cleanup`() DELETE FROM `shop_2`.`orders`;\n-- end\n";
+
+    private static final String DUMP = "-- header\n" + TABLE + VIEW + ROUTINE;
+
+    private static String chunk(String section) {
+        return section.substring(0, section.indexOf(MysqlBaseService.SQL_END_PATTERN));
+    }
+
+    @Test
+    void qualifiedNamesAreRewrittenToTheImportedDatabase() {
+        ImportPlan plan = ImportPlan.parse(DUMP, "shop");
+        assertEquals(3, plan.size());
+        assertEquals(1, plan.getTableDumps());
+        assertEquals("shop", plan.getSourceDatabase());
+
+        assertEquals(chunk(TABLE), plan.getChunk(0, "copy"));
+        assertEquals("-- start view\n" +
+                        "CREATE VIEW `copy`.`totals` AS SELECT `copy`.`orders`.`id` FROM `copy`.`orders`;\n",
+                plan.getChunk(1, "copy"));
+        //only the exact name of the source database is rewritten
+        assertEquals(chunk(ROUTINE), plan.getChunk(2, "copy"));
+        assertNull(plan.getChunk(3, "copy"));
+    }
+
+    @Test
+    void chunksAreKeptForTheSourceDatabaseOrNone() {
+        ImportPlan plan = ImportPlan.parse(DUMP, "shop");
+        assertEquals(chunk(VIEW), plan.getChunk(1, "shop"));
+        assertEquals(chunk(VIEW), plan.getChunk(1, null));
+        assertEquals(chunk(VIEW), plan.getChunk(1, ""));
+    }
+
+    @Test
+    void namesAreNotRewrittenWithoutASourceDatabase() {
+        for (String source : new String[]{null, ""}) {
+            ImportPlan plan = ImportPlan.parse(DUMP, source);
+            assertNull(plan.getSourceDatabase());
+            assertEquals(chunk(VIEW), plan.getChunk(1, "copy"));
+        }
+    }
+
+    @Test
+    void rawBytesAreTheUtf8LengthOfTheDump() {
+        ImportPlan plan = ImportPlan.parse(DUMP, null);
+        assertEquals(DUMP.length() + 1, plan.getRawBytes());
+        assertEquals(ImportJournal.getDumpId(DUMP), plan.getDumpId());
+    }
+}
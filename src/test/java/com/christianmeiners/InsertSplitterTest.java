@@ -0,0 +1,131 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InsertSplitterTest {
+
+    private static String chunk(String table, String... rows) {
+        return InsertSplitter.INSERT_PATTERN + " : " + table + "\n--\n" +
+                "INSERT INTO `" + table + "`(`id`, `name`) VALUES \n" + String.join(",\n", rows) + ";\n";
+    }
+
+    private static String head(String table) {
+        return InsertSplitter.INSERT_PATTERN + " : " + table + "\n--\n" +
+                "INSERT INTO `" + table + "`(`id`, `name`) VALUES \n";
+    }
+
+    @Test
+    void smallChunkIsPassedThrough() {
+        String chunk = chunk("orders", "(1, 'a')", "(2, 'b')");
+        assertEquals(1, InsertSplitter.split(chunk, 1024).size());
+        assertEquals(chunk, InsertSplitter.split(chunk, 1024).get(0));
+    }
+
+    @Test
+    void otherChunksAreNotSplit() {
+        String chunk = "-- start\nCREATE TABLE `t` (`id` int) VALUES (1), (2), (3);\n";
+        List<String> statements = InsertSplitter.split(chunk, 10);
+        assertEquals(1, statements.size());
+        assertEquals(chunk, statements.get(0));
+    }
+
+    @Test
+    void rowsAreSplitAtTheLimit() {
+        List<String> rows = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            rows.add("(" + i + ", 'name " + i + "')");
+        }
+        String chunk = chunk("orders", rows.toArray(new String[0]));
+        long limit = head("orders").length() + 100;
+        List<String> statements = InsertSplitter.split(chunk, limit);
+
+        assertTrue(statements.size() > 1);
+        List<String> found = new ArrayList<>();
+        for (String statement : statements) {
+            assertTrue(statement.getBytes(StandardCharsets.UTF_8).length <= limit + 2, statement);
+            assertTrue(statement.startsWith(head("orders")), statement);
+            assertTrue(statement.trim().endsWith(";"), statement);
+            String body = statement.substring(head("orders").length(), statement.trim().length() - 1);
+            for (String row : body.split(",\n")) {
+                found.add(row);
+            }
+        }
+        assertEquals(rows, found);
+    }
+
+    @Test
+    void parenthesesAndSeparatorsInStringsAreNotRows() {
+        String[] rows = {"(1, 'a), (b')", "(2, 'it\\'s (x);')", "(3, \"q\\\")\")"};
+        String chunk = chunk("orders", rows);
+        List<String> statements = InsertSplitter.split(chunk, head("orders").length() + 20);
+
+        assertEquals(3, statements.size());
+        for (int i = 0; i < rows.length; i++) {
+            assertTrue(statements.get(i).contains(rows[i]), statements.get(i));
+        }
+    }
+
+    @Test
+    void valuesInTheTableNameIsNotTheKeyword() {
+        //the table name ends with the keyword in the comment line, where it's not quoted
+        String table = "order_VALUES";
+        List<String> statements = InsertSplitter.split(chunk(table, "(1, 'a')", "(2, 'b')", "(3, 'c')"),
+                head(table).length() + 12);
+
+        assertEquals(3, statements.size());
+        for (String statement : statements) {
+            assertTrue(statement.startsWith(head(table)), statement);
+        }
+    }
+
+    @Test
+    void rowLargerThanTheLimitIsAStatementOfItsOwn() {
+        StringBuilder large = new StringBuilder("(2, '");
+        for (int i = 0; i < 200; i++) {
+            large.append('x');
+        }
+        large.append("')");
+        List<String> statements = InsertSplitter.split(chunk("orders", "(1, 'a')", large.toString(), "(3, 'c')"),
+                head("orders").length() + 50);
+
+        assertEquals(3, statements.size());
+        assertEquals(head("orders") + large + ";\n", statements.get(1));
+    }
+
+    @Test
+    void limitIsCountedInUtf8Bytes() {
+        //every row has 10 characters, but 13 bytes in UTF-8, so two of them
+        //fit into the limit in characters, but not in bytes
+        String[] rows = {"(1, '\u00e4\u00e4\u00e4')", "(2, '\u00e4\u00e4\u00e4')", "(3, '\u00e4\u00e4\u00e4')"};
+        List<String> statements = InsertSplitter.split(chunk("orders", rows),
+                head("orders").length() + 25);
+
+        assertEquals(3, statements.size());
+    }
+
+    @Test
+    void statementsArePolledWhileAppending() {
+        InsertSplitter splitter = new InsertSplitter(head("orders").length() + 12);
+        String chunk = chunk("orders", "(1, 'a')", "(2, 'b')", "(3, 'c')");
+        List<String> statements = new ArrayList<>();
+        for (int i = 0; i < chunk.length(); i++) {
+            splitter.append(chunk.charAt(i));
+            String statement = splitter.poll();
+            if (statement != null) {
+                statements.add(statement);
+            }
+        }
+        assertEquals(2, statements.size());
+
+        splitter.finish(0);
+        statements.add(splitter.poll());
+        assertEquals(head("orders") + "(3, 'c');\n", statements.get(2));
+    }
+}
@@ -0,0 +1,57 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MemoryGovernorTest {
+
+    private static final long BUDGET = 8 * 1024 * 1024;
+
+    @Test
+    void budgetIsSplitBetweenTheDumpAndTheWorkers() {
+        MemoryGovernor governor = new MemoryGovernor(BUDGET, 2);
+        //half for the dump, two bytes per character
+        assertEquals(BUDGET / 4, governor.getDumpChars());
+        //three quarters of a worker's share of the other half
+        assertEquals(BUDGET / 2 / 2 * 3 / 4 / 2, governor.getSectionChars());
+        assertEquals(new MemoryGovernor(BUDGET, 1).getSectionChars(), new MemoryGovernor(BUDGET, 0).getSectionChars());
+    }
+
+    @Test
+    void onlySmallTablesAreBufferedWithoutCursorFetch() {
+        MemoryGovernor governor = new MemoryGovernor(BUDGET, 2);
+        long fetchBytes = BUDGET / 2 / 2 / 4;
+        assertEquals(0, governor.getFetchSize(fetchBytes, false));
+        assertEquals(Integer.MIN_VALUE, governor.getFetchSize(fetchBytes + 1, false));
+        assertEquals(Integer.MIN_VALUE, governor.getFetchSize(-1, false));
+    }
+
+    @Test
+    void cursorFetchSizeFollowsTheWidthOfTheRows() {
+        long fetchBytes = BUDGET / 2 / 2 / 4;
+        MemoryGovernor governor = new MemoryGovernor(BUDGET, 2);
+        assertEquals(100, governor.getFetchSize(-1, true));
+
+        governor.observe(100, 100 * 1000);
+        assertEquals((int) (fetchBytes / 2000.0), governor.getCursorFetchSize());
+
+        //a moving average of the observed rows
+        governor.observe(100, 100 * 2000);
+        assertEquals((int) (fetchBytes / (2 * (0.2 * 2000 + 0.8 * 1000))), governor.getCursorFetchSize());
+
+        governor.observe(0, 1000);
+        assertEquals((int) (fetchBytes / (2 * (0.2 * 2000 + 0.8 * 1000))), governor.getCursorFetchSize());
+    }
+
+    @Test
+    void cursorFetchSizeIsBounded() {
+        MemoryGovernor wide = new MemoryGovernor(BUDGET, 2);
+        wide.observe(1, 100 * 1024 * 1024);
+        assertEquals(10, wide.getCursorFetchSize());
+
+        MemoryGovernor narrow = new MemoryGovernor(BUDGET * 1024, 1);
+        narrow.observe(1000, 1000);
+        assertEquals(100000, narrow.getCursorFetchSize());
+    }
+}
@@ -0,0 +1,114 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MysqlBackupOrchestratorTest {
+
+    private TestDatabase first;
+    private TestDatabase second;
+    private File dir;
+
+    @BeforeEach
+    void createDatabases() throws SQLException, IOException {
+        first = TestDatabase.create();
+        second = TestDatabase.create();
+        for (TestDatabase database : new TestDatabase[]{first, second}) {
+            database.execute("CREATE TABLE `items` (`id` INT PRIMARY KEY, `name` VARCHAR(50))",
+                    "CREATE TABLE `tags` (`id` INT PRIMARY KEY, `item` INT)",
+                    "INSERT INTO `items` VALUES (1, 'from " + database.getName() + "')",
+                    "INSERT INTO `tags` VALUES (1, 1)");
+        }
+        dir = Files.createTempDirectory("orchestrator-test").toFile();
+    }
+
+    @AfterEach
+    void dropDatabases() throws SQLException, IOException {
+        for (TestDatabase database : new TestDatabase[]{first, second}) {
+            if (database != null) {
+                database.close();
+            }
+        }
+        if (dir != null) {
+            try (Stream<Path> paths = Files.walk(dir.toPath())) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private Properties properties() {
+        Properties properties = new Properties();
+        properties.setProperty(MysqlExportService.JDBC_CONNECTION_STRING, TestDatabase.SERVER_URL + "/" + TestDatabase.OPTIONS);
+        properties.setProperty(MysqlExportService.DB_USERNAME, TestDatabase.USERNAME);
+        properties.setProperty(MysqlExportService.DB_PASSWORD, TestDatabase.PASSWORD);
+        properties.setProperty(MysqlExportService.TEMP_DIR, dir.getAbsolutePath());
+        properties.setProperty(MysqlExportService.PRESERVE_GENERATED_FILE, "true");
+        properties.setProperty(MysqlExportService.ZIP_EXPORT_FILE, "false");
+        properties.setProperty(MysqlBackupOrchestrator.MAX_CONNECTIONS, "2");
+        return properties;
+    }
+
+    private static String read(MysqlExportService export) throws IOException {
+        return new String(Files.readAllBytes(export.getGeneratedFile().toPath()), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void everyDatabaseIsExportedIntoItsOwnFolder() throws Exception {
+        Properties properties = properties();
+        properties.setProperty(MysqlBackupOrchestrator.DATABASES, first.getName() + ", " + second.getName());
+        Map<String, MysqlExportService> exports = new MysqlBackupOrchestrator(properties).export();
+
+        assertEquals(Arrays.asList(first.getName(), second.getName()), Arrays.asList(exports.keySet().toArray()));
+        for (TestDatabase database : new TestDatabase[]{first, second}) {
+            MysqlExportService export = exports.get(database.getName());
+            assertEquals(new File(dir, database.getName()), export.getGeneratedFile().getParentFile());
+            String sql = read(export);
+            assertTrue(sql.contains("'from " + database.getName() + "'"));
+            assertTrue(sql.contains("INSERT INTO `tags`"));
+            assertEquals(2, export.getMetrics().getTablesDone());
+        }
+    }
+
+    @Test
+    void failedDatabaseDoesntStopTheOthers() throws Exception {
+        Properties properties = properties();
+        properties.setProperty(MysqlBackupOrchestrator.DATABASES, first.getName() + ",backup4j_missing," + second.getName());
+        MysqlBackupOrchestrator orchestrator = new MysqlBackupOrchestrator(properties);
+        Map<String, MysqlExportService> exports = orchestrator.export();
+
+        assertEquals(2, exports.size());
+        assertEquals(Collections.singleton("backup4j_missing"), orchestrator.getFailures().keySet());
+        assertTrue(orchestrator.getFailures().get("backup4j_missing") instanceof SQLException);
+    }
+
+    @Test
+    void schemaPatternSelectsTheDatabases() throws Exception {
+        Properties properties = properties();
+        properties.setProperty(MysqlBackupOrchestrator.SCHEMA_PATTERN, second.getName());
+        Map<String, MysqlExportService> exports = new MysqlBackupOrchestrator(properties).export();
+        assertEquals(Collections.singleton(second.getName()), exports.keySet());
+    }
+
+    @Test
+    void missingPropertiesExportNothing() throws Exception {
+        Properties properties = properties();
+        assertTrue(new MysqlBackupOrchestrator(properties).export().isEmpty());
+    }
+}
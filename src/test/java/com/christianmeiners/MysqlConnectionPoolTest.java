@@ -0,0 +1,176 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MysqlConnectionPoolTest {
+
+    private TestDatabase database;
+    private MysqlConnectionPool pool;
+
+    @BeforeEach
+    void createDatabase() throws SQLException {
+        database = TestDatabase.create();
+        database.execute("CREATE TABLE `items` (`id` INT PRIMARY KEY) ENGINE=InnoDB",
+                "INSERT INTO `items` VALUES (1), (2), (3)");
+        pool = new MysqlConnectionPool(database.getJdbcUrl(), TestDatabase.USERNAME, TestDatabase.PASSWORD, 2);
+    }
+
+    @AfterEach
+    void dropDatabase() throws SQLException {
+        if (pool != null) {
+            pool.close();
+        }
+        if (database != null) {
+            database.close();
+        }
+    }
+
+    private static String connectionId(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT CONNECTION_ID()")) {
+            rs.next();
+            return rs.getString(1);
+        }
+    }
+
+    @Test
+    void closedConnectionIsReused() throws SQLException {
+        String id;
+        try (Connection connection = pool.getConnection()) {
+            id = connectionId(connection);
+        }
+        try (Connection connection = pool.getConnection()) {
+            assertEquals(id, connectionId(connection));
+        }
+    }
+
+    @Test
+    void returnedConnectionCantBeUsed() throws SQLException {
+        Connection connection = pool.getConnection();
+        connection.close();
+        assertTrue(connection.isClosed());
+        assertThrows(SQLException.class, connection::createStatement);
+        //closing it again doesn't return it twice
+        connection.close();
+    }
+
+    @Test
+    void statementReturnsThePooledConnection() throws SQLException {
+        String id;
+        try (Connection connection = pool.getConnection()) {
+            id = connectionId(connection);
+            Statement stmt = connection.createStatement();
+            assertSame(connection, stmt.getConnection());
+            //the usual cleanup through the statement
+            stmt.getConnection().close();
+            stmt.close();
+        }
+        try (Connection first = pool.getConnection(); Connection second = pool.getConnection()) {
+            assertEquals(id, connectionId(first));
+            assertFalse(id.equals(connectionId(second)));
+        }
+    }
+
+    @Test
+    void getConnectionWaitsForAReturnedConnection() throws Exception {
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        CompletableFuture<Connection> third = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.getConnection();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(third.isDone());
+
+        String id = connectionId(first);
+        first.close();
+        try (Connection connection = third.get(10, TimeUnit.SECONDS)) {
+            assertEquals(id, connectionId(connection));
+        }
+        second.close();
+    }
+
+    @Test
+    void uncommittedWorkIsRolledBackOnReturn() throws SQLException {
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("DELETE FROM `items`");
+            }
+        }
+        try (Connection connection = pool.getConnection()) {
+            assertTrue(connection.getAutoCommit());
+        }
+        assertEquals(3, database.count("items"));
+    }
+
+    @Test
+    void closedPoolRefusesConnections() {
+        pool.close();
+        assertThrows(SQLException.class, pool::getConnection);
+    }
+
+    @Test
+    void sharedPoolsAreKeyedByUrlAndCredentials() {
+        try {
+            MysqlConnectionPool shared = MysqlConnectionPool.shared(database.getJdbcUrl(), "a", "b", "", 2);
+            assertSame(shared, MysqlConnectionPool.shared(database.getJdbcUrl(), "a", "b", "", 5));
+            assertNotSame(shared, MysqlConnectionPool.shared(database.getJdbcUrl(), "a", "c", "", 2));
+            assertNotSame(shared, MysqlConnectionPool.shared(database.getJdbcUrl() + "&x=1", "a", "b", "", 2));
+
+            MysqlConnectionPool.closeSharedPools();
+            assertNotSame(shared, MysqlConnectionPool.shared(database.getJdbcUrl(), "a", "b", "", 2));
+        } finally {
+            MysqlConnectionPool.closeSharedPools();
+        }
+    }
+
+    @Test
+    void exportUsesTheDataSource() throws Exception {
+        File dir = Files.createTempDirectory("pool-test").toFile();
+        try {
+            String id;
+            try (Connection connection = pool.getConnection()) {
+                id = connectionId(connection);
+            }
+            Properties properties = new Properties();
+            properties.setProperty(MysqlExportService.TEMP_DIR, dir.getAbsolutePath());
+            properties.setProperty(MysqlExportService.ZIP_EXPORT_FILE, "false");
+            MysqlExportService export = new MysqlExportService(properties).setDataSource(pool);
+            export.export();
+            assertTrue(export.getGeneratedSql().contains("INSERT INTO `items`"));
+
+            //the connection of the export has been returned
+            try (Connection first = pool.getConnection(); Connection second = pool.getConnection()) {
+                assertTrue(id.equals(connectionId(first)) || id.equals(connectionId(second)));
+            }
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+}
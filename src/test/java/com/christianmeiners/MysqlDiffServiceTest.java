@@ -0,0 +1,135 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MysqlDiffServiceTest {
+
+    private static final String ORDERS = "SELECT CONCAT(`id`, ':', `value`) FROM `orders` ORDER BY `id`";
+    private static final String CODES = "SELECT CONCAT(`code`, ':', `name`) FROM `codes` ORDER BY `code`";
+    private static final String NOTES = "SELECT `text` FROM `notes` ORDER BY `text`";
+
+    private TestDatabase source;
+    private TestDatabase target;
+    private File dir;
+
+    @BeforeEach
+    void createDatabases() throws SQLException, IOException {
+        source = TestDatabase.create();
+        target = TestDatabase.create();
+        for (TestDatabase database : new TestDatabase[]{source, target}) {
+            database.execute("CREATE TABLE `orders` (`id` INT PRIMARY KEY, `value` VARCHAR(50)) ENGINE=InnoDB",
+                    "CREATE TABLE `codes` (`code` VARCHAR(10) PRIMARY KEY, `name` VARCHAR(50)) ENGINE=InnoDB",
+                    "CREATE TABLE `notes` (`text` VARCHAR(50)) ENGINE=InnoDB");
+            StringBuilder orders = new StringBuilder("INSERT INTO `orders` VALUES ");
+            for (int i = 1; i <= 100; i++) {
+                orders.append(i == 1 ? "" : ", ").append("(").append(i).append(", 'order ").append(i).append("')");
+            }
+            database.execute(orders.toString(),
+                    "INSERT INTO `codes` VALUES ('a', 'alpha'), ('b', 'beta')",
+                    "INSERT INTO `notes` VALUES ('one'), ('two')");
+        }
+        dir = Files.createTempDirectory("diff-test").toFile();
+    }
+
+    @AfterEach
+    void dropDatabases() throws SQLException, IOException {
+        for (TestDatabase database : new TestDatabase[]{source, target}) {
+            if (database != null) {
+                database.close();
+            }
+        }
+        if (dir != null) {
+            try (Stream<Path> paths = Files.walk(dir.toPath())) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private MysqlDiffService differ() {
+        return MysqlDiffService.builder()
+                .setJdbcConnString(source.getJdbcUrl())
+                .setUsername(TestDatabase.USERNAME)
+                .setPassword(TestDatabase.PASSWORD);
+    }
+
+    private void apply(MysqlDiffService diff) throws Exception {
+        assertTrue(target.importer().setSqlString(diff.getGeneratedSql()).importDatabase());
+    }
+
+    private void assertSameRows(String query) throws SQLException {
+        List<String> expected = source.query(query);
+        assertEquals(expected, target.query(query));
+    }
+
+    @Test
+    void deltaTurnsTheTargetIntoACopy() throws Exception {
+        source.execute("UPDATE `orders` SET `value` = 'changed' WHERE `id` = 5",
+                "INSERT INTO `orders` VALUES (101, 'new')",
+                "DELETE FROM `orders` WHERE `id` = 50",
+                "UPDATE `codes` SET `name` = 'gamma' WHERE `code` = 'b'",
+                "INSERT INTO `notes` VALUES ('three')");
+
+        MysqlDiffService diff = differ().setTargetJdbcConnString(target.getJdbcUrl())
+                .setTables(Arrays.asList("codes", "notes", "orders"));
+        assertTrue(diff.diff());
+        //the notes have no key and are reloaded
+        assertEquals(1 + 3, diff.getInserts());
+        assertEquals(2, diff.getUpdates());
+        assertEquals(1 + 2, diff.getDeletes());
+
+        apply(diff);
+        assertSameRows(ORDERS);
+        assertSameRows(CODES);
+        assertSameRows(NOTES);
+    }
+
+    @Test
+    void identicalDatabasesHaveNoDelta() throws Exception {
+        MysqlDiffService diff = differ().setTargetJdbcConnString(target.getJdbcUrl());
+        assertTrue(diff.diff());
+        assertEquals(0, diff.getInserts() + diff.getUpdates() + diff.getDeletes());
+    }
+
+    @Test
+    void changedRangesOfAnEncryptedDumpAreReplaced() throws Exception {
+        String key = EncryptedDump.generateKey();
+        Properties properties = source.exportProperties(dir.getAbsolutePath());
+        properties.setProperty(MysqlExportService.CHECKSUMS, "true");
+        properties.setProperty(MysqlExportService.CHUNK_ROWS, "20");
+        properties.setProperty(MysqlExportService.ZIP_EXPORT_FILE, "true");
+        properties.setProperty(MysqlExportService.ENCRYPTION_KEY, key);
+        MysqlExportService export = new MysqlExportService(properties);
+        export.export();
+        File dump = export.getGeneratedFile();
+        assertTrue(target.importer().setSqlFile(dump).setEncryptionKey(key).setDropExisting(true).importDatabase());
+
+        source.execute("UPDATE `orders` SET `value` = 'changed' WHERE `id` = 30",
+                "DELETE FROM `orders` WHERE `id` = 90");
+        MysqlDiffService diff = differ().setTargetDumpFile(dump).setEncryptionKey(key).setTables(
+                Collections.singletonList("orders"));
+        assertTrue(diff.diff());
+        //the two ranges of 20 rows with the changes are replaced
+        assertEquals(40, diff.getDeletes());
+        assertEquals(39, diff.getInserts());
+
+        apply(diff);
+        assertSameRows(ORDERS);
+    }
+}
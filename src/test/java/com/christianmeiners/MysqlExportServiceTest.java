@@ -0,0 +1,279 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MysqlExportServiceTest {
+
+    private TestDatabase database;
+    private File dir;
+
+    @BeforeEach
+    void createDatabase() throws SQLException, IOException {
+        database = TestDatabase.create();
+        database.execute("CREATE TABLE `customers` (`id` INT PRIMARY KEY, `name` VARCHAR(100)) ENGINE=InnoDB",
+                "CREATE TABLE `orders` (`id` INT PRIMARY KEY, `customer` INT, `total` DECIMAL(10, 2), " +
+                        "FOREIGN KEY (`customer`) REFERENCES `customers` (`id`)) ENGINE=InnoDB");
+        StringBuilder customers = new StringBuilder("INSERT INTO `customers` VALUES ");
+        StringBuilder orders = new StringBuilder("INSERT INTO `orders` VALUES ");
+        for (int i = 1; i <= 500; i++) {
+            customers.append(i == 1 ? "" : ", ").append("(").append(i).append(", 'name \u00e9 ").append(i).append("')");
+            orders.append(i == 1 ? "" : ", ").append("(").append(i).append(", ").append(i).append(", ").append(i).append(".5)");
+        }
+        database.execute(customers.toString(), orders.toString());
+        dir = Files.createTempDirectory("export-test").toFile();
+    }
+
+    @AfterEach
+    void dropDatabase() throws SQLException, IOException {
+        if (database != null) {
+            database.close();
+        }
+        if (dir != null) {
+            try (Stream<Path> paths = Files.walk(dir.toPath())) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private Properties properties() {
+        return database.exportProperties(dir.getAbsolutePath());
+    }
+
+    private long files() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            return paths.filter(Files::isRegularFile).count();
+        }
+    }
+
+    @Test
+    void listenerFollowsTheExport() throws Exception {
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        MysqlExportService export = new MysqlExportService(properties());
+        export.setExportListener(new ExportListener() {
+            @Override
+            public void onExportStarted(String name, BackupMetrics metrics) {
+                events.add("started " + name);
+            }
+
+            @Override
+            public void onTableStarted(String table, BackupMetrics metrics) {
+                events.add("table " + table);
+            }
+
+            @Override
+            public void onTableCompleted(String table, BackupMetrics metrics) {
+                events.add("completed " + table);
+            }
+
+            @Override
+            public void onExportCompleted(BackupMetrics metrics) {
+                events.add("done " + metrics.getRows());
+            }
+        });
+        export.export();
+
+        assertEquals("started " + database.getName(), events.get(0));
+        assertEquals("done 1000", events.get(events.size() - 1));
+        assertTrue(events.indexOf("table customers") < events.indexOf("completed customers"), events.toString());
+        assertTrue(events.indexOf("table orders") < events.indexOf("completed orders"), events.toString());
+        BackupMetrics metrics = export.getMetrics();
+        assertEquals(2, metrics.getTablesTotal());
+        assertEquals(2, metrics.getTablesDone());
+        assertEquals(1000, metrics.getRows());
+        //the rows are counted, not the statements around them
+        assertTrue(metrics.getRawBytes() > 0, metrics.toString());
+        assertTrue(metrics.getRawBytes() < MysqlBaseService.utf8Length(export.getGeneratedSql()), metrics.toString());
+    }
+
+    @Test
+    void exportAsyncWritesTheDump() throws Exception {
+        MysqlExportService export = new MysqlExportService(properties());
+        export.exportAsync().get(60, TimeUnit.SECONDS);
+        assertTrue(export.getGeneratedFile().isFile());
+        assertTrue(export.getGeneratedSql().contains("INSERT INTO `orders`"));
+    }
+
+    @Test
+    void zipIsWrittenWithoutATempSqlFile() throws Exception {
+        Properties properties = properties();
+        properties.setProperty(MysqlExportService.ZIP_EXPORT_FILE, "true");
+        MysqlExportService export = new MysqlExportService(properties);
+        export.export();
+
+        File zip = export.getGeneratedFile();
+        assertTrue(zip.getName().endsWith(".zip"), zip.getName());
+        assertEquals(1, files());
+        try (ZipFile zipFile = new ZipFile(zip)) {
+            assertEquals(1, zipFile.size());
+            ZipEntry entry = zipFile.entries().nextElement();
+            assertTrue(entry.getName().endsWith(".sql"), entry.getName());
+            //the size of the entry is the one of the sql in UTF-8
+            assertEquals(MysqlBaseService.utf8Length(export.getGeneratedSql()), entry.getSize());
+        }
+    }
+
+    private void createEvents() throws SQLException {
+        database.execute("CREATE TABLE `events` (`id` INT, `month` INT, `name` VARCHAR(100), PRIMARY KEY (`id`, `month`)) " +
+                        "ENGINE=InnoDB PARTITION BY RANGE (`month`) (PARTITION `p1` VALUES LESS THAN (2), " +
+                        "PARTITION `p2` VALUES LESS THAN (3), PARTITION `p3` VALUES LESS THAN MAXVALUE)",
+                "INSERT INTO `events` SELECT `id`, (`id` - 1) DIV 100 + 1, CONCAT('event ', `id`) FROM `customers` WHERE `id` <= 300");
+    }
+
+    @Test
+    void partitionedTableIsExportedPartitionByPartition() throws Exception {
+        createEvents();
+        Properties properties = properties();
+        properties.setProperty(MysqlExportService.PARTITIONED_EXPORT, "true");
+        properties.setProperty(MysqlExportService.EXPORT_WORKERS, "2");
+        MysqlExportService export = new MysqlExportService(properties);
+        export.export();
+
+        //the partitions are assembled in their order
+        String sql = export.getGeneratedSql();
+        assertTrue(sql.indexOf("'event 100'") < sql.indexOf("'event 101'"));
+        assertTrue(sql.indexOf("'event 200'") < sql.indexOf("'event 201'"));
+
+        try (TestDatabase copy = TestDatabase.create()) {
+            assertTrue(copy.importer().setSqlString(sql).importDatabase());
+            String query = "SELECT CONCAT(`id`, ':', `month`, ':', `name`) FROM `events` ORDER BY `id`";
+            assertEquals(database.query(query), copy.query(query));
+            assertEquals(Collections.singletonList("100"), copy.query("SELECT COUNT(*) FROM `events` PARTITION (`p2`)"));
+        }
+    }
+
+    @Test
+    void unchangedPartitionsAreReusedFromTheCache() throws Exception {
+        createEvents();
+        File cache = new File(dir, "cache");
+        Properties properties = properties();
+        properties.setProperty(MysqlExportService.PARTITIONED_EXPORT, "true");
+        properties.setProperty(MysqlExportService.PARTITION_CACHE_DIR, cache.getAbsolutePath());
+        new MysqlExportService(properties).export();
+
+        File tableCache = new File(cache, database.getName());
+        for (String partition : new String[]{"p1", "p2", "p3"}) {
+            assertTrue(new File(tableCache, "events." + partition + ".sql").isFile(), partition);
+            assertTrue(new File(tableCache, "events." + partition + ".fingerprint").isFile(), partition);
+        }
+
+        //the stored section of p1 is taken as it is, p3 has changed and is read again
+        File p1 = new File(tableCache, "events.p1.sql");
+        Files.write(p1.toPath(), "-- the cached p1\n".getBytes(StandardCharsets.UTF_8));
+        database.execute("UPDATE `events` SET `name` = 'changed' WHERE `id` = 250");
+        MysqlExportService export = new MysqlExportService(properties);
+        export.export();
+
+        String sql = export.getGeneratedSql();
+        assertTrue(sql.contains("-- the cached p1"));
+        assertFalse(sql.contains("'event 50'"));
+        assertTrue(sql.contains("'event 150'"));
+        assertTrue(sql.contains("'changed'"));
+    }
+
+    @Test
+    void cancelledExportRemovesItsFiles() throws Exception {
+        Properties properties = properties();
+        //the rows take five seconds
+        properties.setProperty(MysqlExportService.MAX_ROWS_PER_SECOND, "200");
+        MysqlExportService export = new MysqlExportService(properties);
+        CompletableFuture<Void> future = export.exportAsync();
+        Thread.sleep(500);
+        export.cancel();
+
+        assertThrows(CancellationException.class, future::join);
+        assertEquals(0, files());
+    }
+
+    @Test
+    void failedTableReleasesTheSectionsOfTheOthers() throws Exception {
+        database.execute("CREATE TABLE `notes` (`id` INT PRIMARY KEY, `text` VARCHAR(100)) ENGINE=InnoDB",
+                "INSERT INTO `notes` SELECT `id`, `name` FROM `customers`");
+        Properties properties = properties();
+        properties.setProperty(MysqlExportService.EXPORT_WORKERS, "2");
+        //the sections spill to the temp dir
+        properties.setProperty(MysqlExportService.MAX_HEAP_BYTES, "4000");
+        MysqlExportService export = new MysqlExportService(properties);
+        export.setExportListener(new ExportListener() {
+            @Override
+            public void onTableStarted(String table, BackupMetrics metrics) {
+                if (table.equals("customers")) {
+                    try {
+                        Thread.sleep(500);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    throw new IllegalStateException("customers failed");
+                }
+            }
+        });
+
+        assertThrows(IllegalStateException.class, export::export);
+        assertEquals(0, files());
+    }
+
+    @Test
+    void chunkRowsMustBePositive() {
+        for (String rows : new String[]{"0", "-5", "many"}) {
+            Properties properties = properties();
+            properties.setProperty(MysqlExportService.CHUNK_ROWS, rows);
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> new MysqlExportService(properties).export());
+            assertTrue(e.getMessage().contains(MysqlExportService.CHUNK_ROWS), e.getMessage());
+        }
+    }
+
+    @Test
+    void resumedExportSkipsTheCompletedTables() throws Exception {
+        File checkpoints = new File(dir, "checkpoints");
+        Properties properties = properties();
+        properties.setProperty(MysqlExportService.CHECKPOINT_DIR, checkpoints.getAbsolutePath());
+        properties.setProperty(MysqlExportService.CHUNK_ROWS, "100");
+        MysqlExportService failed = new MysqlExportService(properties);
+        failed.setExportListener(new ExportListener() {
+            @Override
+            public void onTableStarted(String table, BackupMetrics metrics) {
+                if (table.equals("orders")) {
+                    throw new IllegalStateException("orders failed");
+                }
+            }
+        });
+        assertThrows(IllegalStateException.class, failed::export);
+
+        //the resumed export takes the customers from the checkpoint
+        database.execute("UPDATE `customers` SET `name` = 'changed'");
+        properties.setProperty(MysqlExportService.RESUME, "true");
+        MysqlExportService resumed = new MysqlExportService(properties);
+        resumed.export();
+
+        String sql = resumed.getGeneratedSql();
+        assertFalse(sql.contains("'changed'"));
+        assertTrue(sql.contains("'name \u00e9 500'"));
+        assertTrue(sql.contains("500.5"));
+        assertFalse(new File(checkpoints, database.getName() + ".journal").exists());
+    }
+}
@@ -0,0 +1,246 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MysqlImportServiceTest {
+
+    private TestDatabase database;
+
+    @BeforeEach
+    void createDatabase() {
+        database = TestDatabase.create();
+    }
+
+    @AfterEach
+    void dropDatabase() throws SQLException {
+        if (database != null) {
+            database.close();
+        }
+    }
+
+    /**
+     * @return a dump of a table with the given rows, each insert a chunk of its own
+     */
+    static String dump(String table, int rows, String value) {
+        StringBuilder sql = new StringBuilder("-- header\n");
+        sql.append(MysqlBaseService.SQL_START_PATTERN).append("  table dump : ").append(table).append("\n")
+                .append("CREATE TABLE `").append(table).append("` (`id` INT PRIMARY KEY, `value` TEXT) ENGINE=InnoDB;\n")
+                .append(MysqlBaseService.SQL_END_PATTERN).append("\n");
+        for (int i = 1; i <= rows; i++) {
+            sql.append(MysqlBaseService.SQL_START_PATTERN).append(" table insert : ").append(table).append("\n")
+                    .append("INSERT INTO `").append(table).append("` VALUES (").append(i).append(", '").append(value)
+                    .append("');\n").append(MysqlBaseService.SQL_END_PATTERN).append("\n");
+        }
+        return sql.toString();
+    }
+
+    private static String repeat(String s, int times) {
+        StringBuilder repeated = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            repeated.append(s);
+        }
+        return repeated.toString();
+    }
+
+    @Test
+    void listenerFollowsTheImport() throws Exception {
+        String sql = dump("orders", 250, "value");
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        boolean imported = database.importer()
+                .setSqlString(sql)
+                .setImportListener(new ImportListener() {
+                    @Override
+                    public void onImportStarted(String name, BackupMetrics metrics) {
+                        events.add("started " + name);
+                    }
+
+                    @Override
+                    public void onProgress(BackupMetrics metrics) {
+                        events.add("progress");
+                    }
+
+                    @Override
+                    public void onImportCompleted(BackupMetrics metrics) {
+                        events.add("done " + metrics.getStatements() + " " + metrics.getTablesDone());
+                    }
+                })
+                .importDatabase();
+
+        assertTrue(imported);
+        assertEquals(250, database.count("orders"));
+        assertEquals("started " + database.getName(), events.get(0));
+        //the table, its rows and the foreign key checks in batches of 100
+        assertEquals(Collections.nCopies(3, "progress"), events.subList(1, 4));
+        assertEquals("done 253 1", events.get(4));
+    }
+
+    @Test
+    void batchesAreLimitedInUtf8Bytes() throws Exception {
+        //every insert has about 970 bytes in 370 characters
+        String sql = dump("orders", 12, repeat("\u20ac", 300));
+        int[] batches = {0};
+        database.importer()
+                .setSqlString(sql)
+                .setMaxStatementBytes(2000)
+                .setImportListener(new ImportListener() {
+                    @Override
+                    public void onProgress(BackupMetrics metrics) {
+                        batches[0]++;
+                    }
+                })
+                .importDatabase();
+
+        assertEquals(12, database.count("orders"));
+        //the table with two inserts, then three inserts at a time
+        //instead of two batches of six inserts for the characters
+        assertEquals(5, batches[0]);
+        assertEquals(repeat("\u20ac", 300), database.query("SELECT `value` FROM `orders` WHERE `id` = 12").get(0));
+    }
+
+    @Test
+    void importAsyncImportsTheDump() throws Exception {
+        assertTrue(database.importer().setSqlString(dump("orders", 100, "value")).importAsync().get(60, TimeUnit.SECONDS));
+        assertEquals(100, database.count("orders"));
+    }
+
+    @Test
+    void cancelledImportKeepsTheCompletedBatches() throws Exception {
+        //the statements take ten seconds
+        MysqlImportService importer = database.importer()
+                .setSqlString(dump("orders", 1000, "value"))
+                .setBatchSize(10)
+                .setMaxStatementsPerSecond(100);
+        CompletableFuture<Boolean> future = importer.importAsync();
+        Thread.sleep(1500);
+        assertTrue(future.cancel(true));
+        assertThrows(CancellationException.class, future::join);
+
+        //the batches that have been executed stay
+        long rows = database.count("orders");
+        Thread.sleep(500);
+        assertEquals(rows, database.count("orders"));
+        assertTrue(rows > 0 && rows < 1000, rows + " rows");
+    }
+
+    @Test
+    void resumeContinuesAfterTheFailedBatch() throws Exception {
+        String sql = dump("orders", 10, "value").replace("CREATE TABLE", "CREATE TABLE IF NOT EXISTS");
+        File journalFile = File.createTempFile("import", ".journal");
+        try {
+            database.execute("CREATE TABLE `orders` (`id` INT PRIMARY KEY, `value` TEXT) ENGINE=InnoDB",
+                    "INSERT INTO `orders` VALUES (7, 'existing')");
+            MysqlImportService importer = database.importer()
+                    .setSqlString(sql)
+                    .setBatchSize(3)
+                    .setJournalFile(journalFile);
+            assertThrows(BatchUpdateException.class, importer::importDatabase);
+            assertTrue(journalFile.length() > 0);
+
+            database.execute("DELETE FROM `orders` WHERE `id` = 7");
+            assertTrue(importer.setResume(true).importDatabase());
+            assertEquals(10, database.count("orders"));
+            assertEquals("value", database.query("SELECT `value` FROM `orders` WHERE `id` = 7").get(0));
+            assertFalse(journalFile.exists());
+        } finally {
+            journalFile.delete();
+        }
+    }
+
+    @Test
+    void resumeReplaysTheChunksThatWereExecutingWhenTheImportStopped() throws Exception {
+        String sql = dump("orders", 10, "value");
+        File journalFile = File.createTempFile("import", ".journal");
+        try {
+            //the import was killed after the batch with the inserts
+            //5 and 6 had been applied, before it was journaled
+            database.execute("CREATE TABLE `orders` (`id` INT PRIMARY KEY, `value` TEXT) ENGINE=InnoDB",
+                    "INSERT INTO `orders` VALUES (1, 'value'), (2, 'value'), (3, 'value'), (4, 'value'), " +
+                            "(5, 'value'), (6, 'value')");
+            ImportJournal journal = ImportJournal.openDump(journalFile, ImportJournal.getDumpId(sql) + "\t100000", false);
+            journal.markApplied(Arrays.asList(0, 1, 2, 3, 4));
+            journal.markPending(Arrays.asList(5, 6, 7));
+
+            List<String> events = Collections.synchronizedList(new ArrayList<>());
+            boolean imported = database.importer()
+                    .setSqlString(sql)
+                    .setMaxStatementBytes(100000)
+                    .setJournalFile(journalFile)
+                    .setResume(true)
+                    .setImportListener(new ImportListener() {
+                        @Override
+                        public void onImportCompleted(BackupMetrics metrics) {
+                            events.add("done " + metrics.getStatements() + " " + metrics.getTablesDone());
+                        }
+                    })
+                    .importDatabase();
+
+            assertTrue(imported);
+            assertEquals(10, database.count("orders"));
+            //the skipped table is done, the replayed and the remaining inserts are counted
+            assertEquals(Collections.singletonList("done 8 1"), events);
+        } finally {
+            journalFile.delete();
+        }
+    }
+
+    @Test
+    void failedStatementsOfACompleteBatchAreRejected() throws Exception {
+        String sql = dump("orders", 10, "value")
+                + MysqlBaseService.SQL_START_PATTERN + " table insert : orders\nINSERT INTO `orders` VALUES (3, 'again');\n"
+                + MysqlBaseService.SQL_END_PATTERN + "\n"
+                + MysqlBaseService.SQL_START_PATTERN + " table insert : missing\nINSERT INTO `missing` VALUES (1);\n"
+                + MysqlBaseService.SQL_END_PATTERN + "\n";
+        File rejectFile = File.createTempFile("import", ".rejects");
+        try {
+            MysqlImportService importer = database.importer()
+                    .setSqlString(sql)
+                    .setContinueOnError(true)
+                    .setRejectFile(rejectFile);
+            assertTrue(importer.importDatabase());
+
+            assertEquals(10, database.count("orders"));
+            assertEquals(2, importer.getMetrics().getRejectedStatements());
+            String rejects = new String(Files.readAllBytes(rejectFile.toPath()), StandardCharsets.UTF_8);
+            assertTrue(rejects.contains("INSERT INTO `orders` VALUES (3, 'again')"), rejects);
+            assertTrue(rejects.contains("INSERT INTO `missing` VALUES (1)"), rejects);
+            assertTrue(rejects.contains("one of 2 failed statements"), rejects);
+            assertFalse(rejects.contains("VALUES (4, 'value')"), rejects);
+        } finally {
+            rejectFile.delete();
+        }
+    }
+
+    @Test
+    void failedBatchDoesntCountInTheNextRun() throws Exception {
+        String sql = dump("orders", 10, "value").replace("CREATE TABLE", "CREATE TABLE IF NOT EXISTS");
+        database.execute("CREATE TABLE `orders` (`id` INT PRIMARY KEY, `value` TEXT) ENGINE=InnoDB",
+                "INSERT INTO `orders` VALUES (7, 'existing')");
+        MysqlImportService importer = database.importer().setSqlString(sql);
+        assertThrows(BatchUpdateException.class, importer::importDatabase);
+
+        //the orders are deleted, then the dump is imported
+        assertTrue(importer.setDeleteExisting(true).importDatabase());
+        assertEquals(10, database.count("orders"));
+        assertEquals(14, importer.getMetrics().getStatements());
+    }
+}
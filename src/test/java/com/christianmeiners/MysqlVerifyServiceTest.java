@@ -0,0 +1,105 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MysqlVerifyServiceTest {
+
+    private TestDatabase database;
+    private File dir;
+
+    @BeforeEach
+    void createDatabase() throws SQLException, IOException {
+        database = TestDatabase.create();
+        database.execute("CREATE TABLE `customers` (`id` INT PRIMARY KEY, `name` VARCHAR(100)) ENGINE=InnoDB");
+        StringBuilder customers = new StringBuilder("INSERT INTO `customers` VALUES ");
+        for (int i = 1; i <= 300; i++) {
+            customers.append(i == 1 ? "" : ", ").append("(").append(i).append(", 'name ").append(i).append("')");
+        }
+        database.execute(customers.toString());
+        dir = Files.createTempDirectory("verify-test").toFile();
+    }
+
+    @AfterEach
+    void dropDatabase() throws SQLException, IOException {
+        if (database != null) {
+            database.close();
+        }
+        if (dir != null) {
+            try (Stream<Path> paths = Files.walk(dir.toPath())) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private MysqlExportService export(String encryptionKey) throws Exception {
+        Properties properties = database.exportProperties(dir.getAbsolutePath());
+        properties.setProperty(MysqlExportService.CHECKSUMS, "true");
+        properties.setProperty(MysqlExportService.CHUNK_ROWS, "100");
+        properties.setProperty(MysqlExportService.ZIP_EXPORT_FILE, "true");
+        if (encryptionKey != null) {
+            properties.setProperty(MysqlExportService.ENCRYPTION_KEY, encryptionKey);
+        }
+        MysqlExportService export = new MysqlExportService(properties);
+        export.export();
+        return export;
+    }
+
+    private MysqlVerifyService verifier() {
+        return MysqlVerifyService.builder()
+                .setJdbcConnString(database.getJdbcUrl())
+                .setUsername(TestDatabase.USERNAME)
+                .setPassword(TestDatabase.PASSWORD)
+                .setWorkers(2);
+    }
+
+    @Test
+    void changedRangeIsReported() throws Exception {
+        String sql = export(null).getGeneratedSql();
+        assertTrue(verifier().setSqlString(sql).verify());
+
+        database.execute("UPDATE `customers` SET `name` = 'changed' WHERE `id` = 150");
+        MysqlVerifyService verifier = verifier().setSqlString(sql);
+        assertFalse(verifier.verify());
+        assertEquals(1, verifier.getMismatches().size(), verifier.getMismatches().toString());
+
+        //rows after the last range
+        database.execute("UPDATE `customers` SET `name` = 'name 150' WHERE `id` = 150",
+                "INSERT INTO `customers` VALUES (301, 'new')");
+        assertFalse(verifier.verify());
+        assertEquals(1, verifier.getMismatches().size(), verifier.getMismatches().toString());
+    }
+
+    @Test
+    void encryptedZipIsRecognizedByItsContent() throws Exception {
+        String key = EncryptedDump.generateKey();
+        File dump = export(key).getGeneratedFile();
+        //the file name doesn't matter
+        File renamed = new File(dir, "backup");
+        assertTrue(dump.renameTo(renamed));
+
+        assertTrue(verifier().setDumpFile(renamed).setEncryptionKey(key).verify());
+        IOException e = assertThrows(IOException.class, () -> verifier().setDumpFile(renamed).verify());
+        assertTrue(e.getMessage().contains("encrypted"), e.getMessage());
+    }
+
+    @Test
+    void dumpWithoutChecksumsFails() throws Exception {
+        assertFalse(verifier().setSqlString(MysqlImportServiceTest.dump("orders", 3, "value")).verify());
+    }
+}
@@ -0,0 +1,64 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTest {
+
+    private static long millis(Runnable action) {
+        long start = System.nanoTime();
+        action.run();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    @Test
+    void noLimiterWithoutAPositiveRate() {
+        assertNull(RateLimiter.create(0));
+        assertNull(RateLimiter.create(-5));
+        assertNotNull(RateLimiter.create(10));
+    }
+
+    @Test
+    void permitsAreSpreadOverTime() {
+        RateLimiter limiter = new RateLimiter(1000);
+        long elapsed = millis(() -> {
+            limiter.acquire(250);
+            limiter.acquire(250);
+        });
+        assertTrue(elapsed >= 400, "500 permits at 1000/s took " + elapsed + "ms");
+        assertTrue(elapsed < 2000, "500 permits at 1000/s took " + elapsed + "ms");
+    }
+
+    @Test
+    void noPermitsDontWait() {
+        RateLimiter limiter = new RateLimiter(1);
+        assertTrue(millis(() -> limiter.acquire(0)) < 100);
+    }
+
+    @Test
+    void idleTimeAllowsABurstOfOneSecond() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(1000);
+        Thread.sleep(1500);
+        //the half second beyond the burst is not saved up
+        assertTrue(millis(() -> limiter.acquire(1000)) < 300);
+        long elapsed = millis(() -> limiter.acquire(300));
+        assertTrue(elapsed >= 200, "300 permits after the burst took " + elapsed + "ms");
+    }
+
+    @Test
+    void interruptEndsTheWaitAndIsKept() {
+        RateLimiter limiter = new RateLimiter(1);
+        Thread.currentThread().interrupt();
+        try {
+            assertTrue(millis(() -> limiter.acquire(1000)) < 1000);
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+}
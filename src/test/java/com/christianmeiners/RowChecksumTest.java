@@ -0,0 +1,118 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RowChecksumTest {
+
+    /**
+     * @param id the id of the current row
+     * @return a result set on a row with an integer key in its first column
+     */
+    private static ResultSet row(int[] id) {
+        ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(RowChecksumTest.class.getClassLoader(),
+                new Class<?>[]{ResultSetMetaData.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("getColumnType")) {
+                        return Types.INTEGER;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        return (ResultSet) Proxy.newProxyInstance(RowChecksumTest.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getMetaData":
+                            return metaData;
+                        case "getString":
+                            return String.valueOf(id[0]);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static String encode(int id) {
+        return "(" + id + ", 'name \u00e9 " + id + "')";
+    }
+
+    private static long crc(String row) {
+        CRC32 crc = new CRC32();
+        crc.update(row.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    @Test
+    void rangesEndAfterTheirRowsAtTheKeyOfTheLastRow() throws SQLException, IOException {
+        int[] id = {0};
+        ResultSet rs = row(id);
+        RowChecksum checksum = new RowChecksum("orders", new int[]{1}, 3);
+        long[] sums = new long[3];
+        for (id[0] = 1; id[0] <= 7; id[0]++) {
+            //the separator before the values isn't part of the row
+            checksum.update(rs, ",\n" + encode(id[0]), 2);
+            sums[(id[0] - 1) / 3] += crc(encode(id[0]));
+        }
+
+        Map<String, List<DumpManifest.Range>> tables = DumpManifest.read(new StringReader(checksum.finish()));
+        List<DumpManifest.Range> ranges = tables.get("orders");
+        assertEquals(3, ranges.size());
+        assertEquals("(3)", ranges.get(0).upper);
+        assertEquals("(6)", ranges.get(1).upper);
+        assertEquals("(7)", ranges.get(2).upper);
+        assertEquals("(3)", ranges.get(1).lower);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i < 2 ? 3 : 1, ranges.get(i).rows);
+            assertEquals(sums[i], ranges.get(i).sum);
+        }
+        assertEquals("", checksum.finish());
+    }
+
+    @Test
+    void tableWithoutKeyIsASingleRangeIndependentOfTheRowOrder() throws SQLException, IOException {
+        RowChecksum forward = new RowChecksum("logs", new int[0], 2);
+        RowChecksum backward = new RowChecksum("logs", new int[0], 2);
+        for (int i = 0; i < 5; i++) {
+            forward.update(null, encode(i), 0);
+            backward.update(null, encode(4 - i), 0);
+        }
+        assertEquals(5, forward.getRows());
+        assertEquals(forward.getSum(), backward.getSum());
+
+        String ranges = forward.finish();
+        assertEquals(ranges, backward.finish());
+        DumpManifest.Range range = DumpManifest.read(new StringReader(ranges)).get("logs").get(0);
+        assertEquals(DumpManifest.WHOLE_TABLE, range.upper);
+        assertEquals(5, range.rows);
+    }
+
+    @Test
+    void changedRowChangesTheSum() {
+        RowChecksum original = new RowChecksum("orders", new int[0], 10);
+        RowChecksum changed = new RowChecksum("orders", new int[0], 10);
+        original.add(encode(1), 0);
+        changed.add(encode(1).replace("name", "nome"), 0);
+        assertNotEquals(original.getSum(), changed.getSum());
+    }
+
+    @Test
+    void hash64IgnoresThePrefixAndIsNeverZero() {
+        assertEquals(RowChecksum.hash64(encode(1), 0), RowChecksum.hash64(",\n" + encode(1), 2));
+        assertNotEquals(RowChecksum.hash64(encode(1), 0), RowChecksum.hash64(encode(2), 0));
+        assertTrue(RowChecksum.hash64("", 0) != 0);
+        assertNotEquals(RowChecksum.mix(1), RowChecksum.mix(2));
+    }
+}
@@ -0,0 +1,194 @@
+package com.christianmeiners;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class S3SinkTest {
+
+    private static final Pattern PART = Pattern.compile("<PartNumber>(\\d+)</PartNumber><ETag>([^<]+)</ETag>");
+
+    private HttpServer server;
+    //the objects by their path, the parts by upload id and number
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> parts = new ConcurrentHashMap<>();
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger failingPuts = new AtomicInteger();
+    private volatile boolean failCompletion;
+
+    /**
+     * A stand-in for an S3 compatible object store that
+     * implements the requests of a multipart upload
+     */
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getRawPath();
+        String query = exchange.getRequestURI().getRawQuery();
+        byte[] body = readAll(exchange.getRequestBody());
+        requests.add(method + " " + path + "?" + query);
+
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        String payloadHash = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+        if (authorization == null || !authorization.startsWith("AWS4-HMAC-SHA256 Credential=access/")
+                || !toHex(sha256(body)).equals(payloadHash)) {
+            respond(exchange, 403, "<Error>SignatureDoesNotMatch</Error>");
+            return;
+        }
+
+        if (method.equals("POST") && query.equals("uploads=")) {
+            respond(exchange, 200, "<InitiateMultipartUploadResult><UploadId>upload+1</UploadId></InitiateMultipartUploadResult>");
+        } else if (method.equals("PUT")) {
+            if (failingPuts.getAndDecrement() > 0) {
+                respond(exchange, 503, "<Error>SlowDown</Error>");
+                return;
+            }
+            String number = query.replaceAll(".*partNumber=(\\d+).*", "$1");
+            parts.put(number, body);
+            exchange.getResponseHeaders().add("ETag", "\"etag" + number + "\"");
+            respond(exchange, 200, "");
+        } else if (method.equals("POST") && query.startsWith("uploadId=")) {
+            if (failCompletion) {
+                respond(exchange, 200, "<Error><Code>InternalError</Code></Error>");
+                return;
+            }
+            ByteArrayOutputStream object = new ByteArrayOutputStream();
+            Matcher matcher = PART.matcher(new String(body, StandardCharsets.UTF_8));
+            while (matcher.find()) {
+                assertEquals("\"etag" + matcher.group(1) + "\"", matcher.group(2));
+                object.write(parts.get(matcher.group(1)));
+            }
+            objects.put(path, object.toByteArray());
+            respond(exchange, 200, "<CompleteMultipartUploadResult/>");
+        } else if (method.equals("DELETE")) {
+            parts.clear();
+            respond(exchange, 204, null);
+        } else {
+            respond(exchange, 400, "<Error>unexpected</Error>");
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body == null ? new byte[0] : body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, body == null ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private S3Sink sink() {
+        return new S3Sink("http://127.0.0.1:" + server.getAddress().getPort() + "/", "us-east-1", "backups",
+                "access", "secret").setPrefix("shop/");
+    }
+
+    private static byte[] content(int bytes) {
+        byte[] content = new byte[bytes];
+        new Random(bytes).nextBytes(content);
+        return content;
+    }
+
+    @Test
+    void fileIsUploadedInParts() throws Exception {
+        byte[] content = content(S3Sink.MIN_PART_BYTES * 2 + 1000);
+        try (BackupSink.Upload upload = sink().setPartBytes(S3Sink.MIN_PART_BYTES).open("dump 1.zip")) {
+            for (int i = 0; i < content.length; i += 100000) {
+                upload.write(content, i, Math.min(100000, content.length - i));
+            }
+        }
+
+        assertArrayEquals(content, objects.get("/backups/shop/dump%201.zip"));
+        assertEquals(3, parts.size());
+        assertEquals(S3Sink.MIN_PART_BYTES, parts.get("1").length);
+        assertTrue(requests.contains("PUT /backups/shop/dump%201.zip?partNumber=3&uploadId=upload%2B1"), requests.toString());
+    }
+
+    @Test
+    void emptyFileIsUploadedAsOnePart() throws Exception {
+        sink().open("empty.zip").close();
+        assertArrayEquals(new byte[0], objects.get("/backups/shop/empty.zip"));
+    }
+
+    @Test
+    void failedPartIsRetried() throws Exception {
+        failingPuts.set(1);
+        byte[] content = content(1000);
+        try (BackupSink.Upload upload = sink().open("dump.zip")) {
+            upload.write(content);
+        }
+        assertArrayEquals(content, objects.get("/backups/shop/dump.zip"));
+    }
+
+    @Test
+    void failedCompletionAbortsTheUpload() throws Exception {
+        failCompletion = true;
+        BackupSink.Upload upload = sink().open("dump.zip");
+        upload.write(content(1000));
+        assertThrows(IOException.class, upload::close);
+
+        assertFalse(objects.containsKey("/backups/shop/dump.zip"));
+        assertEquals("DELETE /backups/shop/dump.zip?uploadId=upload%2B1", requests.get(requests.size() - 1));
+    }
+}
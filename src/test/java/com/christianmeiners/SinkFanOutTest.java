@@ -0,0 +1,108 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SinkFanOutTest {
+
+    private File dir;
+
+    @BeforeEach
+    void createDir() throws IOException {
+        dir = Files.createTempDirectory("sink-test").toFile();
+    }
+
+    @AfterEach
+    void deleteDir() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * A sink that fails after the given number of bytes
+     */
+    private static BackupSink failingSink(long failAfter) {
+        return fileName -> new BackupSink.Upload() {
+
+            private long bytes;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                bytes += len;
+                if (bytes > failAfter) {
+                    throw new IOException("disk full");
+                }
+            }
+
+            @Override
+            public void abort() {
+            }
+        };
+    }
+
+    @Test
+    void fileIsWrittenToAllTheSinks() throws Exception {
+        byte[] content = new byte[1000 * 1000];
+        new Random(1).nextBytes(content);
+        File first = new File(dir, "first");
+        File second = new File(dir, "second");
+        try (SinkFanOut sinks = new SinkFanOut(Arrays.asList(new LocalFileSink(first), new LocalFileSink(second)), "dump.zip")) {
+            for (int i = 0; i < content.length; i += 999) {
+                sinks.write(content, i, Math.min(999, content.length - i));
+            }
+            //the files only appear once the upload is complete
+            assertFalse(new File(first, "dump.zip").exists());
+            assertEquals(content.length, sinks.getBytes());
+        }
+
+        assertArrayEquals(content, Files.readAllBytes(new File(first, "dump.zip").toPath()));
+        assertArrayEquals(content, Files.readAllBytes(new File(second, "dump.zip").toPath()));
+        assertFalse(new File(first, "dump.zip.partial").exists());
+    }
+
+    @Test
+    void failedSinkDoesntStopTheOthers() throws Exception {
+        byte[] content = new byte[500 * 1000];
+        new Random(2).nextBytes(content);
+        File local = new File(dir, "local");
+        SinkFanOut sinks = new SinkFanOut(Arrays.asList(failingSink(100 * 1000), new LocalFileSink(local)), "dump.zip");
+        sinks.write(content);
+
+        IOException e = assertThrows(IOException.class, sinks::close);
+        assertTrue(e.getMessage().contains("disk full"), e.getMessage());
+        assertArrayEquals(content, Files.readAllBytes(new File(local, "dump.zip").toPath()));
+    }
+
+    @Test
+    void abortedUploadLeavesNoFiles() throws Exception {
+        File local = new File(dir, "local");
+        SinkFanOut sinks = new SinkFanOut(Arrays.asList(new LocalFileSink(local)), "dump.zip");
+        sinks.write(new byte[200 * 1000]);
+        sinks.abort();
+
+        String[] files = local.list();
+        assertEquals(0, files == null ? 0 : files.length);
+    }
+}
@@ -0,0 +1,152 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpillableBufferTest {
+
+    private static final String TEXT = "INSERT INTO `t` VALUES ('gr\u00fc\u00dfe', '\u20ac', '\ud83d\ude00');\n";
+
+    private File spillDir;
+
+    @BeforeEach
+    void createSpillDir() throws IOException {
+        spillDir = Files.createTempDirectory("spillable-buffer-test").toFile();
+    }
+
+    @AfterEach
+    void deleteSpillDir() {
+        File[] files = spillDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        spillDir.delete();
+    }
+
+    private static String repeat(int times) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            text.append(TEXT);
+        }
+        return text.toString();
+    }
+
+    private static byte[] bytes(SpillableBuffer buffer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        buffer.writeTo(out);
+        return out.toByteArray();
+    }
+
+    @Test
+    void smallContentStaysInMemory() throws IOException {
+        try (SpillableBuffer buffer = new SpillableBuffer(1000, spillDir)) {
+            buffer.append(TEXT).append('x').append(42);
+            assertFalse(buffer.isSpilled());
+            assertEquals(TEXT + "x42", buffer.toString());
+            assertEquals(TEXT.length() + 3, buffer.length());
+            assertEquals(0, spillDir.list().length);
+            assertEquals(TEXT + "x42", new String(bytes(buffer), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void largeContentIsSpilledInUtf8() throws IOException {
+        String text = repeat(100);
+        try (SpillableBuffer buffer = new SpillableBuffer(TEXT.length() * 10, spillDir)) {
+            for (int i = 0; i < 100; i++) {
+                buffer.append(TEXT);
+            }
+            assertTrue(buffer.isSpilled());
+            assertEquals(1, spillDir.list().length);
+            assertEquals(text.length(), buffer.length());
+            assertEquals(text, buffer.toString());
+            assertEquals(text, new String(bytes(buffer), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void utf8LengthCountsTheBytes() throws IOException {
+        int bytes = TEXT.getBytes(StandardCharsets.UTF_8).length;
+        try (SpillableBuffer memory = SpillableBuffer.inMemory();
+             SpillableBuffer spilled = new SpillableBuffer(TEXT.length() * 10, spillDir)) {
+            for (int i = 0; i < 100; i++) {
+                memory.append(TEXT);
+                spilled.append(TEXT);
+            }
+            assertTrue(bytes > TEXT.length());
+            assertEquals(bytes * 100L, memory.utf8Length());
+            assertTrue(spilled.isSpilled());
+            assertEquals(bytes * 100L, spilled.utf8Length());
+        }
+    }
+
+    @Test
+    void closeDeletesTheSpillFile() {
+        SpillableBuffer buffer = new SpillableBuffer(10, spillDir);
+        buffer.append(repeat(3));
+        assertEquals(1, spillDir.list().length);
+        buffer.close();
+        buffer.close();
+        assertEquals(0, spillDir.list().length);
+        assertEquals(0, buffer.length());
+    }
+
+    @Test
+    void spilledBufferIsAppendedToAnother() {
+        try (SpillableBuffer section = new SpillableBuffer(10, spillDir);
+             SpillableBuffer dump = SpillableBuffer.inMemory()) {
+            section.append(repeat(5));
+            dump.append("head\n").append(section).append("tail\n");
+            assertFalse(dump.isSpilled());
+            assertEquals("head\n" + repeat(5) + "tail\n", dump.toString());
+        }
+    }
+
+    @Test
+    void sampleReturnsTheFirstCharacters() {
+        try (SpillableBuffer memory = SpillableBuffer.inMemory();
+             SpillableBuffer spilled = new SpillableBuffer(10, spillDir)) {
+            memory.append(repeat(3));
+            spilled.append(repeat(3));
+            assertEquals(repeat(3).substring(0, 50), memory.sample(50));
+            assertEquals(repeat(3).substring(0, 50), spilled.sample(50));
+            assertEquals(repeat(3), spilled.sample(10000));
+        }
+    }
+
+    @Test
+    void partsAreWrittenFromMemoryAndFromTheSpillFile() throws IOException {
+        String text = repeat(4);
+        long[] ends = {TEXT.length(), TEXT.length() * 3L, text.length()};
+        for (long limit : new long[]{Long.MAX_VALUE, 10}) {
+            try (SpillableBuffer buffer = new SpillableBuffer(limit, spillDir)) {
+                buffer.append(text);
+                List<ByteArrayOutputStream> parts = new ArrayList<>();
+                buffer.writeParts(ends, part -> {
+                    parts.add(new ByteArrayOutputStream());
+                    return parts.get(part);
+                });
+
+                assertEquals(3, parts.size());
+                assertEquals(TEXT, new String(parts.get(0).toByteArray(), StandardCharsets.UTF_8));
+                assertEquals(TEXT + TEXT, new String(parts.get(1).toByteArray(), StandardCharsets.UTF_8));
+                assertEquals(TEXT, new String(parts.get(2).toByteArray(), StandardCharsets.UTF_8));
+            }
+        }
+    }
+}
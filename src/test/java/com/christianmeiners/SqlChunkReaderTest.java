@@ -0,0 +1,42 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SqlChunkReaderTest {
+
+    @Test
+    void chunksAreReadBetweenTheMarkersInOrder() {
+        String sql = "-- header\nSET NAMES utf8mb4;\n" +
+                "-- start table create : orders\nCREATE TABLE `orders` (`id` int);\n-- end table create : orders\n" +
+                "\n" +
+                "-- start table insert : orders\nINSERT INTO `orders` VALUES (1),\n(2);\n-- end table insert : orders\n" +
+                "-- footer\n";
+        SqlChunkReader reader = new SqlChunkReader(sql);
+        assertEquals("-- start table create : orders\nCREATE TABLE `orders` (`id` int);\n", reader.next());
+        assertEquals("-- start table insert : orders\nINSERT INTO `orders` VALUES (1),\n(2);\n", reader.next());
+        assertNull(reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test
+    void dumpWithoutChunksHasNone() {
+        assertNull(new SqlChunkReader("").next());
+        assertNull(new SqlChunkReader("-- header\nSELECT 1;\n").next());
+    }
+
+    @Test
+    void longDumpIsReadCompletely() {
+        StringBuilder sql = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            sql.append("-- start ").append(i).append("\nSELECT ").append(i).append(";\n-- end ").append(i).append("\n");
+        }
+        SqlChunkReader reader = new SqlChunkReader(sql.toString());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals("-- start " + i + "\nSELECT " + i + ";\n", reader.next());
+        }
+        assertNull(reader.next());
+    }
+}
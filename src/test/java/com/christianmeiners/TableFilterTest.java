@@ -0,0 +1,93 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TableFilterTest {
+
+    private static final List<String> NO_KEY = Collections.emptyList();
+
+    private static TableFilter filter(String... properties) {
+        Properties values = new Properties();
+        for (int i = 0; i < properties.length; i += 2) {
+            values.setProperty(properties[i], properties[i + 1]);
+        }
+        return new TableFilter(values);
+    }
+
+    @Test
+    void noFiltersExportEverything() {
+        TableFilter filter = filter();
+        assertTrue(filter.isEmpty());
+        assertTrue(filter.isIncluded("orders"));
+        assertFalse(filter.isFiltered("orders"));
+        assertEquals(" WHERE `id` > 5", filter.addTo(" WHERE `id` > 5", "orders", NO_KEY));
+    }
+
+    @Test
+    void tablesAreMatchedByNameAndPatternIgnoringCase() {
+        TableFilter filter = filter(MysqlExportService.INCLUDE_TABLES, "orders, log_?, user*",
+                MysqlExportService.EXCLUDE_TABLES, "users_archive");
+        assertFalse(filter.isEmpty());
+        assertTrue(filter.isIncluded("orders"));
+        assertTrue(filter.isIncluded("ORDERS"));
+        assertTrue(filter.isIncluded("log_1"));
+        assertFalse(filter.isIncluded("log_12"));
+        assertTrue(filter.isIncluded("users"));
+        assertFalse(filter.isIncluded("users_archive"));
+        assertFalse(filter.isIncluded("order"));
+        //the rest of a pattern is literal
+        assertTrue(filter(MysqlExportService.INCLUDE_TABLES, "a.b").isIncluded("a.b"));
+        assertFalse(filter(MysqlExportService.INCLUDE_TABLES, "a.b").isIncluded("axb"));
+        assertFalse(filter(MysqlExportService.EXCLUDE_TABLES, "*").isIncluded("orders"));
+    }
+
+    @Test
+    void conditionIsLookedUpByNameThenByTheLongestPattern() {
+        TableFilter filter = filter(MysqlExportService.TABLE_WHERE + "orders", " `id` < 10 ",
+                MysqlExportService.TABLE_WHERE + "*", "1 = 0",
+                MysqlExportService.TABLE_WHERE + "log_*", "`day` = CURDATE()");
+        assertEquals("(`id` < 10)", filter.getCondition("orders", NO_KEY));
+        assertEquals("(`day` = CURDATE())", filter.getCondition("log_1", NO_KEY));
+        assertEquals("(1 = 0)", filter.getCondition("users", NO_KEY));
+        assertTrue(filter.isFiltered("users"));
+        assertTrue(filter.isIncluded("users"));
+    }
+
+    @Test
+    void sampleHashesThePrimaryKey() {
+        TableFilter filter = filter(MysqlExportService.TABLE_SAMPLE + "orders", "0.25",
+                MysqlExportService.TABLE_WHERE + "orders", "`total` > 0",
+                MysqlExportService.TABLE_SAMPLE + "logs", "0.5");
+        assertEquals("(`total` > 0) AND CRC32(CONCAT_WS(0x1f, `shop`, `id`)) < 1073741824",
+                filter.getCondition("orders", Arrays.asList("shop", "id")));
+        assertEquals("RAND() < 0.5", filter.getCondition("logs", NO_KEY));
+        assertNull(filter.getCondition("users", NO_KEY));
+        assertFalse(filter.isFiltered("users"));
+    }
+
+    @Test
+    void conditionIsAddedToTheWhereClause() {
+        TableFilter filter = filter(MysqlExportService.TABLE_WHERE + "orders", "`id` < 10");
+        assertEquals(" WHERE (`id` < 10)", filter.addTo("", "orders", NO_KEY));
+        assertEquals(" WHERE `id` > 5 AND (`id` < 10)", filter.addTo(" WHERE `id` > 5", "orders", NO_KEY));
+        assertEquals("", filter.addTo("", "users", NO_KEY));
+    }
+
+    @Test
+    void sampleOutsideZeroAndOneIsRefused() {
+        assertThrows(IllegalArgumentException.class, () -> filter(MysqlExportService.TABLE_SAMPLE + "orders", "1.5"));
+        assertThrows(IllegalArgumentException.class, () -> filter(MysqlExportService.TABLE_SAMPLE + "orders", "-0.1"));
+        assertThrows(NumberFormatException.class, () -> filter(MysqlExportService.TABLE_SAMPLE + "orders", "half"));
+    }
+}
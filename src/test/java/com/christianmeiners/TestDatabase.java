@@ -0,0 +1,125 @@
+package com.christianmeiners;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * A database of its own for a test, on the MySQL server given with
+ * -Dtest.jdbcUrl=jdbc:mysql://host:3306 -Dtest.username=... -Dtest.password=...
+ * The default is the root user with the password root on the local server.
+ * The tests that need a database are skipped if the server can't be reached.
+ */
+class TestDatabase implements AutoCloseable {
+
+    static final String SERVER_URL = System.getProperty("test.jdbcUrl", "jdbc:mysql://127.0.0.1:3306");
+    static final String USERNAME = System.getProperty("test.username", "root");
+    static final String PASSWORD = System.getProperty("test.password", "root");
+    static final String OPTIONS = "?useSSL=false&allowPublicKeyRetrieval=true&serverTimezone=UTC&characterEncoding=UTF-8";
+
+    private static final AtomicInteger COUNT = new AtomicInteger();
+
+    private final String name;
+
+    private TestDatabase(String name) {
+        this.name = name;
+    }
+
+    /**
+     * This will create an empty database, or skip
+     * the test if there is no server
+     *
+     * @return TestDatabase
+     */
+    static TestDatabase create() {
+        String name = "backup4j_test_" + Long.toString(System.currentTimeMillis(), 36) + "_" + COUNT.incrementAndGet();
+        try (Connection connection = DriverManager.getConnection(SERVER_URL + "/" + OPTIONS, USERNAME, PASSWORD);
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE DATABASE `" + name + "` CHARACTER SET utf8mb4");
+        } catch (SQLException e) {
+            assumeTrue(false, "no MySQL server at " + SERVER_URL + ": " + e.getMessage());
+        }
+        return new TestDatabase(name);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getJdbcUrl() {
+        return SERVER_URL + "/" + name + OPTIONS;
+    }
+
+    Connection connect() throws SQLException {
+        return DriverManager.getConnection(getJdbcUrl(), USERNAME, PASSWORD);
+    }
+
+    void execute(String... sql) throws SQLException {
+        try (Connection connection = connect();
+             Statement stmt = connection.createStatement()) {
+            for (String statement : sql) {
+                stmt.execute(statement);
+            }
+        }
+    }
+
+    /**
+     * @param sql a query
+     * @return the first column of the rows of the query
+     */
+    List<String> query(String sql) throws SQLException {
+        List<String> values = new ArrayList<>();
+        try (Connection connection = connect();
+             Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                values.add(rs.getString(1));
+            }
+        }
+        return values;
+    }
+
+    long count(String table) throws SQLException {
+        return Long.parseLong(query("SELECT COUNT(*) FROM `" + table + "`").get(0));
+    }
+
+    /**
+     * @return the properties of an export of the database into the given directory
+     */
+    Properties exportProperties(String tempDir) {
+        Properties properties = new Properties();
+        properties.setProperty(MysqlExportService.JDBC_CONNECTION_STRING, getJdbcUrl());
+        properties.setProperty(MysqlExportService.DB_USERNAME, USERNAME);
+        properties.setProperty(MysqlExportService.DB_PASSWORD, PASSWORD);
+        properties.setProperty(MysqlExportService.TEMP_DIR, tempDir);
+        properties.setProperty(MysqlExportService.PRESERVE_GENERATED_FILE, "true");
+        properties.setProperty(MysqlExportService.ZIP_EXPORT_FILE, "false");
+        return properties;
+    }
+
+    /**
+     * @return an import into the database
+     */
+    MysqlImportService importer() {
+        return MysqlImportService.builder()
+                .setJdbcConnString(getJdbcUrl())
+                .setUsername(USERNAME)
+                .setPassword(PASSWORD);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(SERVER_URL + "/" + OPTIONS, USERNAME, PASSWORD);
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP DATABASE IF EXISTS `" + name + "`");
+        }
+    }
+}
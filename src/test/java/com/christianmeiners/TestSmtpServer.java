@@ -0,0 +1,140 @@
+package com.christianmeiners;
+
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local SMTP server for the tests that keeps the messages
+ * it's sent. It announces the given SIZE and can reject
+ * the first messages to test the retries
+ */
+class TestSmtpServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final long maxMessageBytes;
+    private final AtomicInteger rejections;
+    private final AtomicInteger attempts = new AtomicInteger();
+    private final List<MimeMessage> messages = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * @param maxMessageBytes the SIZE announced to the clients
+     * @param rejections      the number of messages that are rejected before the first is accepted
+     */
+    TestSmtpServer(long maxMessageBytes, int rejections) throws IOException {
+        this.maxMessageBytes = maxMessageBytes;
+        this.rejections = new AtomicInteger(rejections);
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread(this::accept, "test-smtp");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return the messages that have been accepted
+     */
+    List<MimeMessage> getMessages() {
+        synchronized (messages) {
+            return new ArrayList<>(messages);
+        }
+    }
+
+    /**
+     * @return the number of messages the clients tried to send
+     */
+    int getAttempts() {
+        return attempts.get();
+    }
+
+    /**
+     * @return an EmailService that sends to this server
+     */
+    EmailService emailService() {
+        return EmailService.builder()
+                .setHost("127.0.0.1")
+                .setPort(getPort())
+                .setFromAddress("backup@example.com")
+                .setToAddress("admin@example.com")
+                .setSubject("backup")
+                .setMessage("the backup");
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread thread = new Thread(() -> serve(socket), "test-smtp-session");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.ISO_8859_1));
+             OutputStream out = s.getOutputStream()) {
+            reply(out, "220 localhost test");
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.toUpperCase();
+                if (command.startsWith("EHLO")) {
+                    reply(out, "250-localhost\r\n250-SIZE " + maxMessageBytes + "\r\n250 8BITMIME");
+                } else if (command.startsWith("HELO") || command.startsWith("MAIL") || command.startsWith("RCPT")
+                        || command.startsWith("RSET") || command.startsWith("NOOP")) {
+                    reply(out, "250 OK");
+                } else if (command.startsWith("DATA")) {
+                    reply(out, "354 go ahead");
+                    StringBuilder data = new StringBuilder();
+                    while ((line = in.readLine()) != null && !line.equals(".")) {
+                        data.append(line.startsWith("..") ? line.substring(1) : line).append("\r\n");
+                    }
+                    attempts.incrementAndGet();
+                    if (rejections.getAndDecrement() > 0) {
+                        reply(out, "451 try again later");
+                    } else {
+                        messages.add(new MimeMessage(Session.getInstance(new Properties()),
+                                new ByteArrayInputStream(data.toString().getBytes(StandardCharsets.ISO_8859_1))));
+                        reply(out, "250 queued");
+                    }
+                } else if (command.startsWith("QUIT")) {
+                    reply(out, "221 bye");
+                    return;
+                } else {
+                    reply(out, "502 not implemented");
+                }
+            }
+        } catch (Exception e) {
+            //the client has gone
+        }
+    }
+
+    private static void reply(OutputStream out, String reply) throws IOException {
+        out.write((reply + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+}
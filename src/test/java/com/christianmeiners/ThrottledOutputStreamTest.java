@@ -0,0 +1,35 @@
+package com.christianmeiners;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ThrottledOutputStreamTest {
+
+    @Test
+    void writesArePacedAndPassedOn() throws IOException {
+        byte[] data = new byte[300 * 1024];
+        new Random(1).nextBytes(data);
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+        long start = System.nanoTime();
+        try (OutputStream out = new ThrottledOutputStream(written, new RateLimiter(200 * 1024))) {
+            out.write(data, 0, 1000);
+            out.write(data[1000]);
+            out.write(data, 1001, data.length - 1001);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertArrayEquals(data, written.toByteArray());
+        //the first second is a burst, the rest is paced
+        assertTrue(elapsed >= 400, "300KB at 200KB/s took " + elapsed + "ms");
+        assertTrue(elapsed < 3000, "300KB at 200KB/s took " + elapsed + "ms");
+    }
+}